@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.accounts.admin;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.georchestra.security.model.GeorchestraUser;
+
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Event published when a user, organization, or role has been modified outside
+ * of this gateway instance (for example, by an administrator through the
+ * console, or by another gateway replica), so that any state derived from it
+ * can be evicted.
+ * <p>
+ * This class is immutable and thread-safe.
+ * </p>
+ *
+ * @see AccountCreated
+ */
+@Value
+public class AccountsChanged {
+
+    /**
+     * The kind of directory entry that changed.
+     */
+    public enum Type {
+        /** {@link #getId() id} is the user name */
+        USER,
+        /** {@link #getId() id} is the organization short name */
+        ORGANIZATION,
+        /** {@link #getId() id} is the role name, with or without the ROLE_ prefix */
+        ROLE
+    }
+
+    private @NonNull Type type;
+
+    /** Identifier of the changed entry, as per {@link Type} */
+    private @NonNull String id;
+
+    /** When the change happened at its origin, if known */
+    private Instant timestamp;
+
+    /**
+     * Determines whether a user resolved before this change may be stale because of
+     * it.
+     *
+     * @param user a resolved user
+     * @return {@code true} if {@code user} is the changed user, belongs to the
+     *         changed organization, or has the changed role
+     */
+    public boolean affects(@NonNull GeorchestraUser user) {
+        return switch (type) {
+        case USER -> id.equals(user.getUsername());
+        case ORGANIZATION -> id.equals(user.getOrganization());
+        case ROLE -> hasRole(user.getRoles());
+        };
+    }
+
+    private boolean hasRole(List<String> roles) {
+        if (roles == null) {
+            return false;
+        }
+        String prefixed = id.startsWith("ROLE_") ? id : "ROLE_" + id;
+        return roles.contains(id) || roles.contains(prefixed);
+    }
+}
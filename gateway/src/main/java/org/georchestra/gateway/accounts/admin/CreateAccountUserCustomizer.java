@@ -18,6 +18,8 @@
  */
 package org.georchestra.gateway.accounts.admin;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.WeakHashMap;
@@ -25,6 +27,7 @@ import java.util.WeakHashMap;
 import org.georchestra.gateway.security.GeorchestraUserCustomizerExtension;
 import org.georchestra.gateway.security.exceptions.DuplicatedEmailFoundException;
 import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.Ordered;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
@@ -37,13 +40,17 @@ import lombok.RequiredArgsConstructor;
  * {@link GeorchestraUserCustomizerExtension} that
  * {@link AccountManager#getOrCreate creates an account} when authenticated
  * through request headers (trusted proxy feature) or through OAuth2.
+ * <p>
+ * Users logged in are remembered per {@link Authentication} until an
+ * {@link AccountsChanged} event affecting them is received.
+ * </p>
  */
 @RequiredArgsConstructor
 public class CreateAccountUserCustomizer implements GeorchestraUserCustomizerExtension, Ordered {
 
     private final @NonNull AccountManager accounts;
 
-    private final WeakHashMap<Authentication, GeorchestraUser> loggedInUsers = new WeakHashMap<>();
+    private final Map<Authentication, GeorchestraUser> loggedInUsers = Collections.synchronizedMap(new WeakHashMap<>());
 
     /**
      * @return {@link Ordered#LOWEST_PRECEDENCE} so it runs after all other
@@ -90,4 +97,15 @@ public class CreateAccountUserCustomizer implements GeorchestraUserCustomizerExt
         }
         return mappedUser;
     }
+
+    /**
+     * Forgets the logged in users affected by a change made elsewhere, so that
+     * their account is looked up again on their next request.
+     */
+    @EventListener(AccountsChanged.class)
+    public void onAccountsChanged(AccountsChanged event) {
+        synchronized (loggedInUsers) {
+            loggedInUsers.values().removeIf(event::affects);
+        }
+    }
 }
@@ -23,7 +23,6 @@ import java.util.UUID;
 import org.georchestra.gateway.accounts.admin.AccountCreated;
 import org.georchestra.security.model.GeorchestraUser;
 import org.json.JSONObject;
-import org.springframework.amqp.core.AmqpTemplate;
 import org.springframework.context.event.EventListener;
 
 /**
@@ -35,25 +34,31 @@ import org.springframework.context.event.EventListener;
  * account is created via OAuth2 authentication. It transforms the event data
  * into a JSON message and sends it to the configured RabbitMQ routing key.
  * </p>
+ * <p>
+ * Messages are not sent synchronously, but handed over to a
+ * {@link RabbitmqEventsOutbox}, since {@link AccountCreated} events are
+ * published while the accounts manager holds its write lock, and a slow broker
+ * would otherwise stall every login.
+ * </p>
  *
  * @see AccountCreated
- * @see AmqpTemplate
+ * @see RabbitmqEventsOutbox
  */
 public class RabbitmqAccountCreatedEventSender {
 
     /** The RabbitMQ queue name for OAuth2 account creation events. */
     public static final String OAUTH2_ACCOUNT_CREATION = "OAUTH2-ACCOUNT-CREATION";
 
-    /** The AMQP template for sending messages to the RabbitMQ exchange. */
-    private final AmqpTemplate eventTemplate;
+    /** The outbox that publishes messages to the RabbitMQ exchange. */
+    private final RabbitmqEventsOutbox outbox;
 
     /**
      * Constructs a new {@code RabbitmqAccountCreatedEventSender}.
      *
-     * @param eventTemplate the AMQP template used for sending messages
+     * @param outbox the outbox used to asynchronously send messages
      */
-    public RabbitmqAccountCreatedEventSender(AmqpTemplate eventTemplate) {
-        this.eventTemplate = eventTemplate;
+    public RabbitmqAccountCreatedEventSender(RabbitmqEventsOutbox outbox) {
+        this.outbox = outbox;
     }
 
     /**
@@ -82,8 +87,10 @@ public class RabbitmqAccountCreatedEventSender {
      * Sends a message to RabbitMQ indicating that a new OAuth2 user account has
      * been created.
      * <p>
-     * This method constructs a JSON object containing user details and publishes it
-     * to the RabbitMQ exchange with the routing key {@code routing-gateway}.
+     * This method constructs a JSON object containing user details and queues it
+     * for publishing to the RabbitMQ exchange with the routing key
+     * {@code routing-gateway}. It returns immediately, the message is sent in the
+     * background.
      * </p>
      *
      * <p>
@@ -122,7 +129,7 @@ public class RabbitmqAccountCreatedEventSender {
         jsonObj.put("providerName", providerName);
         jsonObj.put("providerUid", providerUid);
 
-        // Publish the message to the RabbitMQ queue
-        eventTemplate.convertAndSend("routing-gateway", jsonObj.toString());
+        // Queue the message for publishing to the RabbitMQ exchange
+        outbox.enqueue("routing-gateway", jsonObj.toString());
     }
 }
@@ -20,6 +20,7 @@ package org.georchestra.gateway.accounts.events.rabbitmq;
 
 import org.georchestra.gateway.accounts.admin.AccountCreated;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory.ConfirmType;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.actuate.amqp.RabbitHealthIndicator;
@@ -47,6 +48,10 @@ import org.springframework.context.annotation.ImportResource;
  * <li>{@code rabbit-sender-context.xml} - Configures message senders</li>
  * </ul>
  * </p>
+ * <p>
+ * Events are published asynchronously through a {@link RabbitmqEventsOutbox},
+ * so that producing an event never waits on the broker.
+ * </p>
  *
  * @see AccountCreated
  * @see RabbitmqEventsConfigurationProperties
@@ -59,13 +64,38 @@ public class RabbitmqEventsConfiguration {
     /**
      * Defines the RabbitMQ event sender for publishing account creation events.
      *
+     * @param outbox the {@link RabbitmqEventsOutbox} used for message publishing
+     * @return an instance of {@link RabbitmqAccountCreatedEventSender}
+     */
+    @Bean
+    RabbitmqAccountCreatedEventSender eventsSender(RabbitmqEventsOutbox outbox) {
+        return new RabbitmqAccountCreatedEventSender(outbox);
+    }
+
+    /**
+     * Defines the outbox that publishes events to RabbitMQ in the background.
+     *
      * @param eventTemplate the RabbitMQ {@link RabbitTemplate} used for message
      *                      publishing
-     * @return an instance of {@link RabbitmqAccountCreatedEventSender}
+     * @param config        the RabbitMQ configuration properties
+     * @return a started {@link RabbitmqEventsOutbox}
+     */
+    @Bean(initMethod = "start")
+    RabbitmqEventsOutbox rabbitmqEventsOutbox(@Qualifier("eventTemplate") RabbitTemplate eventTemplate,
+            RabbitmqEventsConfigurationProperties config) {
+        return new RabbitmqEventsOutbox(eventTemplate, config.getOutbox());
+    }
+
+    /**
+     * Defines the listener for messages received from RabbitMQ, referenced by
+     * {@code rabbit-listener-context.xml}.
+     *
+     * @param config the RabbitMQ configuration properties
+     * @return the {@link RabbitmqEventsListener}
      */
     @Bean
-    RabbitmqAccountCreatedEventSender eventsSender(@Qualifier("eventTemplate") RabbitTemplate eventTemplate) {
-        return new RabbitmqAccountCreatedEventSender(eventTemplate);
+    RabbitmqEventsListener eventsListener(RabbitmqEventsConfigurationProperties config) {
+        return new RabbitmqEventsListener(config.getReceivedMessages());
     }
 
     /**
@@ -73,7 +103,9 @@ public class RabbitmqEventsConfiguration {
      * <p>
      * This method initializes a {@link CachingConnectionFactory} using the RabbitMQ
      * connection properties defined in
-     * {@link RabbitmqEventsConfigurationProperties}.
+     * {@link RabbitmqEventsConfigurationProperties}, with publisher confirms
+     * enabled for the {@link RabbitmqEventsOutbox} to know when a batch of events
+     * has been accepted by the broker.
      * </p>
      *
      * @param config the RabbitMQ configuration properties
@@ -87,7 +119,9 @@ public class RabbitmqEventsConfiguration {
         fac.setUsername(config.getUser());
         fac.setPassword(config.getPassword());
 
-        return new CachingConnectionFactory(fac);
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(fac);
+        connectionFactory.setPublisherConfirmType(ConfirmType.SIMPLE);
+        return connectionFactory;
     }
 
     /**
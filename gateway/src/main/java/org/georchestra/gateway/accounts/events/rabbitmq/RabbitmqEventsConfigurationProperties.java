@@ -18,6 +18,8 @@
  */
 package org.georchestra.gateway.accounts.events.rabbitmq;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
@@ -53,6 +55,16 @@ import lombok.Generated;
  *           port: 5672
  *           user: myRabbitUser
  *           password: mySecretPassword
+ *           outbox:
+ *             capacity: 1000
+ *             batch-size: 50
+ *             flush-interval: 200ms
+ *             max-retries: 5
+ *             retry-backoff: 1s
+ *             confirm-timeout: 5s
+ *           received-messages:
+ *             max-size: 10000
+ *             ttl: 1h
  * </pre>
  *
  * @see org.springframework.boot.context.properties.ConfigurationProperties
@@ -100,4 +112,77 @@ public class RabbitmqEventsConfigurationProperties {
      * The password used for authentication with the RabbitMQ server.
      */
     private String password;
+
+    /**
+     * Settings for the in-memory outbox used to publish events asynchronously.
+     */
+    private Outbox outbox = new Outbox();
+
+    /**
+     * Settings for the de-duplication window of received messages.
+     */
+    private ReceivedMessages receivedMessages = new ReceivedMessages();
+
+    /**
+     * Configuration of the asynchronous, batched event publishing outbox.
+     * <p>
+     * Events are queued in memory and published to RabbitMQ from a background
+     * thread, so that a slow or unavailable broker never blocks the thread that
+     * produced the event (e.g. a user login creating a new account).
+     * </p>
+     */
+    @Generated
+    public static @Data class Outbox {
+
+        /**
+         * Maximum number of events waiting to be published. Events produced while the
+         * outbox is full are dropped and accounted for in the
+         * {@literal georchestra.gateway.events.rabbitmq.outbox.dropped} metric.
+         */
+        private int capacity = 1_000;
+
+        /**
+         * Maximum number of events published in a single batch, acknowledged all at
+         * once through publisher confirms.
+         */
+        private int batchSize = 50;
+
+        /**
+         * Delay between two consecutive outbox flushes.
+         */
+        private Duration flushInterval = Duration.ofMillis(200);
+
+        /**
+         * Number of times an event is retried after a failed or unconfirmed publish
+         * before being dropped.
+         */
+        private int maxRetries = 5;
+
+        /**
+         * Time to wait before retrying after a failed publish.
+         */
+        private Duration retryBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Maximum time to wait for the broker to confirm a published batch.
+         */
+        private Duration confirmTimeout = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Configuration of the time-windowed de-duplication of received messages.
+     */
+    @Generated
+    public static @Data class ReceivedMessages {
+
+        /**
+         * Maximum number of received message ids to remember.
+         */
+        private int maxSize = 10_000;
+
+        /**
+         * How long a received message id is remembered to discard redeliveries.
+         */
+        private Duration ttl = Duration.ofHours(1);
+    }
 }
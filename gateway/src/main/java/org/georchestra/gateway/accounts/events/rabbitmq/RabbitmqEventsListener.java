@@ -18,16 +18,29 @@
  */
 package org.georchestra.gateway.accounts.events.rabbitmq;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.georchestra.gateway.accounts.admin.AccountsChanged;
 import org.json.JSONObject;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageListener;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -35,7 +48,25 @@ import lombok.extern.slf4j.Slf4j;
  * <p>
  * This listener processes incoming messages related to OAuth2 account creation
  * events. It ensures that duplicate messages are not logged more than once by
- * maintaining a synchronized set of processed message UIDs.
+ * remembering the processed message UIDs. The de-duplication window is bounded
+ * both in size and time, so memory usage does not grow with the number of
+ * messages received over the application's lifetime.
+ * </p>
+ * <p>
+ * It also translates user, organization, and role change notifications (sent by
+ * the console, or {@link RabbitmqAccountCreatedEventSender account creations}
+ * sent by other gateway replicas) into {@link AccountsChanged} application
+ * events, so that every replica evicts the state derived from them. These
+ * messages are JSON objects with the following properties:
+ * <ul>
+ * <li>{@code uid}: unique message identifier</li>
+ * <li>{@code subject}: one of {@value #USER_CHANGED} (with a {@code username}
+ * property), {@value #ORGANIZATION_CHANGED} (with an {@code org} property),
+ * {@value #ROLE_CHANGED} (with a {@code role} property), or
+ * {@value RabbitmqAccountCreatedEventSender#OAUTH2_ACCOUNT_CREATION}</li>
+ * <li>{@code timestamp}: optional time of the change in milliseconds since the
+ * epoch, used to report the invalidation lag</li>
+ * </ul>
  * </p>
  *
  * <p>
@@ -44,7 +75,7 @@ import lombok.extern.slf4j.Slf4j;
  * </p>
  */
 @Slf4j
-public class RabbitmqEventsListener implements MessageListener {
+public class RabbitmqEventsListener implements MessageListener, MeterBinder, ApplicationEventPublisherAware {
 
     /**
      * The subject indicating that an OAuth2 account creation event has been
@@ -52,18 +83,66 @@ public class RabbitmqEventsListener implements MessageListener {
      */
     public static final String OAUTH2_ACCOUNT_CREATION_RECEIVED = "OAUTH2-ACCOUNT-CREATION-RECEIVED";
 
+    /** The subject of messages notifying a user has been modified or deleted */
+    public static final String USER_CHANGED = "USER-CHANGED";
+
+    /**
+     * The subject of messages notifying an organization has been modified or
+     * deleted
+     */
+    public static final String ORGANIZATION_CHANGED = "ORGANIZATION-CHANGED";
+
+    /** The subject of messages notifying a role has been modified or deleted */
+    public static final String ROLE_CHANGED = "ROLE-CHANGED";
+
+    static final String INVALIDATION_LAG_METRIC = "georchestra.gateway.events.rabbitmq.invalidation.lag";
+
     /**
-     * A synchronized set to track processed message UIDs and prevent duplicate
-     * processing.
+     * Tracks processed message UIDs to prevent duplicate processing, evicting the
+     * oldest ones when either the maximum size or the time window is exceeded.
      */
-    private static final Set<String> synReceivedMessageUid = Collections.synchronizedSet(new HashSet<>());
+    private final Cache<String, Boolean> receivedMessageUids;
+
+    private final AtomicLong duplicates = new AtomicLong();
+
+    private ApplicationEventPublisher eventPublisher;
+
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Creates a listener with the default de-duplication window.
+     */
+    public RabbitmqEventsListener() {
+        this(new RabbitmqEventsConfigurationProperties.ReceivedMessages());
+    }
+
+    /**
+     * @param config the de-duplication window configuration
+     */
+    public RabbitmqEventsListener(@NonNull RabbitmqEventsConfigurationProperties.ReceivedMessages config) {
+        this(config.getMaxSize(), config.getTtl());
+    }
+
+    /**
+     * @param maxSize maximum number of message UIDs to remember
+     * @param ttl     how long a message UID is remembered
+     */
+    public RabbitmqEventsListener(int maxSize, @NonNull Duration ttl) {
+        this.receivedMessageUids = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).build();
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
 
     /**
      * Processes an incoming RabbitMQ message.
      * <p>
      * If the message contains a subject matching
      * {@code OAUTH2-ACCOUNT-CREATION-RECEIVED} and has not already been processed,
-     * it logs the message content.
+     * it logs the message content. If it notifies a user, organization, or role
+     * change, publishes the corresponding {@link AccountsChanged} event.
      * </p>
      *
      * @param message the incoming RabbitMQ message
@@ -76,23 +155,77 @@ public class RabbitmqEventsListener implements MessageListener {
             String uid = jsonObj.getString("uid");
             String subject = jsonObj.getString("subject");
 
-            if (subject.equals(OAUTH2_ACCOUNT_CREATION_RECEIVED) && !synReceivedMessageUid.contains(uid)) {
-                String msg = jsonObj.getString("msg");
-                synReceivedMessageUid.add(uid);
-                log.info(msg);
+            switch (subject) {
+            case OAUTH2_ACCOUNT_CREATION_RECEIVED:
+                if (isNew(uid)) {
+                    String msg = jsonObj.getString("msg");
+                    log.info(msg);
+                }
+                break;
+            case USER_CHANGED:
+                publishChange(uid, AccountsChanged.Type.USER, jsonObj.getString("username"), jsonObj);
+                break;
+            case ORGANIZATION_CHANGED:
+                publishChange(uid, AccountsChanged.Type.ORGANIZATION, jsonObj.getString("org"), jsonObj);
+                break;
+            case ROLE_CHANGED:
+                publishChange(uid, AccountsChanged.Type.ROLE, jsonObj.getString("role"), jsonObj);
+                break;
+            case RabbitmqAccountCreatedEventSender.OAUTH2_ACCOUNT_CREATION:
+                publishChange(uid, AccountsChanged.Type.USER, jsonObj.getString("localUid"), jsonObj);
+                break;
+            default:
+                log.debug("Ignoring message with subject {}", subject);
             }
         } catch (Exception e) {
             log.error("Exception caught when evaluating a message from RabbitMQ. It will be silently discarded.", e);
         }
     }
 
+    private boolean isNew(String uid) {
+        if (null == receivedMessageUids.asMap().putIfAbsent(uid, Boolean.TRUE)) {
+            return true;
+        }
+        duplicates.incrementAndGet();
+        log.debug("Discarding duplicate message {}", uid);
+        return false;
+    }
+
+    private void publishChange(String uid, AccountsChanged.Type type, String id, JSONObject jsonObj) {
+        if (!isNew(uid)) {
+            return;
+        }
+        Instant timestamp = jsonObj.has("timestamp") ? Instant.ofEpochMilli(jsonObj.getLong("timestamp")) : null;
+        AccountsChanged event = new AccountsChanged(type, id, timestamp);
+        log.debug("Received {}", event);
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(event);
+        }
+        if (timestamp != null && meterRegistry != null) {
+            Duration lag = Duration.between(timestamp, Instant.now());
+            Timer.builder(INVALIDATION_LAG_METRIC)
+                    .description("Time from a user, organization, or role change to its invalidation")
+                    .tag("type", type.name().toLowerCase()).register(meterRegistry).record(lag);
+        }
+    }
+
     /**
      * Returns the set of received message UIDs for testing purposes.
      *
      * @return an unmodifiable view of the received message UIDs
      */
     @VisibleForTesting
-    public static Set<String> getSynReceivedMessageUid() {
-        return Collections.unmodifiableSet(synReceivedMessageUid);
+    public Set<String> getReceivedMessageUids() {
+        return Collections.unmodifiableSet(receivedMessageUids.asMap().keySet());
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder("georchestra.gateway.events.rabbitmq.received.window", receivedMessageUids, Cache::size)
+                .description("Number of received RabbitMQ message ids remembered for de-duplication")
+                .register(registry);
+        FunctionCounter.builder("georchestra.gateway.events.rabbitmq.received.duplicates", duplicates, AtomicLong::get)
+                .description("Number of duplicate RabbitMQ messages discarded").register(registry);
     }
 }
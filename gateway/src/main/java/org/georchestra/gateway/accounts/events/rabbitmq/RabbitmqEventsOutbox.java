@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.accounts.events.rabbitmq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.accounts.events.rabbitmq.RabbitmqEventsConfigurationProperties.Outbox;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory outbox that publishes RabbitMQ events asynchronously, in batches,
+ * with publisher confirms and retries.
+ * <p>
+ * Producers call {@link #enqueue(String, String)}, which never blocks nor talks
+ * to the broker: the message is added to a bounded queue and the call returns
+ * immediately. A single background thread drains the queue every
+ * {@link Outbox#getFlushInterval() flush interval}, publishing up to
+ * {@link Outbox#getBatchSize() batch size} messages within a single channel and
+ * waiting for the broker to confirm them all at once.
+ * </p>
+ * <p>
+ * If a batch fails or is not confirmed in time, its messages are put back at
+ * the head of the queue and retried after {@link Outbox#getRetryBackoff() a
+ * backoff}, up to {@link Outbox#getMaxRetries() max retries} times. Messages
+ * are dropped (and counted) when they exhaust their retries or when the outbox
+ * is full.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.events.rabbitmq.outbox} prefix:
+ * <ul>
+ * <li>{@code .size}: number of messages waiting to be published</li>
+ * <li>{@code .published}: number of messages confirmed by the broker</li>
+ * <li>{@code .retried}: number of message publish retries</li>
+ * <li>{@code .dropped}: number of messages discarded, tagged by
+ * {@code reason=full|retries}</li>
+ * <li>{@code .latency}: time from enqueuing to broker confirmation</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.accounts.events.rabbitmq")
+public class RabbitmqEventsOutbox implements MeterBinder, DisposableBean {
+
+    static final String METRICS_PREFIX = "georchestra.gateway.events.rabbitmq.outbox";
+
+    private final @NonNull RabbitOperations template;
+
+    private final @NonNull Outbox config;
+
+    private final BlockingDeque<PendingMessage> queue;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong droppedFull = new AtomicLong();
+    private final AtomicLong droppedRetries = new AtomicLong();
+
+    private volatile Timer latency;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Earliest time, as per {@link System#nanoTime()}, the next flush may contact
+     * the broker. Set after a failure to apply the retry backoff.
+     */
+    private volatile long nextAttemptNanos;
+
+    /**
+     * A message waiting in the outbox.
+     */
+    @VisibleForTesting
+    record PendingMessage(String routingKey, String payload, long enqueuedNanos, int attempts) {
+
+        PendingMessage retry() {
+            return new PendingMessage(routingKey, payload, enqueuedNanos, attempts + 1);
+        }
+
+        /**
+         * @return the message subject and uid, for logging without the account
+         *         details it may contain
+         */
+        String describe() {
+            try {
+                JSONObject json = new JSONObject(payload);
+                return json.optString("subject", "unknown") + " " + json.optString("uid", "unknown");
+            } catch (JSONException e) {
+                return "unknown";
+            }
+        }
+    }
+
+    /**
+     * @param template the RabbitMQ template used to publish messages, its
+     *                 connection factory shall have publisher confirms enabled
+     * @param config   the outbox configuration
+     */
+    public RabbitmqEventsOutbox(@NonNull RabbitOperations template, @NonNull Outbox config) {
+        this.template = template;
+        this.config = config;
+        this.queue = new LinkedBlockingDeque<>(Math.max(1, config.getCapacity()));
+    }
+
+    /**
+     * Starts the background thread that periodically flushes the outbox.
+     */
+    public void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "rabbitmq-events-outbox");
+                t.setDaemon(true);
+                return t;
+            });
+            long interval = Math.max(1, config.getFlushInterval().toMillis());
+            executor.scheduleWithFixedDelay(this::flushSafely, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background thread and makes a last, best-effort, attempt to publish
+     * the remaining messages, once the batch being published, if any, is done.
+     */
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            final ScheduledExecutorService stopping = executor;
+            executor = null;
+            stopping.shutdownNow();
+            try {
+                long timeout = config.getConfirmTimeout().toMillis() + 1_000;
+                if (!stopping.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                    log.warn("RabbitMQ events outbox still publishing, discarding {} unpublished events on shutdown",
+                            queue.size());
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        nextAttemptNanos = 0;
+        flushSafely();
+        if (!queue.isEmpty()) {
+            log.warn("Discarding {} unpublished RabbitMQ events on shutdown", queue.size());
+        }
+    }
+
+    /**
+     * Queues a message to be published to the template's exchange with the given
+     * routing key. Never blocks.
+     *
+     * @param routingKey the routing key to publish the message with
+     * @param payload    the message body
+     * @return {@code true} if the message was queued, {@code false} if it was
+     *         dropped because the outbox is full
+     */
+    public boolean enqueue(@NonNull String routingKey, @NonNull String payload) {
+        final PendingMessage message = new PendingMessage(routingKey, payload, System.nanoTime(), 0);
+        boolean queued = queue.offerLast(message);
+        if (!queued) {
+            droppedFull.incrementAndGet();
+            log.warn("RabbitMQ events outbox is full ({} messages), dropping event {}", config.getCapacity(),
+                    message.describe());
+        }
+        return queued;
+    }
+
+    /**
+     * @return the number of messages waiting to be published
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Publishes all the messages currently in the outbox, batch by batch, stopping
+     * at the first failed batch, or when the background thread is interrupted on
+     * shutdown.
+     *
+     * @return the number of messages published and confirmed
+     */
+    @VisibleForTesting
+    int flush() {
+        if (System.nanoTime() - nextAttemptNanos < 0) {
+            return 0;
+        }
+        int count = 0;
+        List<PendingMessage> batch = new ArrayList<>(config.getBatchSize());
+        while (queue.drainTo(batch, Math.max(1, config.getBatchSize())) > 0) {
+            if (!publish(batch)) {
+                break;
+            }
+            count += batch.size();
+            batch.clear();
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Unexpected error flushing the RabbitMQ events outbox", e);
+        }
+    }
+
+    private boolean publish(List<PendingMessage> batch) {
+        try {
+            template.invoke(ops -> {
+                for (PendingMessage message : batch) {
+                    ops.convertAndSend(message.routingKey(), message.payload());
+                }
+                ops.waitForConfirmsOrDie(config.getConfirmTimeout().toMillis());
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Error publishing {} RabbitMQ events, will retry in {}: {}", batch.size(),
+                    config.getRetryBackoff(), e.getMessage());
+            requeue(batch);
+            nextAttemptNanos = System.nanoTime() + config.getRetryBackoff().toNanos();
+            return false;
+        }
+        final long now = System.nanoTime();
+        final Timer timer = this.latency;
+        published.addAndGet(batch.size());
+        if (timer != null) {
+            batch.forEach(m -> timer.record(now - m.enqueuedNanos(), TimeUnit.NANOSECONDS));
+        }
+        return true;
+    }
+
+    /**
+     * Puts back the failed batch at the head of the queue, preserving order, and
+     * drops the messages that exhausted their retries.
+     */
+    private void requeue(List<PendingMessage> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            PendingMessage message = batch.get(i);
+            if (message.attempts() >= config.getMaxRetries()) {
+                droppedRetries.incrementAndGet();
+                log.error("Dropping RabbitMQ event after {} failed attempts: {}", message.attempts() + 1,
+                        message.describe());
+            } else if (queue.offerFirst(message.retry())) {
+                retried.incrementAndGet();
+            } else {
+                droppedFull.incrementAndGet();
+                log.warn("RabbitMQ events outbox is full, dropping event {}", message.describe());
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder(METRICS_PREFIX + ".size", queue, BlockingDeque::size)
+                .description("Number of RabbitMQ events waiting to be published").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".published", published, AtomicLong::get)
+                .description("Number of RabbitMQ events published and confirmed by the broker").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".retried", retried, AtomicLong::get)
+                .description("Number of RabbitMQ event publish retries").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".dropped", droppedFull, AtomicLong::get).tag("reason", "full")
+                .description("Number of RabbitMQ events dropped").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".dropped", droppedRetries, AtomicLong::get).tag("reason", "retries")
+                .description("Number of RabbitMQ events dropped").register(registry);
+        this.latency = Timer.builder(METRICS_PREFIX + ".latency")
+                .description("Time from enqueuing a RabbitMQ event to its confirmation by the broker")
+                .register(registry);
+    }
+}
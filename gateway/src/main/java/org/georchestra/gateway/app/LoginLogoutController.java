@@ -165,6 +165,7 @@ public class LoginLogoutController {
         model.addAttribute("passwordExpired", "expired_password".equals(allRequestParams.get("error")));
         model.addAttribute("invalidCredentials", "invalid_credentials".equals(allRequestParams.get("error")));
         model.addAttribute("duplicateAccount", "duplicate_account".equals(allRequestParams.get("error")));
+        model.addAttribute("tooManyAttempts", "too_many_attempts".equals(allRequestParams.get("error")));
 
         return "login";
     }
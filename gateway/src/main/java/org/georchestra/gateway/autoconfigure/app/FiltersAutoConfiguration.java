@@ -18,22 +18,52 @@
  */
 package org.georchestra.gateway.autoconfigure.app;
 
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BinaryOperator;
+
+import org.georchestra.gateway.filter.admission.AdmissionControlGlobalFilter;
+import org.georchestra.gateway.filter.admission.EventLoopLagMonitor;
+import org.georchestra.gateway.filter.backend.BackendProtectionGlobalFilter;
+import org.georchestra.gateway.filter.backend.ServiceConnectionPools;
+import org.georchestra.gateway.filter.cache.CachedResponses;
+import org.georchestra.gateway.filter.cache.CoalesceGatewayFilterFactory;
+import org.georchestra.gateway.filter.cache.ResponseCacheEndpoint;
+import org.georchestra.gateway.filter.cache.ResponseCacheGlobalFilter;
+import org.georchestra.gateway.filter.cache.RevalidationGlobalFilter;
 import org.georchestra.gateway.filter.global.ApplicationErrorGatewayFilterFactory;
 import org.georchestra.gateway.filter.global.LoginParamRedirectGatewayFilterFactory;
 import org.georchestra.gateway.filter.global.ResolveTargetGlobalFilter;
 import org.georchestra.gateway.filter.headers.HeaderFiltersConfiguration;
+import org.georchestra.gateway.filter.loadbalancer.LayerAffinityGatewayFilterFactory;
+import org.georchestra.gateway.filter.loadbalancer.LoadBalancerGlobalFilter;
+import org.georchestra.gateway.filter.ratelimit.ConcurrencyQuotaGlobalFilter;
+import org.georchestra.gateway.filter.ratelimit.RateLimitGlobalFilter;
+import org.georchestra.gateway.filter.ratelimit.TokenBuckets;
 import org.georchestra.gateway.model.GatewayConfigProperties;
 import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.RateLimit;
+import org.georchestra.gateway.model.Service;
 import org.geoserver.cloud.gateway.filter.RouteProfileGatewayFilterFactory;
 import org.geoserver.cloud.gateway.filter.StripBasePathGatewayFilterFactory;
 import org.geoserver.cloud.gateway.predicate.RegExpQueryRoutePredicateFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.gateway.config.GatewayAutoConfiguration;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.EventLoopGroup;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.LoopResources;
 
 /**
  * Auto-configuration for geOrchestra gateway filters and predicates.
@@ -75,6 +105,161 @@ public class FiltersAutoConfiguration {
         return new ResolveTargetGlobalFilter(config);
     }
 
+    /**
+     * Registers the monitor of the server event loops lag used for admission
+     * control.
+     *
+     * @param config the gateway configuration properties
+     * @return a started {@link EventLoopLagMonitor}
+     */
+    @Bean
+    @ConditionalOnProperty(name = "georchestra.gateway.admission.enabled", havingValue = "true")
+    EventLoopLagMonitor eventLoopLagMonitor(GatewayConfigProperties config) {
+        EventLoopGroup eventLoops = HttpResources.get().onServer(LoopResources.DEFAULT_NATIVE);
+        EventLoopLagMonitor monitor = new EventLoopLagMonitor(eventLoops, config.getAdmission().getLagProbeInterval());
+        monitor.start();
+        return monitor;
+    }
+
+    /**
+     * Registers a {@link GlobalFilter} that sheds low priority requests first when
+     * the gateway is overloaded.
+     *
+     * @param config  the gateway configuration properties
+     * @param monitor the server event loops lag monitor
+     * @return an instance of {@link AdmissionControlGlobalFilter}
+     */
+    @Bean
+    @ConditionalOnProperty(name = "georchestra.gateway.admission.enabled", havingValue = "true")
+    AdmissionControlGlobalFilter admissionControlGlobalFilter(GatewayConfigProperties config,
+            EventLoopLagMonitor monitor) {
+        return new AdmissionControlGlobalFilter(config.getAdmission(), monitor::getLagNanos);
+    }
+
+    /**
+     * Registers a {@link GlobalFilter} that enforces the services rate limits.
+     * <p>
+     * Unused token buckets are kept for the longest configured rate limit period,
+     * and at least a minute.
+     * </p>
+     *
+     * @param config the gateway configuration properties
+     * @return an instance of {@link RateLimitGlobalFilter}
+     */
+    @Bean
+    RateLimitGlobalFilter rateLimitGlobalFilter(GatewayConfigProperties config) {
+        Duration idleTimeout = config.getServices().values().stream().map(Service::getRateLimits).flatMap(List::stream)
+                .map(RateLimit::getPeriod)
+                .reduce(Duration.ofMinutes(1), BinaryOperator.maxBy(Comparator.naturalOrder()));
+        return new RateLimitGlobalFilter(new TokenBuckets(config.getRateLimitsMaxKeys(), idleTimeout));
+    }
+
+    /**
+     * Registers a {@link GlobalFilter} that enforces the services concurrency
+     * quotas.
+     *
+     * @return an instance of {@link ConcurrencyQuotaGlobalFilter}
+     */
+    @Bean
+    ConcurrencyQuotaGlobalFilter concurrencyQuotaGlobalFilter() {
+        return new ConcurrencyQuotaGlobalFilter();
+    }
+
+    /**
+     * Registers a {@link GlobalFilter} that answers the conditional requests to the
+     * services with a revalidation cache locally.
+     * <p>
+     * Background revalidations are sent through the gateway's own
+     * {@link HttpClient}, if available, to share its connection pool and settings,
+     * or through the service dedicated connection pool if any. They're balanced
+     * across the service replicas by the {@link LoadBalancerGlobalFilter}.
+     * </p>
+     *
+     * @param config       the gateway configuration properties
+     * @param httpClient   the gateway HTTP client
+     * @param loadBalancer balances the revalidations across the service replicas
+     * @param pools        the services dedicated connection pools
+     * @return an instance of {@link RevalidationGlobalFilter}
+     */
+    @Bean
+    RevalidationGlobalFilter revalidationGlobalFilter(GatewayConfigProperties config,
+            ObjectProvider<HttpClient> httpClient, ObjectProvider<LoadBalancerGlobalFilter> loadBalancer,
+            ObjectProvider<ServiceConnectionPools> pools) {
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient.getIfUnique(HttpClient::create))).build();
+        return new RevalidationGlobalFilter(config.getRevalidationMaxEntries(), webClient,
+                loadBalancer.getIfAvailable(), pools.getIfAvailable());
+    }
+
+    /**
+     * Registers the store of the responses cached by
+     * {@link ResponseCacheGlobalFilter}, shared by all services.
+     *
+     * @param config the gateway configuration properties
+     * @return an instance of {@link CachedResponses}
+     */
+    @Bean
+    CachedResponses cachedResponses(GatewayConfigProperties config) {
+        return new CachedResponses(config.getResponseCacheMaxSize().toBytes());
+    }
+
+    /**
+     * Registers a {@link GlobalFilter} that serves the anonymous requests, and the
+     * capabilities requests, to the services with a response cache from memory.
+     *
+     * @param cachedResponses the cached responses store
+     * @return an instance of {@link ResponseCacheGlobalFilter}
+     */
+    @Bean
+    ResponseCacheGlobalFilter responseCacheGlobalFilter(CachedResponses cachedResponses) {
+        return new ResponseCacheGlobalFilter(cachedResponses);
+    }
+
+    /**
+     * Registers the actuator endpoint to inspect and invalidate the cached
+     * responses.
+     *
+     * @param cachedResponses the cached responses store
+     * @return an instance of {@link ResponseCacheEndpoint}
+     */
+    @Bean
+    ResponseCacheEndpoint responseCacheEndpoint(CachedResponses cachedResponses) {
+        return new ResponseCacheEndpoint(cachedResponses);
+    }
+
+    /**
+     * Registers a {@link GlobalFilter} that protects the services backends with
+     * their adaptive concurrency limits, response timeouts, and circuit breakers.
+     *
+     * @return an instance of {@link BackendProtectionGlobalFilter}
+     */
+    @Bean
+    BackendProtectionGlobalFilter backendProtectionGlobalFilter() {
+        return new BackendProtectionGlobalFilter();
+    }
+
+    /**
+     * Registers a {@link GlobalFilter} that balances the requests to the services
+     * with replicas across their instances.
+     *
+     * @return an instance of {@link LoadBalancerGlobalFilter}
+     */
+    @Bean
+    LoadBalancerGlobalFilter loadBalancerGlobalFilter() {
+        return new LoadBalancerGlobalFilter();
+    }
+
+    /**
+     * Registers a gateway filter factory that routes the requests for the same
+     * layer to the same service replica.
+     *
+     * @return an instance of {@link LayerAffinityGatewayFilterFactory}
+     */
+    @Bean
+    LayerAffinityGatewayFilterFactory layerAffinityGatewayFilterFactory() {
+        return new LayerAffinityGatewayFilterFactory();
+    }
+
     /**
      * Registers a gateway filter factory that processes login-related query
      * parameters.
@@ -86,6 +271,17 @@ public class FiltersAutoConfiguration {
         return new LoginParamRedirectGatewayFilterFactory();
     }
 
+    /**
+     * Registers a gateway filter factory that coalesces concurrent identical
+     * requests into a single upstream call.
+     *
+     * @return an instance of {@link CoalesceGatewayFilterFactory}
+     */
+    @Bean
+    CoalesceGatewayFilterFactory coalesceGatewayFilterFactory() {
+        return new CoalesceGatewayFilterFactory();
+    }
+
     /**
      * Registers a custom route predicate factory that allows matching query
      * parameters based on regular expressions.
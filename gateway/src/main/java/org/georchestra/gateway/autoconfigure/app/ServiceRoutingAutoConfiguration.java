@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.autoconfigure.app;
+
+import java.util.List;
+
+import org.georchestra.gateway.filter.backend.HedgedRequests;
+import org.georchestra.gateway.filter.backend.ServiceConnectionPools;
+import org.georchestra.gateway.filter.backend.ServiceRoutingFilter;
+import org.georchestra.gateway.model.Service;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.GatewayAutoConfiguration;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.context.annotation.Bean;
+
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * Auto-configuration for the {@link Service#getConnectionPool() dedicated
+ * connection pools} and {@link Service#getHedging() hedged requests} of the
+ * geOrchestra services.
+ * <p>
+ * Spring Cloud Gateway's {@link NettyRoutingFilter} forwards all requests
+ * through a single {@link HttpClient}. This configuration replaces it by a
+ * {@link ServiceRoutingFilter}, which uses the services' own
+ * {@link ServiceConnectionPools connection pools} when configured, and hedges
+ * the idempotent requests to their replicas.
+ * </p>
+ *
+ * @see ServiceRoutingFilter
+ * @see ServiceConnectionPools
+ * @see HedgedRequests
+ */
+@AutoConfiguration(after = GatewayAutoConfiguration.class)
+@ConditionalOnBean(NettyRoutingFilter.class)
+public class ServiceRoutingAutoConfiguration {
+
+    /**
+     * Registers the holder of the services dedicated connection pools, built with
+     * the same settings as the gateway's default {@link HttpClient}.
+     *
+     * @param properties       the gateway's HTTP client properties
+     * @param serverProperties the server properties
+     * @param customizers      the gateway's HTTP client customizers
+     * @param sslConfigurer    the gateway's HTTP client SSL configurer
+     * @return an instance of {@link ServiceConnectionPools}
+     */
+    @Bean
+    ServiceConnectionPools serviceConnectionPools(HttpClientProperties properties, ServerProperties serverProperties,
+            ObjectProvider<HttpClientCustomizer> customizers, HttpClientSslConfigurer sslConfigurer) {
+        return new ServiceConnectionPools(properties, serverProperties, customizers.orderedStream().toList(),
+                sslConfigurer);
+    }
+
+    /**
+     * Registers the holder of the services hedged requests latency statistics and
+     * budgets.
+     *
+     * @return an instance of {@link HedgedRequests}
+     */
+    @Bean
+    HedgedRequests hedgedRequests() {
+        return new HedgedRequests();
+    }
+
+    /**
+     * Replaces Spring Cloud Gateway's {@link NettyRoutingFilter} bean by a
+     * {@link ServiceRoutingFilter} with the same HTTP client and headers filters.
+     * <p>
+     * The routing filter bean is not conditional on a missing bean, hence the post
+     * processor. Its dependencies are resolved lazily, as post processors are
+     * created before any other bean.
+     * </p>
+     *
+     * @param httpClient     the gateway HTTP client
+     * @param headersFilters the gateway HTTP headers filters
+     * @param properties     the gateway's HTTP client properties
+     * @param pools          the services dedicated connection pools
+     * @param hedgedRequests the services hedged requests state
+     * @return the routing filter replacing post processor
+     */
+    @Bean
+    static BeanPostProcessor serviceRoutingFilterPostProcessor(ObjectProvider<HttpClient> httpClient,
+            ObjectProvider<List<HttpHeadersFilter>> headersFilters, ObjectProvider<HttpClientProperties> properties,
+            ObjectProvider<ServiceConnectionPools> pools, ObjectProvider<HedgedRequests> hedgedRequests) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof NettyRoutingFilter && !(bean instanceof ServiceRoutingFilter)) {
+                    return new ServiceRoutingFilter(httpClient.getObject(), headersFilters, properties.getObject(),
+                            pools.getObject(), hedgedRequests.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.admission;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.georchestra.gateway.filter.global.ResolveTargetGlobalFilter;
+import org.georchestra.gateway.model.AdmissionControl;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.RoleBasedAccessRule;
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link GlobalFilter} performing gateway wide {@link AdmissionControl
+ * admission control}, shedding low priority requests first when the gateway is
+ * overloaded.
+ * <p>
+ * Requests are classified in {@link Priority priority classes}:
+ * <ul>
+ * <li>{@link Priority#ADMIN}: requests from a user having one of the
+ * {@link AdmissionControl#getAdminRoles() admin roles}, to a URL whose
+ * {@link RoleBasedAccessRule access rule} is restricted by role</li>
+ * <li>{@link Priority#AUTHENTICATED}: other requests from authenticated
+ * users</li>
+ * <li>{@link Priority#ANONYMOUS}: requests from anonymous users</li>
+ * </ul>
+ * The configuration is read on each request, so changes to it apply right away.
+ * The load is the highest of the {@link EventLoopLagMonitor event loop lag} and
+ * the number of requests in flight, relative to their thresholds. Anonymous
+ * requests are shed once it reaches {@code 1}, and authenticated ones once it
+ * reaches {@link AdmissionControl#getAuthenticatedHeadroom() authenticated
+ * headroom}. Shed requests get a {@code 503 Service Unavailable} status and a
+ * {@code Retry-After} header of {@link AdmissionControl#getRetryAfter() retry
+ * after}.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.admission} prefix: {@code .lag} and
+ * {@code .inflight} gauges, and a {@code .requests} counter tagged by
+ * {@code class=admin|authenticated|anonymous} and
+ * {@code outcome=admitted|rejected}.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.admission")
+public class AdmissionControlGlobalFilter implements GlobalFilter, Ordered, MeterBinder {
+
+    /**
+     * Runs right after {@link ResolveTargetGlobalFilter}, once the user and the
+     * access rules are known, and before any other per-request work.
+     */
+    public static final int ORDER = ResolveTargetGlobalFilter.ORDER + 1;
+
+    static final String METRICS_PREFIX = "georchestra.gateway.admission";
+
+    public enum Priority {
+        ANONYMOUS, AUTHENTICATED, ADMIN
+    }
+
+    private final @NonNull AdmissionControl config;
+
+    private final @NonNull LongSupplier eventLoopLagNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /** Parsed access rules intercept URLs */
+    private final Map<String, PathPattern> pathPatterns = new ConcurrentHashMap<>();
+
+    private final Map<Priority, AtomicLong> admitted = new EnumMap<>(Priority.class);
+    private final Map<Priority, AtomicLong> rejected = new EnumMap<>(Priority.class);
+
+    /**
+     * @param config            the admission control configuration
+     * @param eventLoopLagNanos provides the current event loop lag, in nanoseconds
+     */
+    public AdmissionControlGlobalFilter(@NonNull AdmissionControl config, @NonNull LongSupplier eventLoopLagNanos) {
+        this.config = config;
+        this.eventLoopLagNanos = eventLoopLagNanos;
+        for (Priority p : Priority.values()) {
+            admitted.put(p, new AtomicLong());
+            rejected.put(p, new AtomicLong());
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        final Priority priority = classify(exchange);
+        final double load = load();
+        if (priority == Priority.ANONYMOUS && load >= 1
+                || priority == Priority.AUTHENTICATED && load >= config.getAuthenticatedHeadroom()) {
+            rejected.get(priority).incrementAndGet();
+            log.debug("Shedding {} request {} under load {}", priority, exchange.getRequest().getPath(), load);
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(retryAfterSeconds(config.getRetryAfter())));
+            return response.setComplete();
+        }
+        admitted.get(priority).incrementAndGet();
+        inFlight.incrementAndGet();
+        return chain.filter(exchange).doFinally(signal -> inFlight.decrementAndGet());
+    }
+
+    /**
+     * @return the load, as a multiple of the thresholds
+     */
+    @VisibleForTesting
+    double load() {
+        long maxLag = config.getMaxEventLoopLag().toNanos();
+        double lagLoad = maxLag > 0 ? (double) eventLoopLagNanos.getAsLong() / maxLag : 0;
+        int maxInFlight = config.getMaxInFlight();
+        double inFlightLoad = maxInFlight > 0 ? (double) inFlight.get() / maxInFlight : 0;
+        return Math.max(lagLoad, inFlightLoad);
+    }
+
+    @VisibleForTesting
+    Priority classify(ServerWebExchange exchange) {
+        GeorchestraUser user = GeorchestraUsers.resolve(exchange).orElse(null);
+        if (user == null) {
+            return Priority.ANONYMOUS;
+        }
+        List<String> adminRoles = config.getAdminRoles().stream().map(AdmissionControlGlobalFilter::ensureRolePrefix)
+                .toList();
+        boolean admin = user.getRoles().stream().map(AdmissionControlGlobalFilter::ensureRolePrefix)
+                .anyMatch(adminRoles::contains);
+        if (admin && isRestrictedByRole(exchange)) {
+            return Priority.ADMIN;
+        }
+        return Priority.AUTHENTICATED;
+    }
+
+    /**
+     * @return whether the first access rule matching the request path grants access
+     *         to specific roles only
+     */
+    private boolean isRestrictedByRole(ServerWebExchange exchange) {
+        List<RoleBasedAccessRule> rules = GeorchestraTargetConfig.getTarget(exchange)
+                .map(GeorchestraTargetConfig::accessRules).orElse(List.of());
+        PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+        for (RoleBasedAccessRule rule : rules) {
+            boolean matches = rule.getInterceptUrl().stream().map(this::pathPattern)
+                    .anyMatch(pattern -> pattern.matches(path));
+            if (matches) {
+                return !rule.isForbidden() && !rule.isAnonymous() && !rule.getAllowedRoles().isEmpty();
+            }
+        }
+        return false;
+    }
+
+    private PathPattern pathPattern(String antPattern) {
+        return pathPatterns.computeIfAbsent(antPattern, PathPatternParser.defaultInstance::parse);
+    }
+
+    /**
+     * @return {@code retryAfter} in seconds, rounded up and at least {@code 1}
+     */
+    private static long retryAfterSeconds(Duration retryAfter) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfter.toNanos() + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    private static String ensureRolePrefix(String role) {
+        return role.startsWith("ROLE_") ? role : "ROLE_" + role;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        TimeGauge.builder(METRICS_PREFIX + ".lag", eventLoopLagNanos, TimeUnit.NANOSECONDS, LongSupplier::getAsLong)
+                .description("Server event loop lag").register(registry);
+        Gauge.builder(METRICS_PREFIX + ".inflight", inFlight, AtomicInteger::get)
+                .description("Number of admitted requests in flight").register(registry);
+        for (Priority p : Priority.values()) {
+            String tag = p.name().toLowerCase();
+            FunctionCounter.builder(METRICS_PREFIX + ".requests", admitted.get(p), AtomicLong::get).tag("class", tag)
+                    .tag("outcome", "admitted").description("Number of requests by admission outcome")
+                    .register(registry);
+            FunctionCounter.builder(METRICS_PREFIX + ".requests", rejected.get(p), AtomicLong::get).tag("class", tag)
+                    .tag("outcome", "rejected").description("Number of requests by admission outcome")
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.admission;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import lombok.NonNull;
+
+/**
+ * Measures the lag of the server event loops.
+ * <p>
+ * A probe task is scheduled on each event loop every {@code interval}. The lag
+ * is how late it runs: a loop busy running other tasks, or starved of CPU, runs
+ * it late. {@link #getLagNanos()} reports the highest lag measured by the last
+ * probe of each loop.
+ * </p>
+ */
+public class EventLoopLagMonitor implements DisposableBean {
+
+    private final @NonNull EventExecutorGroup eventLoops;
+
+    private final long intervalNanos;
+
+    private final List<EventExecutor> executors = new ArrayList<>();
+
+    private AtomicLongArray lags;
+
+    private final List<Future<?>> probes = new ArrayList<>();
+
+    private volatile boolean stopped;
+
+    /**
+     * @param eventLoops the event loops to monitor
+     * @param interval   how often to measure the lag
+     */
+    public EventLoopLagMonitor(@NonNull EventExecutorGroup eventLoops, @NonNull Duration interval) {
+        this.eventLoops = eventLoops;
+        this.intervalNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), interval.toNanos());
+    }
+
+    /**
+     * Starts probing the event loops.
+     */
+    public synchronized void start() {
+        if (lags != null) {
+            return;
+        }
+        eventLoops.forEach(executors::add);
+        lags = new AtomicLongArray(executors.size());
+        for (int i = 0; i < executors.size(); i++) {
+            schedule(i);
+        }
+    }
+
+    private void schedule(int index) {
+        if (stopped) {
+            return;
+        }
+        final long expected = System.nanoTime() + intervalNanos;
+        Future<?> probe = executors.get(index).schedule(() -> {
+            lags.set(index, Math.max(0, System.nanoTime() - expected));
+            schedule(index);
+        }, intervalNanos, TimeUnit.NANOSECONDS);
+        if (index < probes.size()) {
+            probes.set(index, probe);
+        } else {
+            probes.add(probe);
+        }
+    }
+
+    /**
+     * @return the highest event loop lag, in nanoseconds
+     */
+    public long getLagNanos() {
+        final AtomicLongArray current = this.lags;
+        long max = 0;
+        for (int i = 0; current != null && i < current.length(); i++) {
+            max = Math.max(max, current.get(i));
+        }
+        return max;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        stopped = true;
+        probes.forEach(probe -> probe.cancel(false));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.backend;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.georchestra.gateway.model.AdaptiveConcurrency;
+
+import lombok.NonNull;
+
+/**
+ * Gradient based adaptive concurrency limit, in the spirit of TCP Vegas
+ * congestion control.
+ * <p>
+ * Each response latency sample is compared to the long term average latency.
+ * Their ratio (the gradient, scaled by
+ * {@link AdaptiveConcurrency#getTolerance() tolerance} and capped to
+ * {@code [0.5, 1]}) tells whether requests are queuing in the backend. The
+ * limit is then set to {@code limit * gradient + sqrt(limit)}, smoothed by
+ * {@link AdaptiveConcurrency#getSmoothing() smoothing}: it grows by about the
+ * square root of the limit while latency is stable, and shrinks as latency
+ * rises. The limit does not grow while less than half of it is used, since
+ * latency says nothing then about the backend capacity.
+ * </p>
+ * <p>
+ * Acquiring and releasing a slot are lock-free, only latency samples are
+ * serialized.
+ * </p>
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /** Number of samples the long term average latency is computed over */
+    private static final int LONG_WINDOW = 600;
+
+    private final @NonNull AdaptiveConcurrency config;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    private double longRttNanos;
+
+    private long samples;
+
+    /**
+     * @param config the limit configuration
+     */
+    public AdaptiveConcurrencyLimiter(@NonNull AdaptiveConcurrency config) {
+        this.config = config;
+        this.limit = clamp(config.getInitialLimit());
+    }
+
+    /**
+     * @return {@code true} if a slot was taken, in which case it must be
+     *         {@link #release() released}, or {@code false} if the limit is reached
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a slot taken with {@link #tryAcquire()}.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Updates the limit with a new latency sample.
+     *
+     * @param rttNanos        the request latency, in nanoseconds
+     * @param inFlightAtStart the number of requests in flight when the request
+     *                        started, including itself
+     */
+    public synchronized void onSample(long rttNanos, int inFlightAtStart) {
+        if (rttNanos <= 0) {
+            return;
+        }
+        samples++;
+        longRttNanos += (rttNanos - longRttNanos) / Math.min(samples, LONG_WINDOW);
+        if (longRttNanos / rttNanos > 2) {
+            // latency dropped well below the long term average, let it catch up faster
+            longRttNanos *= 0.95;
+        }
+        final double current = limit;
+        final double gradient = Math.max(0.5, Math.min(1.0, config.getTolerance() * longRttNanos / rttNanos));
+        double newLimit = current * gradient + Math.sqrt(current);
+        if (newLimit > current && inFlightAtStart < current / 2) {
+            return;
+        }
+        final double smoothing = Math.max(0, Math.min(1, config.getSmoothing()));
+        newLimit = current * (1 - smoothing) + newLimit * smoothing;
+        limit = clamp(newLimit);
+    }
+
+    private double clamp(double value) {
+        int min = Math.max(1, config.getMinLimit());
+        return Math.max(min, Math.min(Math.max(min, config.getMaxLimit()), value));
+    }
+
+    /**
+     * @return the current limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the number of slots taken
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
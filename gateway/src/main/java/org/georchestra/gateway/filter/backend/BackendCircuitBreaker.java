@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.backend;
+
+import java.util.function.LongSupplier;
+
+import org.georchestra.gateway.model.CircuitBreaker;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Circuit breaker for the requests forwarded to a service backend.
+ * <p>
+ * The circuit is {@link State#CLOSED closed} while requests succeed. After
+ * {@link CircuitBreaker#getFailureThreshold() failureThreshold} consecutive
+ * failures it {@link State#OPEN opens}, and requests are rejected for
+ * {@link CircuitBreaker#getOpenDuration() openDuration}. It then becomes
+ * {@link State#HALF_OPEN half-open}, letting a single probe request through:
+ * the circuit closes if the probe succeeds, and opens again otherwise.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.backend")
+public class BackendCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final @NonNull String name;
+    private final @NonNull CircuitBreaker config;
+    private final @NonNull LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+
+    /**
+     * @param name      the service name
+     * @param config    the circuit breaker configuration
+     * @param nanoClock the time source, as per {@link System#nanoTime()}
+     */
+    public BackendCircuitBreaker(@NonNull String name, @NonNull CircuitBreaker config,
+            @NonNull LongSupplier nanoClock) {
+        this.name = name;
+        this.config = config;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return whether a request may be sent to the backend, transitioning from open
+     *         to half-open when the open duration elapsed. If so, the outcome must
+     *         be reported through {@link #onSuccess()}, {@link #onFailure()}, or
+     *         {@link #onIgnored()}
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (nanoClock.getAsLong() - openedAtNanos < config.getOpenDuration().toNanos()) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+            probeInFlight = true;
+            return true;
+        case HALF_OPEN:
+        default:
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+            return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED);
+        }
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN
+                || (state == State.CLOSED && consecutiveFailures >= Math.max(1, config.getFailureThreshold()))) {
+            openedAtNanos = nanoClock.getAsLong();
+            transition(State.OPEN);
+            log.warn("Opened circuit breaker for service {} after {} consecutive failures", name, consecutiveFailures);
+        }
+    }
+
+    /**
+     * Reports a request whose outcome says nothing about the backend health, such
+     * as one cancelled by the client.
+     */
+    public synchronized void onIgnored() {
+        probeInFlight = false;
+    }
+
+    /**
+     * @return the time until a probe request is let through, in nanoseconds,
+     *         {@code 0} unless the circuit is open
+     */
+    public synchronized long getRemainingOpenNanos() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, config.getOpenDuration().toNanos() - (nanoClock.getAsLong() - openedAtNanos));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void transition(State newState) {
+        log.info("Circuit breaker for service {}: {} -> {}", name, state, newState);
+        state = newState;
+    }
+}
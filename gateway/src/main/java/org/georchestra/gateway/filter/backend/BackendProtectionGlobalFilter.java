@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.backend;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.georchestra.gateway.filter.cache.CoalesceGatewayFilterFactory;
+import org.georchestra.gateway.filter.cache.ResponseCacheGlobalFilter;
+import org.georchestra.gateway.filter.ratelimit.ConcurrencyQuotaGlobalFilter;
+import org.georchestra.gateway.model.AdaptiveConcurrency;
+import org.georchestra.gateway.model.CircuitBreaker;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.Service;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * A {@link GlobalFilter} protecting the matched {@link Service service} backend
+ * from overload, as per its {@link Service#getAdaptiveConcurrency() adaptive
+ * concurrency limit}, {@link Service#getResponseTimeout() response timeout},
+ * and {@link Service#getCircuitBreaker() circuit breaker}.
+ * <p>
+ * Requests over the {@link AdaptiveConcurrencyLimiter adaptive limit}, or while
+ * the {@link BackendCircuitBreaker circuit} is open, are rejected with a
+ * {@code 503 Service Unavailable} status and a {@code Retry-After} header,
+ * without reaching the backend. Latency samples are taken when the response is
+ * committed, i.e. when the backend response headers are received, so that long
+ * downloads don't count as slow responses. For the same reason the response
+ * timeout only applies until then, and results in a {@code 504 Gateway Timeout}
+ * error.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.backend} prefix, tagged by {@code service}:
+ * <ul>
+ * <li>{@code .limit}: the current adaptive concurrency limit</li>
+ * <li>{@code .inflight}: the number of requests in flight</li>
+ * <li>{@code .rejected}: the number of rejected requests, tagged by
+ * {@code reason=limit|breaker}</li>
+ * <li>{@code .timeouts}: the number of timed out requests</li>
+ * <li>{@code .breaker.state}: the circuit breaker state, 0 closed, 1 open, 2
+ * half-open</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.backend")
+public class BackendProtectionGlobalFilter implements GlobalFilter, Ordered, MeterBinder {
+
+    /**
+     * Runs after {@link ConcurrencyQuotaGlobalFilter},
+     * {@link ResponseCacheGlobalFilter}, and {@link CoalesceGatewayFilterFactory
+     * request coalescing}, so that requests rejected by the user quotas, served
+     * from the cache, or sharing another request's upstream call don't take a
+     * backend slot.
+     */
+    public static final int ORDER = CoalesceGatewayFilterFactory.ORDER + 1;
+
+    static final String METRICS_PREFIX = "georchestra.gateway.backend";
+
+    private final Map<String, Backend> backends = new ConcurrentHashMap<>();
+
+    private final LongSupplier nanoClock;
+
+    private volatile MeterRegistry meterRegistry;
+
+    public BackendProtectionGlobalFilter() {
+        this(System::nanoTime);
+    }
+
+    @VisibleForTesting
+    BackendProtectionGlobalFilter(@NonNull LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * The protections of a service backend, created the first time it's requested
+     * and replaced when its configuration changes
+     */
+    @VisibleForTesting
+    class Backend {
+        final String service;
+        final AdaptiveConcurrency adaptiveConcurrency;
+        final CircuitBreaker circuitBreaker;
+        final AdaptiveConcurrencyLimiter limiter;
+        final BackendCircuitBreaker breaker;
+        final AtomicLong rejectedByLimit = new AtomicLong();
+        final AtomicLong rejectedByBreaker = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final List<Meter> meters = new CopyOnWriteArrayList<>();
+
+        Backend(String service, AdaptiveConcurrency adaptiveConcurrency, CircuitBreaker circuitBreaker) {
+            this.service = service;
+            this.adaptiveConcurrency = adaptiveConcurrency;
+            this.circuitBreaker = circuitBreaker;
+            this.limiter = adaptiveConcurrency != null && adaptiveConcurrency.isEnabled()
+                    ? new AdaptiveConcurrencyLimiter(adaptiveConcurrency)
+                    : null;
+            this.breaker = circuitBreaker != null && circuitBreaker.isEnabled()
+                    ? new BackendCircuitBreaker(service, circuitBreaker, nanoClock)
+                    : null;
+        }
+
+        boolean matches(AdaptiveConcurrency adaptiveConcurrency, CircuitBreaker circuitBreaker) {
+            return Objects.equals(this.adaptiveConcurrency, adaptiveConcurrency)
+                    && Objects.equals(this.circuitBreaker, circuitBreaker);
+        }
+
+        void bindTo(MeterRegistry registry) {
+            if (limiter != null) {
+                meters.add(Gauge.builder(METRICS_PREFIX + ".limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                        .tag("service", service).description("Adaptive concurrency limit of a service backend")
+                        .register(registry));
+                meters.add(Gauge.builder(METRICS_PREFIX + ".inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                        .tag("service", service).description("Number of requests in flight to a service backend")
+                        .register(registry));
+                meters.add(FunctionCounter.builder(METRICS_PREFIX + ".rejected", rejectedByLimit, AtomicLong::get)
+                        .tag("service", service).tag("reason", "limit")
+                        .description("Number of requests rejected to protect a service backend").register(registry));
+            }
+            if (breaker != null) {
+                meters.add(Gauge.builder(METRICS_PREFIX + ".breaker.state", breaker, b -> b.getState().ordinal())
+                        .tag("service", service)
+                        .description("Service backend circuit breaker state: 0 closed, 1 open, 2 half-open")
+                        .register(registry));
+                meters.add(FunctionCounter.builder(METRICS_PREFIX + ".rejected", rejectedByBreaker, AtomicLong::get)
+                        .tag("service", service).tag("reason", "breaker")
+                        .description("Number of requests rejected to protect a service backend").register(registry));
+            }
+            meters.add(FunctionCounter.builder(METRICS_PREFIX + ".timeouts", timeouts, AtomicLong::get)
+                    .tag("service", service).description("Number of requests to a service backend timed out")
+                    .register(registry));
+        }
+
+        void unbind() {
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                meters.forEach(registry::remove);
+            }
+            meters.clear();
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        GeorchestraTargetConfig target = GeorchestraTargetConfig.getTarget(exchange).orElse(null);
+        if (target == null || target.serviceName() == null || !isProtected(target)) {
+            return chain.filter(exchange);
+        }
+        final Backend backend = backend(target);
+        final AdaptiveConcurrencyLimiter limiter = backend.limiter;
+        final BackendCircuitBreaker breaker = backend.breaker;
+        if (limiter != null && !limiter.tryAcquire()) {
+            backend.rejectedByLimit.incrementAndGet();
+            log.debug("Concurrency limit of service {} reached ({})", backend.service, limiter.getLimit());
+            return reject(exchange, 1);
+        }
+        if (breaker != null && !breaker.tryAcquire()) {
+            if (limiter != null) {
+                limiter.release();
+            }
+            backend.rejectedByBreaker.incrementAndGet();
+            long retryAfter = TimeUnit.NANOSECONDS.toSeconds(breaker.getRemainingOpenNanos()) + 1;
+            return reject(exchange, retryAfter);
+        }
+
+        final long start = nanoClock.getAsLong();
+        final int inFlightAtStart = limiter == null ? 0 : limiter.getInFlight();
+        final AtomicLong committedAt = new AtomicLong();
+        final ServerHttpResponse response = exchange.getResponse();
+        response.beforeCommit(() -> {
+            committedAt.compareAndSet(0, nanoClock.getAsLong());
+            return Mono.empty();
+        });
+
+        Mono<Void> call = chain.filter(exchange);
+        final Duration timeout = target.responseTimeout();
+        final boolean[] timedOut = { false };
+        if (timeout != null && timeout.isPositive()) {
+            call = call.timeout(Mono.delay(timeout).flatMap(t -> response.isCommitted() ? Mono.never() : Mono.just(t)))
+                    .onErrorMap(TimeoutException.class, e -> {
+                        timedOut[0] = true;
+                        backend.timeouts.incrementAndGet();
+                        return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                                "Response took longer than timeout: " + timeout);
+                    });
+        }
+        return call.doOnSuccess(
+                v -> complete(backend, SignalType.ON_COMPLETE, start, committedAt.get(), inFlightAtStart, response))
+                .doOnError(e -> complete(backend, SignalType.ON_ERROR, start,
+                        timedOut[0] ? nanoClock.getAsLong() : committedAt.get(), inFlightAtStart, response))
+                .doOnCancel(() -> complete(backend, SignalType.CANCEL, start, 0, inFlightAtStart, response));
+    }
+
+    /**
+     * Releases the request slot and reports its outcome to the limiter and the
+     * circuit breaker. Runs before the outcome is propagated downstream.
+     *
+     * @param end the time the response was committed or timed out, or {@code 0}
+     */
+    private void complete(Backend backend, SignalType signal, long start, long end, int inFlightAtStart,
+            ServerHttpResponse response) {
+        final AdaptiveConcurrencyLimiter limiter = backend.limiter;
+        final BackendCircuitBreaker breaker = backend.breaker;
+        if (limiter != null) {
+            limiter.release();
+            if (end != 0 && signal != SignalType.CANCEL) {
+                limiter.onSample(end - start, inFlightAtStart);
+            }
+        }
+        if (breaker != null) {
+            if (signal == SignalType.CANCEL) {
+                breaker.onIgnored();
+            } else if (signal == SignalType.ON_ERROR || isServerError(response.getStatusCode())) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+    }
+
+    private boolean isProtected(GeorchestraTargetConfig target) {
+        return target.responseTimeout() != null
+                || (target.adaptiveConcurrency() != null && target.adaptiveConcurrency().isEnabled())
+                || (target.circuitBreaker() != null && target.circuitBreaker().isEnabled());
+    }
+
+    private static boolean isServerError(HttpStatusCode status) {
+        return status != null && status.is5xxServerError();
+    }
+
+    /**
+     * @return the protections of the target service, replaced if its configuration
+     *         changed
+     */
+    @VisibleForTesting
+    Backend backend(GeorchestraTargetConfig target) {
+        final AdaptiveConcurrency adaptiveConcurrency = target.adaptiveConcurrency();
+        final CircuitBreaker circuitBreaker = target.circuitBreaker();
+        Backend backend = backends.get(target.serviceName());
+        if (backend == null || !backend.matches(adaptiveConcurrency, circuitBreaker)) {
+            backend = backends.compute(target.serviceName(), (service, current) -> {
+                if (current != null && current.matches(adaptiveConcurrency, circuitBreaker)) {
+                    return current;
+                }
+                if (current != null) {
+                    log.info("Backend protection configuration of service {} changed, replacing it", service);
+                    current.unbind();
+                }
+                Backend created = new Backend(service, adaptiveConcurrency, circuitBreaker);
+                final MeterRegistry registry = this.meterRegistry;
+                if (registry != null) {
+                    created.bindTo(registry);
+                }
+                return created;
+            });
+        }
+        return backend;
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, long retryAfterSeconds) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return response.setComplete();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        backends.values().forEach(backend -> backend.bindTo(registry));
+    }
+}
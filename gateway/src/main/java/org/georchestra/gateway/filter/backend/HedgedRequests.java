@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.backend;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.model.Hedging;
+import org.georchestra.gateway.model.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+
+/**
+ * Per {@link Service service} state of the {@link Hedging hedged requests}: the
+ * recent latencies the hedging delay is computed from, and the budget capping
+ * the hedge rate.
+ * <p>
+ * The delay is the configured percentile of the last {@value #WINDOW} response
+ * latencies, recomputed every {@value #RECOMPUTE_EVERY} samples. Requests are
+ * not hedged until enough samples were taken.
+ * </p>
+ * <p>
+ * Each request adds {@link Hedging#getMaxExtraLoad() max extra load} tokens to
+ * the budget, up to {@value #MAX_BURST}, and each hedge takes one. Over time,
+ * no more than that ratio of the requests is hedged, even if the backend slows
+ * down as a whole.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.hedging} prefix, tagged by {@code service}:
+ * <ul>
+ * <li>{@code .issued}: number of hedged requests sent</li>
+ * <li>{@code .won}: number of hedged requests that responded first</li>
+ * <li>{@code .delay}: the current hedging delay, in milliseconds</li>
+ * </ul>
+ * </p>
+ *
+ * @see ServiceRoutingFilter
+ */
+public class HedgedRequests implements MeterBinder {
+
+    static final String METRICS_PREFIX = "georchestra.gateway.hedging";
+
+    /** Number of recent latency samples the delay is computed from */
+    static final int WINDOW = 512;
+
+    /** Number of samples between delay computations */
+    static final int RECOMPUTE_EVERY = 32;
+
+    /** Maximum number of hedges that can be sent in a burst */
+    static final int MAX_BURST = 10;
+
+    private static final long TOKEN = 1_000_000;
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry meterRegistry;
+
+    /**
+     * @return the hedging state of the service
+     */
+    public Stats stats(@NonNull String service) {
+        return stats.computeIfAbsent(service, name -> {
+            Stats s = new Stats(name);
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                s.bindTo(registry);
+            }
+            return s;
+        });
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        stats.values().forEach(s -> s.bindTo(registry));
+    }
+
+    /**
+     * The hedging state of a service
+     */
+    public static class Stats {
+        private final String service;
+
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+        private int sinceRecompute;
+        private final AtomicLong budget = new AtomicLong();
+        private volatile double percentile = -1;
+        private volatile long delayNanos = -1;
+
+        final AtomicLong issued = new AtomicLong();
+        final AtomicLong won = new AtomicLong();
+
+        Stats(String service) {
+            this.service = service;
+        }
+
+        /**
+         * Records the latency of a response
+         */
+        public synchronized void record(long latencyNanos) {
+            samples[next] = latencyNanos;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+            if (++sinceRecompute >= RECOMPUTE_EVERY && percentile >= 0) {
+                recompute();
+            }
+        }
+
+        private void recompute() {
+            sinceRecompute = 0;
+            int size = count;
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * size) - 1;
+            delayNanos = sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+
+        /**
+         * Adds the request's share of the hedging budget, and returns its hedging
+         * delay.
+         *
+         * @return how long to wait before hedging the request, or {@code null} if not
+         *         enough latencies were recorded yet
+         */
+        public Duration onRequest(@NonNull Hedging config) {
+            final double target = Math.max(0, Math.min(100, config.getPercentile()));
+            if (percentile != target) {
+                synchronized (this) {
+                    percentile = target;
+                    if (count >= RECOMPUTE_EVERY) {
+                        recompute();
+                    }
+                }
+            }
+            long deposit = (long) (Math.max(0, config.getMaxExtraLoad()) * TOKEN);
+            budget.accumulateAndGet(deposit, (current, add) -> Math.min(MAX_BURST * TOKEN, current + add));
+            long delay = delayNanos;
+            if (delay < 0) {
+                return null;
+            }
+            return Duration.ofNanos(Math.max(delay, config.getMinDelay().toNanos()));
+        }
+
+        /**
+         * @return whether the budget allows a hedge, taking its share of it if so
+         */
+        public boolean tryHedge() {
+            while (true) {
+                long current = budget.get();
+                if (current < TOKEN) {
+                    return false;
+                }
+                if (budget.compareAndSet(current, current - TOKEN)) {
+                    issued.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+
+        public void onHedgeWon() {
+            won.incrementAndGet();
+        }
+
+        void bindTo(MeterRegistry registry) {
+            FunctionCounter.builder(METRICS_PREFIX + ".issued", issued, AtomicLong::get).tag("service", service)
+                    .description("Number of hedged requests sent to another replica").register(registry);
+            FunctionCounter.builder(METRICS_PREFIX + ".won", won, AtomicLong::get).tag("service", service)
+                    .description("Number of hedged requests that responded first").register(registry);
+            Gauge.builder(METRICS_PREFIX + ".delay", this,
+                    s -> s.delayNanos < 0 ? Double.NaN : (double) s.delayNanos / TimeUnit.MILLISECONDS.toNanos(1))
+                    .tag("service", service).baseUnit("milliseconds")
+                    .description("Time after which a request to a service is hedged").register(registry);
+        }
+    }
+}
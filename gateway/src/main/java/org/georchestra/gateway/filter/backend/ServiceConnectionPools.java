@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.backend;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToIntFunction;
+
+import org.georchestra.gateway.model.ConnectionPool;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.Service;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientFactory;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Holds the {@link HttpClient}s of the {@link Service services} with a
+ * {@link Service#getConnectionPool() dedicated connection pool}, created the
+ * first time they're requested.
+ * <p>
+ * The clients are built like the gateway's default one, with the same SSL,
+ * proxy, timeout, and customizer settings, but their own
+ * {@link ConnectionProvider}, and HTTP/2 over cleartext if
+ * {@link ConnectionPool#isH2c() requested}. A client is rebuilt if its service
+ * pool configuration changes, and the connections of the previous one closed
+ * once released.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.backend.pool} prefix, tagged by
+ * {@code service}:
+ * <ul>
+ * <li>{@code .active}: the number of connections in use</li>
+ * <li>{@code .idle}: the number of idle connections</li>
+ * <li>{@code .pending}: the number of requests waiting for a connection</li>
+ * <li>{@code .max}: the maximum number of connections</li>
+ * </ul>
+ * </p>
+ *
+ * @see ServiceRoutingFilter
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.backend")
+public class ServiceConnectionPools implements MeterBinder, DisposableBean {
+
+    static final String METRICS_PREFIX = "georchestra.gateway.backend.pool";
+
+    private final @NonNull HttpClientProperties properties;
+    private final @NonNull ServerProperties serverProperties;
+    private final @NonNull List<HttpClientCustomizer> customizers;
+    private final @NonNull HttpClientSslConfigurer sslConfigurer;
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry meterRegistry;
+
+    /**
+     * @param properties       the gateway's HTTP client properties
+     * @param serverProperties the server properties
+     * @param customizers      the gateway's HTTP client customizers
+     * @param sslConfigurer    the gateway's HTTP client SSL configurer
+     */
+    public ServiceConnectionPools(@NonNull HttpClientProperties properties, @NonNull ServerProperties serverProperties,
+            @NonNull List<HttpClientCustomizer> customizers, @NonNull HttpClientSslConfigurer sslConfigurer) {
+        this.properties = properties;
+        this.serverProperties = serverProperties;
+        this.customizers = customizers;
+        this.sslConfigurer = sslConfigurer;
+    }
+
+    /**
+     * @return the HTTP client of the target service, or empty if it has no
+     *         dedicated connection pool
+     */
+    public Optional<HttpClient> get(@NonNull GeorchestraTargetConfig target) {
+        String service = target.serviceName();
+        ConnectionPool config = target.connectionPool();
+        if (service == null || config == null || !config.isEnabled()) {
+            return Optional.empty();
+        }
+        Pool pool = pools.get(service);
+        if (pool == null || !pool.config.equals(config)) {
+            pool = pools.compute(service, (name, current) -> {
+                if (current != null && current.config.equals(config)) {
+                    return current;
+                }
+                if (current != null) {
+                    log.info("Connection pool configuration of service {} changed, replacing it", name);
+                    current.dispose();
+                }
+                return new Pool(name, config);
+            });
+        }
+        return Optional.of(pool.client);
+    }
+
+    @Override
+    public void destroy() {
+        pools.values().forEach(Pool::dispose);
+        pools.clear();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        pools.values().forEach(pool -> pool.bindTo(registry));
+    }
+
+    /**
+     * The dedicated connection pool of a service. The {@link ConnectionProvider}
+     * creates one pool per backend address, their metrics are added up.
+     */
+    private class Pool implements ConnectionProvider.MeterRegistrar {
+        final String service;
+        final ConnectionPool config;
+        final ConnectionProvider provider;
+        final HttpClient client;
+        final Map<String, ConnectionPoolMetrics> metrics = new ConcurrentHashMap<>();
+        final List<Meter> meters = new CopyOnWriteArrayList<>();
+
+        Pool(String service, ConnectionPool config) {
+            this.service = service;
+            this.config = new ConnectionPool().setEnabled(config.isEnabled())
+                    .setMaxConnections(config.getMaxConnections())
+                    .setPendingAcquireMaxCount(config.getPendingAcquireMaxCount())
+                    .setPendingAcquireTimeout(config.getPendingAcquireTimeout()).setMaxIdleTime(config.getMaxIdleTime())
+                    .setMaxLifeTime(config.getMaxLifeTime()).setH2c(config.isH2c());
+            this.provider = buildConnectionProvider();
+            this.client = buildClient();
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                bindTo(registry);
+            }
+        }
+
+        private ConnectionProvider buildConnectionProvider() {
+            ConnectionProvider.Builder builder = ConnectionProvider.builder("service-" + service)
+                    .maxConnections(Math.max(1, config.getMaxConnections()))
+                    .pendingAcquireMaxCount(config.getPendingAcquireMaxCount())
+                    .pendingAcquireTimeout(config.getPendingAcquireTimeout()).metrics(true, () -> this);
+            if (config.getMaxIdleTime() != null) {
+                builder.maxIdleTime(config.getMaxIdleTime());
+            }
+            if (config.getMaxLifeTime() != null) {
+                builder.maxLifeTime(config.getMaxLifeTime());
+            }
+            return builder.build();
+        }
+
+        private HttpClient buildClient() {
+            HttpClient httpClient = new ServiceHttpClientFactory(provider).createInstance();
+            return config.isH2c() ? httpClient.protocol(HttpProtocol.H2C) : httpClient;
+        }
+
+        @Override
+        public void registerMetrics(String poolName, String id, SocketAddress remoteAddress,
+                ConnectionPoolMetrics poolMetrics) {
+            metrics.put(id, poolMetrics);
+        }
+
+        @Override
+        public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+            metrics.remove(id);
+        }
+
+        private int sum(ToIntFunction<ConnectionPoolMetrics> value) {
+            return metrics.values().stream().mapToInt(value).sum();
+        }
+
+        void bindTo(MeterRegistry registry) {
+            meters.add(Gauge.builder(METRICS_PREFIX + ".active", this, p -> p.sum(ConnectionPoolMetrics::acquiredSize))
+                    .tag("service", service).description("Number of connections to a service backend in use")
+                    .register(registry));
+            meters.add(Gauge.builder(METRICS_PREFIX + ".idle", this, p -> p.sum(ConnectionPoolMetrics::idleSize))
+                    .tag("service", service).description("Number of idle connections to a service backend")
+                    .register(registry));
+            meters.add(Gauge
+                    .builder(METRICS_PREFIX + ".pending", this, p -> p.sum(ConnectionPoolMetrics::pendingAcquireSize))
+                    .tag("service", service).description("Number of requests waiting for a service backend connection")
+                    .register(registry));
+            meters.add(Gauge.builder(METRICS_PREFIX + ".max", config, ConnectionPool::getMaxConnections)
+                    .tag("service", service).description("Maximum number of connections to a service backend")
+                    .register(registry));
+        }
+
+        void dispose() {
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                meters.forEach(registry::remove);
+            }
+            meters.clear();
+            provider.disposeLater().subscribe();
+        }
+    }
+
+    /**
+     * Builds the HTTP clients like the gateway's default one, but with the given
+     * connection provider.
+     */
+    private class ServiceHttpClientFactory extends HttpClientFactory {
+
+        private final ConnectionProvider provider;
+
+        ServiceHttpClientFactory(ConnectionProvider provider) {
+            super(ServiceConnectionPools.this.properties, ServiceConnectionPools.this.serverProperties,
+                    ServiceConnectionPools.this.sslConfigurer, ServiceConnectionPools.this.customizers);
+            this.provider = provider;
+        }
+
+        @Override
+        protected ConnectionProvider buildConnectionProvider(HttpClientProperties properties) {
+            return provider;
+        }
+
+        @Override
+        protected HttpClient createInstance() {
+            return super.createInstance();
+        }
+    }
+}
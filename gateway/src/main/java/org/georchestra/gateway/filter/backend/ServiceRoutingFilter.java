@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.backend;
+
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.CONNECT_TIMEOUT_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.isAlreadyRouted;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.georchestra.gateway.filter.loadbalancer.LoadBalancerGlobalFilter;
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Instance;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.Hedging;
+import org.georchestra.gateway.model.Service;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+
+import io.netty.channel.ChannelOption;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.Connection;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * {@link NettyRoutingFilter} that forwards the requests to the {@link Service
+ * services} with a {@link Service#getConnectionPool() dedicated connection
+ * pool} through their own {@link HttpClient}, and the other requests through
+ * the gateway's default one.
+ * <p>
+ * It also {@link Service#getHedging() hedges} the idempotent requests to
+ * services with replicas: if the response headers don't arrive within the
+ * {@link HedgedRequests hedging delay}, the same request is sent to another
+ * {@link Instance instance}. The first response wins, and the other request is
+ * cancelled. If the first request fails before a hedge is sent, the error is
+ * propagated right away. Each request is routed through its own copy of the
+ * exchange attributes and response headers, and the winner's are copied to the
+ * actual exchange. Each request reports its own outcome to its instance,
+ * instead of {@link LoadBalancerGlobalFilter}.
+ * </p>
+ * <p>
+ * It replaces Spring Cloud Gateway's {@code routingFilter} bean, honoring the
+ * same route {@literal connect-timeout} metadata.
+ * </p>
+ *
+ * @see ServiceConnectionPools
+ * @see HedgedRequests
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.backend")
+public class ServiceRoutingFilter extends NettyRoutingFilter {
+
+    private final @NonNull ServiceConnectionPools pools;
+
+    private final @NonNull HedgedRequests hedgedRequests;
+
+    public ServiceRoutingFilter(HttpClient httpClient, ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+            HttpClientProperties properties, @NonNull ServiceConnectionPools pools,
+            @NonNull HedgedRequests hedgedRequests) {
+        super(httpClient, headersFiltersProvider, properties);
+        this.pools = pools;
+        this.hedgedRequests = hedgedRequests;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        GeorchestraTargetConfig target = GeorchestraTargetConfig.getTarget(exchange).orElse(null);
+        Instance primary = exchange.getAttribute(LoadBalancerGlobalFilter.INSTANCE_ATTR);
+        if (target == null || primary == null || !isHedgeable(target, exchange)) {
+            return super.filter(exchange, chain);
+        }
+        final HedgedRequests.Stats stats = hedgedRequests.stats(target.serviceName());
+        final long start = System.nanoTime();
+        final Duration delay = stats.onRequest(target.hedging());
+        if (delay == null) {
+            return super.filter(exchange, chain).doOnSuccess(v -> stats.record(System.nanoTime() - start));
+        }
+        final URI url = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+        exchange.getAttributes().put(LoadBalancerGlobalFilter.REPORTED_ATTR, Boolean.TRUE);
+        final AtomicBoolean decided = new AtomicBoolean();
+        final AtomicBoolean hedged = new AtomicBoolean();
+        final Sinks.One<Boolean> primaryFailed = Sinks.one();
+        Mono<Racer> first = race(new Racer(exchange, primary, url), chain, decided).doOnError(e -> {
+            // no hedge in flight to wait for, fail right away
+            if (hedged.compareAndSet(false, true)) {
+                primaryFailed.tryEmitValue(true);
+            }
+        });
+        Mono<Racer> hedge = Mono.defer(() -> {
+            Optional<Instance> alternate = primary.alternate();
+            if (decided.get() || alternate.isEmpty() || !hedged.compareAndSet(false, true) || !stats.tryHedge()) {
+                return Mono.empty();
+            }
+            Instance instance = alternate.get();
+            log.debug("Hedging request to {} on {} after {}", primary, instance, delay);
+            instance.start();
+            return race(new Racer(exchange, instance, instance.resolve(url)), chain, decided);
+        }).delaySubscription(delay).takeUntilOther(primaryFailed.asMono());
+
+        return Flux.mergeDelayError(2, first, hedge).next().doOnNext(winner -> {
+            stats.record(System.nanoTime() - start);
+            if (winner.instance != primary) {
+                stats.onHedgeWon();
+            }
+            winner.copyTo(exchange);
+        }).then();
+    }
+
+    private boolean isHedgeable(GeorchestraTargetConfig target, ServerWebExchange exchange) {
+        Hedging hedging = target.hedging();
+        if (hedging == null || !hedging.isEnabled() || target.serviceName() == null || isAlreadyRouted(exchange)) {
+            return false;
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        HttpHeaders headers = request.getHeaders();
+        HttpMethod method = request.getMethod();
+        return (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method)) && headers.getContentLength() <= 0
+                && !headers.containsKey(HttpHeaders.TRANSFER_ENCODING) && !headers.containsKey(HttpHeaders.UPGRADE);
+    }
+
+    /**
+     * Routes a racing request, and emits it if it's the first to get the response
+     * headers. A request getting them after the winner closes its connection.
+     * <p>
+     * The request outcome is reported to its instance as soon as it's known: a
+     * success or a server error once it gets the response headers, whether it won
+     * or not, a failure on error, and the time waited if it's cancelled, having
+     * lost the race.
+     * </p>
+     */
+    private Mono<Racer> race(Racer racer, GatewayFilterChain chain, AtomicBoolean decided) {
+        final Instance instance = racer.instance;
+        final long start = System.nanoTime();
+        final AtomicBoolean reported = new AtomicBoolean();
+        return super.filter(racer, chain).then(Mono.fromSupplier(() -> racer)).doOnNext(r -> {
+            reported.set(true);
+            HttpStatusCode status = r.response.getStatusCode();
+            if (status != null && status.is5xxServerError()) {
+                instance.onFailure();
+            } else {
+                instance.onSuccess(System.nanoTime() - start);
+            }
+        }).doOnError(e -> {
+            if (reported.compareAndSet(false, true)) {
+                instance.onFailure();
+            }
+        }).doOnCancel(() -> {
+            if (reported.compareAndSet(false, true)) {
+                instance.onCancel(System.nanoTime() - start);
+            }
+        }).filter(r -> {
+            if (decided.compareAndSet(false, true)) {
+                return true;
+            }
+            r.dispose();
+            return false;
+        });
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        Optional<HttpClient> serviceClient = GeorchestraTargetConfig.getTarget(exchange).flatMap(pools::get);
+        if (serviceClient.isEmpty()) {
+            return super.getHttpClient(route, exchange);
+        }
+        Object connectTimeout = route.getMetadata().get(CONNECT_TIMEOUT_ATTR);
+        if (connectTimeout == null) {
+            return serviceClient.get();
+        }
+        return serviceClient.get().option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                Integer.valueOf(connectTimeout.toString()));
+    }
+
+    /**
+     * One of the racing copies of a hedged request, with its own attributes and
+     * response status and headers, and no request body.
+     */
+    private static class Racer extends ServerWebExchangeDecorator {
+
+        final Instance instance;
+        final Map<String, Object> attributes;
+        final ServerHttpRequest request;
+        final RacerResponse response;
+
+        Racer(ServerWebExchange exchange, Instance instance, URI url) {
+            super(exchange);
+            this.instance = instance;
+            this.attributes = new ConcurrentHashMap<>(exchange.getAttributes());
+            this.attributes.put(GATEWAY_REQUEST_URL_ATTR, url);
+            this.attributes.put(LoadBalancerGlobalFilter.INSTANCE_ATTR, instance);
+            this.request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+                @Override
+                public Flux<DataBuffer> getBody() {
+                    return Flux.empty();
+                }
+            };
+            this.response = new RacerResponse(exchange.getResponse());
+        }
+
+        @Override
+        public ServerHttpRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public ServerHttpResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        /**
+         * Copies the winning response status, headers, and routing attributes to the
+         * actual exchange, for the response body to be written from its connection
+         */
+        void copyTo(ServerWebExchange exchange) {
+            ServerHttpResponse actual = exchange.getResponse();
+            if (response.status != null) {
+                actual.setStatusCode(response.status);
+            }
+            actual.getHeaders().addAll(response.headers);
+            exchange.getAttributes().putAll(attributes);
+        }
+
+        /**
+         * Closes the connection of a request that lost the race
+         */
+        void dispose() {
+            Connection connection = (Connection) attributes.get(CLIENT_RESPONSE_CONN_ATTR);
+            if (connection != null) {
+                connection.dispose();
+            }
+        }
+    }
+
+    private static class RacerResponse extends ServerHttpResponseDecorator {
+
+        final HttpHeaders headers = new HttpHeaders();
+        HttpStatusCode status;
+
+        RacerResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public boolean setStatusCode(HttpStatusCode status) {
+            this.status = status;
+            return true;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.cache;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Builds the keys identifying equivalent requests to a service.
+ * <p>
+ * OWS request parameter names are case-insensitive and unordered, so
+ * {@code ?SERVICE=WMS&REQUEST=GetMap} and {@code ?request=GetMap&service=WMS}
+ * are the same request. The query parameter names of OWS requests are hence
+ * lower-cased and sorted, while their values are kept as sent. The queries of
+ * other requests are kept as sent, their parameter names may be case-sensitive.
+ * </p>
+ */
+@UtilityClass
+public class CacheKeys {
+
+    /**
+     * Builds the key of a proxied request, from the backend URL the request is
+     * routed to, with its {@link #normalizeQuery(String) normalized query}, and the
+     * {@link #acceptedEncodings(HttpHeaders) content codings} the client accepts,
+     * for a response cached for a client to only be served to clients accepting its
+     * {@code Content-Encoding}.
+     *
+     * @param service  the name of the service the request is sent to
+     * @param exchange the request exchange
+     * @return the request key
+     */
+    public static String key(@NonNull String service, @NonNull ServerWebExchange exchange) {
+        URI uri = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (uri == null) {
+            uri = exchange.getRequest().getURI();
+        }
+        StringBuilder key = new StringBuilder(service).append(' ').append(uri.getRawPath());
+        String query = normalizeQuery(uri.getRawQuery());
+        if (!query.isEmpty()) {
+            key.append('?').append(query);
+        }
+        String encodings = acceptedEncodings(exchange.getRequest().getHeaders());
+        if (!encodings.isEmpty()) {
+            key.append(' ').append(encodings);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Normalizes the raw query string of an OWS request, that is one with a
+     * {@code SERVICE} or {@code REQUEST} parameter, lower-casing the parameter
+     * names and sorting the parameters by name and value. Empty parameters are
+     * dropped. The queries of other requests are returned as is.
+     *
+     * @param rawQuery the raw (still URL encoded) query string, may be {@code null}
+     * @return the normalized query string, empty if there are no parameters
+     */
+    public static String normalizeQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+        List<String> params = Arrays.stream(rawQuery.split("&")).filter(p -> !p.isEmpty() && !p.startsWith("="))
+                .map(CacheKeys::lowerCaseName).toList();
+        boolean ows = params.stream().anyMatch(p -> p.startsWith("service=") || p.startsWith("request=")
+                || p.equals("service") || p.equals("request"));
+        if (!ows) {
+            return rawQuery;
+        }
+        return params.stream().sorted(Comparator.naturalOrder()).collect(Collectors.joining("&"));
+    }
+
+    /**
+     * Normalizes the {@code Accept-Encoding} request header to the sorted set of
+     * lower-cased content codings it accepts, ignoring their preference and
+     * dropping the ones with a {@code q=0} weight, so that requests accepting the
+     * same codings in a different order or case share the same key.
+     *
+     * @param headers the request headers
+     * @return the comma separated accepted codings, empty if the header is missing
+     */
+    public static String acceptedEncodings(@NonNull HttpHeaders headers) {
+        SortedSet<String> codings = new TreeSet<>();
+        for (String value : headers.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String element : value.split(",")) {
+                String[] parts = element.split(";");
+                String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+                if (!coding.isEmpty() && !isZeroWeight(parts)) {
+                    codings.add(coding);
+                }
+            }
+        }
+        return String.join(",", codings);
+    }
+
+    private static boolean isZeroWeight(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim().toLowerCase(Locale.ROOT);
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hashes the values of the request headers matching {@code include}, such as
+     * the {@code sec-*} headers that identify the user to the backend, regardless
+     * of their order and the case of their names.
+     *
+     * @param headers the request headers
+     * @param include selects the headers to hash, by lower-case name
+     * @return the hex encoded SHA-256 hash of the selected headers
+     */
+    public static String headersHash(@NonNull HttpHeaders headers, @NonNull Predicate<String> include) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putHeaders(hasher, headers, include);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Hashes the permissions of a user: their roles, regardless of their order, and
+     * organization, along with the request headers matching {@code include}.
+     * <p>
+     * The user roles and organization are hashed on their own, since the headers
+     * conveying them to the backend may be left out, for example when the
+     * {@code sec-user} JSON payload identifying the user is the only one sent.
+     * </p>
+     *
+     * @param user    the resolved user, or {@code null} if anonymous
+     * @param headers the request headers
+     * @param include selects the headers to hash, by lower-case name
+     * @return the hex encoded SHA-256 hash of the user permissions
+     */
+    public static String permissionsHash(GeorchestraUser user, @NonNull HttpHeaders headers,
+            @NonNull Predicate<String> include) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        if (user != null) {
+            List<String> roles = user.getRoles() == null ? List.of() : user.getRoles();
+            roles.stream().filter(Objects::nonNull).sorted().distinct()
+                    .forEach(role -> hasher.putString(role, StandardCharsets.UTF_8).putByte((byte) 0));
+            hasher.putByte((byte) 1);
+            String org = user.getOrganization();
+            hasher.putString(org == null ? "" : org, StandardCharsets.UTF_8).putByte((byte) 1);
+        }
+        putHeaders(hasher, headers, include);
+        return hasher.hash().toString();
+    }
+
+    private static void putHeaders(Hasher hasher, HttpHeaders headers, Predicate<String> include) {
+        headers.keySet().stream().map(name -> name.toLowerCase(Locale.ROOT)).filter(include).sorted().forEach(name -> {
+            hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0);
+            headers.getOrEmpty(name)
+                    .forEach(value -> hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) 0));
+            hasher.putByte((byte) 1);
+        });
+    }
+
+    private static String lowerCaseName(String param) {
+        int eq = param.indexOf('=');
+        if (eq < 0) {
+            return param.toLowerCase(Locale.ROOT);
+        }
+        return param.substring(0, eq).toLowerCase(Locale.ROOT) + param.substring(eq);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.cache;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import lombok.NonNull;
+
+/**
+ * Size bounded store of cached responses, holding their bodies in direct
+ * (off-heap) memory.
+ * <p>
+ * The store is bounded by the total size of the cached responses, evicting the
+ * least recently used ones beyond {@code maxSizeBytes}. Each entry expires on
+ * its own, as per the freshness lifetime it's {@link #put stored} with. There
+ * is no background expiry: stale entries are only discarded when looked up, or
+ * when evicted as the least recently used ones.
+ * </p>
+ */
+public class CachedResponses {
+
+    /**
+     * A cached response, with a read-only direct buffer body.
+     *
+     * @param status        the response status
+     * @param headers       the read-only response headers
+     * @param body          the read-only body, use {@link ByteBuffer#duplicate()}
+     *                      to read it
+     * @param storedAtNanos when the response was cached
+     * @param expiresAtNanos when the response becomes stale
+     */
+    public record CachedResponse(HttpStatusCode status, HttpHeaders headers, ByteBuffer body, long storedAtNanos,
+            long expiresAtNanos) {
+
+        /**
+         * @return the size of the response body
+         */
+        public int size() {
+            return body.capacity();
+        }
+
+        /**
+         * Estimated memory taken by the response, headers included.
+         */
+        int weight() {
+            int weight = size();
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                weight += header.getKey().length();
+                for (String value : header.getValue()) {
+                    weight += value.length();
+                }
+            }
+            return weight;
+        }
+    }
+
+    private final Cache<String, CachedResponse> cache;
+
+    private final LongSupplier nanoClock;
+
+    private final AtomicLong sizeBytes = new AtomicLong();
+
+    /**
+     * @param maxSizeBytes maximum total size of the cached responses
+     */
+    public CachedResponses(long maxSizeBytes) {
+        this(maxSizeBytes, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    CachedResponses(long maxSizeBytes, @NonNull LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maxSizeBytes)
+                .weigher((String key, CachedResponse response) -> key.length() + response.weight())
+                .removalListener(this::onRemoval).build();
+    }
+
+    private void onRemoval(RemovalNotification<String, CachedResponse> removed) {
+        sizeBytes.addAndGet(-(removed.getKey().length() + removed.getValue().weight()));
+    }
+
+    /**
+     * @param key the request key
+     * @return the fresh cached response for {@code key}, or {@code null}
+     */
+    public CachedResponse get(@NonNull String key) {
+        CachedResponse response = cache.getIfPresent(key);
+        if (response != null && nanoClock.getAsLong() - response.expiresAtNanos() >= 0) {
+            cache.asMap().remove(key, response);
+            return null;
+        }
+        return response;
+    }
+
+    /**
+     * Caches a response, copying its body to direct memory.
+     *
+     * @param key       the request key
+     * @param status    the response status
+     * @param headers   the response headers
+     * @param chunks    the response body
+     * @param size      the response body size
+     * @param ttlMillis how long the response is fresh
+     * @return the cached response
+     */
+    public CachedResponse put(@NonNull String key, @NonNull HttpStatusCode status, @NonNull HttpHeaders headers,
+            @NonNull List<byte[]> chunks, int size, long ttlMillis) {
+        ByteBuffer body = ByteBuffer.allocateDirect(size);
+        chunks.forEach(body::put);
+        body.flip();
+        final long now = nanoClock.getAsLong();
+        CachedResponse response = new CachedResponse(status, HttpHeaders.readOnlyHttpHeaders(headers),
+                body.asReadOnlyBuffer(), now, now + ttlMillis * 1_000_000);
+        sizeBytes.addAndGet(key.length() + response.weight());
+        cache.put(key, response);
+        return response;
+    }
+
+    /**
+     * @return the number of milliseconds elapsed since {@code response} was cached
+     */
+    public long ageMillis(@NonNull CachedResponse response) {
+        return (nanoClock.getAsLong() - response.storedAtNanos()) / 1_000_000;
+    }
+
+    /**
+     * Discards the cached responses of a service.
+     *
+     * @param service the service name the responses were {@link CacheKeys#key
+     *                keyed} with
+     * @return the number of discarded responses
+     */
+    public int invalidate(@NonNull String service) {
+        final String prefix = service + " ";
+        int count = 0;
+        for (String key : cache.asMap().keySet()) {
+            if (key.startsWith(prefix) && cache.asMap().remove(key) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Discards all the cached responses.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    public long count() {
+        return cache.size();
+    }
+
+    /**
+     * @return the estimated memory taken by the cached responses
+     */
+    public long sizeBytes() {
+        return sizeBytes.get();
+    }
+}
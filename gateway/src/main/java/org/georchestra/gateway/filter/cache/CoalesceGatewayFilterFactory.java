@@ -0,0 +1,483 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.cache;
+
+import static org.springframework.cloud.gateway.support.GatewayToStringStyler.filterToStringCreator;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.filter.backend.BackendProtectionGlobalFilter;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * A Gateway filter factory coalescing concurrent identical {@code GET} requests
+ * into a single upstream call.
+ * <p>
+ * Requests are identical if they're sent to the same route with the same
+ * {@link CacheKeys#key normalized} URI, and the same {@code sec-*},
+ * {@code Accept*}, and {@code Cookie} headers, so that users only share the
+ * responses they'd get anyway, including from backends keeping their own
+ * session. The first request is forwarded to the backend, and the ones arriving
+ * while it's in flight wait for its response. Requests with an
+ * {@code Authorization} header are never coalesced.
+ * <p>
+ * The response body is only captured once another request waits for it, and up
+ * to {@link Config#getMaxSize() max size}, so that responses nobody shares
+ * aren't copied, and large ones aren't held in memory. Waiting requests get the
+ * body once complete.
+ * <p>
+ * A waiting request is sent to the backend on its own if the shared response
+ * headers don't arrive within {@link Config#getMaxWait() max wait}, if the
+ * shared call fails or sets cookies, if its body exceeds the max size or was
+ * already being sent before the request arrived, or if it already has
+ * {@link Config#getMaxFanOut() max fan-out} other waiting requests.
+ * <p>
+ * <b>Usage:</b> enable it for specific routes in {@code routes.yaml}:
+ *
+ * <pre>
+ * <code>
+ *        filters:
+ *        - name: Coalesce
+ *          args:
+ *            maxWait: 10s
+ *            maxFanOut: 100
+ *            maxSize: 10MB
+ * </code>
+ * </pre>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.coalescing} prefix:
+ * <ul>
+ * <li>{@code .saved}: number of requests served from another request's upstream
+ * call, tagged by {@code route}</li>
+ * <li>{@code .fallback}: number of waiting requests sent to the backend on
+ * their own, tagged by {@code route} and
+ * {@code reason=timeout|error|fanout|cookie|oversize|late}</li>
+ * <li>{@code .inflight}: number of upstream calls in flight that may be
+ * shared</li>
+ * </ul>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.cache")
+public class CoalesceGatewayFilterFactory extends AbstractGatewayFilterFactory<CoalesceGatewayFilterFactory.Config>
+        implements MeterBinder {
+
+    /**
+     * Runs after {@link ResponseCacheGlobalFilter} and before
+     * {@link BackendProtectionGlobalFilter}, so that cache hits don't wait for an
+     * upstream call, and requests sharing one don't take a backend slot.
+     */
+    public static final int ORDER = ResponseCacheGlobalFilter.ORDER + 1;
+
+    static final String METRICS_PREFIX = "georchestra.gateway.coalescing";
+
+    private static final List<String> SHORTCUT_FIELD_ORDER = List.of(Config.MAX_WAIT_KEY, Config.MAX_FAN_OUT_KEY,
+            Config.MAX_SIZE_KEY);
+
+    /**
+     * Why a waiting request was sent to the backend on its own
+     */
+    enum Fallback {
+        TIMEOUT, ERROR, FANOUT, COOKIE, OVERSIZE, LATE
+    }
+
+    /**
+     * Signals the shared response body exceeded the max size
+     */
+    private static class OversizeException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        OversizeException() {
+            super("Shared response body exceeds the max size");
+        }
+    }
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry meterRegistry;
+
+    public CoalesceGatewayFilterFactory() {
+        super(Config.class);
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return SHORTCUT_FIELD_ORDER;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return new CoalesceGatewayFilter(config);
+    }
+
+    /**
+     * Status and headers of a shared response
+     */
+    private record Head(HttpStatusCode status, HttpHeaders headers) {
+    }
+
+    /**
+     * An upstream call in flight, shared by concurrent identical requests. The
+     * response body is captured from the first waiting request on, and replayed to
+     * them.
+     */
+    private static class Flight {
+        final Sinks.One<Head> head = Sinks.one();
+        final Sinks.Many<byte[]> body = Sinks.many().replay().all();
+        final AtomicInteger followers = new AtomicInteger();
+        final long maxSize;
+
+        private boolean bodyStarted;
+        private boolean capturing;
+        private boolean oversize;
+        private long size;
+
+        Flight(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Starts capturing the response body for a waiting request, unless it can't be
+         * shared.
+         *
+         * @return why the request can't wait for the shared response, or {@code null}
+         */
+        synchronized Fallback join() {
+            if (oversize) {
+                return Fallback.OVERSIZE;
+            }
+            if (bodyStarted && !capturing) {
+                return Fallback.LATE;
+            }
+            capturing = true;
+            return null;
+        }
+
+        /**
+         * Captures a chunk of the response body if a request waits for it, up to the
+         * max size
+         */
+        synchronized void capture(DataBuffer buffer) {
+            bodyStarted = true;
+            if (!capturing || oversize) {
+                return;
+            }
+            final int length = buffer.readableByteCount();
+            size += length;
+            if (size > maxSize) {
+                overflow();
+                return;
+            }
+            byte[] bytes = new byte[length];
+            buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(bytes), 0, length);
+            body.tryEmitNext(bytes);
+        }
+
+        synchronized void overflow() {
+            oversize = true;
+            body.tryEmitError(new OversizeException());
+        }
+
+        void land(Throwable error) {
+            if (error == null) {
+                head.tryEmitEmpty();
+                body.tryEmitComplete();
+            } else {
+                head.tryEmitError(error);
+                body.tryEmitError(error);
+            }
+        }
+    }
+
+    /**
+     * Coalescing counters of a route, created the first time it's requested
+     */
+    private static class Stats {
+        final String route;
+        final AtomicLong saved = new AtomicLong();
+        final Map<Fallback, AtomicLong> fallbacks = new EnumMap<>(Fallback.class);
+
+        Stats(String route) {
+            this.route = route;
+            for (Fallback reason : Fallback.values()) {
+                fallbacks.put(reason, new AtomicLong());
+            }
+        }
+
+        void fallback(Fallback reason) {
+            fallbacks.get(reason).incrementAndGet();
+        }
+
+        void bindTo(MeterRegistry registry) {
+            FunctionCounter.builder(METRICS_PREFIX + ".saved", saved, AtomicLong::get).tag("route", route)
+                    .description("Number of requests served from another request's upstream call").register(registry);
+            fallbacks.forEach((reason, count) -> FunctionCounter
+                    .builder(METRICS_PREFIX + ".fallback", count, AtomicLong::get).tag("route", route)
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .description("Number of waiting requests sent to the backend on their own").register(registry));
+        }
+    }
+
+    private class CoalesceGatewayFilter implements GatewayFilter, Ordered {
+
+        private final @NonNull Config config;
+
+        CoalesceGatewayFilter(@NonNull Config config) {
+            this.config = config;
+        }
+
+        @Override
+        public int getOrder() {
+            return ORDER;
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            ServerHttpRequest request = exchange.getRequest();
+            if (!HttpMethod.GET.equals(request.getMethod())
+                    || request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)) {
+                return chain.filter(exchange);
+            }
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            final String routeId = route == null ? "unknown" : route.getId();
+            final String key = CacheKeys.key(routeId, exchange) + " " + CacheKeys.headersHash(request.getHeaders(),
+                    name -> name.startsWith("sec-") || name.startsWith("accept") || name.equals("cookie"));
+
+            final Flight flight = new Flight(config.getMaxSize().toBytes());
+            final Flight inFlight = flights.putIfAbsent(key, flight);
+            if (inFlight == null) {
+                return lead(key, flight, exchange, chain);
+            }
+            final Stats routeStats = stats(routeId);
+            if (inFlight.followers.incrementAndGet() > config.getMaxFanOut()) {
+                routeStats.fallback(Fallback.FANOUT);
+                return chain.filter(exchange);
+            }
+            final Fallback rejected = inFlight.join();
+            if (rejected != null) {
+                routeStats.fallback(rejected);
+                return chain.filter(exchange);
+            }
+            return follow(inFlight, routeStats, exchange, chain);
+        }
+
+        private Mono<Void> follow(Flight flight, Stats routeStats, ServerWebExchange exchange,
+                GatewayFilterChain chain) {
+            return flight.head.asMono().timeout(config.getMaxWait()).map(Optional::of)
+                    .onErrorResume(TimeoutException.class, e -> {
+                        routeStats.fallback(Fallback.TIMEOUT);
+                        return Mono.just(Optional.empty());
+                    }).onErrorResume(e -> {
+                        routeStats.fallback(Fallback.ERROR);
+                        return Mono.just(Optional.empty());
+                    }).switchIfEmpty(Mono.fromSupplier(() -> {
+                        routeStats.fallback(Fallback.ERROR);
+                        return Optional.empty();
+                    })).flatMap(head -> {
+                        if (head.isEmpty()) {
+                            return chain.filter(exchange);
+                        }
+                        if (head.get().headers().containsKey(HttpHeaders.SET_COOKIE)) {
+                            routeStats.fallback(Fallback.COOKIE);
+                            return chain.filter(exchange);
+                        }
+                        return body(flight, routeStats).flatMap(body -> {
+                            if (body.isEmpty()) {
+                                return chain.filter(exchange);
+                            }
+                            routeStats.saved.incrementAndGet();
+                            return share(head.get(), body.get(), exchange.getResponse());
+                        });
+                    });
+        }
+
+        /**
+         * @return the complete shared response body, or empty if it failed or exceeded
+         *         the max size
+         */
+        private Mono<Optional<List<byte[]>>> body(Flight flight, Stats routeStats) {
+            return flight.body.asFlux().collectList().map(Optional::of).onErrorResume(e -> {
+                routeStats.fallback(e instanceof OversizeException ? Fallback.OVERSIZE : Fallback.ERROR);
+                return Mono.just(Optional.empty());
+            });
+        }
+
+        @Override
+        public String toString() {
+            return filterToStringCreator(CoalesceGatewayFilterFactory.this)
+                    .append(Config.MAX_WAIT_KEY, config.getMaxWait())
+                    .append(Config.MAX_FAN_OUT_KEY, config.getMaxFanOut())
+                    .append(Config.MAX_SIZE_KEY, config.getMaxSize()).toString();
+        }
+    }
+
+    private Mono<Void> lead(String key, Flight flight, ServerWebExchange exchange, GatewayFilterChain chain) {
+        LeaderResponse response = new LeaderResponse(exchange.getResponse(), key, flight);
+        response.beforeCommit(() -> Mono.fromRunnable(response::publishHead));
+        return chain.filter(exchange.mutate().response(response).build()).doOnSuccess(v -> land(key, flight, null))
+                .doOnError(e -> land(key, flight, e))
+                .doOnCancel(() -> land(key, flight, new CancellationException("Upstream call cancelled")));
+    }
+
+    private void land(String key, Flight flight, Throwable error) {
+        flights.remove(key, flight);
+        flight.land(error);
+    }
+
+    private Mono<Void> share(Head head, List<byte[]> body, ServerHttpResponse response) {
+        response.setStatusCode(head.status());
+        response.getHeaders().putAll(head.headers());
+        return response.writeWith(Flux.fromIterable(body).map(bytes -> response.bufferFactory().wrap(bytes)));
+    }
+
+    /**
+     * Response decorator publishing the response of the request that issued the
+     * upstream call to the requests waiting for it.
+     */
+    private class LeaderResponse extends ServerHttpResponseDecorator {
+
+        private final String key;
+        private final Flight flight;
+
+        LeaderResponse(ServerHttpResponse delegate, String key, Flight flight) {
+            super(delegate);
+            this.key = key;
+            this.flight = flight;
+        }
+
+        void publishHead() {
+            if (getHeaders().getContentLength() > flight.maxSize) {
+                flight.overflow();
+            }
+            flight.head
+                    .tryEmitValue(new Head(getStatusCode(), ResponseCacheGlobalFilter.endToEndHeaders(getHeaders())));
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.<DataBuffer>from(body).doOnNext(flight::capture));
+        }
+
+        /**
+         * Streaming responses are not shared, the waiting requests are sent to the
+         * backend on their own.
+         */
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            land(key, flight, new IllegalStateException("Streaming responses are not shared"));
+            return super.writeAndFlushWith(body);
+        }
+    }
+
+    private Stats stats(String route) {
+        return stats.computeIfAbsent(route, name -> {
+            Stats routeStats = new Stats(name);
+            final MeterRegistry registry = this.meterRegistry;
+            if (registry != null) {
+                routeStats.bindTo(registry);
+            }
+            return routeStats;
+        });
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder(METRICS_PREFIX + ".inflight", flights, Map::size)
+                .description("Number of upstream calls in flight that may be shared").register(registry);
+        stats.values().forEach(s -> s.bindTo(registry));
+    }
+
+    /**
+     * Configuration class for {@link CoalesceGatewayFilterFactory}.
+     */
+    @Data
+    @Accessors(chain = true)
+    @Validated
+    public static class Config {
+
+        /**
+         * Maximum time a request waits for the response headers of the upstream call it
+         * joined, before being sent to the backend on its own.
+         */
+        public static final String MAX_WAIT_KEY = "maxWait";
+
+        /**
+         * Maximum number of requests waiting for a single upstream call.
+         */
+        public static final String MAX_FAN_OUT_KEY = "maxFanOut";
+
+        /**
+         * Maximum size of a shared response body, held in memory until complete.
+         * Requests waiting for a larger response are sent to the backend on their own.
+         */
+        public static final String MAX_SIZE_KEY = "maxSize";
+
+        @NotNull
+        private Duration maxWait = Duration.ofSeconds(10);
+
+        @Min(1)
+        private int maxFanOut = 100;
+
+        @NotNull
+        private DataSize maxSize = DataSize.ofMegabytes(10);
+    }
+}
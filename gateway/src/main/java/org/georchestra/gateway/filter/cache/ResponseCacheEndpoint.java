@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.cache;
+
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Actuator endpoint to inspect and invalidate the gateway response caches, for
+ * example after publishing new layers:
+ * <ul>
+ * <li>{@code GET /actuator/responsecache}: number and size of the cached
+ * responses</li>
+ * <li>{@code DELETE /actuator/responsecache}: discards all the cached
+ * responses</li>
+ * <li>{@code DELETE /actuator/responsecache/{service}}: discards the cached
+ * responses of a service</li>
+ * </ul>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.cache")
+@Endpoint(id = "responsecache")
+@RequiredArgsConstructor
+public class ResponseCacheEndpoint {
+
+    private final @NonNull CachedResponses cache;
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        return Map.of("entries", cache.count(), "size", cache.sizeBytes());
+    }
+
+    @DeleteOperation
+    public Map<String, Object> invalidateAll() {
+        long count = cache.count();
+        cache.invalidateAll();
+        log.info("Discarded all the cached responses");
+        return Map.of("invalidated", count);
+    }
+
+    @DeleteOperation
+    public Map<String, Object> invalidate(@Selector String service) {
+        int count = cache.invalidate(service);
+        log.info("Discarded {} cached responses of service {}", count, service);
+        return Map.of("invalidated", count);
+    }
+}
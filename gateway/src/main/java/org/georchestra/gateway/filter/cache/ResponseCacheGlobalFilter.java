@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongBiFunction;
+import java.util.stream.Collectors;
+
+import org.georchestra.gateway.filter.backend.BackendProtectionGlobalFilter;
+import org.georchestra.gateway.filter.cache.CachedResponses.CachedResponse;
+import org.georchestra.gateway.filter.ratelimit.ConcurrencyQuotaGlobalFilter;
+import org.georchestra.gateway.model.CapabilitiesCache;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.OwsRequest;
+import org.georchestra.gateway.model.ResponseCache;
+import org.georchestra.gateway.model.Service;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link GlobalFilter} serving the anonymous {@code GET} requests to the
+ * services with a {@link Service#getResponseCache() response cache}, and the
+ * capabilities requests to the services with a
+ * {@link Service#getCapabilitiesCache() capabilities cache}, from
+ * {@link CachedResponses memory}.
+ * <p>
+ * Requests are identified by their {@link CacheKeys#key normalized} backend
+ * URL. Capabilities requests are further identified by a hash of the user roles
+ * and organization, and of the {@code sec-*} headers sent to the backend but
+ * the user specific ones, so that users with the same permissions share the
+ * same cached document. On a miss, the backend response is forwarded to the
+ * client while being captured, and cached once complete if the backend allows
+ * it. Hits are written straight from the cached direct buffers, without copying
+ * them, and with an {@code Age} header. Requests with an {@code Authorization}
+ * or {@code Range} header, or asking for {@code no-cache}, are never served
+ * from the cache, nor are the requests by authenticated users other than
+ * capabilities requests.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.cache} prefix:
+ * <ul>
+ * <li>{@code .requests}: number of cacheable requests, tagged by
+ * {@code service} and {@code result=hit|miss}</li>
+ * <li>{@code .hit.ratio}: ratio of cacheable requests served from the cache,
+ * tagged by {@code service}</li>
+ * <li>{@code .bytes.saved}: number of response bytes served from the cache,
+ * tagged by {@code service}</li>
+ * <li>{@code .size}: estimated memory taken by the cached responses</li>
+ * <li>{@code .entries}: number of cached responses</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.cache")
+public class ResponseCacheGlobalFilter implements GlobalFilter, Ordered, MeterBinder {
+
+    /**
+     * Runs after {@link ConcurrencyQuotaGlobalFilter} and
+     * {@link RevalidationGlobalFilter}, and before
+     * {@link BackendProtectionGlobalFilter}, so that cache hits are subject to the
+     * user quotas but don't take a backend slot.
+     */
+    public static final int ORDER = RevalidationGlobalFilter.ORDER + 1;
+
+    static final String METRICS_PREFIX = "georchestra.gateway.cache";
+
+    private final CachedResponses cache;
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry meterRegistry;
+
+    /**
+     * @param cache the responses store shared by all services
+     */
+    public ResponseCacheGlobalFilter(@NonNull CachedResponses cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Cache usage counters of a service, created the first time it's requested
+     */
+    private static class Stats {
+        final String service;
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong bytesSaved = new AtomicLong();
+
+        Stats(String service) {
+            this.service = service;
+        }
+
+        double hitRatio() {
+            long h = hits.get();
+            long total = h + misses.get();
+            return total == 0 ? 0 : (double) h / total;
+        }
+
+        void bindTo(MeterRegistry registry) {
+            FunctionCounter.builder(METRICS_PREFIX + ".requests", hits, AtomicLong::get).tag("service", service)
+                    .tag("result", "hit").description("Number of cacheable requests").register(registry);
+            FunctionCounter.builder(METRICS_PREFIX + ".requests", misses, AtomicLong::get).tag("service", service)
+                    .tag("result", "miss").description("Number of cacheable requests").register(registry);
+            Gauge.builder(METRICS_PREFIX + ".hit.ratio", this, Stats::hitRatio).tag("service", service)
+                    .description("Ratio of cacheable requests served from the cache").register(registry);
+            FunctionCounter.builder(METRICS_PREFIX + ".bytes.saved", bytesSaved, AtomicLong::get)
+                    .tag("service", service).baseUnit("bytes")
+                    .description("Number of response bytes served from the cache").register(registry);
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * How a request is cached
+     *
+     * @param key          the cache key
+     * @param freshness    computes the freshness lifetime of the backend response
+     * @param maxEntrySize the maximum size of a cached response
+     */
+    private record Policy(String key, ToLongBiFunction<HttpStatusCode, HttpHeaders> freshness, long maxEntrySize) {
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        GeorchestraTargetConfig target = GeorchestraTargetConfig.getTarget(exchange).orElse(null);
+        Policy policy = target == null || target.serviceName() == null || !isCacheable(exchange) ? null
+                : policy(target, exchange);
+        if (policy == null) {
+            return chain.filter(exchange);
+        }
+        final Stats serviceStats = stats(target.serviceName());
+        final String key = policy.key();
+        final boolean revalidate = hasDirective(exchange.getRequest().getHeaders(), "no-cache");
+        CachedResponse hit = revalidate ? null : cache.get(key);
+        if (hit != null) {
+            serviceStats.hits.incrementAndGet();
+            serviceStats.bytesSaved.addAndGet(hit.size());
+            return write(exchange.getResponse(), hit);
+        }
+        serviceStats.misses.incrementAndGet();
+        ServerHttpResponse response = new CachingResponse(exchange.getResponse(), policy);
+        return chain.filter(exchange.mutate().response(response).build());
+    }
+
+    private boolean isCacheable(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        HttpHeaders headers = request.getHeaders();
+        return HttpMethod.GET.equals(request.getMethod()) && !headers.containsKey(HttpHeaders.AUTHORIZATION)
+                && !headers.containsKey(HttpHeaders.RANGE) && !hasDirective(headers, "no-store");
+    }
+
+    /**
+     * @return how to cache the request, or {@code null} if it's not cacheable
+     */
+    private Policy policy(GeorchestraTargetConfig target, ServerWebExchange exchange) {
+        final String service = target.serviceName();
+        final CapabilitiesCache capabilities = target.capabilitiesCache();
+        if (capabilities != null && capabilities.isEnabled() && isCapabilitiesRequest(exchange, capabilities)) {
+            final Set<String> userHeaders = capabilities.getUserHeaders().stream()
+                    .map(name -> name.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+            String permissions = CacheKeys.permissionsHash(GeorchestraUsers.resolve(exchange).orElse(null),
+                    exchange.getRequest().getHeaders(), name -> name.startsWith("sec-") && !userHeaders.contains(name));
+            return new Policy(CacheKeys.key(service, exchange) + " " + permissions,
+                    (status, headers) -> capabilitiesFreshnessMillis(status, headers, capabilities),
+                    capabilities.getMaxEntrySize().toBytes());
+        }
+        final ResponseCache config = target.responseCache();
+        if (config != null && config.isEnabled() && GeorchestraUsers.resolve(exchange).isEmpty()) {
+            return new Policy(CacheKeys.key(service, exchange),
+                    (status, headers) -> freshnessMillis(status, headers, config), config.getMaxEntrySize().toBytes());
+        }
+        return null;
+    }
+
+    private static boolean isCapabilitiesRequest(ServerWebExchange exchange, CapabilitiesCache capabilities) {
+        String request = OwsRequest.of(exchange).getRequest();
+        return request != null && capabilities.getRequests().stream().anyMatch(request::equalsIgnoreCase);
+    }
+
+    private Mono<Void> write(ServerHttpResponse response, CachedResponse hit) {
+        response.setStatusCode(hit.status());
+        HttpHeaders headers = response.getHeaders();
+        headers.putAll(hit.headers());
+        headers.set(HttpHeaders.AGE, String.valueOf(cache.ageMillis(hit) / 1000));
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(hit.body().duplicate())));
+    }
+
+    /**
+     * Computes how long a backend response may be cached, from its
+     * {@code Cache-Control}, {@code Expires}, and {@code Date} headers.
+     *
+     * @return the freshness lifetime of the response in milliseconds, {@code 0} if
+     *         it shall not be cached
+     */
+    @VisibleForTesting
+    static long freshnessMillis(HttpStatusCode status, HttpHeaders headers, ResponseCache config) {
+        if (!HttpStatus.OK.equals(status) || headers.containsKey(HttpHeaders.SET_COOKIE)
+                || !variesByEncodingOnly(headers) || hasDirective(headers, "no-store")
+                || hasDirective(headers, "no-cache") || hasDirective(headers, "private")) {
+            return 0;
+        }
+        long maxAge = directiveSeconds(headers, "s-maxage");
+        if (maxAge < 0) {
+            maxAge = directiveSeconds(headers, "max-age");
+        }
+        if (maxAge >= 0) {
+            return maxAge * 1000;
+        }
+        long expires = headers.getExpires();
+        if (expires >= 0) {
+            long date;
+            try {
+                date = headers.getDate();
+            } catch (IllegalArgumentException e) {
+                date = -1;
+            }
+            return Math.max(0, expires - (date < 0 ? System.currentTimeMillis() : date));
+        }
+        return config.getDefaultTtl().toMillis();
+    }
+
+    /**
+     * Computes how long a capabilities document may be cached. The backend cache
+     * headers are ignored, the document being shared by users with the same
+     * permissions only.
+     *
+     * @return the configured time to live in milliseconds, {@code 0} if the
+     *         response shall not be cached
+     */
+    @VisibleForTesting
+    static long capabilitiesFreshnessMillis(HttpStatusCode status, HttpHeaders headers, CapabilitiesCache config) {
+        if (!HttpStatus.OK.equals(status) || headers.containsKey(HttpHeaders.SET_COOKIE)
+                || !variesByEncodingOnly(headers)) {
+            return 0;
+        }
+        return config.getTtl().toMillis();
+    }
+
+    /**
+     * @return whether the response varies on no other request header than
+     *         {@code Accept-Encoding}, whose accepted codings are part of the cache
+     *         key
+     */
+    static boolean variesByEncodingOnly(HttpHeaders headers) {
+        return headers.getVary().stream().allMatch(HttpHeaders.ACCEPT_ENCODING::equalsIgnoreCase);
+    }
+
+    private static List<String> directives(HttpHeaders headers) {
+        List<String> directives = new ArrayList<>();
+        for (String value : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+            for (String directive : value.split(",")) {
+                directives.add(directive.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return directives;
+    }
+
+    static boolean hasDirective(HttpHeaders headers, String name) {
+        return directives(headers).stream().anyMatch(d -> d.equals(name) || d.startsWith(name + "="));
+    }
+
+    private static long directiveSeconds(HttpHeaders headers, String name) {
+        for (String directive : directives(headers)) {
+            if (directive.startsWith(name + "=")) {
+                try {
+                    return Long.parseLong(directive.substring(name.length() + 1).replace("\"", ""));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private Stats stats(String service) {
+        return stats.computeIfAbsent(service, name -> {
+            Stats serviceStats = new Stats(name);
+            final MeterRegistry registry = this.meterRegistry;
+            if (registry != null) {
+                serviceStats.bindTo(registry);
+            }
+            return serviceStats;
+        });
+    }
+
+    /**
+     * Response decorator that captures the backend response body as it's written to
+     * the client, and caches it once complete.
+     */
+    private class CachingResponse extends ServerHttpResponseDecorator {
+
+        private final Policy policy;
+
+        CachingResponse(ServerHttpResponse delegate, Policy policy) {
+            super(delegate);
+            this.policy = policy;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            final HttpStatusCode status = getStatusCode();
+            final String key = policy.key();
+            final long ttl = policy.freshness().applyAsLong(status, getHeaders());
+            final long maxSize = policy.maxEntrySize();
+            final long contentLength = getHeaders().getContentLength();
+            if (ttl <= 0 || contentLength > maxSize || setsCookies(this)) {
+                return super.writeWith(body);
+            }
+            final List<byte[]> chunks = new ArrayList<>();
+            final long[] size = { 0 };
+            Flux<DataBuffer> captured = Flux.<DataBuffer>from(body).map(buffer -> {
+                if (size[0] >= 0) {
+                    int count = buffer.readableByteCount();
+                    if (size[0] + count > maxSize) {
+                        size[0] = -1;
+                        chunks.clear();
+                    } else {
+                        byte[] chunk = new byte[count];
+                        buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(chunk), 0, count);
+                        chunks.add(chunk);
+                        size[0] += count;
+                    }
+                }
+                return buffer;
+            }).doOnComplete(() -> {
+                if (setsCookies(this)) {
+                    log.debug("Not caching response to {}, a cookie was set while it was written", key);
+                } else if (size[0] >= 0 && (contentLength < 0 || contentLength == size[0])) {
+                    cache.put(key, status, endToEndHeaders(getHeaders()), chunks, (int) size[0], ttl);
+                    log.debug("Cached response to {} for {}ms", key, ttl);
+                }
+            });
+            return super.writeWith(captured);
+        }
+    }
+
+    /**
+     * @return whether the response sets cookies, either through its headers or
+     *         through {@link ServerHttpResponse#addCookie cookies} not written to
+     *         its headers before it's committed
+     */
+    private static boolean setsCookies(ServerHttpResponse response) {
+        return response.getHeaders().containsKey(HttpHeaders.SET_COOKIE) || !response.getCookies().isEmpty();
+    }
+
+    /**
+     * @return a copy of the response headers, without the hop-by-hop ones
+     */
+    static HttpHeaders endToEndHeaders(HttpHeaders responseHeaders) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(responseHeaders);
+        headers.remove(HttpHeaders.TRANSFER_ENCODING);
+        headers.remove(HttpHeaders.CONNECTION);
+        headers.remove("Keep-Alive");
+        return headers;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder(METRICS_PREFIX + ".size", cache, CachedResponses::sizeBytes).baseUnit("bytes")
+                .description("Estimated memory taken by the cached responses").register(registry);
+        Gauge.builder(METRICS_PREFIX + ".entries", cache, CachedResponses::count)
+                .description("Number of cached responses").register(registry);
+        stats.values().forEach(s -> s.bindTo(registry));
+    }
+}
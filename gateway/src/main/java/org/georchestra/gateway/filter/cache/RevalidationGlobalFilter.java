@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.cache;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.georchestra.gateway.filter.backend.ServiceConnectionPools;
+import org.georchestra.gateway.filter.loadbalancer.LoadBalancerGlobalFilter;
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Instance;
+import org.georchestra.gateway.filter.ratelimit.ConcurrencyQuotaGlobalFilter;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.Revalidation;
+import org.georchestra.gateway.model.Service;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * A {@link GlobalFilter} answering the conditional {@code GET} requests to the
+ * services with a {@link Service#getRevalidation() revalidation cache} with a
+ * {@code 304 Not Modified} status, without reaching the backend.
+ * <p>
+ * The validators ({@code ETag}, {@code Last-Modified}, and content length) of
+ * the backend responses are remembered per {@link CacheKeys#key normalized} URL
+ * and {@code sec-*} headers, in a size bounded LRU cache. Only the responses a
+ * shared cache could store are considered, i.e. not marked {@code private},
+ * {@code no-store}, or {@code no-cache}, not setting cookies, and varying on no
+ * other header than {@code Accept-Encoding}.
+ * </p>
+ * <p>
+ * A conditional request ({@code If-None-Match}, or {@code If-Modified-Since})
+ * matching the validators of an entry confirmed by the backend less than
+ * {@link Revalidation#getTtl() ttl} ago is answered locally. Once half of the
+ * ttl elapsed, the entry is revalidated in the background with a conditional
+ * request to the backend, so that popular resources never expire. Other
+ * requests are forwarded, and their responses update the cache.
+ * </p>
+ * <p>
+ * This filter runs before the {@link LoadBalancerGlobalFilter load balancer},
+ * so the background revalidations choose their own instance through it,
+ * skipping the ejected ones and reporting their outcome to it. They're sent
+ * through the service {@link ServiceConnectionPools dedicated connection pool},
+ * if any, within its {@link Service#getResponseTimeout() response timeout}.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.revalidation} prefix:
+ * <ul>
+ * <li>{@code .requests}: number of conditional requests, tagged by
+ * {@code service} and {@code result=local|forwarded}</li>
+ * <li>{@code .background}: number of background revalidations, tagged by
+ * {@code service}</li>
+ * <li>{@code .entries}: number of remembered response validators</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.cache")
+public class RevalidationGlobalFilter implements GlobalFilter, Ordered, MeterBinder {
+
+    /**
+     * Runs after {@link ConcurrencyQuotaGlobalFilter} and before
+     * {@link ResponseCacheGlobalFilter}, which would otherwise send the full cached
+     * response to clients that already have it.
+     */
+    public static final int ORDER = ConcurrencyQuotaGlobalFilter.ORDER + 1;
+
+    static final String METRICS_PREFIX = "georchestra.gateway.revalidation";
+
+    /**
+     * Response headers a {@code 304 Not Modified} response shall include
+     */
+    private static final List<String> NOT_MODIFIED_HEADERS = List.of(HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED,
+            HttpHeaders.CACHE_CONTROL, HttpHeaders.EXPIRES, HttpHeaders.VARY, HttpHeaders.CONTENT_LOCATION);
+
+    /**
+     * Request headers not to copy to the background revalidation requests
+     */
+    private static final List<String> REVALIDATION_EXCLUDED_HEADERS = List.of(HttpHeaders.HOST, HttpHeaders.CONNECTION,
+            HttpHeaders.CONTENT_LENGTH, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.RANGE, HttpHeaders.IF_NONE_MATCH,
+            HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_MATCH, HttpHeaders.IF_UNMODIFIED_SINCE, HttpHeaders.IF_RANGE);
+
+    /**
+     * The validators of a backend response.
+     *
+     * @param etag             the {@code ETag}, or {@code null}
+     * @param lastModified     the {@code Last-Modified} date, or {@code -1}
+     * @param contentLength    the response content length, or {@code -1}
+     * @param headers          the headers to send with a {@code 304} response
+     * @param validatedAtNanos when the backend last confirmed the validators
+     */
+    @VisibleForTesting
+    record Validators(String etag, long lastModified, long contentLength, HttpHeaders headers,
+            long validatedAtNanos) {
+
+        boolean matches(HttpHeaders request) {
+            List<String> ifNoneMatch = request.getIfNoneMatch();
+            if (!ifNoneMatch.isEmpty()) {
+                return etag != null && ifNoneMatch.stream()
+                        .anyMatch(tag -> "*".equals(tag) || weak(tag).equals(weak(etag)));
+            }
+            long ifModifiedSince = request.getIfModifiedSince();
+            return ifModifiedSince >= 0 && lastModified >= 0 && lastModified <= ifModifiedSince;
+        }
+
+        private static String weak(String tag) {
+            return tag.startsWith("W/") ? tag.substring(2) : tag;
+        }
+    }
+
+    private final Cache<String, Validators> validators;
+
+    private final WebClient webClient;
+
+    private final LoadBalancerGlobalFilter loadBalancer;
+
+    private final ServiceConnectionPools pools;
+
+    /** Clients of the services with a dedicated connection pool */
+    private final Cache<HttpClient, WebClient> serviceClients = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final LongSupplier nanoClock;
+
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry meterRegistry;
+
+    /**
+     * @param maxEntries   maximum number of response validators to remember
+     * @param webClient    the client to send the background revalidation requests
+     *                     with
+     * @param loadBalancer chooses the instance to revalidate with, may be
+     *                     {@code null}
+     * @param pools        the services dedicated connection pools, may be
+     *                     {@code null}
+     */
+    public RevalidationGlobalFilter(int maxEntries, @NonNull WebClient webClient, LoadBalancerGlobalFilter loadBalancer,
+            ServiceConnectionPools pools) {
+        this(maxEntries, webClient, loadBalancer, pools, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    RevalidationGlobalFilter(int maxEntries, @NonNull WebClient webClient, LoadBalancerGlobalFilter loadBalancer,
+            ServiceConnectionPools pools, @NonNull LongSupplier nanoClock) {
+        this.validators = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+        this.webClient = webClient;
+        this.loadBalancer = loadBalancer;
+        this.pools = pools;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Revalidation counters of a service, created the first time it's requested
+     */
+    private static class Stats {
+        final String service;
+        final AtomicLong local = new AtomicLong();
+        final AtomicLong forwarded = new AtomicLong();
+        final AtomicLong background = new AtomicLong();
+
+        Stats(String service) {
+            this.service = service;
+        }
+
+        void bindTo(MeterRegistry registry) {
+            FunctionCounter.builder(METRICS_PREFIX + ".requests", local, AtomicLong::get).tag("service", service)
+                    .tag("result", "local").description("Number of conditional requests").register(registry);
+            FunctionCounter.builder(METRICS_PREFIX + ".requests", forwarded, AtomicLong::get).tag("service", service)
+                    .tag("result", "forwarded").description("Number of conditional requests").register(registry);
+            FunctionCounter.builder(METRICS_PREFIX + ".background", background, AtomicLong::get).tag("service", service)
+                    .description("Number of background revalidations").register(registry);
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        GeorchestraTargetConfig target = GeorchestraTargetConfig.getTarget(exchange).orElse(null);
+        Revalidation config = target == null ? null : target.revalidation();
+        ServerHttpRequest request = exchange.getRequest();
+        if (config == null || !config.isEnabled() || target.serviceName() == null
+                || !HttpMethod.GET.equals(request.getMethod()) || request.getHeaders().containsKey(HttpHeaders.RANGE)) {
+            return chain.filter(exchange);
+        }
+        final String key = CacheKeys.key(target.serviceName(), exchange) + " "
+                + CacheKeys.headersHash(request.getHeaders(), name -> name.startsWith("sec-"));
+        final HttpHeaders headers = request.getHeaders();
+        final boolean conditional = !headers.getIfNoneMatch().isEmpty() || headers.getIfModifiedSince() >= 0;
+        if (conditional) {
+            Stats serviceStats = stats(target.serviceName());
+            Validators entry = validators.getIfPresent(key);
+            long age = entry == null ? Long.MAX_VALUE : nanoClock.getAsLong() - entry.validatedAtNanos();
+            long ttl = config.getTtl().toNanos();
+            if (entry != null && age < ttl && entry.matches(headers)) {
+                serviceStats.local.incrementAndGet();
+                if (age >= ttl / 2) {
+                    revalidate(key, entry, target, exchange, serviceStats);
+                }
+                return notModified(exchange.getResponse(), entry);
+            }
+            serviceStats.forwarded.incrementAndGet();
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        response.beforeCommit(
+                () -> Mono.fromRunnable(() -> learn(key, response.getStatusCode(), response.getHeaders())));
+        return chain.filter(exchange);
+    }
+
+    private Mono<Void> notModified(ServerHttpResponse response, Validators entry) {
+        response.setStatusCode(HttpStatus.NOT_MODIFIED);
+        response.getHeaders().putAll(entry.headers());
+        return response.setComplete();
+    }
+
+    /**
+     * Sends a conditional request to the backend, in the background, to refresh the
+     * validators of an entry. Only one revalidation per entry is in flight at any
+     * time.
+     */
+    private void revalidate(String key, Validators entry, GeorchestraTargetConfig target, ServerWebExchange exchange,
+            Stats serviceStats) {
+        final URI url = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR);
+        if (url == null || !revalidating.add(key)) {
+            return;
+        }
+        serviceStats.background.incrementAndGet();
+        final Instance instance = loadBalancer == null ? null
+                : loadBalancer.choose(target, exchange.getAttribute(LoadBalancerGlobalFilter.AFFINITY_ATTR))
+                        .orElse(null);
+        final URI uri = instance == null ? url : instance.resolve(url);
+        final HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+        final Duration timeout = target.responseTimeout();
+        final long start = nanoClock.getAsLong();
+        final AtomicBoolean reported = new AtomicBoolean();
+        if (instance != null) {
+            instance.start();
+        }
+        Mono<Void> request = webClient(target).get().uri(uri).headers(headers -> {
+            headers.addAll(requestHeaders);
+            REVALIDATION_EXCLUDED_HEADERS.forEach(headers::remove);
+            if (entry.etag() != null) {
+                headers.setIfNoneMatch(entry.etag());
+            } else {
+                headers.setIfModifiedSince(entry.lastModified());
+            }
+        }).exchangeToMono(response -> {
+            if (instance != null && reported.compareAndSet(false, true)) {
+                if (response.statusCode().is5xxServerError()) {
+                    instance.onFailure();
+                } else {
+                    instance.onSuccess(nanoClock.getAsLong() - start);
+                }
+            }
+            return response.releaseBody().then(
+                    Mono.fromRunnable(() -> learn(key, response.statusCode(), response.headers().asHttpHeaders())));
+        });
+        if (timeout != null && timeout.isPositive()) {
+            request = request.timeout(timeout);
+        }
+        request.doFinally(signal -> {
+            revalidating.remove(key);
+            if (instance != null && reported.compareAndSet(false, true)) {
+                if (signal == SignalType.CANCEL) {
+                    instance.onCancel();
+                } else {
+                    instance.onFailure();
+                }
+            }
+        }).subscribe(v -> {
+        }, error -> {
+            log.debug("Error revalidating {}: {}", uri, error.getMessage());
+            validators.invalidate(key);
+        });
+    }
+
+    /**
+     * @return the client to revalidate the entries of the target service with,
+     *         through its dedicated connection pool if any
+     */
+    @VisibleForTesting
+    WebClient webClient(GeorchestraTargetConfig target) {
+        Optional<HttpClient> serviceClient = pools == null ? Optional.empty() : pools.get(target);
+        if (serviceClient.isEmpty()) {
+            return webClient;
+        }
+        return serviceClients.asMap().computeIfAbsent(serviceClient.get(),
+                client -> webClient.mutate().clientConnector(new ReactorClientHttpConnector(client)).build());
+    }
+
+    /**
+     * Updates the validators of {@code key} from a backend response.
+     */
+    @VisibleForTesting
+    void learn(String key, HttpStatusCode status, HttpHeaders headers) {
+        if (HttpStatus.NOT_MODIFIED.equals(status)) {
+            Validators entry = validators.getIfPresent(key);
+            if (entry != null && isStorable(headers)) {
+                HttpHeaders merged = new HttpHeaders();
+                merged.putAll(entry.headers());
+                NOT_MODIFIED_HEADERS.stream().filter(headers::containsKey)
+                        .forEach(name -> merged.put(name, headers.get(name)));
+                validators.put(key, validators(merged, entry.contentLength()));
+            } else if (entry != null) {
+                validators.invalidate(key);
+            }
+        } else if (HttpStatus.OK.equals(status) && isStorable(headers)
+                && (headers.getETag() != null || headers.getLastModified() >= 0)) {
+            HttpHeaders notModifiedHeaders = new HttpHeaders();
+            NOT_MODIFIED_HEADERS.stream().filter(headers::containsKey)
+                    .forEach(name -> notModifiedHeaders.put(name, headers.get(name)));
+            validators.put(key, validators(notModifiedHeaders, headers.getContentLength()));
+        } else {
+            validators.invalidate(key);
+        }
+    }
+
+    private Validators validators(HttpHeaders headers, long contentLength) {
+        return new Validators(headers.getETag(), headers.getLastModified(), contentLength,
+                HttpHeaders.readOnlyHttpHeaders(headers), nanoClock.getAsLong());
+    }
+
+    private static boolean isStorable(HttpHeaders headers) {
+        return !headers.containsKey(HttpHeaders.SET_COOKIE) && ResponseCacheGlobalFilter.variesByEncodingOnly(headers)
+                && !ResponseCacheGlobalFilter.hasDirective(headers, "private")
+                && !ResponseCacheGlobalFilter.hasDirective(headers, "no-store")
+                && !ResponseCacheGlobalFilter.hasDirective(headers, "no-cache");
+    }
+
+    /**
+     * @return the number of remembered response validators
+     */
+    public long size() {
+        return validators.size();
+    }
+
+    private Stats stats(String service) {
+        return stats.computeIfAbsent(service, name -> {
+            Stats serviceStats = new Stats(name);
+            final MeterRegistry registry = this.meterRegistry;
+            if (registry != null) {
+                serviceStats.bindTo(registry);
+            }
+            return serviceStats;
+        });
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder(METRICS_PREFIX + ".entries", this, RevalidationGlobalFilter::size)
+                .description("Number of remembered response validators").register(registry);
+        stats.values().forEach(s -> s.bindTo(registry));
+    }
+}
@@ -26,13 +26,13 @@ import static org.springframework.http.HttpMethod.TRACE;
 import java.util.List;
 import java.util.Set;
 
+import org.georchestra.gateway.model.OwsRequest;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.RedirectToGatewayFilterFactory;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -78,13 +78,22 @@ public class LoginParamRedirectGatewayFilterFactory extends AbstractGatewayFilte
 
     private static final Set<HttpMethod> REDIRECT_METHODS = Set.of(GET, HEAD, OPTIONS, TRACE);
 
+    /**
+     * The redirect to {@literal /login} doesn't depend on the route configuration,
+     * so a single one is shared by all the filters this factory creates
+     */
+    private final GatewayFilter redirectToLogin = redirectToLogin();
+
     @Override
     public LoginParamRedirectGatewayFilter apply(Object config) {
+        return new LoginParamRedirectGatewayFilter(redirectToLogin);
+    }
+
+    private static GatewayFilter redirectToLogin() {
         RedirectToGatewayFilterFactory.Config redirectConfig = new RedirectToGatewayFilterFactory.Config();
         redirectConfig.setStatus("302");
         redirectConfig.setUrl("/login");
-        GatewayFilter delegate = new RedirectToGatewayFilterFactory().apply(redirectConfig);
-        return new LoginParamRedirectGatewayFilter(delegate);
+        return new RedirectToGatewayFilterFactory().apply(redirectConfig);
     }
 
     /**
@@ -166,8 +175,7 @@ public class LoginParamRedirectGatewayFilterFactory extends AbstractGatewayFilte
          *         otherwise
          */
         private boolean containsLoginQueryParam(ServerWebExchange exchange) {
-            ServerHttpRequest request = exchange.getRequest();
-            return request.getQueryParams().containsKey("login");
+            return OwsRequest.of(exchange).contains("login");
         }
     }
 }
@@ -22,6 +22,7 @@ import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.G
 
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -49,7 +50,8 @@ import reactor.core.publisher.Mono;
  * A {@link GlobalFilter} that resolves and stores the
  * {@link GeorchestraTargetConfig} for the matched {@link Route}, enabling
  * subsequent filters to access configuration details such as role-based access
- * rules and HTTP header mappings.
+ * rules, HTTP header mappings, rate limits, concurrency quotas, and backend
+ * protections.
  * <p>
  * This filter executes after user resolution in
  * {@link ResolveGeorchestraUserGlobalFilter} and before request routing in
@@ -111,9 +113,18 @@ public class ResolveTargetGlobalFilter implements GlobalFilter, Ordered {
     GeorchestraTargetConfig resolveTarget(@NonNull Route route) {
         GeorchestraTargetConfig target = new GeorchestraTargetConfig();
 
-        Optional<Service> service = findService(route);
+        Optional<Map.Entry<String, Service>> match = findService(route);
+        Optional<Service> service = match.map(Map.Entry::getValue);
         setAccessRules(target, service);
         setHeaderMappings(target, service);
+        match.ifPresent(m -> target.serviceName(m.getKey()).target(m.getValue().getTarget())
+                .replicas(m.getValue().getReplicas()).loadBalancing(m.getValue().getLoadBalancing())
+                .hedging(m.getValue().getHedging()).rateLimits(m.getValue().getRateLimits())
+                .concurrencyQuota(m.getValue().getConcurrencyQuota()).responseTimeout(m.getValue().getResponseTimeout())
+                .adaptiveConcurrency(m.getValue().getAdaptiveConcurrency())
+                .circuitBreaker(m.getValue().getCircuitBreaker()).responseCache(m.getValue().getResponseCache())
+                .capabilitiesCache(m.getValue().getCapabilitiesCache()).revalidation(m.getValue().getRevalidation())
+                .connectionPool(m.getValue().getConnectionPool()));
 
         return target;
     }
@@ -169,16 +180,16 @@ public class ResolveTargetGlobalFilter implements GlobalFilter, Ordered {
      * Finds the matching service definition for the given route.
      *
      * @param route the matched route
-     * @return an {@link Optional} containing the matched {@link Service}, or empty
-     *         if not found
+     * @return an {@link Optional} containing the matched {@link Service} and its
+     *         name, or empty if not found
      */
-    private Optional<Service> findService(@NonNull Route route) {
+    private Optional<Map.Entry<String, Service>> findService(@NonNull Route route) {
         final URI routeURI = route.getUri();
 
-        for (Service service : config.getServices().values()) {
-            var serviceURI = service.getTarget();
+        for (Map.Entry<String, Service> entry : config.getServices().entrySet()) {
+            var serviceURI = entry.getValue().getTarget();
             if (Objects.equals(routeURI, serviceURI)) {
-                return Optional.of(service);
+                return Optional.of(entry);
             }
         }
         return Optional.empty();
@@ -20,13 +20,14 @@ package org.georchestra.gateway.filter.headers;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.georchestra.gateway.filter.global.ResolveTargetGlobalFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.core.Ordered;
-import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.server.ServerWebExchange;
 
 import lombok.NonNull;
@@ -40,7 +41,8 @@ import reactor.core.publisher.Mono;
  * This filter allows customizable security headers to be appended to requests,
  * using a set of {@link HeaderContributor} providers. If the request exchange
  * contains the attribute {@link #DISABLE_SECURITY_HEADERS}, the filter is
- * bypassed.
+ * bypassed. The headers are added through the {@link RequestHeadersRewrite}
+ * shared with the header removal filters.
  * </p>
  * <p>
  * Sample usage in {@code application.yaml} to apply the filter globally:
@@ -121,13 +123,9 @@ public class AddSecHeadersGatewayFilterFactory
         @Override
         public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
             if (exchange.getAttribute(DISABLE_SECURITY_HEADERS) == null) {
-                ServerHttpRequest.Builder requestBuilder = exchange.getRequest().mutate();
-
-                providers.stream().map(provider -> provider.prepare(exchange)).forEach(requestBuilder::headers);
-
-                ServerHttpRequest request = requestBuilder.build();
-                ServerWebExchange updatedExchange = exchange.mutate().request(request).build();
-                return chain.filter(updatedExchange);
+                List<Consumer<HttpHeaders>> contributions = providers.stream()
+                        .map(provider -> provider.prepare(exchange)).toList();
+                return chain.filter(RequestHeadersRewrite.add(exchange, contributions));
             }
             return chain.filter(exchange);
         }
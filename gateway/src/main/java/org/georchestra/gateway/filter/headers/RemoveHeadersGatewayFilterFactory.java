@@ -20,8 +20,8 @@ package org.georchestra.gateway.filter.headers;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.georchestra.gateway.filter.headers.RemoveHeadersGatewayFilterFactory.RegExConfig;
@@ -29,7 +29,6 @@ import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.server.reactive.ServerHttpRequest;
 
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -99,11 +98,7 @@ public class RemoveHeadersGatewayFilterFactory extends AbstractGatewayFilterFact
 
     @Override
     public GatewayFilter apply(RegExConfig regexConfig) {
-        return (exchange, chain) -> {
-            ServerHttpRequest request = exchange.getRequest().mutate().headers(regexConfig::removeMatching).build();
-            exchange = exchange.mutate().request(request).build();
-            return chain.filter(exchange);
-        };
+        return (exchange, chain) -> chain.filter(RequestHeadersRewrite.remove(exchange, regexConfig));
     }
 
     /**
@@ -176,7 +171,21 @@ public class RemoveHeadersGatewayFilterFactory extends AbstractGatewayFilterFact
          * @return {@code true} if any value matches, otherwise {@code false}
          */
         boolean matches(@NonNull String headerName, List<String> values) {
-            return values.stream().map(value -> "%s: %s".formatted(headerName, value)).anyMatch(this::matches);
+            if (values == null || values.isEmpty()) {
+                return false;
+            }
+            HeaderLine line = new HeaderLine(headerName);
+            Matcher matcher = pattern().matcher(line);
+            // if matching "<name>: " failed before reaching its end, no value can match
+            if (!matcher.matches() && !matcher.hitEnd()) {
+                return false;
+            }
+            for (String value : values) {
+                if (matcher.reset(line.value(value)).matches()) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         /**
@@ -186,9 +195,61 @@ public class RemoveHeadersGatewayFilterFactory extends AbstractGatewayFilterFact
          * @param headers the HTTP headers from which matching headers should be removed
          */
         void removeMatching(@NonNull HttpHeaders headers) {
-            List.copyOf(headers.entrySet()).stream().filter(entry -> matches(entry.getKey(), entry.getValue()))
-                    .map(Map.Entry::getKey).peek(name -> log.trace("Removing header {}", name))
-                    .forEach(headers::remove);
+            headers.entrySet().removeIf(entry -> {
+                boolean matches = matches(entry.getKey(), entry.getValue());
+                if (matches) {
+                    log.trace("Removing header {}", entry.getKey());
+                }
+                return matches;
+            });
+        }
+    }
+
+    /**
+     * The {@code <name>: <value>} line of a header value, matched against the
+     * regular expression without formatting a string for each value.
+     */
+    private static class HeaderLine implements CharSequence {
+        private final String name;
+        private String value = "";
+
+        HeaderLine(String name) {
+            this.name = name;
+        }
+
+        HeaderLine value(String value) {
+            this.value = String.valueOf(value);
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return name.length() + 2 + value.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            final int nameLength = name.length();
+            if (index < nameLength) {
+                return name.charAt(index);
+            }
+            if (index == nameLength) {
+                return ':';
+            }
+            if (index == nameLength + 1) {
+                return ' ';
+            }
+            return value.charAt(index - nameLength - 2);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + value;
         }
     }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.headers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.georchestra.gateway.filter.headers.RemoveHeadersGatewayFilterFactory.RegExConfig;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.web.server.ServerWebExchange;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Request decorator that accumulates the request header removals and additions
+ * of several filters, and applies them all at once.
+ * <p>
+ * Instead of mutating the request, and copying its headers, each time (e.g.
+ * removing the pre-authentication headers, then the incoming {@code sec-*}
+ * headers, then adding the resolved {@code sec-*} headers), filters call
+ * {@link #remove(ServerWebExchange, Collection)},
+ * {@link #remove(ServerWebExchange, RegExConfig)}, or
+ * {@link #add(ServerWebExchange, List)}. The exchange is mutated once, by the
+ * first of them, and the following ones just append their step to the same
+ * request.
+ * </p>
+ * <p>
+ * The rewritten headers are computed on first access, copying the original
+ * headers once while applying the leading removals: header names are looked up
+ * in the removed names first, and the regular expressions only evaluated if
+ * they can match a header with that name. The additions are then applied to
+ * that copy, in order. Adding a step after the headers were accessed makes them
+ * be computed again.
+ * </p>
+ * <p>
+ * If a filter replaces the request with a new one (e.g. through
+ * {@link ServerHttpRequest#mutate()}), it gets the headers rewritten so far,
+ * and the following steps start a new rewrite on top of it.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.headers")
+public class RequestHeadersRewrite extends ServerHttpRequestDecorator {
+
+    /**
+     * A step of the rewrite, either a {@link Removal} or an {@link Addition}
+     */
+    private interface Step {
+    }
+
+    private record Removal(Set<String> names, RegExConfig rule) implements Step {
+    }
+
+    private record Addition(List<Consumer<HttpHeaders>> contributions) implements Step {
+    }
+
+    private final List<Step> steps = new ArrayList<>(4);
+
+    private volatile HttpHeaders rewritten;
+
+    private RequestHeadersRewrite(ServerHttpRequest delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Removes the request headers with any of the given names, ignoring case.
+     *
+     * @return the exchange to continue the filter chain with
+     */
+    public static ServerWebExchange remove(@NonNull ServerWebExchange exchange, @NonNull Collection<String> names) {
+        Set<String> caseInsensitive = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitive.addAll(names);
+        return append(exchange, new Removal(caseInsensitive, null));
+    }
+
+    /**
+     * Removes the request headers matching the regular expression, as per
+     * {@link RegExConfig#matches(String, List)}.
+     *
+     * @return the exchange to continue the filter chain with
+     */
+    public static ServerWebExchange remove(@NonNull ServerWebExchange exchange, @NonNull RegExConfig rule) {
+        return append(exchange, new Removal(null, rule));
+    }
+
+    /**
+     * Adds request headers.
+     *
+     * @param contributions the functions adding the headers, applied in order
+     * @return the exchange to continue the filter chain with
+     */
+    public static ServerWebExchange add(@NonNull ServerWebExchange exchange,
+            @NonNull List<Consumer<HttpHeaders>> contributions) {
+        return append(exchange, new Addition(List.copyOf(contributions)));
+    }
+
+    private static ServerWebExchange append(ServerWebExchange exchange, Step step) {
+        if (exchange.getRequest() instanceof RequestHeadersRewrite rewrite) {
+            rewrite.append(step);
+            return exchange;
+        }
+        RequestHeadersRewrite rewrite = new RequestHeadersRewrite(exchange.getRequest());
+        rewrite.append(step);
+        return exchange.mutate().request(rewrite).build();
+    }
+
+    private synchronized void append(Step step) {
+        steps.add(step);
+        rewritten = null;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = rewritten;
+        return headers == null ? rewrite() : headers;
+    }
+
+    /**
+     * Computes the rewritten headers, unless another thread did it already, and
+     * publishes them while holding the lock, so that a step appended concurrently
+     * invalidates them rather than being lost.
+     */
+    private synchronized HttpHeaders rewrite() {
+        if (rewritten != null) {
+            return rewritten;
+        }
+        final HttpHeaders target = new HttpHeaders();
+        int next = 0;
+        while (next < steps.size() && steps.get(next) instanceof Removal) {
+            next++;
+        }
+        // removals by name first, they're cheaper than regular expressions
+        final List<Removal> leading = new ArrayList<>(next);
+        steps.subList(0, next).stream().map(Removal.class::cast).filter(r -> r.names() != null).forEach(leading::add);
+        steps.subList(0, next).stream().map(Removal.class::cast).filter(r -> r.names() == null).forEach(leading::add);
+        getDelegate().getHeaders().forEach((name, values) -> {
+            if (removed(leading, name, values)) {
+                log.trace("Removing header {}", name);
+            } else {
+                target.put(name, new ArrayList<>(values));
+            }
+        });
+        for (; next < steps.size(); next++) {
+            Step step = steps.get(next);
+            if (step instanceof Removal removal) {
+                target.entrySet().removeIf(header -> removes(removal, header.getKey(), header.getValue()));
+            } else if (step instanceof Addition addition) {
+                addition.contributions().forEach(contribution -> contribution.accept(target));
+            }
+        }
+        rewritten = HttpHeaders.readOnlyHttpHeaders(target);
+        return rewritten;
+    }
+
+    private static boolean removes(Removal removal, String name, List<String> values) {
+        return removal.names() != null ? removal.names().contains(name) : removal.rule().matches(name, values);
+    }
+
+    private static boolean removed(List<Removal> removals, String name, List<String> values) {
+        for (Removal removal : removals) {
+            if (removes(removal, name, values)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -20,10 +20,12 @@ package org.georchestra.gateway.filter.headers.providers;
 
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.georchestra.gateway.filter.headers.HeaderContributor;
 import org.georchestra.gateway.model.GeorchestraOrganizations;
 import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.HeaderMappings;
 import org.georchestra.security.model.Organization;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.server.ServerWebExchange;
@@ -60,12 +62,23 @@ public class GeorchestraOrganizationHeadersContributor extends HeaderContributor
      */
     public @Override Consumer<HttpHeaders> prepare(ServerWebExchange exchange) {
         return headers -> {
-            GeorchestraTargetConfig.getTarget(exchange).map(GeorchestraTargetConfig::headers).ifPresent(mappings -> {
-                Optional<Organization> org = GeorchestraOrganizations.resolve(exchange);
-                add(headers, "sec-orgname", mappings.getOrgname(), org.map(Organization::getName));
-                add(headers, "sec-orgid", mappings.getOrgid(), org.map(Organization::getId));
-                add(headers, "sec-org-lastupdated", mappings.getOrgid(), org.map(Organization::getLastUpdated));
-            });
+            GeorchestraTargetConfig.getTarget(exchange).map(GeorchestraTargetConfig::headers)
+                    .filter(GeorchestraOrganizationHeadersContributor::anyEnabled).ifPresent(mappings -> {
+                        Optional<Organization> org = GeorchestraOrganizations.resolve(exchange);
+                        add(headers, "sec-orgname", mappings.getOrgname(), org.map(Organization::getName));
+                        add(headers, "sec-orgid", mappings.getOrgid(), org.map(Organization::getId));
+                        add(headers, "sec-org-lastupdated", mappings.getOrgLastUpdated(),
+                                org.map(Organization::getLastUpdated));
+                    });
         };
     }
+
+    /**
+     * @return whether any organization header is enabled, the organization is not
+     *         resolved otherwise
+     */
+    private static boolean anyEnabled(HeaderMappings mappings) {
+        return Stream.of(mappings.getOrgname(), mappings.getOrgid(), mappings.getOrgLastUpdated())
+                .anyMatch(enabled -> enabled.orElse(Boolean.FALSE));
+    }
 }
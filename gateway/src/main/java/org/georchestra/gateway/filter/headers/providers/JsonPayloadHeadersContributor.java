@@ -94,10 +94,13 @@ public class JsonPayloadHeadersContributor extends HeaderContributor {
 
     private void addJsonPayloads(final ServerWebExchange exchange, final HeaderMappings mappings, HttpHeaders headers) {
         Optional<GeorchestraUser> user = GeorchestraUsers.resolve(exchange);
-        Optional<Organization> org = GeorchestraOrganizations.resolve(exchange);
-
         addJson(headers, "sec-user", mappings.getJsonUser().orElse(false), user);
-        addJson(headers, "sec-organization", mappings.getJsonOrganization().orElse(false), org);
+
+        if (mappings.getJsonOrganization().orElse(false)) {
+            // only resolve the organization if needed, it may be looked up lazily
+            Optional<Organization> org = GeorchestraOrganizations.resolve(exchange);
+            addJson(headers, "sec-organization", true, org);
+        }
     }
 
     private void addJson(HttpHeaders target, String headerName, boolean enabled, Optional<?> toEncode) {
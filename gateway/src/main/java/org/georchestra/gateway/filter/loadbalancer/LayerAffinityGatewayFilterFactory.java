@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.loadbalancer;
+
+import static org.springframework.cloud.gateway.support.GatewayToStringStyler.filterToStringCreator;
+
+import java.util.List;
+import java.util.Set;
+
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Affinity;
+import org.georchestra.gateway.model.OwsRequest;
+import org.georchestra.gateway.model.Service;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.util.StringUtils;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import jakarta.validation.constraints.DecimalMin;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link GatewayFilter} factory that routes the OWS requests for the same
+ * layer to the same {@link Service#getReplicas() replica} of the service, so
+ * that its tile and feature type caches stay warm.
+ * <p>
+ * The layer key is taken from the first of the {@code LAYERS}, {@code LAYER},
+ * {@code TYPENAMES}, {@code TYPENAME}, or {@code COVERAGEID} query parameters
+ * present (case-insensitive), or else from the workspace (and layer) path
+ * segments of a virtual service URL, like {@code /geoserver/ne/wms} or
+ * {@code /geoserver/ne/roads/wms}. The {@link LoadBalancerGlobalFilter load
+ * balancer} then routes the request by consistent hashing of that key, with
+ * bounded loads. Requests without a layer key are balanced as usual.
+ * </p>
+ * <p>
+ * <b>Usage:</b> enable it for the routes to services with replicas in
+ * {@code routes.yaml}:
+ *
+ * <pre>
+ * <code>
+ *        filters:
+ *        - name: LayerAffinity
+ *          args:
+ *            loadFactor: 1.25
+ * </code>
+ * </pre>
+ */
+public class LayerAffinityGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<LayerAffinityGatewayFilterFactory.Config> {
+
+    private static final Set<String> SERVICE_ENDPOINTS = Set.of("ows", "wms", "wfs", "wcs", "wmts", "wps");
+
+    public LayerAffinityGatewayFilterFactory() {
+        super(Config.class);
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of(Config.LOAD_FACTOR_KEY);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        return new LayerAffinityGatewayFilter(config);
+    }
+
+    private class LayerAffinityGatewayFilter implements GatewayFilter {
+
+        private final Config config;
+
+        LayerAffinityGatewayFilter(Config config) {
+            this.config = config;
+        }
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            String key = layerKey(OwsRequest.of(exchange), exchange.getRequest().getPath().value());
+            if (key != null) {
+                exchange.getAttributes().put(LoadBalancerGlobalFilter.AFFINITY_ATTR,
+                        new Affinity(key, config.getLoadFactor()));
+            }
+            return chain.filter(exchange);
+        }
+
+        @Override
+        public String toString() {
+            return filterToStringCreator(LayerAffinityGatewayFilterFactory.this)
+                    .append(Config.LOAD_FACTOR_KEY, config.getLoadFactor()).toString();
+        }
+    }
+
+    /**
+     * @return the requested layer key, or {@code null}
+     */
+    @VisibleForTesting
+    static String layerKey(OwsRequest ows, String path) {
+        String layers = ows.getLayers();
+        return layers != null ? layers : workspaceKey(path);
+    }
+
+    /**
+     * @return the {@code workspace} or {@code workspace:layer} segments between the
+     *         context path and the service endpoint segments, or {@code null}
+     */
+    private static String workspaceKey(String path) {
+        String[] segments = StringUtils.tokenizeToStringArray(path, "/");
+        for (int i = 2; i < segments.length && i <= 3; i++) {
+            if (SERVICE_ENDPOINTS.contains(segments[i].toLowerCase())) {
+                return i == 2 ? segments[1] : segments[1] + ":" + segments[2];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Configuration class for {@link LayerAffinityGatewayFilterFactory}.
+     */
+    @Data
+    @Accessors(chain = true)
+    @Validated
+    public static class Config {
+
+        /**
+         * Maximum ratio of the requests in flight to a replica to the average, before a
+         * layer's requests spill over to the next replica.
+         */
+        public static final String LOAD_FACTOR_KEY = "loadFactor";
+
+        @DecimalMin("1.0")
+        private double loadFactor = 1.25;
+    }
+}
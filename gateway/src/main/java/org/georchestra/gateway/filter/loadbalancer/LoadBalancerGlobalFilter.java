@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.loadbalancer;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.isAlreadyRouted;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.georchestra.gateway.filter.backend.BackendProtectionGlobalFilter;
+import org.georchestra.gateway.filter.cache.RevalidationGlobalFilter;
+import org.georchestra.gateway.filter.global.ResolveTargetGlobalFilter;
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Affinity;
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Instance;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.LoadBalancing;
+import org.georchestra.gateway.model.Service;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link GlobalFilter} that balances the requests to the {@link Service
+ * services} with {@link Service#getReplicas() replicas} across their instances,
+ * as per their {@link Service#getLoadBalancing() load balancing} configuration.
+ * <p>
+ * The instance is {@link ServiceInstances#choose() chosen} once the request URL
+ * and the target service have been resolved from the route, by the request
+ * {@link #AFFINITY_ATTR affinity} if any, and replaces its scheme, host, and
+ * port. A request is a success when the instance responds with a status other
+ * than {@code 5xx}, and its latency is measured until the response headers are
+ * received. Server errors, connection errors, and
+ * {@link Service#getResponseTimeout() timeouts} are failures, counted towards
+ * the instance ejection. Hedged requests are reported to their instances by the
+ * routing filter instead, as flagged by {@link #REPORTED_ATTR}.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.loadbalancer} prefix, tagged by
+ * {@code service} and {@code instance}:
+ * <ul>
+ * <li>{@code .requests}: the number of requests sent to the instance</li>
+ * <li>{@code .failures}: the number of failed requests</li>
+ * <li>{@code .ejections}: the number of times the instance was ejected</li>
+ * <li>{@code .inflight}: the number of requests in flight</li>
+ * <li>{@code .latency}: the average latency, in milliseconds</li>
+ * <li>{@code .ejected}: whether the instance is currently ejected</li>
+ * </ul>
+ * </p>
+ */
+public class LoadBalancerGlobalFilter implements GlobalFilter, Ordered, MeterBinder {
+
+    /**
+     * Runs after {@link ResolveTargetGlobalFilter}, which resolves the target
+     * service replicas, and after {@link BackendProtectionGlobalFilter}, so that
+     * requests served from the cache or rejected don't count towards an instance,
+     * and the cache keys don't depend on the chosen instance. Runs before the
+     * routing filters.
+     */
+    public static final int ORDER = BackendProtectionGlobalFilter.ORDER + 1;
+
+    /**
+     * Exchange attribute holding the chosen {@link Instance}
+     */
+    public static final String INSTANCE_ATTR = LoadBalancerGlobalFilter.class.getName() + ".instance";
+
+    /**
+     * Exchange attribute holding the request {@link Affinity}, if any, to route it
+     * by consistent hashing
+     */
+    public static final String AFFINITY_ATTR = LoadBalancerGlobalFilter.class.getName() + ".affinity";
+
+    /**
+     * Exchange attribute set to {@code true} by a routing filter reporting the
+     * request outcome to the chosen {@link Instance} itself, e.g. when hedging it
+     */
+    public static final String REPORTED_ATTR = LoadBalancerGlobalFilter.class.getName() + ".reported";
+
+    static final String METRICS_PREFIX = "georchestra.gateway.loadbalancer";
+
+    private final Map<String, Balancer> balancers = new ConcurrentHashMap<>();
+
+    private final LongSupplier nanoClock;
+
+    private volatile MeterRegistry meterRegistry;
+
+    public LoadBalancerGlobalFilter() {
+        this(System::nanoTime);
+    }
+
+    @VisibleForTesting
+    LoadBalancerGlobalFilter(@NonNull LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        GeorchestraTargetConfig target = GeorchestraTargetConfig.getTarget(exchange).orElse(null);
+        URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (target == null || target.serviceName() == null || target.target() == null || target.replicas() == null
+                || target.replicas().isEmpty() || url == null || !isHttp(url) || isAlreadyRouted(exchange)) {
+            return chain.filter(exchange);
+        }
+        final ServiceInstances instances = instances(target);
+        final Affinity affinity = exchange.getAttribute(AFFINITY_ATTR);
+        final Instance instance = affinity == null ? instances.choose() : instances.choose(affinity);
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, instance.resolve(url));
+        exchange.getAttributes().put(INSTANCE_ATTR, instance);
+
+        final long start = nanoClock.getAsLong();
+        final AtomicLong committedAt = new AtomicLong();
+        final ServerHttpResponse response = exchange.getResponse();
+        response.beforeCommit(() -> {
+            committedAt.compareAndSet(0, nanoClock.getAsLong());
+            return Mono.empty();
+        });
+        final Duration timeout = target.responseTimeout();
+        instance.start();
+        return chain.filter(exchange).doOnSuccess(v -> {
+            if (isReportedByRoutingFilter(exchange)) {
+                return;
+            }
+            if (isServerError(response.getStatusCode())) {
+                instance.onFailure();
+            } else {
+                long end = committedAt.get();
+                instance.onSuccess((end == 0 ? nanoClock.getAsLong() : end) - start);
+            }
+        }).doOnError(e -> {
+            if (!isReportedByRoutingFilter(exchange)) {
+                instance.onFailure();
+            }
+        }).doOnCancel(() -> {
+            if (isReportedByRoutingFilter(exchange)) {
+                return;
+            }
+            // an upstream response timeout cancels the request
+            long elapsed = nanoClock.getAsLong() - start;
+            if (committedAt.get() == 0 && timeout != null && timeout.isPositive() && elapsed >= timeout.toNanos()) {
+                instance.onFailure();
+            } else {
+                instance.onCancel();
+            }
+        });
+    }
+
+    /**
+     * Chooses the instance to send a request the gateway issues on its own to, like
+     * a {@link RevalidationGlobalFilter background revalidation}, the same way
+     * proxied requests are balanced, that is skipping the ejected instances. The
+     * caller reports the request outcome to the instance, after
+     * {@link Instance#start() starting} it.
+     *
+     * @param target   the target service
+     * @param affinity the request affinity, or {@code null}
+     * @return the chosen instance, or empty if the service has no replicas
+     */
+    public Optional<Instance> choose(@NonNull GeorchestraTargetConfig target, Affinity affinity) {
+        if (target.serviceName() == null || target.target() == null || target.replicas() == null
+                || target.replicas().isEmpty()) {
+            return Optional.empty();
+        }
+        final ServiceInstances instances = instances(target);
+        return Optional.of(affinity == null ? instances.choose() : instances.choose(affinity));
+    }
+
+    private static boolean isReportedByRoutingFilter(ServerWebExchange exchange) {
+        return Boolean.TRUE.equals(exchange.getAttribute(REPORTED_ATTR));
+    }
+
+    private static boolean isHttp(URI url) {
+        return "http".equals(url.getScheme()) || "https".equals(url.getScheme());
+    }
+
+    private static boolean isServerError(HttpStatusCode status) {
+        return status != null && status.is5xxServerError();
+    }
+
+    /**
+     * @return the instances of the target service, replaced if its configuration
+     *         changed
+     */
+    @VisibleForTesting
+    ServiceInstances instances(GeorchestraTargetConfig target) {
+        final List<URI> uris = new ArrayList<>(target.replicas().size() + 1);
+        uris.add(target.target());
+        uris.addAll(target.replicas());
+        final LoadBalancing config = target.loadBalancing() == null ? new LoadBalancing() : target.loadBalancing();
+        Balancer balancer = balancers.get(target.serviceName());
+        if (balancer == null || !balancer.matches(uris, config)) {
+            balancer = balancers.compute(target.serviceName(), (service, current) -> {
+                if (current != null && current.matches(uris, config)) {
+                    return current;
+                }
+                if (current != null) {
+                    current.unbind();
+                }
+                return new Balancer(new ServiceInstances(service, uris, config, nanoClock));
+            });
+        }
+        return balancer.instances;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        balancers.values().forEach(balancer -> balancer.bindTo(registry));
+    }
+
+    /**
+     * The instances of a service and their meters
+     */
+    private class Balancer {
+        final ServiceInstances instances;
+        final List<Meter> meters = new CopyOnWriteArrayList<>();
+
+        Balancer(ServiceInstances instances) {
+            this.instances = instances;
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                bindTo(registry);
+            }
+        }
+
+        boolean matches(List<URI> uris, LoadBalancing config) {
+            return instances.uris().equals(uris) && instances.getConfig().equals(config);
+        }
+
+        void bindTo(MeterRegistry registry) {
+            final String service = instances.getService();
+            for (Instance instance : instances.getInstances()) {
+                final String id = instance.getId();
+                meters.add(FunctionCounter.builder(METRICS_PREFIX + ".requests", instance.requests, AtomicLong::get)
+                        .tag("service", service).tag("instance", id)
+                        .description("Number of requests sent to a service instance").register(registry));
+                meters.add(FunctionCounter.builder(METRICS_PREFIX + ".failures", instance.failures, AtomicLong::get)
+                        .tag("service", service).tag("instance", id)
+                        .description("Number of failed requests to a service instance").register(registry));
+                meters.add(FunctionCounter.builder(METRICS_PREFIX + ".ejections", instance.ejections, AtomicLong::get)
+                        .tag("service", service).tag("instance", id)
+                        .description("Number of times a service instance was ejected").register(registry));
+                meters.add(Gauge.builder(METRICS_PREFIX + ".inflight", instance, Instance::getInFlight)
+                        .tag("service", service).tag("instance", id)
+                        .description("Number of requests in flight to a service instance").register(registry));
+                meters.add(Gauge
+                        .builder(METRICS_PREFIX + ".latency", instance,
+                                i -> i.getLatencyNanos() / TimeUnit.MILLISECONDS.toNanos(1))
+                        .tag("service", service).tag("instance", id).baseUnit("milliseconds")
+                        .description("Average latency of a service instance").register(registry));
+                meters.add(Gauge.builder(METRICS_PREFIX + ".ejected", instance, i -> i.isEjected() ? 1 : 0)
+                        .tag("service", service).tag("instance", id)
+                        .description("Whether a service instance is ejected").register(registry));
+            }
+        }
+
+        void unbind() {
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                meters.forEach(registry::remove);
+            }
+            meters.clear();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.loadbalancer;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.georchestra.gateway.model.LoadBalancing;
+import org.georchestra.gateway.model.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.google.common.hash.Hashing;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The instances of a {@link Service}, its {@link Service#getTarget() target}
+ * and {@link Service#getReplicas() replicas}, and their health.
+ * <p>
+ * {@link #choose()} uses the power of two choices: it picks two random
+ * instances, and returns the one with the lowest cost, as per the
+ * {@link LoadBalancing#getStrategy() strategy}. This avoids both the herding of
+ * always choosing the best instance from stale statistics, and the imbalance of
+ * random choices.
+ * </p>
+ * <p>
+ * Health checking is passive: an instance failing
+ * {@link LoadBalancing#getConsecutiveFailures() consecutively} is ejected for
+ * {@link LoadBalancing#getEjectionTime() ejection time}, unless that would
+ * eject more than {@link LoadBalancing#getMaxEjectionPercent() max ejection
+ * percent} of the instances.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.loadbalancer")
+public class ServiceInstances {
+
+    private final @NonNull @Getter String service;
+    private final @NonNull @Getter LoadBalancing config;
+    private final @NonNull LongSupplier nanoClock;
+    private final @Getter List<Instance> instances;
+
+    /** Number of points of the hash ring owned by each instance */
+    static final int VIRTUAL_NODES = 160;
+
+    /** Sorted hash ring points, and the instances owning them */
+    private final long[] ring;
+    private final Instance[] owners;
+
+    /**
+     * Key to route a request by, and how loaded above the average its instance can
+     * be before spilling over the next one
+     *
+     * @param key        the affinity key, e.g. the requested layer name
+     * @param loadFactor maximum ratio of an instance's requests in flight to the
+     *                   average, at least {@code 1}
+     */
+    public record Affinity(@NonNull String key, double loadFactor) {
+    }
+
+    /**
+     * @param service   the service name
+     * @param uris      the service instances URIs
+     * @param config    the load balancing configuration
+     * @param nanoClock the time source
+     */
+    public ServiceInstances(@NonNull String service, @NonNull List<URI> uris, @NonNull LoadBalancing config,
+            @NonNull LongSupplier nanoClock) {
+        if (uris.isEmpty()) {
+            throw new IllegalArgumentException("Service %s has no instances".formatted(service));
+        }
+        this.service = service;
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.instances = uris.stream().map(Instance::new).toList();
+        this.ring = new long[instances.size() * VIRTUAL_NODES];
+        this.owners = new Instance[ring.length];
+        buildRing();
+    }
+
+    private void buildRing() {
+        record Point(long hash, Instance owner) {
+        }
+        List<Point> points = new ArrayList<>(ring.length);
+        for (Instance instance : instances) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                points.add(new Point(hash(instance.getUri() + "#" + i), instance));
+            }
+        }
+        points.sort(Comparator.comparingLong(Point::hash));
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = points.get(i).hash();
+            owners[i] = points.get(i).owner();
+        }
+    }
+
+    private static long hash(String value) {
+        return Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * @return the instances URIs
+     */
+    public List<URI> uris() {
+        return instances.stream().map(Instance::getUri).toList();
+    }
+
+    /**
+     * @return the best of two random instances not ejected, or of all instances if
+     *         they're all ejected
+     */
+    public Instance choose() {
+        final long now = nanoClock.getAsLong();
+        List<Instance> candidates = available(now);
+        final int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        if (j >= i) {
+            j++;
+        }
+        Instance a = candidates.get(i);
+        Instance b = candidates.get(j);
+        return a.cost() <= b.cost() ? a : b;
+    }
+
+    /**
+     * @return the instance owning the affinity key, or the next one on the ring if
+     *         it's ejected or overloaded, falling back to {@link #choose()}
+     */
+    public Instance choose(@NonNull Affinity affinity) {
+        if (instances.size() == 1) {
+            return instances.get(0);
+        }
+        final long now = nanoClock.getAsLong();
+        int available = 0;
+        int totalInFlight = 0;
+        for (Instance instance : instances) {
+            if (!instance.isEjected(now)) {
+                available++;
+                totalInFlight += instance.getInFlight();
+            }
+        }
+        if (available == 0) {
+            return choose();
+        }
+        final double maxInFlight = Math.ceil(Math.max(1, affinity.loadFactor()) * (totalInFlight + 1) / available);
+        int index = Arrays.binarySearch(ring, hash(affinity.key()));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        for (int i = 0; i < ring.length; i++) {
+            Instance candidate = owners[(index + i) % ring.length];
+            if (!candidate.isEjected(now) && candidate.getInFlight() + 1 <= maxInFlight) {
+                return candidate;
+            }
+        }
+        return choose();
+    }
+
+    private List<Instance> available(long now) {
+        List<Instance> available = new ArrayList<>(instances.size());
+        for (Instance instance : instances) {
+            if (!instance.isEjected(now)) {
+                available.add(instance);
+            }
+        }
+        return available.isEmpty() ? instances : available;
+    }
+
+    private synchronized boolean tryEject(Instance instance, long now) {
+        long ejected = instances.stream().filter(i -> i.isEjected(now)).count();
+        long max = instances.size() * (long) Math.max(0, config.getMaxEjectionPercent()) / 100;
+        if (ejected >= max) {
+            return false;
+        }
+        instance.ejectedUntilNanos = now + config.getEjectionTime().toNanos();
+        instance.ejections.incrementAndGet();
+        log.warn("Ejecting instance {} of service {} for {} after {} consecutive failures", instance.getId(), service,
+                config.getEjectionTime(), config.getConsecutiveFailures());
+        return true;
+    }
+
+    /**
+     * An instance of the service, and its statistics.
+     */
+    public class Instance {
+
+        private final @Getter URI uri;
+        private final @Getter String id;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long ejectedUntilNanos;
+
+        /** Exponentially weighted moving average of the latency, in nanoseconds */
+        private volatile double ewmaNanos;
+        private long lastSampleNanos;
+
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong ejections = new AtomicLong();
+
+        Instance(URI uri) {
+            this.uri = uri;
+            this.id = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        }
+
+        /**
+         * @return the best of two random other instances not ejected, if any, e.g. to
+         *         hedge a request sent to this one
+         */
+        public Optional<Instance> alternate() {
+            final long now = nanoClock.getAsLong();
+            List<Instance> others = new ArrayList<>(instances.size());
+            for (Instance instance : instances) {
+                if (instance != this && !instance.isEjected(now)) {
+                    others.add(instance);
+                }
+            }
+            if (others.isEmpty()) {
+                return Optional.empty();
+            }
+            Instance a = others.get(ThreadLocalRandom.current().nextInt(others.size()));
+            Instance b = others.get(ThreadLocalRandom.current().nextInt(others.size()));
+            return Optional.of(a.cost() <= b.cost() ? a : b);
+        }
+
+        /**
+         * @return the request URL, sent to this instance instead
+         */
+        public URI resolve(@NonNull URI url) {
+            return UriComponentsBuilder.fromUri(url).scheme(uri.getScheme()).host(uri.getHost()).port(uri.getPort())
+                    .build(true).toUri();
+        }
+
+        /**
+         * Counts a request sent to the instance. It must be followed by a call to
+         * either {@link #onSuccess(long)}, {@link #onFailure()}, {@link #onCancel()},
+         * or {@link #onCancel(long)}.
+         */
+        public void start() {
+            requests.incrementAndGet();
+            inFlight.incrementAndGet();
+        }
+
+        /**
+         * @param latencyNanos time it took to get the response headers
+         */
+        public void onSuccess(long latencyNanos) {
+            inFlight.decrementAndGet();
+            consecutiveFailures.set(0);
+            sample(latencyNanos);
+        }
+
+        public void onFailure() {
+            inFlight.decrementAndGet();
+            failures.incrementAndGet();
+            if (consecutiveFailures.incrementAndGet() >= Math.max(1, config.getConsecutiveFailures())
+                    && tryEject(this, nanoClock.getAsLong())) {
+                consecutiveFailures.set(0);
+            }
+        }
+
+        public void onCancel() {
+            inFlight.decrementAndGet();
+        }
+
+        /**
+         * Reports a request cancelled while waiting for the response headers, e.g.
+         * having lost a hedging race, whose latency is at least the time waited.
+         *
+         * @param waitedNanos time waited for the response headers
+         */
+        public void onCancel(long waitedNanos) {
+            inFlight.decrementAndGet();
+            sample(waitedNanos);
+        }
+
+        private synchronized void sample(long latencyNanos) {
+            final long now = nanoClock.getAsLong();
+            if (lastSampleNanos == 0) {
+                ewmaNanos = latencyNanos;
+            } else {
+                double decay = Math.max(1, config.getLatencyDecay().toNanos());
+                double weight = Math.exp(-Math.max(0, now - lastSampleNanos) / decay);
+                ewmaNanos = ewmaNanos * weight + latencyNanos * (1 - weight);
+            }
+            lastSampleNanos = now;
+        }
+
+        /**
+         * @return the instance cost as per the balancing strategy, the lower the better
+         */
+        double cost() {
+            final int pending = inFlight.get();
+            if (config.getStrategy() == LoadBalancing.Strategy.LEAST_REQUESTS) {
+                return pending;
+            }
+            return getLatencyNanos() * (pending + 1);
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public double getLatencyNanos() {
+            return ewmaNanos;
+        }
+
+        public boolean isEjected() {
+            return isEjected(nanoClock.getAsLong());
+        }
+
+        boolean isEjected(long now) {
+            final long until = ejectedUntilNanos;
+            return until != 0 && now - until < 0;
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+    }
+}
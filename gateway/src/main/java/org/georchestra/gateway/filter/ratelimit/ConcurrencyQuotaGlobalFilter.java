@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.ratelimit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.georchestra.gateway.model.ConcurrencyQuota;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.Service;
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link GlobalFilter} that enforces the {@link Service#getConcurrencyQuota()
+ * concurrency quota} of the matched service.
+ * <p>
+ * In-flight requests are counted per service and user (or client IP address for
+ * anonymous requests), and per service and organization. Counters live in a
+ * {@link ConcurrentHashMap}, whose per-bin locking keeps updates to distinct
+ * keys from contending, and are removed when they drop to zero, so the map only
+ * holds the keys having requests in flight.
+ * </p>
+ * <p>
+ * A request over quota waits up to {@link ConcurrencyQuota#getMaxWait() max
+ * wait} for another one to complete, and is otherwise rejected with a
+ * {@code 429 Too Many Requests} status and a {@code Retry-After} header of
+ * {@link ConcurrencyQuota#getRetryAfter() retry after}. Counters are
+ * decremented when the request completes, fails, or is cancelled.
+ * </p>
+ * <p>
+ * The {@literal georchestra.gateway.concurrency.inflight} gauge reports the
+ * in-flight requests per {@code service}, and the
+ * {@literal georchestra.gateway.concurrency.rejected} counter the rejected
+ * ones, tagged by {@code service} and {@code key=user|organization}.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.ratelimit")
+public class ConcurrencyQuotaGlobalFilter implements GlobalFilter, Ordered, MeterBinder {
+
+    /**
+     * Runs right after {@link RateLimitGlobalFilter}, so rate limited requests
+     * don't take a slot.
+     */
+    public static final int ORDER = RateLimitGlobalFilter.ORDER + 1;
+
+    static final String METRICS_PREFIX = "georchestra.gateway.concurrency";
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+
+    /** In-flight requests per service and user or organization key */
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    /** In-flight requests per service, for the gauges */
+    private final Map<String, AtomicInteger> perService = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry meterRegistry;
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        GeorchestraTargetConfig target = GeorchestraTargetConfig.getTarget(exchange).orElse(null);
+        ConcurrencyQuota quota = target == null ? null : target.concurrencyQuota();
+        if (quota == null || !quota.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        final String service = target.serviceName();
+        final List<Slot> slots = slots(service, quota, GeorchestraUsers.resolve(exchange).orElse(null), exchange);
+        return acquire(slots, quota.getMaxWait()).flatMap(full -> {
+            if (full.isPresent()) {
+                return reject(exchange, service, quota, full.get());
+            }
+            AtomicInteger serviceCount = serviceCounter(service);
+            serviceCount.incrementAndGet();
+            return chain.filter(exchange).doFinally(signal -> {
+                serviceCount.decrementAndGet();
+                slots.forEach(this::release);
+            });
+        });
+    }
+
+    /**
+     * A counter to take a slot from
+     *
+     * @param key   identifies the counter
+     * @param type  the quota type, {@code user} or {@code organization}
+     * @param limit the maximum value of the counter
+     */
+    private record Slot(String key, String type, int limit) {
+    }
+
+    private List<Slot> slots(String service, ConcurrencyQuota quota, GeorchestraUser user, ServerWebExchange exchange) {
+        List<Slot> slots = new ArrayList<>(2);
+        if (quota.getPerUser() > 0) {
+            String key = user == null ? "ip:" + RateLimitGlobalFilter.clientIp(exchange) : "user:" + user.getUsername();
+            slots.add(new Slot(service + "/" + key, "user", quota.getPerUser()));
+        }
+        if (quota.getPerOrganization() > 0 && user != null && user.getOrganization() != null) {
+            slots.add(new Slot(service + "/org:" + user.getOrganization(), "organization", quota.getPerOrganization()));
+        }
+        return slots;
+    }
+
+    /**
+     * Takes a slot from each counter, polling until {@code maxWait} elapses if any
+     * is full.
+     *
+     * @return a {@link Mono} emitting an empty {@link Optional} if the slots were
+     *         taken, or the full slot that could not be taken otherwise
+     */
+    private Mono<Optional<Slot>> acquire(List<Slot> slots, Duration maxWait) {
+        Slot full = tryAcquire(slots);
+        if (full == null) {
+            return Mono.just(Optional.empty());
+        }
+        long attempts = maxWait.toMillis() / POLL_INTERVAL.toMillis();
+        if (attempts <= 0) {
+            return Mono.just(Optional.of(full));
+        }
+        return Mono.fromSupplier(() -> tryAcquire(slots) == null ? Optional.<Slot>empty() : null)
+                .repeatWhenEmpty(repeats -> repeats.take(attempts).delayElements(POLL_INTERVAL))
+                .defaultIfEmpty(Optional.of(full));
+    }
+
+    /**
+     * @return {@code null} if a slot was taken from every counter, or the first
+     *         full one, in which case no slot is taken
+     */
+    private Slot tryAcquire(List<Slot> slots) {
+        for (int i = 0; i < slots.size(); i++) {
+            Slot slot = slots.get(i);
+            if (!tryAcquire(slot)) {
+                for (int j = 0; j < i; j++) {
+                    release(slots.get(j));
+                }
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private boolean tryAcquire(Slot slot) {
+        boolean[] acquired = { false };
+        inFlight.compute(slot.key(), (key, count) -> {
+            if (count == null) {
+                count = new AtomicInteger();
+            }
+            if (count.get() < slot.limit()) {
+                count.incrementAndGet();
+                acquired[0] = true;
+            }
+            return count.get() == 0 ? null : count;
+        });
+        return acquired[0];
+    }
+
+    private void release(Slot slot) {
+        inFlight.computeIfPresent(slot.key(), (key, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    /**
+     * @return the number of in-flight requests for the given key, for testing
+     */
+    @VisibleForTesting
+    int inFlight(String key) {
+        AtomicInteger count = inFlight.get(key);
+        return count == null ? 0 : count.get();
+    }
+
+    private AtomicInteger serviceCounter(String service) {
+        return perService.computeIfAbsent(service, name -> {
+            AtomicInteger count = new AtomicInteger();
+            final MeterRegistry registry = this.meterRegistry;
+            if (registry != null) {
+                Gauge.builder(METRICS_PREFIX + ".inflight", count, AtomicInteger::get).tag("service", name)
+                        .description("Number of in-flight requests to a service with a concurrency quota")
+                        .register(registry);
+            }
+            return count;
+        });
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, String service, ConcurrencyQuota quota, Slot slot) {
+        log.debug("Concurrency quota of service {} exceeded by {}", service, slot.key());
+        final MeterRegistry registry = this.meterRegistry;
+        if (registry != null) {
+            Counter.builder(METRICS_PREFIX + ".rejected")
+                    .description("Number of requests rejected by a concurrency quota").tag("service", service)
+                    .tag("key", slot.type()).register(registry).increment();
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        long retryAfter = Math.max(1,
+                TimeUnit.NANOSECONDS.toSeconds(quota.getRetryAfter().toNanos() + TimeUnit.SECONDS.toNanos(1) - 1));
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        return response.setComplete();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.ratelimit;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.gateway.filter.admission.AdmissionControlGlobalFilter;
+import org.georchestra.gateway.filter.global.ResolveTargetGlobalFilter;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.RateLimit;
+import org.georchestra.gateway.model.Service;
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * A {@link GlobalFilter} that enforces the {@link Service#getRateLimits() rate
+ * limits} of the matched service.
+ * <p>
+ * Requests are grouped by the resolved {@link GeorchestraUser}'s user name,
+ * organization, or roles, as per each {@link RateLimit#getKey() rate limit
+ * key}, or by client IP address for anonymous requests. Each group takes tokens
+ * from its own in-memory {@link TokenBuckets bucket}, so no external service is
+ * needed, but each gateway instance enforces the limits on its own.
+ * </p>
+ * <p>
+ * Requests exceeding a limit are rejected with a {@code 429 Too Many Requests}
+ * status and a {@code Retry-After} header telling how many seconds to wait for
+ * the next token. The tokens they took from the other limits are given back.
+ * </p>
+ * <p>
+ * Rejected requests are counted by the
+ * {@literal georchestra.gateway.ratelimit.rejected} counter, tagged by
+ * {@code service} and {@code key}.
+ * </p>
+ */
+@RequiredArgsConstructor
+@Slf4j(topic = "org.georchestra.gateway.filter.ratelimit")
+public class RateLimitGlobalFilter implements GlobalFilter, Ordered, MeterBinder {
+
+    /**
+     * Runs right after {@link AdmissionControlGlobalFilter}, once both the user and
+     * the service rate limits are {@link ResolveTargetGlobalFilter resolved}.
+     */
+    public static final int ORDER = AdmissionControlGlobalFilter.ORDER + 1;
+
+    static final String METRICS_PREFIX = "georchestra.gateway.ratelimit";
+
+    private final @NonNull TokenBuckets buckets;
+
+    private volatile MeterRegistry meterRegistry;
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        GeorchestraTargetConfig target = GeorchestraTargetConfig.getTarget(exchange).orElse(null);
+        List<RateLimit> limits = target == null ? null : target.rateLimits();
+        if (limits == null || limits.isEmpty()) {
+            return chain.filter(exchange);
+        }
+        GeorchestraUser user = GeorchestraUsers.resolve(exchange).orElse(null);
+        // tokens taken so far, given back if a later limit rejects the request
+        List<Runnable> refunds = new ArrayList<>();
+        for (int i = 0; i < limits.size(); i++) {
+            RateLimit limit = limits.get(i);
+            String prefix = target.serviceName() + "/" + i + "/";
+            for (String key : keys(limit, user, exchange)) {
+                String bucket = prefix + key;
+                long waitNanos = buckets.tryConsume(bucket, limit);
+                if (waitNanos > 0) {
+                    refunds.forEach(Runnable::run);
+                    return reject(exchange, target.serviceName(), limit, key, waitNanos);
+                }
+                refunds.add(() -> buckets.refund(bucket, limit));
+            }
+        }
+        return chain.filter(exchange);
+    }
+
+    /**
+     * @return the keys of the buckets a request takes tokens from for the given
+     *         limit
+     */
+    private List<String> keys(RateLimit limit, GeorchestraUser user, ServerWebExchange exchange) {
+        if (user == null) {
+            return List.of("ip:" + clientIp(exchange));
+        }
+        switch (limit.getKey()) {
+        case ORGANIZATION:
+            String org = user.getOrganization();
+            return List.of(org == null ? "user:" + user.getUsername() : "org:" + org);
+        case ROLE:
+            List<String> roles = limit.getRoles().stream().map(RateLimitGlobalFilter::roleName).toList();
+            return user.getRoles().stream().map(RateLimitGlobalFilter::roleName)
+                    .filter(role -> roles.isEmpty() || roles.contains(role)).distinct().map(role -> "role:" + role)
+                    .toList();
+        case USER:
+        default:
+            return List.of("user:" + user.getUsername());
+        }
+    }
+
+    private static String roleName(String role) {
+        return role.startsWith("ROLE_") ? role.substring("ROLE_".length()) : role;
+    }
+
+    static String clientIp(ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        if (remoteAddress == null) {
+            return "unknown";
+        }
+        return remoteAddress.getAddress() == null ? remoteAddress.getHostString()
+                : remoteAddress.getAddress().getHostAddress();
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, String service, RateLimit limit, String key, long waitNanos) {
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        log.debug("Rate limit of service {} exceeded by {}, retry after {}s", service, key, retryAfter);
+        final MeterRegistry registry = this.meterRegistry;
+        if (registry != null) {
+            Counter.builder(METRICS_PREFIX + ".rejected").description("Number of requests rejected by a rate limit")
+                    .tag("service", service).tag("key", limit.getKey().name().toLowerCase()).register(registry)
+                    .increment();
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        return response.setComplete();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder(METRICS_PREFIX + ".buckets", buckets, TokenBuckets::size)
+                .description("Number of rate limit token buckets kept in memory").register(registry);
+    }
+}
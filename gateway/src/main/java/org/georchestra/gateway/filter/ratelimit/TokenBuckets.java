@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.georchestra.gateway.model.RateLimit;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import lombok.NonNull;
+
+/**
+ * Bounded set of in-memory token buckets, one per key.
+ * <p>
+ * Each bucket is a single {@link AtomicLong} holding the time at which it will
+ * be full again (the "theoretical arrival time" of the generic cell rate
+ * algorithm). Taking a token moves that time forward by
+ * {@code period / capacity}, and is only allowed if it does not end up more
+ * than {@code period} ahead of now. This is equivalent to a token bucket of
+ * {@code capacity} tokens refilled continuously, but updated with a single
+ * compare-and-set, without locking nor a refill task.
+ * </p>
+ * <p>
+ * At most {@code maxKeys} buckets are kept, evicting the least recently used
+ * ones, and buckets not used for longer than their refill period are dropped,
+ * since they would be full anyway.
+ * </p>
+ */
+public class TokenBuckets {
+
+    private final Cache<String, AtomicLong> buckets;
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * @param maxKeys     maximum number of buckets to keep
+     * @param idleTimeout how long an unused bucket is kept, at least the longest
+     *                    refill period
+     */
+    public TokenBuckets(int maxKeys, @NonNull Duration idleTimeout) {
+        this(maxKeys, idleTimeout, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    TokenBuckets(int maxKeys, @NonNull Duration idleTimeout, @NonNull LongSupplier nanoClock) {
+        this.buckets = CacheBuilder.newBuilder().maximumSize(maxKeys).expireAfterAccess(idleTimeout).build();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Takes a token from the bucket identified by {@code key}.
+     *
+     * @param key   identifies the bucket
+     * @param limit the bucket capacity and refill period
+     * @return {@code 0} if a token was taken, or otherwise the number of
+     *         nanoseconds until one is available
+     */
+    public long tryConsume(@NonNull String key, @NonNull RateLimit limit) {
+        final long period = limit.getPeriod().toNanos();
+        if (period <= 0) {
+            return 0;
+        }
+        final long interval = interval(limit);
+        final long now = nanoClock.getAsLong();
+        final AtomicLong bucket = get(key, now);
+        while (true) {
+            final long full = bucket.get();
+            final long next = Math.max(full, now) + interval;
+            final long ahead = next - now;
+            if (ahead > period) {
+                return ahead - period;
+            }
+            if (bucket.compareAndSet(full, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken with {@link #tryConsume}, e.g. when the request is
+     * rejected by another limit.
+     *
+     * @param key   identifies the bucket
+     * @param limit the bucket capacity and refill period
+     */
+    public void refund(@NonNull String key, @NonNull RateLimit limit) {
+        if (limit.getPeriod().toNanos() <= 0) {
+            return;
+        }
+        final AtomicLong bucket = buckets.getIfPresent(key);
+        if (bucket != null) {
+            bucket.addAndGet(-interval(limit));
+        }
+    }
+
+    private static long interval(RateLimit limit) {
+        return Math.max(1, limit.getPeriod().toNanos() / Math.max(1, limit.getCapacity()));
+    }
+
+    private AtomicLong get(String key, long now) {
+        try {
+            return buckets.get(key, () -> new AtomicLong(now));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of buckets currently kept
+     */
+    public long size() {
+        return buckets.size();
+    }
+}
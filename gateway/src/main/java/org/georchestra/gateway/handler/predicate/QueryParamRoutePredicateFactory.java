@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.function.Predicate;
 
+import org.georchestra.gateway.model.OwsRequest;
 import org.springframework.cloud.gateway.handler.predicate.AbstractRoutePredicateFactory;
 import org.springframework.cloud.gateway.handler.predicate.GatewayPredicate;
 import org.springframework.validation.annotation.Validated;
@@ -88,7 +89,7 @@ public class QueryParamRoutePredicateFactory
         return new GatewayPredicate() {
             @Override
             public boolean test(ServerWebExchange exchange) {
-                return exchange.getRequest().getQueryParams().containsKey(config.param);
+                return OwsRequest.of(exchange).contains(config.param);
             }
 
             @Override
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Adaptive limit on the number of concurrent requests forwarded to a
+ * {@link Service} backend.
+ * <p>
+ * The limit follows the backend latency: it grows while the latency stays close
+ * to its long term average, and shrinks as the latency rises above it, that is,
+ * as requests start queuing in the backend. Requests over the limit are
+ * rejected right away instead of adding to the backend backlog.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class AdaptiveConcurrency {
+
+    /**
+     * Whether to limit the concurrent requests to the service.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Limit to start with.
+     */
+    private int initialLimit = 20;
+
+    /**
+     * The limit never goes below this value.
+     */
+    private int minLimit = 4;
+
+    /**
+     * The limit never goes above this value.
+     */
+    private int maxLimit = 200;
+
+    /**
+     * How much the latency may exceed its long term average before the limit is
+     * reduced, e.g. {@code 2.0} tolerates twice the average latency.
+     */
+    private double tolerance = 1.5;
+
+    /**
+     * Weight of each new latency sample in the limit, between {@code 0} and
+     * {@code 1}. Higher values adapt faster but are more sensitive to noise.
+     */
+    private double smoothing = 0.2;
+}
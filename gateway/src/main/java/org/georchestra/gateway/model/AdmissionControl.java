@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+import java.util.List;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Gateway wide admission control, shedding the lowest priority requests first
+ * when the gateway is overloaded.
+ * <p>
+ * The load is the highest of the event loop lag relative to
+ * {@link #getMaxEventLoopLag() max event loop lag}, and the number of requests
+ * in flight relative to {@link #getMaxInFlight() max in flight}. Anonymous
+ * requests are shed once it reaches {@code 1}, authenticated ones once it
+ * reaches {@link #getAuthenticatedHeadroom() authenticated headroom}, and
+ * administration requests are never shed.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class AdmissionControl {
+
+    /**
+     * Whether to enable admission control.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Event loop lag at which the gateway is considered overloaded.
+     */
+    private Duration maxEventLoopLag = Duration.ofMillis(200);
+
+    /**
+     * Number of requests in flight at which the gateway is considered overloaded,
+     * {@code 0} meaning unlimited.
+     */
+    private int maxInFlight = 0;
+
+    /**
+     * How often the event loop lag is measured.
+     */
+    private Duration lagProbeInterval = Duration.ofMillis(100);
+
+    /**
+     * Load, as a multiple of the thresholds, at which authenticated requests are
+     * shed too.
+     */
+    private double authenticatedHeadroom = 2.0;
+
+    /**
+     * Roles, with or without the {@code ROLE_} prefix, whose requests to URLs
+     * restricted by role are classified as administration requests.
+     */
+    private List<String> adminRoles = List.of("SUPERUSER", "ADMINISTRATOR", "ORGADMIN");
+
+    /**
+     * How long shed requests are told to wait before retrying, rounded up to
+     * seconds in the {@code Retry-After} header.
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+}
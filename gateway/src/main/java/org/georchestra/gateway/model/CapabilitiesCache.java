@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Permission-aware cache for the OWS capabilities requests to a
+ * {@link Service}, shared by the users with the same permissions.
+ * <p>
+ * Cached documents are keyed on the request, the user roles and organization,
+ * and the {@code sec-*} headers sent to the backend, but the
+ * {@link #getUserHeaders() user specific} ones. Users with the same roles and
+ * organization hence share the same cached document.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class CapabilitiesCache {
+
+    /**
+     * Whether to cache the capabilities requests to the service.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Values of the OWS {@code REQUEST} parameter to cache, case-insensitive.
+     */
+    private List<String> requests = List.of("GetCapabilities");
+
+    /**
+     * How long to cache the documents. The backend cache headers are ignored.
+     */
+    private Duration ttl = Duration.ofMinutes(5);
+
+    /**
+     * Larger documents are not cached.
+     */
+    private DataSize maxEntrySize = DataSize.ofMegabytes(10);
+
+    /**
+     * Security headers identifying the user rather than their permissions, left out
+     * of the cache key. Case-insensitive.
+     */
+    private List<String> userHeaders = List.of("sec-userid", "sec-username", "sec-email", "sec-firstname",
+            "sec-lastname", "sec-tel", "sec-lastupdated", "sec-address", "sec-title", "sec-notes",
+            "sec-ldap-remaining-days", "sec-external-authentication", "sec-user");
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Circuit breaker for the requests forwarded to a {@link Service} backend.
+ * <p>
+ * After {@link #getFailureThreshold() failure threshold} consecutive failures
+ * (connection errors, timeouts, or {@code 5xx} responses) the circuit opens,
+ * and requests are rejected without reaching the backend for
+ * {@link #getOpenDuration() open duration}. A single probe request is then let
+ * through, closing the circuit if it succeeds.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class CircuitBreaker {
+
+    /**
+     * Whether to enable the circuit breaker.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of consecutive failures opening the circuit.
+     */
+    private int failureThreshold = 10;
+
+    /**
+     * How long the circuit stays open before letting a probe request through.
+     */
+    private Duration openDuration = Duration.ofSeconds(30);
+}
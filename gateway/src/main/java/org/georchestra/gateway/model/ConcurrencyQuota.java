@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Limits the number of concurrent requests to a {@link Service} per user and
+ * per organization.
+ * <p>
+ * Unlike {@link RateLimit rate limits}, quotas bound the number of requests in
+ * flight, which matters for a few long running ones such as WPS executions or
+ * large WFS exports. Anonymous requests are limited per client IP address by
+ * the {@link #getPerUser() per user} quota.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class ConcurrencyQuota {
+
+    /**
+     * Maximum number of concurrent requests per user, {@code 0} meaning unlimited.
+     */
+    private int perUser = 0;
+
+    /**
+     * Maximum number of concurrent requests per organization, shared by all its
+     * members, {@code 0} meaning unlimited.
+     */
+    private int perOrganization = 0;
+
+    /**
+     * How long a request over quota waits for another one to complete before being
+     * rejected. Zero rejects it right away.
+     */
+    private Duration maxWait = Duration.ZERO;
+
+    /**
+     * How long rejected requests are told to wait before retrying, rounded up to
+     * seconds in the {@code Retry-After} header.
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    /**
+     * @return whether any quota is set
+     */
+    public boolean isEnabled() {
+        return perUser > 0 || perOrganization > 0;
+    }
+}
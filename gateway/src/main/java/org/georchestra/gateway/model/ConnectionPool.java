@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Dedicated pool of connections to the backend of a {@link Service}.
+ * <p>
+ * By default all the services share the gateway's HTTP client connection pool,
+ * as configured with {@literal spring.cloud.gateway.httpclient.pool.*}. A
+ * dedicated pool keeps a busy service from exhausting the connections available
+ * to the others, and can be tuned to the backend's concurrency and keep-alive
+ * profile. All other HTTP client settings (SSL, proxy, timeouts) are the
+ * gateway's.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class ConnectionPool {
+
+    /**
+     * Whether to use a dedicated connection pool for the service.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of connections to the backend.
+     */
+    private int maxConnections = 100;
+
+    /**
+     * Maximum number of requests waiting for a connection, or {@code -1} for twice
+     * {@link #getMaxConnections() maxConnections}.
+     */
+    private int pendingAcquireMaxCount = -1;
+
+    /**
+     * Maximum time to wait for a connection.
+     */
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(45);
+
+    /**
+     * Time after which an idle connection is closed, or {@code null} for no limit.
+     */
+    private Duration maxIdleTime;
+
+    /**
+     * Time after which a connection is closed once released, or {@code null} for no
+     * limit.
+     */
+    private Duration maxLifeTime;
+
+    /**
+     * Whether to talk HTTP/2 over cleartext (h2c, with prior knowledge) to the
+     * backend, multiplexing the requests over fewer connections. The backend must
+     * support it, and its target URL must use the {@code http} scheme.
+     */
+    private boolean h2c = false;
+}
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 import lombok.Data;
 import lombok.Generated;
@@ -63,4 +64,30 @@ public class GatewayConfigProperties {
      * security settings.
      */
     private Map<String, Service> services = Collections.emptyMap();
+
+    /**
+     * Maximum number of {@link Service#getRateLimits() rate limit} token buckets
+     * (one per service, limit, and user, organization, role, or client IP) kept in
+     * memory. The least recently used ones are evicted beyond it.
+     */
+    private int rateLimitsMaxKeys = 100_000;
+
+    /**
+     * Maximum size of the {@link Service#getResponseCache() cached responses} and
+     * {@link Service#getCapabilitiesCache() capabilities} of all services, held in
+     * direct memory. The least recently used ones are evicted beyond it.
+     */
+    private DataSize responseCacheMaxSize = DataSize.ofMegabytes(256);
+
+    /**
+     * Maximum number of {@link Service#getRevalidation() response validators} kept
+     * in memory. The least recently used ones are evicted beyond it.
+     */
+    private int revalidationMaxEntries = 50_000;
+
+    /**
+     * Gateway wide admission control, shedding low priority requests first under
+     * overload.
+     */
+    private AdmissionControl admission = new AdmissionControl();
 }
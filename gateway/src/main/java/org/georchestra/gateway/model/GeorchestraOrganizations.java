@@ -19,6 +19,7 @@
 package org.georchestra.gateway.model;
 
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import org.georchestra.security.model.Organization;
 import org.springframework.web.server.ServerWebExchange;
@@ -30,7 +31,9 @@ import lombok.experimental.UtilityClass;
  * {@link ServerWebExchange}.
  * <p>
  * This class provides methods to store and retrieve an {@link Organization}
- * instance associated with an exchange.
+ * instance associated with an exchange. The organization can also be stored as
+ * a {@link #store(ServerWebExchange, Supplier) lazy} reference, resolved the
+ * first time it's retrieved.
  * </p>
  */
 @UtilityClass
@@ -49,8 +52,17 @@ public class GeorchestraOrganizations {
      *         none exists
      */
     public static Optional<Organization> resolve(ServerWebExchange exchange) {
-        return Optional.ofNullable(exchange.getAttributes().get(GEORCHESTRA_ORGANIZATION_KEY))
-                .map(Organization.class::cast);
+        Object value = exchange.getAttributes().get(GEORCHESTRA_ORGANIZATION_KEY);
+        if (value instanceof Supplier<?> lazy) {
+            Organization org = (Organization) lazy.get();
+            if (org == null) {
+                exchange.getAttributes().remove(GEORCHESTRA_ORGANIZATION_KEY);
+            } else {
+                store(exchange, org);
+            }
+            return Optional.ofNullable(org);
+        }
+        return Optional.ofNullable(value).map(Organization.class::cast);
     }
 
     /**
@@ -63,4 +75,25 @@ public class GeorchestraOrganizations {
     public static void store(ServerWebExchange exchange, Organization org) {
         exchange.getAttributes().put(GEORCHESTRA_ORGANIZATION_KEY, org);
     }
+
+    /**
+     * Stores a lazy reference to an {@link Organization} in the exchange
+     * attributes, to be resolved the first time it's {@link #resolve retrieved}.
+     *
+     * @param exchange the {@link ServerWebExchange} where the organization should
+     *                 be stored
+     * @param org      resolves the organization, possibly to {@code null}
+     */
+    public static void store(ServerWebExchange exchange, Supplier<Organization> org) {
+        exchange.getAttributes().put(GEORCHESTRA_ORGANIZATION_KEY, org);
+    }
+
+    /**
+     * @param exchange the {@link ServerWebExchange} containing the attributes
+     * @return {@code true} if the exchange holds a lazy reference to an
+     *         organization that has not been retrieved yet
+     */
+    public static boolean isPending(ServerWebExchange exchange) {
+        return exchange.getAttributes().get(GEORCHESTRA_ORGANIZATION_KEY) instanceof Supplier;
+    }
 }
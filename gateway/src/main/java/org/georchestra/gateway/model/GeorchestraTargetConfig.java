@@ -18,6 +18,8 @@
  */
 package org.georchestra.gateway.model;
 
+import java.net.URI;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
@@ -56,6 +58,77 @@ public class GeorchestraTargetConfig {
      */
     private List<RoleBasedAccessRule> accessRules;
 
+    /**
+     * Name of the matched {@link Service}, or {@code null} if the route matches
+     * none.
+     */
+    private String serviceName;
+
+    /**
+     * Target URL of the matched {@link Service}, if any.
+     */
+    private URI target;
+
+    /**
+     * Replicas of the matched {@link Service}.
+     */
+    private List<URI> replicas = List.of();
+
+    /**
+     * Load balancing across the replicas of the matched {@link Service}, if any.
+     */
+    private LoadBalancing loadBalancing;
+
+    /**
+     * Request hedging across the replicas of the matched {@link Service}, if any.
+     */
+    private Hedging hedging;
+
+    /**
+     * Rate limits of the matched {@link Service}.
+     */
+    private List<RateLimit> rateLimits = List.of();
+
+    /**
+     * Concurrency quota of the matched {@link Service}, if any.
+     */
+    private ConcurrencyQuota concurrencyQuota;
+
+    /**
+     * Backend response timeout of the matched {@link Service}, if any.
+     */
+    private Duration responseTimeout;
+
+    /**
+     * Adaptive concurrency limit of the matched {@link Service}, if any.
+     */
+    private AdaptiveConcurrency adaptiveConcurrency;
+
+    /**
+     * Circuit breaker of the matched {@link Service}, if any.
+     */
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * Response cache of the matched {@link Service}, if any.
+     */
+    private ResponseCache responseCache;
+
+    /**
+     * Capabilities cache of the matched {@link Service}, if any.
+     */
+    private CapabilitiesCache capabilitiesCache;
+
+    /**
+     * Revalidation cache of the matched {@link Service}, if any.
+     */
+    private Revalidation revalidation;
+
+    /**
+     * Connection pool of the matched {@link Service}, if any.
+     */
+    private ConnectionPool connectionPool;
+
     /**
      * Retrieves the stored {@link GeorchestraTargetConfig} from the exchange, if
      * available.
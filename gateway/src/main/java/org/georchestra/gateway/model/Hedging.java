@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Hedging of the idempotent requests to a {@link Service} with
+ * {@link Service#getReplicas() replicas}.
+ * <p>
+ * If a {@code GET} or {@code HEAD} request gets no response headers within the
+ * {@link #getPercentile() percentile} of the service latency, the same request
+ * is sent to another replica, and the first response wins. This cuts the tail
+ * latency caused by a replica stalling (e.g. on garbage collection pauses) for
+ * a bounded amount of {@link #getMaxExtraLoad() extra load}.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class Hedging {
+
+    /**
+     * Whether to hedge the idempotent requests to the service.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Percentile of the recent service latencies after which a request is hedged,
+     * between {@code 0} and {@code 100}.
+     */
+    private double percentile = 95;
+
+    /**
+     * Minimum time to wait before hedging a request.
+     */
+    private Duration minDelay = Duration.ofMillis(10);
+
+    /**
+     * Maximum ratio of hedged requests to requests, e.g. {@code 0.05} for at most
+     * 5% extra load on the backend.
+     */
+    private double maxExtraLoad = 0.05;
+}
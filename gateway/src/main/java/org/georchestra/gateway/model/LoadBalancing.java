@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Load balancing of the requests to a {@link Service} across its
+ * {@link Service#getTarget() target} and {@link Service#getReplicas()
+ * replicas}.
+ * <p>
+ * Each request goes to the best of two randomly picked instances, as per the
+ * {@link #getStrategy() strategy}. Instances that fail
+ * {@link #getConsecutiveFailures() consecutively} are ejected from the
+ * balancing for {@link #getEjectionTime() a while}.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class LoadBalancing {
+
+    public enum Strategy {
+        /** Prefer the instance with the fewest requests in flight */
+        LEAST_REQUESTS,
+        /**
+         * Prefer the instance with the lowest average latency, weighted by its number
+         * of requests in flight
+         */
+        LEAST_LATENCY
+    }
+
+    /**
+     * How to choose between the two randomly picked instances.
+     */
+    private Strategy strategy = Strategy.LEAST_LATENCY;
+
+    /**
+     * Time it takes for the average latency of an instance to forget about two
+     * thirds of a past sample.
+     */
+    private Duration latencyDecay = Duration.ofSeconds(10);
+
+    /**
+     * Number of consecutive server errors ({@code 5xx} responses, connection
+     * errors, or timeouts) after which an instance is ejected.
+     */
+    private int consecutiveFailures = 5;
+
+    /**
+     * How long an ejected instance doesn't receive requests.
+     */
+    private Duration ejectionTime = Duration.ofSeconds(30);
+
+    /**
+     * Maximum percentage of the instances ejected at the same time. At least one
+     * instance is always left, unless set to {@code 100}.
+     */
+    private int maxEjectionPercent = 50;
+}
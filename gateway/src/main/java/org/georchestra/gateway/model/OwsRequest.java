@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+
+import lombok.NonNull;
+
+/**
+ * The query string parameters of a request, parsed once per exchange and shared
+ * by the route predicates, filters, and caches that inspect them.
+ * <p>
+ * The parameters are parsed in a single pass over the raw query string, and
+ * decoded like
+ * {@link org.springframework.http.server.reactive.ServerHttpRequest#getQueryParams()
+ * ServerHttpRequest.getQueryParams()} does. {@link #contains(String)} and
+ * {@link #values(String)} match the parameter names exactly, while the OGC Web
+ * Services parameters ({@link #getService() SERVICE}, {@link #getRequest()
+ * REQUEST}, {@link #getLayers() LAYERS}, etc.) and {@link #getFirst(String)}
+ * ignore their case.
+ * </p>
+ * <p>
+ * {@link #of(ServerWebExchange)} parses the query string on first use, and
+ * parses it again only if a filter changed it.
+ * </p>
+ */
+public final class OwsRequest {
+
+    private static final String ATTRIBUTE = OwsRequest.class.getCanonicalName() + ".instance";
+
+    /** Parameters holding the requested layers, in order of precedence */
+    private static final List<String> LAYER_PARAMETERS = List.of("layers", "layer", "typenames", "typename",
+            "coverageid");
+
+    private static final List<String> FORMAT_PARAMETERS = List.of("format", "outputformat");
+
+    private final String rawQuery;
+
+    /** Decoded values by decoded parameter name, in query string order */
+    private final Map<String, List<String>> parameters;
+
+    /** The first value of each parameter, by lower case name */
+    private final Map<String, String> firstValues;
+
+    private OwsRequest(String rawQuery, Map<String, List<String>> parameters, Map<String, String> firstValues) {
+        this.rawQuery = rawQuery;
+        this.parameters = parameters;
+        this.firstValues = firstValues;
+    }
+
+    /**
+     * @return the query parameters of the exchange's current request, parsed on
+     *         first use
+     */
+    public static OwsRequest of(@NonNull ServerWebExchange exchange) {
+        final String rawQuery = exchange.getRequest().getURI().getRawQuery();
+        OwsRequest cached = exchange.getAttribute(ATTRIBUTE);
+        if (cached != null && Objects.equals(cached.rawQuery, rawQuery)) {
+            return cached;
+        }
+        OwsRequest parsed = parse(rawQuery);
+        exchange.getAttributes().put(ATTRIBUTE, parsed);
+        return parsed;
+    }
+
+    /**
+     * Parses a raw, percent-encoded, query string. Parameters without a name are
+     * ignored, and parameters without a {@code =} have a {@code null} value.
+     *
+     * @param rawQuery the query string, may be {@code null}
+     * @return the parsed query string
+     */
+    public static OwsRequest parse(String rawQuery) {
+        if (!StringUtils.hasLength(rawQuery)) {
+            return new OwsRequest(rawQuery, Map.of(), Map.of());
+        }
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        Map<String, String> firstValues = new HashMap<>();
+        final int length = rawQuery.length();
+        int start = 0;
+        while (start < length) {
+            int end = rawQuery.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            int eq = rawQuery.indexOf('=', start);
+            int nameEnd = eq < 0 || eq > end ? end : eq;
+            if (nameEnd > start) {
+                String name = decode(rawQuery, start, nameEnd);
+                String value = nameEnd == end ? null : decode(rawQuery, nameEnd + 1, end);
+                parameters.computeIfAbsent(name, n -> new ArrayList<>(1)).add(value);
+                firstValues.putIfAbsent(name.toLowerCase(Locale.ROOT), value);
+            }
+            start = end + 1;
+        }
+        return new OwsRequest(rawQuery, parameters, firstValues);
+    }
+
+    private static String decode(String query, int start, int end) {
+        String value = query.substring(start, end);
+        if (value.indexOf('+') >= 0) {
+            value = value.replace('+', ' ');
+        }
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        try {
+            return StringUtils.uriDecode(value, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException invalidEncoding) {
+            return value;
+        }
+    }
+
+    /**
+     * @return the decoded parameter names, in query string order
+     */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(parameters.keySet());
+    }
+
+    /**
+     * @return whether the query string has a parameter with exactly this name
+     */
+    public boolean contains(@NonNull String name) {
+        return parameters.containsKey(name);
+    }
+
+    /**
+     * @return the values of the parameter with exactly this name, empty if there's
+     *         none
+     */
+    public List<String> values(@NonNull String name) {
+        List<String> values = parameters.get(name);
+        return values == null ? List.of() : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @return the first value of the first parameter with this name, ignoring case,
+     *         or {@code null}
+     */
+    public String getFirst(@NonNull String name) {
+        return firstValues.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the {@literal SERVICE} parameter, or {@code null}
+     */
+    public String getService() {
+        return firstValues.get("service");
+    }
+
+    /**
+     * @return the {@literal VERSION} parameter, or {@code null}
+     */
+    public String getVersion() {
+        return firstValues.get("version");
+    }
+
+    /**
+     * @return the {@literal REQUEST} parameter, or {@code null}
+     */
+    public String getRequest() {
+        return firstValues.get("request");
+    }
+
+    /**
+     * @return the first non blank {@literal LAYERS}, {@literal LAYER},
+     *         {@literal TYPENAMES}, {@literal TYPENAME}, or {@literal COVERAGEID}
+     *         parameter, or {@code null}
+     */
+    public String getLayers() {
+        return firstNonBlank(LAYER_PARAMETERS);
+    }
+
+    /**
+     * @return the first non blank {@literal FORMAT} or {@literal OUTPUTFORMAT}
+     *         parameter, or {@code null}
+     */
+    public String getFormat() {
+        return firstNonBlank(FORMAT_PARAMETERS);
+    }
+
+    /**
+     * @return the {@literal BBOX} parameter, or {@code null}
+     */
+    public String getBbox() {
+        return firstValues.get("bbox");
+    }
+
+    private String firstNonBlank(List<String> names) {
+        for (String name : names) {
+            String value = firstValues.get(name);
+            if (StringUtils.hasText(value)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "OwsRequest" + parameters;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+import java.util.List;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Defines a token bucket rate limit for the requests to a {@link Service}.
+ * <p>
+ * Each {@link #getKey() key} (user, organization, or role) gets its own bucket
+ * holding up to {@link #getCapacity() capacity} tokens, refilled continuously
+ * at a rate of {@code capacity} tokens per {@link #getPeriod() period}. Each
+ * request takes a token, and is rejected when the bucket is empty.
+ * </p>
+ * <p>
+ * Anonymous requests are limited by client IP address, whatever the key.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class RateLimit {
+
+    /**
+     * What requests are grouped by to share a bucket.
+     */
+    public enum Key {
+        /** One bucket per user name */
+        USER,
+        /**
+         * One bucket per organization, shared by all its members. Users with no
+         * organization get their own bucket
+         */
+        ORGANIZATION,
+        /**
+         * One bucket per role, shared by all the users having it. A request takes a
+         * token from the bucket of each of the user's {@link RateLimit#getRoles()
+         * limited roles}
+         */
+        ROLE
+    }
+
+    /**
+     * What requests are grouped by to share a bucket, defaults to {@code user}.
+     */
+    private Key key = Key.USER;
+
+    /**
+     * Maximum number of tokens in a bucket, i.e. the number of requests allowed in
+     * a burst.
+     */
+    private int capacity = 100;
+
+    /**
+     * Time it takes to refill an empty bucket. The sustained rate is
+     * {@code capacity} requests per {@code period}.
+     */
+    private Duration period = Duration.ofMinutes(1);
+
+    /**
+     * For the {@code role} key, the roles to limit, with or without the
+     * {@code ROLE_} prefix. If empty, all roles are limited.
+     */
+    private List<String> roles = List.of();
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Response cache for the anonymous {@code GET} requests to a {@link Service},
+ * such as public map tiles or OWS capabilities.
+ * <p>
+ * Only complete {@code 200 OK} responses are cached, for as long as the backend
+ * {@code Cache-Control} ({@code s-maxage} or {@code max-age}) or
+ * {@code Expires} headers allow, or {@link #getDefaultTtl() default TTL} if
+ * they don't say. Responses marked {@code no-store}, {@code no-cache}, or
+ * {@code private}, or setting cookies, are never cached.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class ResponseCache {
+
+    /**
+     * Whether to cache the anonymous responses of the service.
+     */
+    private boolean enabled = false;
+
+    /**
+     * How long to cache responses without explicit freshness information. Zero
+     * caches only the responses the backend declares fresh.
+     */
+    private Duration defaultTtl = Duration.ZERO;
+
+    /**
+     * Larger responses are not cached.
+     */
+    private DataSize maxEntrySize = DataSize.ofMegabytes(1);
+}
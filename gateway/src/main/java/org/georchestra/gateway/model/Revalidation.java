@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.time.Duration;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Revalidation cache for the conditional {@code GET} requests to a
+ * {@link Service}, such as the browsers revalidating static JS and CSS bundles
+ * with {@code If-None-Match}.
+ * <p>
+ * The gateway remembers the validators ({@code ETag}, {@code Last-Modified}) of
+ * the backend responses, and answers matching conditional requests with a
+ * {@code 304 Not Modified} status itself, for {@link #getTtl() ttl} after the
+ * backend last confirmed them.
+ * </p>
+ */
+@Data
+@Generated
+@Accessors(chain = true)
+public class Revalidation {
+
+    /**
+     * Whether to answer the conditional requests to the service locally.
+     */
+    private boolean enabled = false;
+
+    /**
+     * How long the validators of a response are trusted without asking the backend.
+     * They're revalidated in the background once half of it elapsed.
+     */
+    private Duration ttl = Duration.ofMinutes(1);
+}
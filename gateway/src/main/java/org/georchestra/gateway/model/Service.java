@@ -19,6 +19,7 @@
 package org.georchestra.gateway.model;
 
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,8 +30,9 @@ import lombok.Generated;
  * Represents the configuration of a backend service within the geOrchestra
  * Gateway.
  * <p>
- * This model defines the target service URL, role-based access rules, and
- * security headers to be applied to proxied requests.
+ * This model defines the target service URL and replicas, role-based access
+ * rules, rate limits, concurrency quotas, backend protections, response caches,
+ * connection pools, and security headers to be applied to proxied requests.
  * </p>
  */
 @Data
@@ -47,6 +49,24 @@ public class Service {
      */
     private URI target;
 
+    /**
+     * Additional instances of the backend service, to balance the requests across
+     * along with the {@link #getTarget() target}.
+     */
+    private List<URI> replicas = List.of();
+
+    /**
+     * How the requests are balanced across the {@link #getTarget() target} and
+     * {@link #getReplicas() replicas}.
+     */
+    private LoadBalancing loadBalancing = new LoadBalancing();
+
+    /**
+     * Hedging of the idempotent requests across the {@link #getReplicas()
+     * replicas}.
+     */
+    private Hedging hedging = new Hedging();
+
     /**
      * Service-specific security headers configuration.
      * <p>
@@ -61,6 +81,57 @@ public class Service {
      */
     private List<RoleBasedAccessRule> accessRules = List.of();
 
+    /**
+     * Token bucket rate limits for the requests to this service. A request is
+     * rejected if any of them is exceeded.
+     */
+    private List<RateLimit> rateLimits = List.of();
+
+    /**
+     * Maximum number of concurrent requests to this service per user and per
+     * organization.
+     */
+    private ConcurrencyQuota concurrencyQuota = new ConcurrencyQuota();
+
+    /**
+     * Maximum time to wait for the backend response headers, or {@code null} for no
+     * specific timeout. Requests timing out get a {@code 504 Gateway Timeout}
+     * response.
+     */
+    private Duration responseTimeout;
+
+    /**
+     * Adaptive limit on the number of concurrent requests forwarded to the backend.
+     */
+    private AdaptiveConcurrency adaptiveConcurrency = new AdaptiveConcurrency();
+
+    /**
+     * Circuit breaker for the requests forwarded to the backend.
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Cache for the responses to anonymous {@code GET} requests.
+     */
+    private ResponseCache responseCache = new ResponseCache();
+
+    /**
+     * Cache for the OWS capabilities requests, shared by the users with the same
+     * permissions.
+     */
+    private CapabilitiesCache capabilitiesCache = new CapabilitiesCache();
+
+    /**
+     * Cache of the response validators, to answer the conditional requests locally.
+     */
+    private Revalidation revalidation = new Revalidation();
+
+    /**
+     * Dedicated connection pool to the backend, instead of the gateway's shared
+     * one.
+     */
+    private ConnectionPool connectionPool = new ConnectionPool();
+
     /**
      * Retrieves the optional security headers configuration for this service.
      *
@@ -20,6 +20,7 @@ package org.georchestra.gateway.security;
 
 import java.net.URI;
 
+import org.georchestra.gateway.security.exceptions.LoginThrottledException;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.server.DefaultServerRedirectStrategy;
 import org.springframework.security.web.server.ServerRedirectStrategy;
@@ -43,6 +44,8 @@ import reactor.core.publisher.Mono;
  * credentials.</li>
  * <li>Redirects to {@code login?error=expired_password} for expired
  * passwords.</li>
+ * <li>Redirects to {@code login?error=too_many_attempts} for logins rejected
+ * after too many failures.</li>
  * <li>Defaults to {@code login?error} for other authentication failures.</li>
  * </ul>
  * </p>
@@ -53,6 +56,7 @@ public class ExtendedRedirectServerAuthenticationFailureHandler extends Redirect
 
     private static final String INVALID_CREDENTIALS = "invalid_credentials";
     private static final String EXPIRED_PASSWORD = "expired_password";
+    private static final String TOO_MANY_ATTEMPTS = "too_many_attempts";
     private static final String EXPIRED_MESSAGE = "Your password has expired";
     private final ServerRedirectStrategy redirectStrategy = new DefaultServerRedirectStrategy();
 
@@ -84,6 +88,8 @@ public class ExtendedRedirectServerAuthenticationFailureHandler extends Redirect
         } else if (exception instanceof org.springframework.security.authentication.LockedException
                 && exception.getMessage().equals(EXPIRED_MESSAGE)) {
             this.location = URI.create("login?error=" + EXPIRED_PASSWORD);
+        } else if (exception instanceof LoginThrottledException) {
+            this.location = URI.create("login?error=" + TOO_MANY_ATTEMPTS);
         }
         return this.redirectStrategy.sendRedirect(webFilterExchange.getExchange(), this.location);
     }
@@ -21,12 +21,15 @@ package org.georchestra.gateway.security;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Stream;
 
 import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.UsersCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -59,7 +62,7 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Configuration(proxyBeanMethods = false)
 @EnableWebFluxSecurity
-@EnableConfigurationProperties({ GatewayConfigProperties.class })
+@EnableConfigurationProperties({ GatewayConfigProperties.class, GeorchestraGatewaySecurityConfigProperties.class })
 @Slf4j(topic = "org.georchestra.gateway.security")
 public class GatewaySecurityConfiguration {
 
@@ -176,12 +179,29 @@ public class GatewaySecurityConfiguration {
      *
      * @param resolvers   the list of user resolvers
      * @param customizers the list of user customizers
+     * @param cache       the resolved users cache, if enabled
      * @return an instance of {@link GeorchestraUserMapper}
      */
     @Bean
     GeorchestraUserMapper georchestraUserResolver(List<GeorchestraUserMapperExtension> resolvers,
-            List<GeorchestraUserCustomizerExtension> customizers) {
-        return new GeorchestraUserMapper(resolvers, customizers);
+            List<GeorchestraUserCustomizerExtension> customizers, Optional<ResolvedUsersCache> cache) {
+        return new GeorchestraUserMapper(resolvers, customizers, cache.orElse(null));
+    }
+
+    /**
+     * Creates the {@link ResolvedUsersCache} used by {@link GeorchestraUserMapper},
+     * if enabled through
+     * {@literal georchestra.gateway.security.users-cache.enabled=true}.
+     *
+     * @param config the security configuration properties
+     * @return the resolved users cache
+     */
+    @Bean
+    @ConditionalOnProperty(name = "georchestra.gateway.security.users-cache.enabled", havingValue = "true", matchIfMissing = false)
+    ResolvedUsersCache resolvedUsersCache(GeorchestraGatewaySecurityConfigProperties config) {
+        UsersCache cacheConfig = config.getUsersCache();
+        log.info("Caching resolved users for {}, max {} entries", cacheConfig.getTtl(), cacheConfig.getMaxSize());
+        return new ResolvedUsersCache(cacheConfig.getTtl(), cacheConfig.getMaxSize());
     }
 
     /**
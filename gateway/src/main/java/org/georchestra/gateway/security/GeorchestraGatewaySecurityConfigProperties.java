@@ -18,6 +18,7 @@
  */
 package org.georchestra.gateway.security;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -82,6 +83,131 @@ public class GeorchestraGatewaySecurityConfigProperties implements Validator {
     @Valid
     private Map<String, Server> ldap = Map.of();
 
+    /**
+     * Cache of users resolved from authentication tokens.
+     */
+    private UsersCache usersCache = new UsersCache();
+
+    /**
+     * Throttling of failed LDAP logins.
+     */
+    private LoginThrottling loginThrottling = new LoginThrottling();
+
+    /**
+     * How users are looked up across multiple extended LDAP configurations.
+     */
+    private LdapFanOut ldapFanOut = new LdapFanOut();
+
+    /**
+     * Configuration of the throttling of failed LDAP logins, protecting the LDAP
+     * directories from brute-force and credential stuffing attacks.
+     * <p>
+     * Failed logins are counted per username and per client IP address over a
+     * sliding {@code window}. Once half the maximum number of failures is reached,
+     * each new attempt is delayed by {@code delayStep} per additional failure, up
+     * to {@code maxDelay}. When the maximum is reached, the username or IP address
+     * is locked out for {@code lockout}, and its login attempts are rejected
+     * without querying LDAP. A successful login clears the username failures.
+     */
+    @Generated
+    public static @Data @Accessors(chain = true) class LoginThrottling {
+
+        /**
+         * Whether to throttle failed logins.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Length of the sliding window failed logins are counted over.
+         */
+        private Duration window = Duration.ofMinutes(15);
+
+        /**
+         * Number of failed logins for a username within the window that locks it out.
+         */
+        private int maxFailuresPerUser = 5;
+
+        /**
+         * Number of failed logins from a client IP address within the window that locks
+         * it out.
+         */
+        private int maxFailuresPerIp = 100;
+
+        /**
+         * How long a username or client IP address is locked out.
+         */
+        private Duration lockout = Duration.ofMinutes(15);
+
+        /**
+         * Delay added to login attempts per failed login beyond half the maximum.
+         */
+        private Duration delayStep = Duration.ofSeconds(1);
+
+        /**
+         * Maximum delay added to a login attempt.
+         */
+        private Duration maxDelay = Duration.ofSeconds(10);
+
+        /**
+         * Maximum number of usernames and IP addresses tracked by the default in-memory
+         * store.
+         */
+        private long maxTrackedKeys = 100_000;
+    }
+
+    /**
+     * Configuration of user lookups not bound to a specific extended LDAP
+     * configuration, like the ones performed when mapping OAuth2 or pre-authorized
+     * users to LDAP accounts.
+     * <p>
+     * Such lookups return the match from the configuration with the lowest
+     * {@link Server#getPriority() priority} value. By default configurations are
+     * queried one after the other. When enabled, all of them are queried
+     * concurrently, each one bounded by its {@link Server#getLookupTimeout() lookup
+     * timeout}, and the remaining lookups are cancelled as soon as the result is
+     * known.
+     */
+    @Generated
+    public static @Data @Accessors(chain = true) class LdapFanOut {
+
+        /**
+         * Whether to query all extended LDAP configurations concurrently.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Expected number of concurrent user lookups. The lookups run in a bounded
+         * thread pool with as many threads per LDAP configuration, lookups beyond it
+         * failing as timed out.
+         */
+        private int concurrency = 16;
+    }
+
+    /**
+     * Configuration of the cache of resolved users. Cached users are evicted when
+     * they expire, or as soon as a change event affecting them is received (see
+     * {@literal georchestra.gateway.security.events.rabbitmq}), so the time to live
+     * can be increased when such events are enabled.
+     */
+    @Generated
+    public static @Data @Accessors(chain = true) class UsersCache {
+
+        /**
+         * Whether to cache resolved users.
+         */
+        private boolean enabled = false;
+
+        /**
+         * How long a resolved user is cached.
+         */
+        private Duration ttl = Duration.ofMinutes(1);
+
+        /**
+         * Maximum number of cached users.
+         */
+        private long maxSize = 10_000;
+    }
+
     /**
      * Represents a configured LDAP server.
      */
@@ -145,6 +271,150 @@ public class GeorchestraGatewaySecurityConfigProperties implements Validator {
          * Password for the administrator user used for LDAP authentication operations.
          */
         private String adminPassword;
+
+        /**
+         * In-memory snapshot of the directory's users and organizations. Used only for
+         * OpenLDAP when {@code extended} is {@code true}.
+         */
+        private Snapshot snapshot = new Snapshot();
+
+        /**
+         * Circuit breaker for user and organization lookups. Used only for OpenLDAP
+         * when {@code extended} is {@code true}.
+         */
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+        /**
+         * Order in which this configuration is searched for users not bound to a
+         * specific LDAP configuration, lower values first. Configurations with the same
+         * priority are ordered by name. Used only when {@code extended} is
+         * {@code true}.
+         */
+        private int priority = 0;
+
+        /**
+         * Maximum time to wait for this configuration's answer when looking up users
+         * concurrently across LDAP configurations (see
+         * {@literal georchestra.gateway.security.ldap-fan-out.enabled}). Used only when
+         * {@code extended} is {@code true}.
+         */
+        private Duration lookupTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Read replicas of the LDAP server at {@code url}, which then only receives
+         * writes and the reads that must see them. Used only for OpenLDAP when
+         * {@code extended} is {@code true}.
+         */
+        private ReadReplicas replicas = new ReadReplicas();
+    }
+
+    /**
+     * Configuration of the read replicas of an extended LDAP directory.
+     * <p>
+     * When replica {@code urls} are given, authentication binds and user and
+     * organization lookups are balanced across the healthy replicas, picking the
+     * one with the fewest outstanding requests, while account provisioning keeps
+     * writing to the server's main {@code url}. A replica that can't be reached is
+     * skipped for {@code retryInterval}, and reads fail over to the next replica,
+     * or to the main server if none is left. Right after an account is created or
+     * changed, reads go to the main server for {@code readYourWrites}, so they
+     * don't miss changes not yet replicated.
+     */
+    @Generated
+    public static @Data @Accessors(chain = true) class ReadReplicas {
+
+        /**
+         * URLs of the read replicas, e.g. {@code ldap://ldap-replica-1:389}.
+         */
+        private List<String> urls = List.of();
+
+        /**
+         * How long reads go to the main server after an account is created or changed.
+         */
+        private Duration readYourWrites = Duration.ofSeconds(5);
+
+        /**
+         * How long an unreachable replica is skipped before trying it again.
+         */
+        private Duration retryInterval = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Configuration of the circuit breaker protecting the gateway from an
+     * unresponsive extended LDAP directory.
+     * <p>
+     * When enabled, LDAP lookups fail fast after {@code connectTimeout} or
+     * {@code readTimeout}. After {@code failureThreshold} consecutive failures the
+     * circuit opens: lookups are not sent to LDAP for {@code openDuration}, and the
+     * last known version of already resolved users is served instead. Then a single
+     * probe lookup is let through, closing the circuit if it succeeds.
+     */
+    @Generated
+    public static @Data @Accessors(chain = true) class CircuitBreaker {
+
+        /**
+         * Whether to enable the circuit breaker.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of consecutive failed lookups that open the circuit.
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * How long the circuit stays open before letting a probe lookup through.
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * LDAP connection timeout.
+         */
+        private Duration connectTimeout = Duration.ofSeconds(2);
+
+        /**
+         * LDAP read timeout.
+         */
+        private Duration readTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Maximum number of last known users to keep for serving them while the circuit
+         * is open or a lookup fails.
+         */
+        private long staleMaxSize = 10_000;
+
+        /**
+         * How long a last known user can be served while the circuit is open or a
+         * lookup fails.
+         */
+        private Duration staleTtl = Duration.ofHours(1);
+    }
+
+    /**
+     * Configuration of the in-memory snapshot of an extended LDAP directory.
+     * <p>
+     * When enabled, all users and organizations are loaded at startup and kept up
+     * to date by polling for entries whose {@code modifyTimestamp} changed, so that
+     * user and organization lookups don't need to query the LDAP server.
+     */
+    @Generated
+    public static @Data @Accessors(chain = true) class Snapshot {
+
+        /**
+         * Whether to keep an in-memory snapshot of the directory.
+         */
+        private boolean enabled = false;
+
+        /**
+         * How often to poll the directory for modified entries.
+         */
+        private Duration pollInterval = Duration.ofSeconds(30);
+
+        /**
+         * How often to reload the whole directory, which is the only way to notice
+         * deleted entries not otherwise notified.
+         */
+        private Duration fullReloadInterval = Duration.ofHours(1);
     }
 
     /**
@@ -191,6 +461,14 @@ public class GeorchestraGatewaySecurityConfigProperties implements Validator {
          * {@code (member={0})}.
          */
         private String searchFilter;
+
+        /**
+         * Optional user attribute holding the DNs of the roles the user belongs to,
+         * like {@code memberOf} with OpenLDAP's memberof overlay. If set, roles are
+         * read from the user entry found at login instead of searching {@code rdn} with
+         * {@code searchFilter}, saving one LDAP search per authentication.
+         */
+        private String attribute;
     }
 
     /**
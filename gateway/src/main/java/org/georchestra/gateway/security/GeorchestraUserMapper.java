@@ -26,7 +26,6 @@ import org.georchestra.security.model.GeorchestraUser;
 import org.springframework.security.core.Authentication;
 
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 
 /**
  * Resolves a {@link GeorchestraUser} from an {@link Authentication} token by
@@ -47,12 +46,15 @@ import lombok.RequiredArgsConstructor;
  * {@link ResolveGeorchestraUserGlobalFilter} to extract user details from
  * authentication tokens in the request lifecycle.
  * </p>
+ * <p>
+ * If a {@link ResolvedUsersCache} is provided, resolved users are cached per
+ * authentication token until they expire or are invalidated.
+ * </p>
  * 
  * @see GeorchestraUserMapperExtension
  * @see GeorchestraUserCustomizerExtension
  * @see ResolveGeorchestraUserGlobalFilter
  */
-@RequiredArgsConstructor
 public class GeorchestraUserMapper {
 
     /**
@@ -67,6 +69,42 @@ public class GeorchestraUserMapper {
      */
     private final @NonNull List<GeorchestraUserCustomizerExtension> customizers;
 
+    /**
+     * Optional cache of resolved users, {@code null} if disabled.
+     */
+    private final ResolvedUsersCache cache;
+
+    /**
+     * Creates a mapper with the given resolvers and customizers, and an optional
+     * cache of resolved users.
+     * 
+     * @param resolvers   the list of {@link GeorchestraUserMapperExtension}
+     *                    instances
+     * @param customizers the list of {@link GeorchestraUserCustomizerExtension}
+     *                    instances
+     * @param cache       the resolved users cache, or {@code null} to resolve the
+     *                    user on each call
+     */
+    public GeorchestraUserMapper(@NonNull List<GeorchestraUserMapperExtension> resolvers,
+            @NonNull List<GeorchestraUserCustomizerExtension> customizers, ResolvedUsersCache cache) {
+        this.resolvers = resolvers;
+        this.customizers = customizers;
+        this.cache = cache;
+    }
+
+    /**
+     * Creates a mapper with the given resolvers and customizers, and no cache.
+     * 
+     * @param resolvers   the list of {@link GeorchestraUserMapperExtension}
+     *                    instances
+     * @param customizers the list of {@link GeorchestraUserCustomizerExtension}
+     *                    instances
+     */
+    public GeorchestraUserMapper(@NonNull List<GeorchestraUserMapperExtension> resolvers,
+            @NonNull List<GeorchestraUserCustomizerExtension> customizers) {
+        this(resolvers, customizers, null);
+    }
+
     /**
      * Default constructor for use when no resolvers or customizers are provided.
      */
@@ -95,6 +133,11 @@ public class GeorchestraUserMapper {
      * If a user is resolved, it is then processed through all registered
      * {@link GeorchestraUserCustomizerExtension} instances in order.
      * </p>
+     * <p>
+     * When caching is enabled, a previously resolved user for an equal
+     * authentication token is returned instead, unless it expired or was
+     * invalidated.
+     * </p>
      * 
      * @param authToken the authentication token to resolve
      * @return an optional {@link GeorchestraUser} if resolution is successful
@@ -102,6 +145,13 @@ public class GeorchestraUserMapper {
      *                                       are found
      */
     public Optional<GeorchestraUser> resolve(@NonNull Authentication authToken) throws DuplicatedEmailFoundException {
+        if (cache != null) {
+            return cache.get(authToken, this::doResolve);
+        }
+        return doResolve(authToken);
+    }
+
+    private Optional<GeorchestraUser> doResolve(Authentication authToken) {
         return resolvers.stream().map(resolver -> resolver.resolve(authToken)).filter(Optional::isPresent)
                 .map(Optional::orElseThrow).map(mapped -> customize(authToken, mapped)).findFirst();
     }
@@ -30,6 +30,7 @@ import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
 import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.web.server.DefaultServerRedirectStrategy;
@@ -37,6 +38,9 @@ import org.springframework.security.web.server.ServerRedirectStrategy;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebSession;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -55,7 +59,14 @@ import reactor.core.publisher.Mono;
  * <p>
  * If the resolved {@link GeorchestraUser} is an instance of
  * {@link ExtendedGeorchestraUser}, this filter also extracts the associated
- * {@link Organization} and makes it available for downstream processing.
+ * {@link Organization} and makes it available for downstream processing. If the
+ * organization is not resolved yet, it's stored as a lazy reference, so that
+ * it's only looked up if the matched route emits organization headers.
+ * </p>
+ * <p>
+ * The number of lazy organization lookups performed or avoided is reported by
+ * the {@literal georchestra.gateway.organizations.lookups} counter, tagged by
+ * route id and {@code outcome=performed|avoided}.
  * </p>
  * 
  * <p>
@@ -69,10 +80,20 @@ import reactor.core.publisher.Mono;
  */
 @RequiredArgsConstructor
 @Slf4j(topic = "org.georchestra.gateway.security")
-public class ResolveGeorchestraUserGlobalFilter implements GlobalFilter, Ordered {
+public class ResolveGeorchestraUserGlobalFilter implements GlobalFilter, Ordered, MeterBinder {
 
     public static final int ORDER = RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 1;
 
+    static final String ORG_LOOKUPS_METRIC = "georchestra.gateway.organizations.lookups";
+
+    /**
+     * Exchange attribute flagging a lazily resolved organization, to report whether
+     * it was looked up
+     */
+    private static final String LAZY_ORG_ATTR = ResolveGeorchestraUserGlobalFilter.class.getName() + ".lazyOrg";
+
+    private MeterRegistry meterRegistry;
+
     private final @NonNull GeorchestraUserMapper resolver;
 
     private final ServerRedirectStrategy redirectStrategy = new DefaultServerRedirectStrategy();
@@ -117,7 +138,7 @@ public class ResolveGeorchestraUserGlobalFilter implements GlobalFilter, Ordered
                 .doOnNext(principal -> log.debug("Resolving user from {}", principal.getClass().getName()))
                 .filter(Authentication.class::isInstance).map(Authentication.class::cast).map(resolver::resolve)
                 .map(user -> storeUserAndOrganization(exchange, user.orElse(null))).defaultIfEmpty(exchange)
-                .flatMap(chain::filter)
+                .flatMap(chain::filter).doFinally(signal -> recordOrgLookup(exchange))
                 .onErrorResume(DuplicatedEmailFoundException.class, error -> handleDuplicateEmailError(exchange));
     }
 
@@ -133,14 +154,40 @@ public class ResolveGeorchestraUserGlobalFilter implements GlobalFilter, Ordered
         GeorchestraUsers.store(exchange, user);
 
         if (user instanceof ExtendedGeorchestraUser extendedUser) {
-            Organization org = extendedUser.getOrg();
-            if (org != null) {
-                GeorchestraOrganizations.store(exchange, org);
+            if (extendedUser.isOrgResolved()) {
+                Organization org = extendedUser.getOrg();
+                if (org != null) {
+                    GeorchestraOrganizations.store(exchange, org);
+                }
+            } else {
+                GeorchestraOrganizations.store(exchange, extendedUser::getOrg);
+                exchange.getAttributes().put(LAZY_ORG_ATTR, Boolean.TRUE);
             }
         }
         return exchange;
     }
 
+    /**
+     * Counts whether the lazily resolved organization, if any, was looked up while
+     * processing the request.
+     */
+    private void recordOrgLookup(ServerWebExchange exchange) {
+        final MeterRegistry registry = this.meterRegistry;
+        if (registry == null || exchange.getAttributes().remove(LAZY_ORG_ATTR) == null) {
+            return;
+        }
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        String outcome = GeorchestraOrganizations.isPending(exchange) ? "avoided" : "performed";
+        Counter.builder(ORG_LOOKUPS_METRIC).description("Number of lazy organization lookups performed or avoided")
+                .tag("route", route == null ? "none" : route.getId()).tag("outcome", outcome).register(registry)
+                .increment();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+    }
+
     /**
      * Handles a {@link DuplicatedEmailFoundException} by redirecting the user to
      * the login page with an error message and invalidating the session.
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.georchestra.gateway.accounts.admin.AccountCreated;
+import org.georchestra.gateway.accounts.admin.AccountsChanged;
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.Authentication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Time-bounded cache of the {@link GeorchestraUser}s resolved by
+ * {@link GeorchestraUserMapper} for each {@link Authentication}, avoiding to
+ * query the authentication providers and run all the
+ * {@link GeorchestraUserCustomizerExtension customizers} on every request.
+ * <p>
+ * Entries expire after the configured time to live. They are also evicted as
+ * soon as an {@link AccountsChanged} or {@link AccountCreated} event affecting
+ * them is received, which allows to use long time to live values when such
+ * events are propagated across gateway replicas (e.g. through RabbitMQ).
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.security.users.cache} prefix.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.security")
+public class ResolvedUsersCache implements MeterBinder {
+
+    static final String METRICS_PREFIX = "georchestra.gateway.security.users.cache";
+
+    private final Cache<Authentication, GeorchestraUser> cache;
+
+    /**
+     * Incremented on each invalidation, so that a user resolved concurrently with
+     * an invalidation is not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong invalidated = new AtomicLong();
+
+    /**
+     * @param ttl     how long a resolved user is cached
+     * @param maxSize maximum number of cached users
+     */
+    public ResolvedUsersCache(@NonNull Duration ttl, long maxSize) {
+        this.cache = CacheBuilder.newBuilder().expireAfterWrite(ttl).maximumSize(maxSize).recordStats().build();
+    }
+
+    /**
+     * Returns the cached user for the given authentication, or resolves and caches
+     * it using {@code resolver}. Empty results are not cached.
+     *
+     * @param auth     the authentication token
+     * @param resolver the function resolving the user on a cache miss
+     * @return the cached or resolved user
+     */
+    public Optional<GeorchestraUser> get(@NonNull Authentication auth,
+            @NonNull Function<Authentication, Optional<GeorchestraUser>> resolver) {
+        GeorchestraUser cached = cache.getIfPresent(auth);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        final long gen = generation.get();
+        Optional<GeorchestraUser> resolved = resolver.apply(auth);
+        resolved.ifPresent(user -> {
+            cache.put(auth, user);
+            if (gen != generation.get()) {
+                // invalidated while resolving, can't tell if it was affected
+                cache.invalidate(auth);
+            }
+        });
+        return resolved;
+    }
+
+    @EventListener(AccountsChanged.class)
+    public void onAccountsChanged(AccountsChanged event) {
+        int count = invalidate(event::affects);
+        log.debug("Evicted {} cached users on {}", count, event);
+    }
+
+    @EventListener(AccountCreated.class)
+    public void onAccountCreated(AccountCreated event) {
+        String username = event.getUser().getUsername();
+        invalidate(user -> username != null && username.equals(user.getUsername()));
+    }
+
+    /**
+     * Evicts all cached users matching the predicate
+     *
+     * @return the number of evicted users
+     */
+    @VisibleForTesting
+    int invalidate(Predicate<GeorchestraUser> affected) {
+        generation.incrementAndGet();
+        int count = 0;
+        for (var it = cache.asMap().entrySet().iterator(); it.hasNext();) {
+            if (affected.test(it.next().getValue())) {
+                it.remove();
+                count++;
+            }
+        }
+        invalidated.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * Evicts all cached users
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    @VisibleForTesting
+    long size() {
+        return cache.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder(METRICS_PREFIX + ".size", cache, Cache::size).description("Number of cached resolved users")
+                .register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".hits", cache, c -> c.stats().hitCount())
+                .description("Number of resolved users served from the cache").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".misses", cache, c -> c.stats().missCount())
+                .description("Number of users resolved because they were not cached").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".invalidated", invalidated, AtomicLong::get)
+                .description("Number of cached users evicted by change events").register(registry);
+    }
+}
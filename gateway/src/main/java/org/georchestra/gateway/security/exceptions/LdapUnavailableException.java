@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.exceptions;
+
+/**
+ * Exception thrown when an LDAP lookup is not attempted because the LDAP
+ * directory is deemed unavailable, and there's no last known result to serve
+ * instead, or when a concurrent lookup across LDAP directories can't be
+ * answered because a directory failed or timed out.
+ */
+@SuppressWarnings("serial")
+public class LdapUnavailableException extends RuntimeException {
+
+    /**
+     * Constructs a new {@code LdapUnavailableException} with the specified detail
+     * message.
+     *
+     * @param message the detail message
+     */
+    public LdapUnavailableException(String message) {
+        super(message);
+    }
+}
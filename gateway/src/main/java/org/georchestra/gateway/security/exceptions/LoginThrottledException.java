@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.exceptions;
+
+import java.time.Duration;
+
+import org.springframework.security.core.AuthenticationException;
+
+import lombok.Getter;
+
+/**
+ * Exception thrown when a login attempt is rejected without checking its
+ * credentials, because too many logins failed recently for the same username or
+ * client IP address.
+ */
+@SuppressWarnings("serial")
+public class LoginThrottledException extends AuthenticationException {
+
+    /**
+     * How long until login attempts are accepted again.
+     */
+    private final @Getter Duration retryAfter;
+
+    /**
+     * Constructs a new {@code LoginThrottledException} with the specified detail
+     * message.
+     *
+     * @param message    the detail message
+     * @param retryAfter how long until login attempts are accepted again
+     */
+    public LoginThrottledException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
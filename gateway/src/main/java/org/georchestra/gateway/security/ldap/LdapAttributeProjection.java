@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.georchestra.gateway.logging.mdc.config.AuthenticationMdcConfigProperties;
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.model.HeaderMappings;
+import org.georchestra.gateway.model.Service;
+import org.springframework.util.StringUtils;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Computes the LDAP user attributes the gateway actually needs to fetch when
+ * authenticating a user, out of the geOrchestra LDAP schema.
+ * <p>
+ * The set of attributes is the union of the ones backing the user headers
+ * enabled by the {@link GatewayConfigProperties#getDefaultHeaders() default
+ * headers} or any {@link Service#getHeaders() service headers}, and the ones
+ * required by the {@link AuthenticationMdcConfigProperties logging MDC}
+ * configuration. For example, {@code sec-tel} requires {@code telephoneNumber},
+ * and {@code sec-user} (the JSON user) requires all of them. Access rules only
+ * rely on roles, which are resolved either with a separate search or from the
+ * {@code roles.attribute}, and are hence always available.
+ * </p>
+ * <p>
+ * Attributes that no header uses, like {@code jpegPhoto}, are not requested,
+ * reducing the LDAP response size and the gateway's memory churn for every
+ * login.
+ * </p>
+ * <p>
+ * The {@link #lookupAttributes(String) lookup attributes} also apply to the
+ * extended LDAP user lookups that build the geOrchestra users, which in
+ * addition need the attributes users are looked up by.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap")
+public class LdapAttributeProjection {
+
+    private static final String USERNAME_ATTRIBUTE = "uid";
+
+    /**
+     * A user header and the attributes of the geOrchestra LDAP schema backing it
+     */
+    private record HeaderAttributes(Function<HeaderMappings, Optional<Boolean>> header, List<String> attributes) {
+    }
+
+    private static final List<HeaderAttributes> HEADER_ATTRIBUTES = List.of(//
+            new HeaderAttributes(HeaderMappings::getUserid, List.of("georchestraObjectIdentifier")), //
+            new HeaderAttributes(HeaderMappings::getLastUpdated, List.of("modifyTimestamp")), //
+            new HeaderAttributes(HeaderMappings::getUsername, List.of(USERNAME_ATTRIBUTE)), //
+            new HeaderAttributes(HeaderMappings::getEmail, List.of("mail")), //
+            new HeaderAttributes(HeaderMappings::getFirstname, List.of("givenName")), //
+            new HeaderAttributes(HeaderMappings::getLastname, List.of("sn")), //
+            new HeaderAttributes(HeaderMappings::getTel, List.of("telephoneNumber")), //
+            new HeaderAttributes(HeaderMappings::getAddress, List.of("postalAddress")), //
+            new HeaderAttributes(HeaderMappings::getTitle, List.of("title")), //
+            new HeaderAttributes(HeaderMappings::getNotes, List.of("description", "knowledgeInformation")));
+
+    /**
+     * All the user attributes of the geOrchestra LDAP schema, as requested when no
+     * projection is applied, used to report the pruned ones
+     */
+    static final Set<String> SCHEMA_ATTRIBUTES = Set.of("uid", "cn", "sn", "givenName", "mail", "telephoneNumber",
+            "postalAddress", "title", "description", "knowledgeInformation", "georchestraObjectIdentifier", "mobile",
+            "facsimileTelephoneNumber", "street", "l", "o", "manager", "jpegPhoto", "shadowExpire",
+            "privacyPolicyAgreementDate", "oAuth2Provider", "oAuth2Uid", "userPassword", "objectClass");
+
+    /**
+     * User attributes the extended LDAP user lookups need whatever the headers: the
+     * user name, email, and OAuth2 ids users are looked up by, the user id, and the
+     * password expiration
+     */
+    static final List<String> LOOKUP_ATTRIBUTES = List.of(USERNAME_ATTRIBUTE, "objectClass", "mail",
+            "georchestraObjectIdentifier", "oAuth2Provider", "oAuth2Uid", "shadowExpire");
+
+    private final Set<String> userAttributes;
+
+    private LdapAttributeProjection(Set<String> userAttributes) {
+        this.userAttributes = userAttributes;
+    }
+
+    /**
+     * @param config the gateway configuration, defining the enabled headers
+     * @param mdc    the logging MDC configuration, if any
+     * @return the projection required by {@code config} and {@code mdc}
+     */
+    public static LdapAttributeProjection of(@NonNull GatewayConfigProperties config,
+            Optional<AuthenticationMdcConfigProperties> mdc) {
+        Stream<HeaderMappings> serviceHeaders = config.getServices().values().stream().map(Service::headers)
+                .flatMap(Optional::stream).map(headers -> config.getDefaultHeaders().copy().merge(headers));
+        List<HeaderMappings> mappings = Stream.concat(Stream.of(config.getDefaultHeaders()), serviceHeaders).toList();
+
+        boolean jsonUser = mappings.stream().anyMatch(m -> enabled(m.getJsonUser()));
+        Set<String> attributes = new LinkedHashSet<>();
+        for (HeaderAttributes header : HEADER_ATTRIBUTES) {
+            if (jsonUser || mappings.stream().map(header.header()).anyMatch(LdapAttributeProjection::enabled)) {
+                attributes.addAll(header.attributes());
+            }
+        }
+        if (mdc.map(AuthenticationMdcConfigProperties::isId).orElse(false)) {
+            attributes.add(USERNAME_ATTRIBUTE);
+        }
+        return new LdapAttributeProjection(attributes);
+    }
+
+    private static boolean enabled(Optional<Boolean> header) {
+        return header.orElse(Boolean.FALSE);
+    }
+
+    /**
+     * @param rolesAttribute the user attribute holding the role DNs, if any
+     * @return the user attributes to request
+     */
+    public String[] userAttributes(String rolesAttribute) {
+        Set<String> attributes = new LinkedHashSet<>(userAttributes);
+        if (StringUtils.hasText(rolesAttribute)) {
+            attributes.add(rolesAttribute);
+        }
+        return attributes.toArray(String[]::new);
+    }
+
+    /**
+     * @return the schema user attributes that are not requested
+     */
+    public Set<String> prunedUserAttributes() {
+        Set<String> pruned = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        pruned.addAll(SCHEMA_ATTRIBUTES);
+        userAttributes.forEach(pruned::remove);
+        return pruned;
+    }
+
+    /**
+     * @param rolesAttribute the user attribute holding the role DNs, if any
+     * @return the user attributes to request when looking up a user to build the
+     *         geOrchestra user
+     */
+    public String[] lookupAttributes(String rolesAttribute) {
+        Set<String> attributes = new LinkedHashSet<>(LOOKUP_ATTRIBUTES);
+        attributes.addAll(List.of(userAttributes(rolesAttribute)));
+        return attributes.toArray(String[]::new);
+    }
+
+    /**
+     * @return the schema user attributes that are not requested by user lookups
+     */
+    public Set<String> prunedLookupAttributes() {
+        Set<String> pruned = prunedUserAttributes();
+        LOOKUP_ATTRIBUTES.forEach(pruned::remove);
+        return pruned;
+    }
+
+    /**
+     * Determines the user attributes an LDAP configuration shall request at
+     * authentication, logging the pruned ones.
+     *
+     * @param configName      the LDAP configuration name
+     * @param configured      the explicitly configured returning attributes, if
+     *                        any, which take precedence over the projection
+     * @param activeDirectory whether the LDAP configuration is an Active Directory,
+     *                        whose schema the projection doesn't apply to
+     * @param rolesAttribute  the user attribute holding the role DNs, if any
+     * @return the attributes to request, {@code null} meaning all of them
+     */
+    public String[] returningAttributes(@NonNull String configName, String[] configured, boolean activeDirectory,
+            String rolesAttribute) {
+        if (configured != null || activeDirectory) {
+            return configured;
+        }
+        String[] attributes = userAttributes(rolesAttribute);
+        log.info("LDAP config {} requests user attributes {} at authentication, pruned {}", configName,
+                List.of(attributes), prunedUserAttributes());
+        return attributes;
+    }
+}
@@ -20,15 +20,26 @@ package org.georchestra.gateway.security.ldap;
 
 import static org.springframework.security.config.Customizer.withDefaults;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Stream;
 
+import org.georchestra.gateway.logging.mdc.config.AuthenticationMdcConfigProperties;
+import org.georchestra.gateway.model.GatewayConfigProperties;
 import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties;
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.LoginThrottling;
 import org.georchestra.gateway.security.ServerHttpSecurityCustomizer;
 import org.georchestra.gateway.security.ldap.basic.BasicLdapAuthenticationConfiguration;
 import org.georchestra.gateway.security.ldap.basic.BasicLdapAuthenticationProvider;
 import org.georchestra.gateway.security.ldap.extended.ExtendedLdapAuthenticationConfiguration;
 import org.georchestra.gateway.security.ldap.extended.GeorchestraLdapAuthenticationProvider;
+import org.georchestra.gateway.security.ldap.throttling.InMemoryLoginAttemptsStore;
+import org.georchestra.gateway.security.ldap.throttling.LoginAttemptsStore;
+import org.georchestra.gateway.security.ldap.throttling.LoginThrottle;
+import org.georchestra.gateway.security.ldap.throttling.ThrottlingReactiveAuthenticationManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -80,7 +91,7 @@ import lombok.extern.slf4j.Slf4j;
  * @see ExtendedLdapAuthenticationConfiguration
  */
 @Configuration(proxyBeanMethods = true)
-@EnableConfigurationProperties(GeorchestraGatewaySecurityConfigProperties.class)
+@EnableConfigurationProperties({ GeorchestraGatewaySecurityConfigProperties.class, GatewayConfigProperties.class })
 @Import({ //
         BasicLdapAuthenticationConfiguration.class, //
         ExtendedLdapAuthenticationConfiguration.class })
@@ -113,6 +124,41 @@ public class LdapAuthenticationConfiguration {
         return new LDAPAuthenticationCustomizer();
     }
 
+    /**
+     * Computes the LDAP user attributes to request at authentication out of the
+     * enabled headers and logging MDC configuration, for LDAP configurations that
+     * don't explicitly set their returning attributes.
+     */
+    @Bean
+    LdapAttributeProjection ldapAttributeProjection(GatewayConfigProperties config,
+            Optional<AuthenticationMdcConfigProperties> mdcConfig) {
+        return LdapAttributeProjection.of(config, mdcConfig);
+    }
+
+    /**
+     * Creates the {@link LoginThrottle} for failed LDAP logins, if
+     * {@link LoginThrottling#isEnabled() enabled}.
+     * <p>
+     * Failed logins are kept in an {@link InMemoryLoginAttemptsStore} unless a
+     * {@link LoginAttemptsStore} bean is provided, e.g. to share them across
+     * gateway replicas.
+     * </p>
+     */
+    @Bean
+    @ConditionalOnProperty(name = "georchestra.gateway.security.login-throttling.enabled", havingValue = "true")
+    LoginThrottle loginThrottle(GeorchestraGatewaySecurityConfigProperties config,
+            ObjectProvider<LoginAttemptsStore> store) {
+        LoginThrottling throttling = config.getLoginThrottling();
+        log.info("Throttling failed LDAP logins: {}", throttling);
+        Duration retention = throttling.getWindow().multipliedBy(2);
+        if (throttling.getLockout().compareTo(retention) > 0) {
+            retention = throttling.getLockout();
+        }
+        final Duration keyRetention = retention;
+        return new LoginThrottle(throttling, store
+                .getIfAvailable(() -> new InMemoryLoginAttemptsStore(throttling.getMaxTrackedKeys(), keyRetention)));
+    }
+
     /**
      * Creates an {@link AuthenticationWebFilter} for LDAP authentication.
      * <p>
@@ -141,12 +187,13 @@ public class LdapAuthenticationConfiguration {
      * @param basic    a list of {@link BasicLdapAuthenticationProvider} instances
      * @param extended a list of {@link GeorchestraLdapAuthenticationProvider}
      *                 instances
+     * @param throttle throttles failed logins before they reach LDAP, if enabled
      * @return a {@link ReactiveAuthenticationManager} if providers are available,
      *         otherwise {@code null}
      */
     @Bean
     ReactiveAuthenticationManager ldapAuthenticationManager(List<BasicLdapAuthenticationProvider> basic,
-            List<GeorchestraLdapAuthenticationProvider> extended) {
+            List<GeorchestraLdapAuthenticationProvider> extended, Optional<LoginThrottle> throttle) {
 
         List<AuthenticationProvider> flattened = Stream.concat(basic.stream(), extended.stream())
                 .map(AuthenticationProvider.class::cast).toList();
@@ -157,6 +204,8 @@ public class LdapAuthenticationConfiguration {
         }
 
         ProviderManager providerManager = new ProviderManager(flattened);
-        return new ReactiveAuthenticationManagerAdapter(providerManager);
+        ReactiveAuthenticationManager manager = new ReactiveAuthenticationManagerAdapter(providerManager);
+        return throttle.<ReactiveAuthenticationManager>map(t -> new ThrottlingReactiveAuthenticationManager(manager, t))
+                .orElse(manager);
     }
 }
@@ -54,8 +54,9 @@ public class LdapConfigBuilder {
                 .activeDirectory(config.isActiveDirectory()).url(config.getUrl()).baseDn(config.getBaseDn())
                 .usersRdn(config.getUsers().getRdn()).usersSearchFilter(searchFilter)
                 .returningAttributes(config.getUsers().getReturningAttributes()).rolesRdn(config.getRoles().getRdn())
-                .rolesSearchFilter(config.getRoles().getSearchFilter()).adminDn(toOptional(config.getAdminDn()))
-                .adminPassword(toOptional(config.getAdminPassword())).build();
+                .rolesSearchFilter(config.getRoles().getSearchFilter())
+                .rolesAttribute(toOptional(config.getRoles().getAttribute()).orElse(null))
+                .adminDn(toOptional(config.getAdminDn())).adminPassword(toOptional(config.getAdminPassword())).build();
     }
 
     /**
@@ -70,9 +71,13 @@ public class LdapConfigBuilder {
         return ExtendedLdapConfig.builder().name(name).enabled(config.isEnabled()).url(config.getUrl())
                 .baseDn(config.getBaseDn()).usersRdn(config.getUsers().getRdn()).usersSearchFilter(searchFilter)
                 .returningAttributes(config.getUsers().getReturningAttributes()).rolesRdn(config.getRoles().getRdn())
-                .rolesSearchFilter(config.getRoles().getSearchFilter()).orgsRdn(config.getOrgs().getRdn())
-                .pendingOrgsRdn(config.getOrgs().getPendingRdn()).adminDn(toOptional(config.getAdminDn()))
-                .adminPassword(toOptional(config.getAdminPassword())).build();
+                .rolesSearchFilter(config.getRoles().getSearchFilter())
+                .rolesAttribute(toOptional(config.getRoles().getAttribute()).orElse(null))
+                .orgsRdn(config.getOrgs().getRdn()).pendingOrgsRdn(config.getOrgs().getPendingRdn())
+                .adminDn(toOptional(config.getAdminDn())).adminPassword(toOptional(config.getAdminPassword()))
+                .snapshot(config.getSnapshot()).circuitBreaker(config.getCircuitBreaker())
+                .priority(config.getPriority()).lookupTimeout(config.getLookupTimeout()).replicas(config.getReplicas())
+                .build();
     }
 
     /**
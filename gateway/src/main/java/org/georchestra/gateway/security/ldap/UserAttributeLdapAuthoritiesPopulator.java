@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+import org.springframework.ldap.core.DirContextOperations;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.ldap.userdetails.DefaultLdapAuthoritiesPopulator;
+import org.springframework.security.ldap.userdetails.LdapAuthoritiesPopulator;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link LdapAuthoritiesPopulator} that reads the user's roles from an
+ * attribute of the user entry itself, such as {@code memberOf} when OpenLDAP's
+ * memberof overlay is enabled, instead of searching the roles organizational
+ * unit.
+ * <p>
+ * The attribute values are expected to be role DNs. Only the ones directly
+ * under the roles base DN are considered, and their first RDN value is turned
+ * into an authority the same way {@link DefaultLdapAuthoritiesPopulator} does
+ * by default: upper-cased and prefixed with {@code ROLE_}. For example,
+ * {@code cn=administrator,ou=roles,dc=georchestra,dc=org} becomes
+ * {@code ROLE_ADMINISTRATOR}.
+ * </p>
+ * <p>
+ * Since the user entry is already fetched when locating the user to bind as,
+ * this saves one LDAP search per authentication. The attribute must be part of
+ * the user search returning attributes, which is operational for
+ * {@code memberOf} and hence not returned unless explicitly requested.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap")
+public class UserAttributeLdapAuthoritiesPopulator implements LdapAuthoritiesPopulator {
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final @NonNull String rolesAttribute;
+
+    private final @NonNull LdapName rolesBaseDn;
+
+    /**
+     * @param rolesAttribute the user entry attribute holding the role DNs, e.g.
+     *                       {@code memberOf}
+     * @param baseDn         the directory base DN, e.g.
+     *                       {@code dc=georchestra,dc=org}
+     * @param rolesRdn       the roles organizational unit, relative to
+     *                       {@code baseDn}, e.g. {@code ou=roles}
+     * @throws IllegalArgumentException if {@code baseDn} or {@code rolesRdn} are
+     *                                  not valid DNs
+     */
+    public UserAttributeLdapAuthoritiesPopulator(@NonNull String rolesAttribute, @NonNull String baseDn,
+            @NonNull String rolesRdn) {
+        this.rolesAttribute = rolesAttribute;
+        try {
+            LdapName dn = new LdapName(baseDn);
+            dn.addAll(new LdapName(rolesRdn));
+            this.rolesBaseDn = dn;
+        } catch (InvalidNameException e) {
+            throw new IllegalArgumentException("Invalid roles base DN: %s,%s".formatted(rolesRdn, baseDn), e);
+        }
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getGrantedAuthorities(DirContextOperations userData,
+            String username) {
+        String[] values = userData.getStringAttributes(rolesAttribute);
+        if (values == null) {
+            log.debug("User {} has no {} attribute", username, rolesAttribute);
+            return List.of();
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>(values.length);
+        for (String value : values) {
+            String role = roleName(value);
+            if (role != null) {
+                authorities.add(new SimpleGrantedAuthority(ROLE_PREFIX + role.toUpperCase(Locale.ROOT)));
+            }
+        }
+        log.debug("Roles of user {} from its {} attribute: {}", username, rolesAttribute, authorities);
+        return authorities;
+    }
+
+    /**
+     * @return the role name if {@code dn} is a role directly under the roles base
+     *         DN, {@code null} otherwise
+     */
+    private String roleName(String dn) {
+        try {
+            LdapName name = new LdapName(dn);
+            if (name.size() == rolesBaseDn.size() + 1 && name.startsWith(rolesBaseDn)) {
+                return name.getRdn(name.size() - 1).getValue().toString();
+            }
+        } catch (InvalidNameException e) {
+            log.debug("Ignoring invalid {} value {}", rolesAttribute, dn);
+        }
+        return null;
+    }
+}
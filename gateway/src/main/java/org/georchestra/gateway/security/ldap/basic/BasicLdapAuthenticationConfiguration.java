@@ -19,8 +19,10 @@
 package org.georchestra.gateway.security.ldap.basic;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties;
+import org.georchestra.gateway.security.ldap.LdapAttributeProjection;
 import org.georchestra.gateway.security.ldap.extended.ExtendedLdapAuthenticationConfiguration;
 import org.springframework.beans.factory.BeanCreationException;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -96,32 +98,40 @@ public class BasicLdapAuthenticationConfiguration {
      * Creates a list of LDAP authentication providers based on the enabled LDAP
      * configurations.
      *
-     * @param configs the list of enabled LDAP configurations
+     * @param configs    the list of enabled LDAP configurations
+     * @param projection the user attributes required by the gateway, if known
      * @return a list of {@link BasicLdapAuthenticationProvider} instances
      */
     @Bean
-    List<BasicLdapAuthenticationProvider> ldapAuthenticationProviders(List<LdapServerConfig> configs) {
-        return configs.stream().map(this::createLdapProvider).toList();
+    List<BasicLdapAuthenticationProvider> ldapAuthenticationProviders(List<LdapServerConfig> configs,
+            Optional<LdapAttributeProjection> projection) {
+        return configs.stream().map(config -> createLdapProvider(config, projection)).toList();
     }
 
     /**
      * Creates an {@link BasicLdapAuthenticationProvider} for a given LDAP
      * configuration.
      *
-     * @param config the LDAP server configuration
+     * @param config     the LDAP server configuration
+     * @param projection the user attributes required by the gateway, if known
      * @return an initialized {@link BasicLdapAuthenticationProvider} instance
      * @throws BeanCreationException if an error occurs during provider creation
      */
-    private BasicLdapAuthenticationProvider createLdapProvider(LdapServerConfig config) {
+    private BasicLdapAuthenticationProvider createLdapProvider(LdapServerConfig config,
+            Optional<LdapAttributeProjection> projection) {
         log.info("Creating LDAP AuthenticationProvider '{}' with URL {}", config.getName(), config.getUrl());
 
+        String[] returningAttributes = projection
+                .map(p -> p.returningAttributes(config.getName(), config.getReturningAttributes(),
+                        config.isActiveDirectory(), config.getRolesAttribute()))
+                .orElse(config.getReturningAttributes());
         try {
             LdapAuthenticationProvider provider = new LdapAuthenticatorProviderBuilder().url(config.getUrl())
                     .baseDn(config.getBaseDn()).userSearchBase(config.getUsersRdn())
                     .userSearchFilter(config.getUsersSearchFilter()).rolesSearchBase(config.getRolesRdn())
-                    .rolesSearchFilter(config.getRolesSearchFilter()).adminDn(config.getAdminDn().orElse(null))
-                    .adminPassword(config.getAdminPassword().orElse(null))
-                    .returningAttributes(config.getReturningAttributes()).build();
+                    .rolesSearchFilter(config.getRolesSearchFilter()).rolesAttribute(config.getRolesAttribute())
+                    .adminDn(config.getAdminDn().orElse(null)).adminPassword(config.getAdminPassword().orElse(null))
+                    .returningAttributes(returningAttributes).build();
             return new BasicLdapAuthenticationProvider(config.getName(), provider);
         } catch (RuntimeException e) {
             throw new BeanCreationException("Error creating LDAP Authentication Provider for config " + config.getName()
@@ -20,8 +20,11 @@ package org.georchestra.gateway.security.ldap.basic;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.stream.Stream;
+
 import org.georchestra.ds.users.AccountDao;
 import org.georchestra.gateway.security.ldap.NoPasswordLdapUserDetailsMapper;
+import org.georchestra.gateway.security.ldap.UserAttributeLdapAuthoritiesPopulator;
 import org.georchestra.gateway.security.ldap.extended.ExtendedLdapAuthenticationProvider;
 import org.georchestra.gateway.security.ldap.extended.ExtendedPasswordPolicyAwareContextSource;
 import org.springframework.ldap.core.support.BaseLdapPathContextSource;
@@ -30,6 +33,10 @@ import org.springframework.security.core.authority.mapping.SimpleAuthorityMapper
 import org.springframework.security.ldap.authentication.BindAuthenticator;
 import org.springframework.security.ldap.search.FilterBasedLdapUserSearch;
 import org.springframework.security.ldap.userdetails.DefaultLdapAuthoritiesPopulator;
+import org.springframework.security.ldap.userdetails.LdapAuthoritiesPopulator;
+import org.springframework.util.StringUtils;
+
+import com.google.common.annotations.VisibleForTesting;
 
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -43,7 +50,8 @@ import lombok.experimental.Accessors;
  * <li>LDAP connection properties (URL, base DN, admin credentials)</li>
  * <li>User search configuration (search base, filter, returning
  * attributes)</li>
- * <li>Role resolution configuration (group search base and filter)</li>
+ * <li>Role resolution configuration (group search base and filter, or a user
+ * attribute holding the role DNs)</li>
  * <li>Integration with an optional {@link AccountDao} for user account
  * management</li>
  * </ul>
@@ -74,6 +82,13 @@ public class LdapAuthenticatorProviderBuilder {
     private @Setter String rolesSearchBase;
     private @Setter String rolesSearchFilter;
 
+    /**
+     * Optional user attribute holding the user's role DNs (e.g. {@code memberOf}).
+     * If set, roles are read from the user entry instead of searching
+     * {@link #rolesSearchBase} with {@link #rolesSearchFilter}.
+     */
+    private @Setter String rolesAttribute;
+
     private @Setter String adminDn;
     private @Setter String adminPassword;
 
@@ -88,6 +103,13 @@ public class LdapAuthenticatorProviderBuilder {
      */
     private @Setter String[] returningAttributes = null;
 
+    /**
+     * Optional context source for binds and searches, e.g. to balance them across
+     * read replicas. Defaults to {@link #createContextSource(String) one} for
+     * {@link #url}.
+     */
+    private @Setter BaseLdapPathContextSource contextSource;
+
     /**
      * Builds and returns an {@link ExtendedLdapAuthenticationProvider} based on the
      * configured settings.
@@ -103,9 +125,10 @@ public class LdapAuthenticatorProviderBuilder {
         requireNonNull(rolesSearchBase, "Roles search base is not set");
         requireNonNull(rolesSearchFilter, "Roles search filter is not set");
 
-        final ExtendedPasswordPolicyAwareContextSource contextSource = createContextSource();
+        final BaseLdapPathContextSource contextSource = this.contextSource == null ? createContextSource(url)
+                : this.contextSource;
         final BindAuthenticator authenticator = createLdapAuthenticator(contextSource);
-        final DefaultLdapAuthoritiesPopulator rolesPopulator = createLdapAuthoritiesPopulator(contextSource);
+        final LdapAuthoritiesPopulator rolesPopulator = createLdapAuthoritiesPopulator(contextSource);
 
         ExtendedLdapAuthenticationProvider provider = new ExtendedLdapAuthenticationProvider(authenticator,
                 rolesPopulator);
@@ -122,18 +145,46 @@ public class LdapAuthenticatorProviderBuilder {
     private BindAuthenticator createLdapAuthenticator(BaseLdapPathContextSource contextSource) {
         FilterBasedLdapUserSearch search = new FilterBasedLdapUserSearch(userSearchBase, userSearchFilter,
                 contextSource);
-        search.setReturningAttributes(returningAttributes);
+        final String[] attributes = userSearchReturningAttributes();
+        search.setReturningAttributes(attributes);
 
         BindAuthenticator authenticator = new BindAuthenticator(contextSource);
         authenticator.setUserSearch(search);
+        if (attributes != null) {
+            // also applies to the user attributes read back after binding
+            authenticator.setUserAttributes(attributes);
+        }
         authenticator.afterPropertiesSet();
         return authenticator;
     }
 
     /**
-     * Creates and configures the LDAP context source for authentication.
+     * Adds the {@link #rolesAttribute}, if any, to the {@link #returningAttributes}
+     * since operational attributes like {@code memberOf} are not returned unless
+     * explicitly requested.
      */
-    private ExtendedPasswordPolicyAwareContextSource createContextSource() {
+    @VisibleForTesting
+    String[] userSearchReturningAttributes() {
+        if (!StringUtils.hasText(rolesAttribute)) {
+            return returningAttributes;
+        }
+        if (returningAttributes == null) {
+            return new String[] { "*", rolesAttribute };
+        }
+        if (Stream.of(returningAttributes).anyMatch(rolesAttribute::equalsIgnoreCase)) {
+            return returningAttributes;
+        }
+        return Stream.concat(Stream.of(returningAttributes), Stream.of(rolesAttribute)).toArray(String[]::new);
+    }
+
+    /**
+     * Creates and configures the LDAP context source for authentication against the
+     * server at the given URL.
+     *
+     * @param url the LDAP server URL
+     * @return an initialized context source, using the admin credentials if set
+     */
+    public ExtendedPasswordPolicyAwareContextSource createContextSource(String url) {
         ExtendedPasswordPolicyAwareContextSource context = new ExtendedPasswordPolicyAwareContextSource(url);
         context.setBase(baseDn);
         if (adminDn != null) {
@@ -153,9 +204,13 @@ public class LdapAuthenticatorProviderBuilder {
     }
 
     /**
-     * Creates and configures the LDAP role populator.
+     * Creates and configures the LDAP role populator, reading roles from the
+     * {@link #rolesAttribute} if set, or searching for them otherwise.
      */
-    private DefaultLdapAuthoritiesPopulator createLdapAuthoritiesPopulator(BaseLdapPathContextSource contextSource) {
+    private LdapAuthoritiesPopulator createLdapAuthoritiesPopulator(BaseLdapPathContextSource contextSource) {
+        if (StringUtils.hasText(rolesAttribute)) {
+            return new UserAttributeLdapAuthoritiesPopulator(rolesAttribute, baseDn, rolesSearchBase);
+        }
         DefaultLdapAuthoritiesPopulator authoritiesPopulator = new DefaultLdapAuthoritiesPopulator(contextSource,
                 rolesSearchBase);
         authoritiesPopulator.setGroupSearchFilter(rolesSearchFilter);
@@ -132,6 +132,13 @@ public class LdapServerConfig {
      */
     private @NonNull String rolesSearchFilter;
 
+    /**
+     * Optional user attribute holding the user's role DNs (e.g. {@code memberOf}).
+     * If set, roles are read from the user entry instead of searched with
+     * {@link #rolesSearchFilter}.
+     */
+    private String rolesAttribute;
+
     /**
      * Attributes to retrieve when searching for user details.
      * <p>
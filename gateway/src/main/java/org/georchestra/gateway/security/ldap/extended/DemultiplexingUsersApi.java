@@ -23,16 +23,22 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import org.georchestra.gateway.accounts.admin.AccountsChanged;
 import org.georchestra.security.api.OrganizationsApi;
 import org.georchestra.security.api.UsersApi;
 import org.georchestra.security.model.GeorchestraUser;
 import org.georchestra.security.model.Organization;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.event.EventListener;
 
 import com.google.common.annotations.VisibleForTesting;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 
 /**
  * A service responsible for selecting the appropriate {@link UsersApi} based on
@@ -54,6 +60,23 @@ import lombok.RequiredArgsConstructor;
  * established through configuration properties following the pattern:
  * {@code georchestra.gateway.security.<serviceName>.*}.
  * </p>
+ * <p>
+ * LDAP configurations with an enabled {@link DirectorySnapshot snapshot} are
+ * looked up in memory once the snapshot is loaded, falling back to LDAP for
+ * entries not found in it.
+ * </p>
+ * <p>
+ * LDAP configurations with an enabled {@link LdapCircuitBreaker circuit
+ * breaker} send their LDAP lookups through it, serving the last known version
+ * of a user while the directory is unavailable.
+ * </p>
+ * <p>
+ * Lookups not bound to a specific service, like
+ * {@link #findByUsername(String)}, search the services in iteration order,
+ * which is expected to be their configured priority, returning the first match.
+ * With an {@link LdapFanOutLookup} they query all services concurrently
+ * instead.
+ * </p>
  *
  * Example usage:
  * 
@@ -69,8 +92,7 @@ import lombok.RequiredArgsConstructor;
  * @see UsersApi
  * @see OrganizationsApi
  */
-@RequiredArgsConstructor
-public class DemultiplexingUsersApi {
+public class DemultiplexingUsersApi implements MeterBinder, DisposableBean {
 
     /**
      * Mapping between service names and their corresponding {@link UsersApi}
@@ -84,6 +106,93 @@ public class DemultiplexingUsersApi {
      */
     private final @NonNull Map<String, OrganizationsApi> orgsByConfigName;
 
+    /**
+     * Mapping between service names and their in-memory directory snapshot, for the
+     * ones that have it enabled.
+     */
+    private final @NonNull Map<String, DirectorySnapshot> snapshotsByConfigName;
+
+    /**
+     * Mapping between service names and their LDAP circuit breaker, for the ones
+     * that have it enabled.
+     */
+    private final @NonNull Map<String, LdapCircuitBreaker> breakersByConfigName;
+
+    /**
+     * Queries all services concurrently for lookups not bound to a specific
+     * service, {@code null} to query them one after the other.
+     */
+    private final LdapFanOutLookup fanOut;
+
+    public DemultiplexingUsersApi(@NonNull Map<String, UsersApi> usersByConfigName,
+            @NonNull Map<String, OrganizationsApi> orgsByConfigName) {
+        this(usersByConfigName, orgsByConfigName, Map.of());
+    }
+
+    public DemultiplexingUsersApi(@NonNull Map<String, UsersApi> usersByConfigName,
+            @NonNull Map<String, OrganizationsApi> orgsByConfigName,
+            @NonNull Map<String, DirectorySnapshot> snapshotsByConfigName) {
+        this(usersByConfigName, orgsByConfigName, snapshotsByConfigName, Map.of());
+    }
+
+    public DemultiplexingUsersApi(@NonNull Map<String, UsersApi> usersByConfigName,
+            @NonNull Map<String, OrganizationsApi> orgsByConfigName,
+            @NonNull Map<String, DirectorySnapshot> snapshotsByConfigName,
+            @NonNull Map<String, LdapCircuitBreaker> breakersByConfigName) {
+        this(usersByConfigName, orgsByConfigName, snapshotsByConfigName, breakersByConfigName, null);
+    }
+
+    /**
+     * @param fanOut queries all services concurrently for lookups not bound to a
+     *               specific service, or {@code null} to query them one after the
+     *               other in {@code usersByConfigName} iteration order
+     */
+    public DemultiplexingUsersApi(@NonNull Map<String, UsersApi> usersByConfigName,
+            @NonNull Map<String, OrganizationsApi> orgsByConfigName,
+            @NonNull Map<String, DirectorySnapshot> snapshotsByConfigName,
+            @NonNull Map<String, LdapCircuitBreaker> breakersByConfigName, LdapFanOutLookup fanOut) {
+        this.usersByConfigName = usersByConfigName;
+        this.orgsByConfigName = orgsByConfigName;
+        this.snapshotsByConfigName = snapshotsByConfigName;
+        this.breakersByConfigName = breakersByConfigName;
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Starts loading and synchronizing the directory snapshots, if any.
+     */
+    public void start() {
+        snapshotsByConfigName.values().forEach(DirectorySnapshot::start);
+    }
+
+    /**
+     * Stops synchronizing the directory snapshots, if any.
+     */
+    @Override
+    public void destroy() {
+        snapshotsByConfigName.values().forEach(DirectorySnapshot::stop);
+        if (fanOut != null) {
+            fanOut.destroy();
+        }
+    }
+
+    /**
+     * Refreshes the directory snapshot entries affected by a change.
+     */
+    @EventListener(AccountsChanged.class)
+    public void onAccountsChanged(AccountsChanged event) {
+        snapshotsByConfigName.values().forEach(snapshot -> snapshot.onAccountsChanged(event));
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        snapshotsByConfigName.values().forEach(snapshot -> snapshot.bindTo(registry));
+        breakersByConfigName.values().forEach(breaker -> breaker.bindTo(registry));
+        if (fanOut != null) {
+            fanOut.bindTo(registry);
+        }
+    }
+
     /**
      * Retrieves the set of configured service names.
      *
@@ -104,27 +213,20 @@ public class DemultiplexingUsersApi {
      *                              given service.
      */
     public Optional<ExtendedGeorchestraUser> findByUsername(@NonNull String serviceName, @NonNull String username) {
-        UsersApi usersApi = Objects.requireNonNull(usersByConfigName.get(serviceName),
-                () -> "No UsersApi found for config named " + serviceName);
-
-        Optional<GeorchestraUser> user = usersApi.findByUsername(username);
-        return extendUserWithOrganization(serviceName, user);
+        return find(serviceName, "username:" + username, snapshot -> snapshot.findByUsername(username),
+                usersApi -> usersApi.findByUsername(username));
     }
 
     /**
-     * Finds a user by username in the first registered LDAP service.
-     * <p>
-     * This method is useful when only one LDAP service is expected, but may not be
-     * reliable when multiple LDAP configurations exist.
-     * </p>
+     * Finds a user by username across all registered LDAP services, returning the
+     * match from the one with the highest priority.
      *
      * @param username the username to search for.
      * @return an {@link Optional} containing the {@link ExtendedGeorchestraUser},
      *         or empty if the user is not found.
      */
     public Optional<ExtendedGeorchestraUser> findByUsername(@NonNull String username) {
-        return usersByConfigName.keySet().stream().findFirst()
-                .flatMap(serviceName -> findByUsername(serviceName, username));
+        return findFirst(serviceName -> findByUsername(serviceName, username));
     }
 
     /**
@@ -138,37 +240,28 @@ public class DemultiplexingUsersApi {
      *                              given service.
      */
     public Optional<ExtendedGeorchestraUser> findByEmail(@NonNull String serviceName, @NonNull String email) {
-        UsersApi usersApi = usersByConfigName.get(serviceName);
-        Objects.requireNonNull(usersApi, () -> "No UsersApi found for config named " + serviceName);
-        Optional<GeorchestraUser> user = usersApi.findByEmail(email);
-
-        return extendUserWithOrganization(serviceName, user);
+        return find(serviceName, "email:" + email.toLowerCase(), snapshot -> snapshot.findByEmail(email),
+                usersApi -> usersApi.findByEmail(email));
     }
 
     /**
-     * Finds a user by email in the first registered LDAP service.
-     * <p>
-     * This method is useful when only one LDAP service is expected, but may not be
-     * reliable when multiple LDAP configurations exist.
-     * </p>
+     * Finds a user by email across all registered LDAP services, returning the
+     * match from the one with the highest priority.
      *
      * @param email the email to search for.
      * @return an {@link Optional} containing the {@link ExtendedGeorchestraUser},
      *         or empty if the user is not found.
      */
     public Optional<ExtendedGeorchestraUser> findByEmail(@NonNull String email) {
-        String serviceName = usersByConfigName.keySet().stream().findFirst().get();
-        UsersApi usersApi = usersByConfigName.get(serviceName);
-        Optional<GeorchestraUser> user = usersApi.findByEmail(email);
-
-        return extendUserWithOrganization(serviceName, user);
+        return findFirst(serviceName -> findByEmail(serviceName, email));
     }
 
     /**
      * Finds a user by their OAuth2 provider and unique identifier.
      * <p>
-     * This method attempts to match an OAuth2-authenticated user within the first
-     * registered LDAP service.
+     * This method attempts to match an OAuth2-authenticated user across all
+     * registered LDAP services, returning the match from the one with the highest
+     * priority.
      * </p>
      *
      * @param oauth2Provider the OAuth2 provider name (e.g., "google", "github").
@@ -176,17 +269,68 @@ public class DemultiplexingUsersApi {
      *                       provider.
      * @return an {@link Optional} containing the {@link ExtendedGeorchestraUser},
      *         or empty if the user is not found.
-     * @throws NullPointerException if no {@link UsersApi} is registered for the
-     *                              selected service.
      */
     public Optional<ExtendedGeorchestraUser> findByOAuth2Uid(@NonNull String oauth2Provider,
             @NonNull String oauth2Uid) {
-        return usersByConfigName.keySet().stream().findFirst().flatMap(serviceName -> {
-            UsersApi usersApi = Objects.requireNonNull(usersByConfigName.get(serviceName),
-                    () -> "No UsersApi found for config named " + serviceName);
+        return findFirst(serviceName -> find(serviceName, "oauth2:" + oauth2Provider + ":" + oauth2Uid,
+                snapshot -> snapshot.findByOAuth2Uid(oauth2Provider, oauth2Uid),
+                usersApi -> usersApi.findByOAuth2Uid(oauth2Provider, oauth2Uid)));
+    }
+
+    /**
+     * Performs a lookup in all services, concurrently if {@link #fanOut} is set, or
+     * otherwise one after the other until a match is found.
+     */
+    private Optional<ExtendedGeorchestraUser> findFirst(Function<String, Optional<ExtendedGeorchestraUser>> lookup) {
+        if (fanOut != null) {
+            return fanOut.lookup(lookup);
+        }
+        for (String serviceName : usersByConfigName.keySet()) {
+            Optional<ExtendedGeorchestraUser> found = lookup.apply(serviceName);
+            if (found.isPresent()) {
+                return found;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Looks up a user and its organization, serving it from the service's directory
+     * snapshot if fully resolved there, and otherwise querying LDAP through the
+     * service's circuit breaker, if any.
+     *
+     * @param key identifies the lookup for the circuit breaker to serve its last
+     *            known result while LDAP is unavailable
+     */
+    private Optional<ExtendedGeorchestraUser> find(String serviceName, String key,
+            Function<DirectorySnapshot, Optional<GeorchestraUser>> fromSnapshot,
+            Function<UsersApi, Optional<GeorchestraUser>> fromLdap) {
+        Optional<ExtendedGeorchestraUser> inMemory = findInSnapshot(serviceName, fromSnapshot);
+        if (inMemory.isPresent()) {
+            return inMemory;
+        }
+        Supplier<Optional<ExtendedGeorchestraUser>> lookup = () -> extendUserWithOrganization(serviceName,
+                findUser(serviceName, fromSnapshot, fromLdap));
+        LdapCircuitBreaker breaker = breakersByConfigName.get(serviceName);
+        return breaker == null ? lookup.get() : breaker.lookup(key, lookup);
+    }
 
-            Optional<GeorchestraUser> user = usersApi.findByOAuth2Uid(oauth2Provider, oauth2Uid);
-            return extendUserWithOrganization(serviceName, user);
+    /**
+     * @return the user with its organization if both are in the service's loaded
+     *         directory snapshot, empty otherwise
+     */
+    private Optional<ExtendedGeorchestraUser> findInSnapshot(String serviceName,
+            Function<DirectorySnapshot, Optional<GeorchestraUser>> fromSnapshot) {
+        DirectorySnapshot snapshot = loadedSnapshot(serviceName);
+        if (snapshot == null) {
+            return Optional.empty();
+        }
+        return fromSnapshot.apply(snapshot).flatMap(user -> {
+            String orgName = user.getOrganization();
+            if (orgName == null) {
+                return Optional.of(new ExtendedGeorchestraUser(user));
+            }
+            return snapshot.findOrgByShortName(orgName).map(org -> new ExtendedGeorchestraUser(user).setOrg(org));
         });
     }
 
@@ -197,7 +341,7 @@ public class DemultiplexingUsersApi {
      * @param serviceName the LDAP service configuration name.
      * @param user        the resolved user, if present.
      * @return an {@link Optional} containing the {@link ExtendedGeorchestraUser}
-     *         with organization details.
+     *         with organization details, looked up the first time they're accessed.
      * @throws NullPointerException if no {@link OrganizationsApi} is registered for
      *                              the given service.
      */
@@ -206,8 +350,51 @@ public class DemultiplexingUsersApi {
         OrganizationsApi orgsApi = Objects.requireNonNull(orgsByConfigName.get(serviceName),
                 () -> "No OrganizationsApi found for config named " + serviceName);
 
-        Organization org = user.map(GeorchestraUser::getOrganization).flatMap(orgsApi::findByShortName).orElse(null);
+        return user.map(u -> {
+            ExtendedGeorchestraUser extended = new ExtendedGeorchestraUser(u);
+            String shortName = u.getOrganization();
+            if (shortName != null) {
+                extended.setOrgResolver(() -> findOrg(serviceName, orgsApi, shortName).orElse(null));
+            }
+            return extended;
+        });
+    }
+
+    /**
+     * Looks up a user in the service's directory snapshot if loaded, falling back
+     * to its {@link UsersApi} if not found.
+     *
+     * @throws NullPointerException if no {@link UsersApi} is registered for the
+     *                              given service.
+     */
+    private Optional<GeorchestraUser> findUser(String serviceName,
+            Function<DirectorySnapshot, Optional<GeorchestraUser>> fromSnapshot,
+            Function<UsersApi, Optional<GeorchestraUser>> fromLdap) {
+        UsersApi usersApi = Objects.requireNonNull(usersByConfigName.get(serviceName),
+                () -> "No UsersApi found for config named " + serviceName);
+        DirectorySnapshot snapshot = loadedSnapshot(serviceName);
+        Optional<GeorchestraUser> user = snapshot == null ? Optional.empty() : fromSnapshot.apply(snapshot);
+        return user.or(() -> fromLdap.apply(usersApi));
+    }
+
+    /**
+     * Looks up an organization in the service's directory snapshot if loaded,
+     * falling back to its {@link OrganizationsApi} through the service's circuit
+     * breaker, if any.
+     */
+    private Optional<Organization> findOrg(String serviceName, OrganizationsApi orgsApi, String shortName) {
+        DirectorySnapshot snapshot = loadedSnapshot(serviceName);
+        Optional<Organization> org = snapshot == null ? Optional.empty() : snapshot.findOrgByShortName(shortName);
+        if (org.isPresent()) {
+            return org;
+        }
+        Supplier<Optional<Organization>> lookup = () -> orgsApi.findByShortName(shortName);
+        LdapCircuitBreaker breaker = breakersByConfigName.get(serviceName);
+        return breaker == null ? lookup.get() : breaker.lookupOrg("org:" + shortName, lookup);
+    }
 
-        return user.map(ExtendedGeorchestraUser::new).map(u -> u.setOrg(org));
+    private DirectorySnapshot loadedSnapshot(String serviceName) {
+        DirectorySnapshot snapshot = snapshotsByConfigName.get(serviceName);
+        return snapshot != null && snapshot.isLoaded() ? snapshot : null;
     }
 }
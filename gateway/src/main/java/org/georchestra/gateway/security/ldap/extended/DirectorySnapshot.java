@@ -0,0 +1,572 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.springframework.ldap.query.LdapQueryBuilder.query;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.ldap.LdapName;
+
+import org.georchestra.gateway.accounts.admin.AccountsChanged;
+import org.georchestra.security.api.OrganizationsApi;
+import org.georchestra.security.api.UsersApi;
+import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
+import org.springframework.beans.BeanUtils;
+import org.springframework.ldap.core.AttributesMapper;
+import org.springframework.ldap.core.LdapOperations;
+import org.springframework.ldap.query.LdapQuery;
+import org.springframework.ldap.support.LdapUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory snapshot of the users and organizations of an extended LDAP
+ * directory, used by {@link DemultiplexingUsersApi} to avoid querying LDAP on
+ * each lookup.
+ * <p>
+ * The whole directory is loaded through the {@link UsersApi} and
+ * {@link OrganizationsApi} into immutable indexes (users by user name, email,
+ * and OAuth2 id, organizations by short name), which are replaced atomically on
+ * each update, so lookups are lock-free map reads.
+ * </p>
+ * <p>
+ * Once loaded, the snapshot is kept up to date by polling the users, roles, and
+ * organizations branches for entries whose {@code modifyTimestamp} changed
+ * since the last poll. Modified users and organizations are re-fetched, while
+ * role and organization memberships are updated from the {@code member}
+ * attribute of the modified entry, without fetching each member. Entries
+ * modified at the last poll's latest timestamp are remembered, so they are not
+ * applied again on the next polls. Since deleted entries can't be found this
+ * way, the whole directory is also reloaded periodically, and
+ * {@link AccountsChanged} events refresh the affected entries immediately.
+ * </p>
+ * <p>
+ * Lookups return copies of the snapshot entries, so callers are free to modify
+ * them. Until the snapshot is loaded, {@link #isLoaded()} returns {@code false}
+ * and callers shall query LDAP directly.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+public class DirectorySnapshot implements MeterBinder {
+
+    static final String METRICS_PREFIX = "georchestra.gateway.ldap.snapshot";
+
+    /**
+     * LDAP generalized time format used to query {@code modifyTimestamp}
+     */
+    private static final DateTimeFormatter GENERALIZED_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    /**
+     * Margin subtracted from the local clock when starting to poll for changes, to
+     * account for clock skew between the gateway and the LDAP server
+     */
+    private static final Duration CLOCK_SKEW_MARGIN = Duration.ofMinutes(5);
+
+    private final @NonNull ExtendedLdapConfig config;
+    private final @NonNull UsersApi usersApi;
+    private final @NonNull OrganizationsApi orgsApi;
+    private final @NonNull LdapOperations ldap;
+    private final @NonNull Clock clock;
+
+    private volatile Index index;
+
+    private volatile Watermark watermark;
+
+    private volatile Instant lastSync;
+    private volatile Instant lastFullLoad;
+
+    private final AtomicLong updates = new AtomicLong();
+    private Timer loadTimer;
+
+    private ScheduledExecutorService executor;
+
+    public DirectorySnapshot(@NonNull ExtendedLdapConfig config, @NonNull UsersApi usersApi,
+            @NonNull OrganizationsApi orgsApi, @NonNull LdapOperations ldap) {
+        this(config, usersApi, orgsApi, ldap, Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    DirectorySnapshot(@NonNull ExtendedLdapConfig config, @NonNull UsersApi usersApi, @NonNull OrganizationsApi orgsApi,
+            @NonNull LdapOperations ldap, @NonNull Clock clock) {
+        this.config = config;
+        this.usersApi = usersApi;
+        this.orgsApi = orgsApi;
+        this.ldap = ldap;
+        this.clock = clock;
+    }
+
+    /**
+     * Immutable lookup indexes. Keys for emails are lower case, keys for OAuth2
+     * ids are {@code <provider>:<uid>}.
+     */
+    @VisibleForTesting
+    record Index(Map<String, GeorchestraUser> usersByUsername, Map<String, GeorchestraUser> usersByEmail,
+            Map<String, GeorchestraUser> usersByOAuth2Uid, Map<String, Organization> orgsByShortName) {
+
+        static Index of(Collection<GeorchestraUser> users, Collection<Organization> orgs) {
+            Map<String, GeorchestraUser> byUsername = new HashMap<>();
+            Map<String, GeorchestraUser> byEmail = new HashMap<>();
+            Map<String, GeorchestraUser> byOAuth2Uid = new HashMap<>();
+            for (GeorchestraUser user : users) {
+                if (user.getUsername() == null) {
+                    continue;
+                }
+                byUsername.put(user.getUsername(), user);
+                if (user.getEmail() != null) {
+                    byEmail.put(emailKey(user.getEmail()), user);
+                }
+                if (user.getOAuth2Provider() != null && user.getOAuth2Uid() != null) {
+                    byOAuth2Uid.put(oauth2Key(user.getOAuth2Provider(), user.getOAuth2Uid()), user);
+                }
+            }
+            Map<String, Organization> byShortName = orgs.stream().filter(o -> o.getShortName() != null)
+                    .collect(Collectors.toMap(Organization::getShortName, Function.identity(), (o1, o2) -> o1));
+            return new Index(Map.copyOf(byUsername), Map.copyOf(byEmail), Map.copyOf(byOAuth2Uid),
+                    Map.copyOf(byShortName));
+        }
+
+        /**
+         * @param users users to replace or add, an empty value meaning the user no
+         *              longer exists
+         * @param orgs  organizations to replace or add, an empty value meaning the
+         *              organization no longer exists
+         * @return a new index with the changes applied
+         */
+        Index with(Map<String, Optional<GeorchestraUser>> users, Map<String, Optional<Organization>> orgs) {
+            Map<String, GeorchestraUser> newUsers = new HashMap<>(usersByUsername);
+            users.forEach((username, user) -> user.ifPresentOrElse(u -> newUsers.put(username, u),
+                    () -> newUsers.remove(username)));
+            Map<String, Organization> newOrgs = new HashMap<>(orgsByShortName);
+            orgs.forEach((shortName, org) -> org.ifPresentOrElse(o -> newOrgs.put(shortName, o),
+                    () -> newOrgs.remove(shortName)));
+            return of(newUsers.values(), newOrgs.values());
+        }
+
+        /**
+         * @param roleMembers user names of the members of the given roles, by role
+         *                    {@code cn}
+         * @param orgMembers  user names of the members of the given organizations,
+         *                    by organization {@code cn}
+         * @return a new index with the roles and organization of the users updated
+         *         as per the given memberships
+         */
+        Index withMembers(Map<String, Set<String>> roleMembers, Map<String, Set<String>> orgMembers) {
+            if (roleMembers.isEmpty() && orgMembers.isEmpty()) {
+                return this;
+            }
+            Map<String, Optional<GeorchestraUser>> changed = new HashMap<>();
+            for (GeorchestraUser user : usersByUsername.values()) {
+                GeorchestraUser updated = user;
+                for (Map.Entry<String, Set<String>> role : roleMembers.entrySet()) {
+                    String cn = role.getKey();
+                    String name = cn.startsWith("ROLE_") ? cn : "ROLE_" + cn;
+                    List<String> roles = updated.getRoles() == null ? List.of() : updated.getRoles();
+                    boolean member = role.getValue().contains(user.getUsername());
+                    if (member != (roles.contains(name) || roles.contains(cn))) {
+                        updated = updated == user ? copy(user) : updated;
+                        List<String> newRoles = new ArrayList<>(roles);
+                        newRoles.removeIf(r -> r.equals(name) || r.equals(cn));
+                        if (member) {
+                            newRoles.add(name);
+                        }
+                        updated.setRoles(newRoles);
+                    }
+                }
+                for (Map.Entry<String, Set<String>> org : orgMembers.entrySet()) {
+                    String cn = org.getKey();
+                    boolean member = org.getValue().contains(user.getUsername());
+                    if (member != cn.equals(updated.getOrganization())) {
+                        updated = updated == user ? copy(user) : updated;
+                        updated.setOrganization(member ? cn : null);
+                    }
+                }
+                if (updated != user) {
+                    changed.put(user.getUsername(), Optional.of(updated));
+                }
+            }
+            return changed.isEmpty() ? this : with(changed, Map.of());
+        }
+
+        static String emailKey(String email) {
+            return email.toLowerCase(Locale.ROOT);
+        }
+
+        static String oauth2Key(String provider, String uid) {
+            return provider + ":" + uid;
+        }
+    }
+
+    /**
+     * Oldest {@code modifyTimestamp} the next poll will look for, in LDAP
+     * generalized time format, and the entries modified at that time that were
+     * already applied. LDAP has no strict {@code >} filter and timestamps have a
+     * one second resolution, so the next poll returns these entries again, and
+     * also those modified later within the same second.
+     */
+    @VisibleForTesting
+    record Watermark(String timestamp, Set<String> applied) {
+
+        boolean isApplied(String modifyTimestamp, String entry) {
+            return timestamp.equals(modifyTimestamp) && applied.contains(entry);
+        }
+    }
+
+    /**
+     * The entries returned by a poll that were not applied yet, and the watermark
+     * for the next poll
+     */
+    private class Poll {
+        final Watermark since;
+        String timestamp;
+        final Set<String> applied;
+
+        Poll(Watermark since) {
+            this.since = since;
+            this.timestamp = since.timestamp();
+            this.applied = new HashSet<>(since.applied());
+        }
+
+        List<Map<String, List<String>>> modified(String base, String idAttribute, String... attributes) {
+            List<Map<String, List<String>>> unseen = new ArrayList<>();
+            for (Map<String, List<String>> entry : modifiedSince(base, since.timestamp(), attributes)) {
+                String modifyTimestamp = entry.getOrDefault("modifyTimestamp", List.of()).stream()
+                        .max(String::compareTo).orElse(null);
+                String key = base + "/" + entry.getOrDefault(idAttribute, List.of());
+                if (since.isApplied(modifyTimestamp, key)) {
+                    continue;
+                }
+                unseen.add(entry);
+                if (modifyTimestamp != null) {
+                    int cmp = modifyTimestamp.compareTo(timestamp);
+                    if (cmp > 0) {
+                        timestamp = modifyTimestamp;
+                        applied.clear();
+                    }
+                    if (cmp >= 0) {
+                        applied.add(key);
+                    }
+                }
+            }
+            return unseen;
+        }
+
+        Watermark next() {
+            return new Watermark(timestamp, Set.copyOf(applied));
+        }
+    }
+
+    /**
+     * Starts loading the snapshot and polling for changes in the background.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ldap-snapshot-" + config.getName());
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1, config.getSnapshot().getPollInterval().toMillis());
+        executor.scheduleWithFixedDelay(this::syncSafely, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling for changes.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return whether the snapshot has been loaded and can be used for lookups
+     */
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    public Optional<GeorchestraUser> findByUsername(@NonNull String username) {
+        return findUser(index -> index.usersByUsername().get(username));
+    }
+
+    public Optional<GeorchestraUser> findByEmail(@NonNull String email) {
+        return findUser(index -> index.usersByEmail().get(Index.emailKey(email)));
+    }
+
+    public Optional<GeorchestraUser> findByOAuth2Uid(@NonNull String oauth2Provider, @NonNull String oauth2Uid) {
+        return findUser(index -> index.usersByOAuth2Uid().get(Index.oauth2Key(oauth2Provider, oauth2Uid)));
+    }
+
+    public Optional<Organization> findOrgByShortName(@NonNull String shortName) {
+        Index current = this.index;
+        return Optional.ofNullable(current == null ? null : current.orgsByShortName().get(shortName))
+                .map(DirectorySnapshot::copy);
+    }
+
+    private Optional<GeorchestraUser> findUser(Function<Index, GeorchestraUser> lookup) {
+        Index current = this.index;
+        return Optional.ofNullable(current == null ? null : lookup.apply(current)).map(DirectorySnapshot::copy);
+    }
+
+    /**
+     * Loads the whole directory, replacing the current snapshot.
+     */
+    @VisibleForTesting
+    synchronized void load() {
+        final Instant start = clock.instant();
+        final long startNanos = System.nanoTime();
+        List<GeorchestraUser> users = usersApi.findAll();
+        List<Organization> orgs = orgsApi.findAll();
+        this.index = Index.of(users, orgs);
+        this.watermark = new Watermark(GENERALIZED_TIME.format(start.minus(CLOCK_SKEW_MARGIN)), Set.of());
+        this.lastFullLoad = start;
+        this.lastSync = start;
+        long elapsed = System.nanoTime() - startNanos;
+        if (loadTimer != null) {
+            loadTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        }
+        log.info("Loaded LDAP snapshot for {}: {} users, {} organizations in {}ms", config.getName(), users.size(),
+                orgs.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    /**
+     * Loads the snapshot if not yet loaded or the full reload interval elapsed,
+     * otherwise applies the changes made since the last poll.
+     */
+    @VisibleForTesting
+    void sync() {
+        Instant fullLoad = this.lastFullLoad;
+        if (index == null || fullLoad == null
+                || clock.instant().isAfter(fullLoad.plus(config.getSnapshot().getFullReloadInterval()))) {
+            load();
+            return;
+        }
+        final Instant start = clock.instant();
+        final Poll poll = new Poll(this.watermark);
+        Set<String> usernames = new HashSet<>();
+        Set<String> orgNames = new HashSet<>();
+        Map<String, Set<String>> roleMembers = new HashMap<>();
+        Map<String, Set<String>> orgMembers = new HashMap<>();
+
+        for (Map<String, List<String>> entry : poll.modified(config.getUsersRdn(), "uid", "uid")) {
+            usernames.addAll(entry.getOrDefault("uid", List.of()));
+        }
+        for (Map<String, List<String>> entry : poll.modified(config.getRolesRdn(), "cn", "cn", "member")) {
+            Set<String> members = memberUids(entry);
+            entry.getOrDefault("cn", List.of()).forEach(role -> roleMembers.put(role, members));
+        }
+        for (Map<String, List<String>> entry : poll.modified(config.getOrgsRdn(), "cn", "cn", "member")) {
+            Set<String> members = memberUids(entry);
+            entry.getOrDefault("cn", List.of()).forEach(org -> {
+                orgNames.add(org);
+                orgMembers.put(org, members);
+            });
+        }
+
+        refresh(usernames, orgNames, roleMembers, orgMembers);
+        this.watermark = poll.next();
+        this.lastSync = start;
+    }
+
+    private void syncSafely() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            log.warn("Error synchronizing LDAP snapshot for {}: {}", config.getName(), e.getMessage());
+            log.debug("LDAP snapshot synchronization error", e);
+        }
+    }
+
+    /**
+     * Re-fetches the given users and organizations from LDAP and applies them to
+     * the snapshot, along with the given role and organization memberships.
+     */
+    private synchronized void refresh(Set<String> usernames, Set<String> orgNames, Map<String, Set<String>> roleMembers,
+            Map<String, Set<String>> orgMembers) {
+        if (index == null
+                || (usernames.isEmpty() && orgNames.isEmpty() && roleMembers.isEmpty() && orgMembers.isEmpty())) {
+            return;
+        }
+        Map<String, Optional<GeorchestraUser>> users = new HashMap<>();
+        usernames.forEach(username -> users.put(username, usersApi.findByUsername(username)));
+        Map<String, Optional<Organization>> orgs = new HashMap<>();
+        orgNames.forEach(shortName -> orgs.put(shortName, orgsApi.findByShortName(shortName)));
+        this.index = index.with(users, orgs).withMembers(roleMembers, orgMembers);
+        updates.addAndGet(users.size() + (long) orgs.size() + roleMembers.size());
+        log.debug("Updated LDAP snapshot for {}: users {}, organizations {}, roles {}", config.getName(), usernames,
+                orgNames, roleMembers.keySet());
+    }
+
+    /**
+     * Refreshes the entries affected by a change notified by other means than
+     * polling, including deletions.
+     */
+    public void onAccountsChanged(@NonNull AccountsChanged event) {
+        Index current = this.index;
+        if (current == null) {
+            return;
+        }
+        try {
+            final String id = event.getId();
+            switch (event.getType()) {
+            case USER -> refresh(Set.of(id), Set.of(), Map.of(), Map.of());
+            case ORGANIZATION -> refresh(Set.of(), Set.of(id), Map.of(), Map.of(id, members(config.getOrgsRdn(), id)));
+            case ROLE -> {
+                String cn = id.startsWith("ROLE_") ? id.substring("ROLE_".length()) : id;
+                refresh(Set.of(), Set.of(), Map.of(cn, members(config.getRolesRdn(), cn)), Map.of());
+            }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Error refreshing LDAP snapshot for {} on {}: {}", config.getName(), event, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the user names of the members of the role or organization {@code cn}
+     *         under {@code base}, empty if it doesn't exist
+     */
+    private Set<String> members(String base, String cn) {
+        Set<String> members = new HashSet<>();
+        search(query().base(base).attributes("member").where("cn").is(cn), "member")
+                .forEach(entry -> members.addAll(memberUids(entry)));
+        return members;
+    }
+
+    private Set<String> memberUids(Map<String, List<String>> entry) {
+        Set<String> uids = new HashSet<>();
+        for (String dn : entry.getOrDefault("member", List.of())) {
+            try {
+                uids.add(LdapUtils.getStringValue(new LdapName(dn), "uid"));
+            } catch (NamingException | RuntimeException e) {
+                log.debug("Ignoring member {}: {}", dn, e.getMessage());
+            }
+        }
+        return uids;
+    }
+
+    /**
+     * @return the requested attributes, plus {@code modifyTimestamp}, of the
+     *         entries under {@code base} modified since {@code since}
+     */
+    private List<Map<String, List<String>>> modifiedSince(String base, String since, String... attributes) {
+        String[] attrs = new String[attributes.length + 1];
+        System.arraycopy(attributes, 0, attrs, 0, attributes.length);
+        attrs[attributes.length] = "modifyTimestamp";
+        return search(query().base(base).attributes(attrs).where("modifyTimestamp").gte(since), attrs);
+    }
+
+    private List<Map<String, List<String>>> search(LdapQuery query, String... attrs) {
+        AttributesMapper<Map<String, List<String>>> mapper = entry -> {
+            Map<String, List<String>> values = new HashMap<>();
+            for (String name : attrs) {
+                Attribute attribute = entry.get(name);
+                if (attribute != null) {
+                    List<String> list = new ArrayList<>();
+                    NamingEnumeration<?> all = attribute.getAll();
+                    while (all.hasMore()) {
+                        list.add(String.valueOf(all.next()));
+                    }
+                    values.put(name, list);
+                }
+            }
+            return values;
+        };
+        return ldap.search(query, mapper);
+    }
+
+    static GeorchestraUser copy(GeorchestraUser user) {
+        GeorchestraUser copy = new GeorchestraUser();
+        BeanUtils.copyProperties(user, copy);
+        if (user.getRoles() != null) {
+            copy.setRoles(new ArrayList<>(user.getRoles()));
+        }
+        return copy;
+    }
+
+    static Organization copy(Organization org) {
+        Organization copy = new Organization();
+        BeanUtils.copyProperties(org, copy);
+        if (org.getMembers() != null) {
+            copy.setMembers(new ArrayList<>(org.getMembers()));
+        }
+        return copy;
+    }
+
+    @VisibleForTesting
+    Index getIndex() {
+        return index;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        final String name = config.getName();
+        Gauge.builder(METRICS_PREFIX + ".users", this, s -> s.index == null ? 0 : s.index.usersByUsername().size())
+                .tag("config", name).description("Number of users in the LDAP snapshot").register(registry);
+        Gauge.builder(METRICS_PREFIX + ".orgs", this, s -> s.index == null ? 0 : s.index.orgsByShortName().size())
+                .tag("config", name).description("Number of organizations in the LDAP snapshot").register(registry);
+        Gauge.builder(METRICS_PREFIX + ".sync.lag", this, DirectorySnapshot::syncLagSeconds).tag("config", name)
+                .baseUnit("seconds").description("Time since the LDAP snapshot was last synchronized")
+                .register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".updates", updates, AtomicLong::get).tag("config", name)
+                .description("Number of LDAP snapshot entries refreshed incrementally").register(registry);
+        this.loadTimer = Timer.builder(METRICS_PREFIX + ".load").tag("config", name)
+                .description("Time to fully load the LDAP snapshot").register(registry);
+    }
+
+    private double syncLagSeconds() {
+        Instant last = this.lastSync;
+        return last == null ? Double.NaN : Duration.between(last, clock.instant()).toMillis() / 1000d;
+    }
+}
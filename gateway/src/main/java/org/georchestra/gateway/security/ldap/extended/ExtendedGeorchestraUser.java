@@ -18,6 +18,8 @@
  */
 package org.georchestra.gateway.security.ldap.extended;
 
+import java.util.function.Supplier;
+
 import org.georchestra.security.model.GeorchestraUser;
 import org.georchestra.security.model.Organization;
 
@@ -29,15 +31,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import lombok.experimental.Delegate;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * An extended version of {@link GeorchestraUser} that includes an associated
  * {@link Organization}.
  * <p>
  * This class wraps an existing {@link GeorchestraUser} instance while adding an
- * {@link #org} property, which represents the user's resolved organization.
- * This is useful for systems where user information is stored separately from
- * organizational details.
+ * {@link #getOrg() org} property, which represents the user's resolved
+ * organization. This is useful for systems where user information is stored
+ * separately from organizational details.
+ * </p>
+ * <p>
+ * The organization can also be {@link #setOrgResolver(Supplier) resolved
+ * lazily}, the first time {@link #getOrg()} is called, so that it's only looked
+ * up when actually needed, for example to contribute organization headers.
  * </p>
  *
  * <h3>Example Usage:</h3>
@@ -72,6 +80,7 @@ import lombok.experimental.Delegate;
  */
 @SuppressWarnings("serial")
 @RequiredArgsConstructor
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
 @Accessors(chain = true)
 public class ExtendedGeorchestraUser extends GeorchestraUser {
 
@@ -82,10 +91,84 @@ public class ExtendedGeorchestraUser extends GeorchestraUser {
     private final @NonNull @Delegate GeorchestraUser user;
 
     /**
-     * The organization associated with this user.
+     * The organization associated with this user, once resolved.
+     */
+    @JsonIgnore
+    private Organization resolvedOrg;
+
+    /**
+     * Resolves {@link #resolvedOrg} on first access, {@code null} once resolved.
+     */
+    @JsonIgnore
+    private transient Supplier<Organization> orgResolver;
+
+    /**
+     * Returns the organization associated with this user, resolving it if needed.
+     * <p>
+     * If resolving the organization fails, the error is logged and {@code null}
+     * returned, and resolving it will be attempted again on the next call.
+     * </p>
+     *
+     * @return the user's organization, or {@code null} if it has none
+     */
+    @JsonIgnore
+    public synchronized Organization getOrg() {
+        if (orgResolver != null) {
+            try {
+                resolvedOrg = orgResolver.get();
+                orgResolver = null;
+            } catch (RuntimeException e) {
+                log.warn("Error resolving organization {} of user {}: {}", getOrganization(), getUsername(),
+                        e.getMessage());
+                return null;
+            }
+        }
+        return resolvedOrg;
+    }
+
+    /**
+     * Sets the already resolved organization associated with this user.
+     *
+     * @param org the user's organization, or {@code null}
+     * @return this
+     */
+    public synchronized ExtendedGeorchestraUser setOrg(Organization org) {
+        this.resolvedOrg = org;
+        this.orgResolver = null;
+        return this;
+    }
+
+    /**
+     * Sets the function used to resolve the user's organization the first time
+     * {@link #getOrg()} is called.
+     *
+     * @param orgResolver resolves the user's organization, possibly to {@code null}
+     * @return this
+     */
+    public synchronized ExtendedGeorchestraUser setOrgResolver(@NonNull Supplier<Organization> orgResolver) {
+        this.resolvedOrg = null;
+        this.orgResolver = orgResolver;
+        return this;
+    }
+
+    /**
+     * Sets this user's organization to the one of {@code other}, without resolving
+     * it if it's not yet resolved.
+     *
+     * @param other the user to share the organization with
+     * @return this
+     */
+    public ExtendedGeorchestraUser setOrgFrom(@NonNull ExtendedGeorchestraUser other) {
+        return other.isOrgResolved() ? setOrg(other.getOrg()) : setOrgResolver(other::getOrg);
+    }
+
+    /**
+     * @return whether the user's organization has already been resolved
      */
     @JsonIgnore
-    private @Getter @Setter Organization org;
+    public synchronized boolean isOrgResolved() {
+        return orgResolver == null;
+    }
 
     /**
      * Compares this user to another object based on the properties of the
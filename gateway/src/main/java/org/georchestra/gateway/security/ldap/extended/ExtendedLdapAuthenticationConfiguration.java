@@ -22,9 +22,12 @@ package org.georchestra.gateway.security.ldap.extended;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import org.georchestra.ds.orgs.OrgsDao;
 import org.georchestra.ds.orgs.OrgsDaoImpl;
@@ -40,8 +43,11 @@ import org.georchestra.ds.users.AccountDao;
 import org.georchestra.ds.users.AccountDaoImpl;
 import org.georchestra.ds.users.UserRule;
 import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties;
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.CircuitBreaker;
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.LdapFanOut;
 import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.Server;
 import org.georchestra.gateway.security.GeorchestraUserMapperExtension;
+import org.georchestra.gateway.security.ldap.LdapAttributeProjection;
 import org.georchestra.gateway.security.ldap.basic.LdapAuthenticatorProviderBuilder;
 import org.georchestra.security.api.OrganizationsApi;
 import org.georchestra.security.api.UsersApi;
@@ -51,6 +57,7 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
 import org.springframework.ldap.core.support.LdapContextSource;
 import org.springframework.security.ldap.userdetails.LdapUserDetails;
 
@@ -70,6 +77,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
 public class ExtendedLdapAuthenticationConfiguration {
 
+    private static final Comparator<ExtendedLdapConfig> BY_PRIORITY = Comparator
+            .comparingInt(ExtendedLdapConfig::getPriority).thenComparing(ExtendedLdapConfig::getName);
+
     /**
      * Registers a user mapper that resolves LDAP-authenticated users to
      * {@link GeorchestraUser}.
@@ -95,17 +105,32 @@ public class ExtendedLdapAuthenticationConfiguration {
         return config.extendedEnabled();
     }
 
+    /**
+     * Creates the context sources of the extended LDAP configurations, balancing
+     * reads across their read replicas, if any.
+     *
+     * @return the {@link LdapReadReplicas} registry
+     */
+    @Bean
+    LdapReadReplicas ldapReadReplicas() {
+        return new LdapReadReplicas();
+    }
+
     /**
      * Creates authentication providers for each enabled extended LDAP
      * configuration.
      *
-     * @param configs A list of enabled extended LDAP configurations.
+     * @param configs    A list of enabled extended LDAP configurations.
+     * @param projection The user attributes required by the gateway, if known.
+     * @param replicas   Creates the LDAP context sources, routing reads to
+     *                   replicas.
      * @return A list of configured {@link GeorchestraLdapAuthenticationProvider}
      *         instances.
      */
     @Bean
-    List<GeorchestraLdapAuthenticationProvider> extendedLdapAuthenticationProviders(List<ExtendedLdapConfig> configs) {
-        return configs.stream().map(this::createLdapProvider).toList();
+    List<GeorchestraLdapAuthenticationProvider> extendedLdapAuthenticationProviders(List<ExtendedLdapConfig> configs,
+            Optional<LdapAttributeProjection> projection, LdapReadReplicas replicas) {
+        return configs.stream().map(config -> createLdapProvider(config, projection, replicas)).toList();
     }
 
     /**
@@ -121,30 +146,40 @@ public class ExtendedLdapAuthenticationConfiguration {
      * credentials if provided.
      * </p>
      *
-     * @param config The {@link ExtendedLdapConfig} defining the LDAP connection
-     *               details and search configurations.
+     * @param config     The {@link ExtendedLdapConfig} defining the LDAP connection
+     *                   details and search configurations.
+     * @param projection The user attributes required by the gateway, if known.
+     * @param replicas   Creates the LDAP context sources, routing binds and lookups
+     *                   to read replicas, if any.
      * @return A configured {@link GeorchestraLdapAuthenticationProvider} for
      *         handling authentication against the specified LDAP server.
      * @throws IllegalStateException if an error occurs while creating the LDAP
      *                               authentication provider.
      */
-    private GeorchestraLdapAuthenticationProvider createLdapProvider(ExtendedLdapConfig config) {
+    private GeorchestraLdapAuthenticationProvider createLdapProvider(ExtendedLdapConfig config,
+            Optional<LdapAttributeProjection> projection, LdapReadReplicas replicas) {
         log.info("Creating extended LDAP AuthenticationProvider {} at {}", config.getName(), config.getUrl());
+        String[] returningAttributes = projection.map(p -> p.returningAttributes(config.getName(),
+                config.getReturningAttributes(), false, config.getRolesAttribute()))
+                .orElse(config.getReturningAttributes());
 
         final LdapTemplate ldapTemplate;
         try {
-            ldapTemplate = ldapTemplate(config);
+            ldapTemplate = ldapTemplate(config, replicas, projection);
             final AccountDao accountsDao = accountsDao(ldapTemplate, config);
-            ExtendedLdapAuthenticationProvider delegate = new LdapAuthenticatorProviderBuilder()//
+            LdapAuthenticatorProviderBuilder builder = new LdapAuthenticatorProviderBuilder()//
                     .url(config.getUrl())//
                     .baseDn(config.getBaseDn())//
                     .userSearchBase(config.getUsersRdn())//
                     .userSearchFilter(config.getUsersSearchFilter())//
                     .rolesSearchBase(config.getRolesRdn())//
                     .rolesSearchFilter(config.getRolesSearchFilter())//
+                    .rolesAttribute(config.getRolesAttribute())//
                     .adminDn(config.getAdminDn().orElse(null))//
                     .adminPassword(config.getAdminPassword().orElse(null))//
-                    .returningAttributes(config.getReturningAttributes()).accountDao(accountsDao).build();
+                    .returningAttributes(returningAttributes).accountDao(accountsDao);
+            builder.contextSource(replicas.contextSource(config, "bind", builder::createContextSource));
+            ExtendedLdapAuthenticationProvider delegate = builder.build();
             return new GeorchestraLdapAuthenticationProvider(config.getName(), delegate);
         } catch (Exception e) {
             throw new IllegalStateException(e);
@@ -155,27 +190,67 @@ public class ExtendedLdapAuthenticationConfiguration {
      * Registers a {@link DemultiplexingUsersApi} that routes user API calls to the
      * appropriate LDAP instance based on configuration.
      *
-     * @param configs The list of extended LDAP configurations.
+     * Configurations with an enabled {@link ExtendedLdapConfig#getSnapshot()
+     * snapshot} get a {@link DirectorySnapshot}, loaded in the background once the
+     * bean is initialized. Configurations with an enabled
+     * {@link ExtendedLdapConfig#getCircuitBreaker() circuit breaker} get an
+     * {@link LdapCircuitBreaker}.
+     * <p>
+     * Configurations are registered in {@link ExtendedLdapConfig#getPriority()
+     * priority} order, and queried concurrently through an {@link LdapFanOutLookup}
+     * if {@link LdapFanOut fan-out} is enabled and there are more than one.
+     *
+     * @param configs    The list of extended LDAP configurations.
+     * @param security   The global security configuration properties.
+     * @param replicas   Creates the LDAP context sources, routing lookups to read
+     *                   replicas.
+     * @param projection The user attributes required by the gateway, if known.
      * @return A {@link DemultiplexingUsersApi} instance.
      */
-    @Bean
-    DemultiplexingUsersApi demultiplexingUsersApi(List<ExtendedLdapConfig> configs) {
-        Map<String, UsersApi> usersByConfigName = new HashMap<>();
+    @Bean(initMethod = "start")
+    DemultiplexingUsersApi demultiplexingUsersApi(List<ExtendedLdapConfig> configs,
+            GeorchestraGatewaySecurityConfigProperties security, LdapReadReplicas replicas,
+            Optional<LdapAttributeProjection> projection) {
+        configs = configs.stream().sorted(BY_PRIORITY).toList();
+        Map<String, UsersApi> usersByConfigName = new LinkedHashMap<>();
         Map<String, OrganizationsApi> orgsByConfigName = new HashMap<>();
+        Map<String, DirectorySnapshot> snapshotsByConfigName = new HashMap<>();
+        Map<String, LdapCircuitBreaker> breakersByConfigName = new HashMap<>();
         for (ExtendedLdapConfig config : configs) {
             try {
-                LdapTemplate ldapTemplate = ldapTemplate(config);
+                LdapTemplate ldapTemplate = ldapTemplate(config, replicas, projection);
                 AccountDao accountsDao = accountsDao(ldapTemplate, config);
                 UsersApi usersApi = createUsersApi(config, ldapTemplate, accountsDao);
                 OrganizationsApi orgsApi = createOrgsApi(config, ldapTemplate, accountsDao);
+                projection.filter(p -> config.getReturningAttributes() == null).ifPresent(p -> log.info(
+                        "LDAP config {} requests user attributes {} on user lookups, pruned {}", config.getName(),
+                        List.of(p.lookupAttributes(config.getRolesAttribute())), p.prunedLookupAttributes()));
                 usersByConfigName.put(config.getName(), usersApi);
                 orgsByConfigName.put(config.getName(), orgsApi);
+                if (config.getSnapshot().isEnabled()) {
+                    log.info("Enabling in-memory directory snapshot for LDAP config {}", config.getName());
+                    snapshotsByConfigName.put(config.getName(),
+                            new DirectorySnapshot(config, usersApi, orgsApi, ldapTemplate));
+                }
+                if (config.getCircuitBreaker().isEnabled()) {
+                    log.info("Enabling LDAP circuit breaker for LDAP config {}", config.getName());
+                    breakersByConfigName.put(config.getName(),
+                            new LdapCircuitBreaker(config.getName(), config.getCircuitBreaker()));
+                }
             } catch (Exception ex) {
                 throw new BeanInitializationException(
                         "Error creating georchestra users api for ldap config " + config.getName(), ex);
             }
         }
-        return new DemultiplexingUsersApi(usersByConfigName, orgsByConfigName);
+        LdapFanOutLookup fanOut = null;
+        if (security.getLdapFanOut().isEnabled() && configs.size() > 1) {
+            List<LdapFanOutLookup.Target> targets = configs.stream()
+                    .map(c -> new LdapFanOutLookup.Target(c.getName(), c.getLookupTimeout())).toList();
+            log.info("Enabling concurrent user lookups across LDAP configs {}", usersByConfigName.keySet());
+            fanOut = new LdapFanOutLookup(targets, security.getLdapFanOut().getConcurrency());
+        }
+        return new DemultiplexingUsersApi(usersByConfigName, orgsByConfigName, snapshotsByConfigName,
+                breakersByConfigName, fanOut);
     }
 
     //////////////////////////////////////////////
@@ -215,17 +290,40 @@ public class ExtendedLdapAuthenticationConfiguration {
         return impl;
     }
 
-    private LdapTemplate ldapTemplate(ExtendedLdapConfig server) throws Exception {
-        LdapContextSource contextSource = new LdapContextSource();
-        contextSource.setUrl(server.getUrl());
-        contextSource.setBase(server.getBaseDn());
-        contextSource.afterPropertiesSet();
-
+    /**
+     * @return the template used by the {@link UsersApi} and {@link AccountDao}
+     *         lookups, requesting only the projected user attributes unless the
+     *         returning attributes are explicitly configured
+     */
+    private LdapTemplate ldapTemplate(ExtendedLdapConfig server, LdapReadReplicas replicas,
+            Optional<LdapAttributeProjection> projection) throws Exception {
+        BaseLdapPathContextSource contextSource = replicas.contextSource(server, "lookup",
+                url -> contextSource(server, url));
+        if (projection.isPresent() && server.getReturningAttributes() == null) {
+            LdapAttributeProjection p = projection.get();
+            contextSource = new ProjectingContextSource(contextSource, server.getUsersRdn(),
+                    p.lookupAttributes(server.getRolesAttribute()), p.prunedLookupAttributes());
+        }
         LdapTemplate ldapTemplate = new LdapTemplate(contextSource);
         ldapTemplate.afterPropertiesSet();
         return ldapTemplate;
     }
 
+    private LdapContextSource contextSource(ExtendedLdapConfig server, String url) {
+        LdapContextSource contextSource = new LdapContextSource();
+        contextSource.setUrl(url);
+        contextSource.setBase(server.getBaseDn());
+        CircuitBreaker circuitBreaker = server.getCircuitBreaker();
+        if (circuitBreaker.isEnabled()) {
+            // fail fast on unresponsive servers so the circuit breaker can kick in
+            contextSource.setBaseEnvironmentProperties(Map.of(//
+                    "com.sun.jndi.ldap.connect.timeout", String.valueOf(circuitBreaker.getConnectTimeout().toMillis()),
+                    "com.sun.jndi.ldap.read.timeout", String.valueOf(circuitBreaker.getReadTimeout().toMillis())));
+        }
+        contextSource.afterPropertiesSet();
+        return contextSource;
+    }
+
     private AccountDao accountsDao(LdapTemplate ldapTemplate, ExtendedLdapConfig ldapConfig) {
         String baseDn = ldapConfig.getBaseDn();
         String userSearchBaseDN = ldapConfig.getUsersRdn();
@@ -18,8 +18,13 @@
  */
 package org.georchestra.gateway.security.ldap.extended;
 
+import java.time.Duration;
 import java.util.Optional;
 
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.CircuitBreaker;
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.ReadReplicas;
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.Snapshot;
+
 import lombok.Builder;
 import lombok.Builder.Default;
 import lombok.Generated;
@@ -84,6 +89,13 @@ public class ExtendedLdapConfig {
      */
     private @NonNull String rolesSearchFilter;
 
+    /**
+     * Optional user attribute holding the user's role DNs (e.g. {@code memberOf}).
+     * If set, roles are read from the user entry instead of searched with
+     * {@link #rolesSearchFilter}.
+     */
+    private String rolesAttribute;
+
     /**
      * The attributes to be retrieved for users.
      * <p>
@@ -115,4 +127,36 @@ public class ExtendedLdapConfig {
      * The relative distinguished name (RDN) of the pending organization entries.
      */
     private @NonNull String pendingOrgsRdn;
+
+    /**
+     * In-memory directory snapshot configuration, disabled by default.
+     */
+    @Default
+    private @NonNull Snapshot snapshot = new Snapshot();
+
+    /**
+     * Circuit breaker configuration for user and organization lookups, disabled by
+     * default.
+     */
+    @Default
+    private @NonNull CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Order in which this configuration is searched for users not bound to a
+     * specific LDAP configuration, lower values first.
+     */
+    private int priority;
+
+    /**
+     * Maximum time to wait for a user lookup when querying all configurations
+     * concurrently.
+     */
+    @Default
+    private @NonNull Duration lookupTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Read replicas of the LDAP server at {@link #url}, none by default.
+     */
+    @Default
+    private @NonNull ReadReplicas replicas = new ReadReplicas();
 }
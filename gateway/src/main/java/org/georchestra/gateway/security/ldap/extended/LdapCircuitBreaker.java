@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.CircuitBreaker;
+import org.georchestra.gateway.security.exceptions.LdapUnavailableException;
+import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Circuit breaker for the user and organization lookups
+ * {@link DemultiplexingUsersApi} sends to an extended LDAP directory, serving
+ * the last known version of a user while the directory is failing.
+ * <p>
+ * The circuit is {@link State#CLOSED closed} while lookups succeed. After
+ * {@link CircuitBreaker#getFailureThreshold() failureThreshold} consecutive
+ * failures it {@link State#OPEN opens}, and lookups are not sent to LDAP for
+ * {@link CircuitBreaker#getOpenDuration() openDuration}. It then becomes
+ * {@link State#HALF_OPEN half-open}, letting a single probe lookup through: the
+ * circuit closes if the probe succeeds, and opens again otherwise.
+ * </p>
+ * <p>
+ * Organization lookups, resolved lazily after their user, go through the same
+ * circuit with {@link #lookupOrg(String, Supplier)}.
+ * </p>
+ * <p>
+ * Successful lookups are remembered by key. When the circuit is open or a
+ * lookup fails, the last known result for the same key is served instead, so
+ * already authenticated users keep working. Otherwise a lookup rejected by an
+ * open circuit throws {@link LdapUnavailableException}, and a failed one
+ * propagates its error.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.ldap.circuitbreaker} prefix, tagged by LDAP
+ * config name.
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+public class LdapCircuitBreaker implements MeterBinder {
+
+    static final String METRICS_PREFIX = "georchestra.gateway.ldap.circuitbreaker";
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final @NonNull String name;
+    private final @NonNull CircuitBreaker config;
+    private final @NonNull LongSupplier nanoClock;
+
+    private final Cache<String, ExtendedGeorchestraUser> lastKnown;
+    private final Cache<String, Organization> lastKnownOrgs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+
+    private final Map<State, AtomicLong> transitions = new EnumMap<>(State.class);
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param name   the LDAP configuration name
+     * @param config the circuit breaker configuration
+     */
+    public LdapCircuitBreaker(@NonNull String name, @NonNull CircuitBreaker config) {
+        this(name, config, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    LdapCircuitBreaker(@NonNull String name, @NonNull CircuitBreaker config, @NonNull LongSupplier nanoClock) {
+        this.name = name;
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.lastKnown = CacheBuilder.newBuilder().maximumSize(config.getStaleMaxSize())
+                .expireAfterWrite(config.getStaleTtl()).build();
+        this.lastKnownOrgs = CacheBuilder.newBuilder().maximumSize(config.getStaleMaxSize())
+                .expireAfterWrite(config.getStaleTtl()).build();
+        for (State s : State.values()) {
+            transitions.put(s, new AtomicLong());
+        }
+    }
+
+    /**
+     * Performs a user lookup through the circuit breaker.
+     *
+     * @param key    identifies the lookup (e.g. by user name or email), to serve
+     *               its last known result if needed
+     * @param lookup performs the LDAP lookup
+     * @return the lookup result, or the last known result for {@code key} if the
+     *         circuit is open or the lookup failed
+     * @throws LdapUnavailableException if the circuit is open and there's no last
+     *                                  known result for {@code key}
+     */
+    public Optional<ExtendedGeorchestraUser> lookup(@NonNull String key,
+            @NonNull Supplier<Optional<ExtendedGeorchestraUser>> lookup) {
+        return lookup(key, lookup, lastKnown, LdapCircuitBreaker::copy);
+    }
+
+    /**
+     * Performs an organization lookup through the circuit breaker.
+     *
+     * @param key    identifies the lookup (e.g. by organization short name), to
+     *               serve its last known result if needed
+     * @param lookup performs the LDAP lookup
+     * @return the lookup result, or the last known result for {@code key} if the
+     *         circuit is open or the lookup failed
+     * @throws LdapUnavailableException if the circuit is open and there's no last
+     *                                  known result for {@code key}
+     */
+    public Optional<Organization> lookupOrg(@NonNull String key, @NonNull Supplier<Optional<Organization>> lookup) {
+        return lookup(key, lookup, lastKnownOrgs, DirectorySnapshot::copy);
+    }
+
+    private <T> Optional<T> lookup(String key, Supplier<Optional<T>> lookup, Cache<String, T> lastKnownResults,
+            UnaryOperator<T> copy) {
+        if (!tryAcquire()) {
+            T stale = stale(key, lastKnownResults, copy);
+            if (stale == null) {
+                rejected.incrementAndGet();
+                throw new LdapUnavailableException("LDAP circuit breaker for %s is open".formatted(name));
+            }
+            return Optional.of(stale);
+        }
+        Optional<T> result;
+        boolean recorded = false;
+        try {
+            result = lookup.get();
+            onSuccess();
+            recorded = true;
+        } catch (RuntimeException e) {
+            onFailure(e);
+            recorded = true;
+            T stale = stale(key, lastKnownResults, copy);
+            if (stale == null) {
+                throw e;
+            }
+            return Optional.of(stale);
+        } finally {
+            if (!recorded) {
+                // e.g. an Error, let the next lookup probe again
+                releaseProbe();
+            }
+        }
+        result.ifPresentOrElse(found -> lastKnownResults.put(key, copy.apply(found)),
+                () -> lastKnownResults.invalidate(key));
+        return result;
+    }
+
+    /**
+     * @return a copy of the last known result for {@code key}, or {@code null}
+     */
+    private <T> T stale(String key, Cache<String, T> lastKnownResults, UnaryOperator<T> copy) {
+        T found = lastKnownResults.getIfPresent(key);
+        if (found == null) {
+            return null;
+        }
+        staleServed.incrementAndGet();
+        log.debug("Serving last known result for {} from LDAP config {}", key, name);
+        return copy.apply(found);
+    }
+
+    /**
+     * @return whether a lookup may be sent to LDAP, transitioning from open to
+     *         half-open when the open duration elapsed
+     */
+    private synchronized boolean tryAcquire() {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (nanoClock.getAsLong() - openedAtNanos < config.getOpenDuration().toNanos()) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+            probeInFlight = true;
+            return true;
+        case HALF_OPEN:
+        default:
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+            return true;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED);
+        }
+    }
+
+    private synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+
+    private synchronized void onFailure(RuntimeException e) {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN
+                || (state == State.CLOSED && consecutiveFailures >= Math.max(1, config.getFailureThreshold()))) {
+            openedAtNanos = nanoClock.getAsLong();
+            transition(State.OPEN);
+            log.warn("Opened LDAP circuit breaker for {} after {} consecutive failures: {}", name, consecutiveFailures,
+                    e.getMessage());
+        }
+    }
+
+    private void transition(State newState) {
+        log.info("LDAP circuit breaker for {}: {} -> {}", name, state, newState);
+        state = newState;
+        transitions.get(newState).incrementAndGet();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private static ExtendedGeorchestraUser copy(ExtendedGeorchestraUser user) {
+        GeorchestraUser copy = DirectorySnapshot.copy(user);
+        return new ExtendedGeorchestraUser(copy).setOrgFrom(user).setOrgUniqueId(user.getOrgUniqueId());
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder(METRICS_PREFIX + ".state", this, b -> b.getState().ordinal()).tag("config", name)
+                .description("LDAP circuit breaker state: 0 closed, 1 open, 2 half-open").register(registry);
+        transitions
+                .forEach((to, count) -> FunctionCounter.builder(METRICS_PREFIX + ".transitions", count, AtomicLong::get)
+                        .tag("config", name).tag("state", to.name().toLowerCase())
+                        .description("Number of LDAP circuit breaker state changes").register(registry));
+        FunctionCounter.builder(METRICS_PREFIX + ".stale", staleServed, AtomicLong::get).tag("config", name)
+                .description("Number of last known users and organizations served instead of querying LDAP")
+                .register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".rejected", rejected, AtomicLong::get).tag("config", name)
+                .description("Number of LDAP lookups rejected by an open circuit").register(registry);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.LdapFanOut;
+import org.georchestra.gateway.security.exceptions.LdapUnavailableException;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Looks up a user in several extended LDAP configurations concurrently,
+ * returning the match from the configuration with the highest priority.
+ * <p>
+ * All {@link Target targets} are queried at once. Their answers are then
+ * awaited in priority order, each target's wait bounded by its own
+ * {@link Target#timeout() timeout} since the lookup started. The first match is
+ * returned as soon as all the higher-priority targets answered they don't have
+ * the user, and the lookups still running are cancelled. This way a slow
+ * low-priority directory doesn't delay users found in a faster, higher-priority
+ * one.
+ * </p>
+ * <p>
+ * If a higher-priority target fails or times out, a lower-priority match can't
+ * be told apart from a shadowed one, nor an empty result from a missing user,
+ * so the lookup fails with {@link LdapUnavailableException} rather than
+ * returning a possibly wrong answer.
+ * </p>
+ * <p>
+ * Cancelling a lookup doesn't interrupt a blocked LDAP read, so the lookups run
+ * in a bounded pool of {@link LdapFanOut#getConcurrency() concurrency} threads
+ * per target, with a queue as long as the number of targets. A lookup that
+ * can't be queued while the pool is exhausted, for example by a stalled
+ * directory, counts as a timeout of its target.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.ldap.fanout} prefix, tagged by LDAP config
+ * name:
+ * <ul>
+ * <li>{@code .latency}: time taken by each target's lookup, tagged by
+ * {@code outcome=found|not_found|error|cancelled}</li>
+ * <li>{@code .timeouts}: number of lookups not awaited past the target's
+ * timeout, or rejected by the exhausted thread pool</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+public class LdapFanOutLookup implements MeterBinder, DisposableBean {
+
+    static final String METRICS_PREFIX = "georchestra.gateway.ldap.fanout";
+
+    /**
+     * An LDAP configuration to look users up in.
+     *
+     * @param name    the LDAP configuration name
+     * @param timeout maximum time to wait for its answer
+     */
+    public record Target(@NonNull String name, @NonNull Duration timeout) {
+    }
+
+    private final List<Target> targets;
+
+    private final ThreadPoolExecutor executor;
+
+    private volatile MeterRegistry registry;
+
+    /**
+     * Creates a lookup with the default concurrency.
+     *
+     * @param targets the LDAP configurations to query, in priority order
+     */
+    public LdapFanOutLookup(@NonNull List<Target> targets) {
+        this(targets, new LdapFanOut().getConcurrency());
+    }
+
+    /**
+     * @param targets     the LDAP configurations to query, in priority order
+     * @param concurrency the expected number of concurrent lookups, the thread pool
+     *                    having as many threads per target
+     */
+    public LdapFanOutLookup(@NonNull List<Target> targets, int concurrency) {
+        this.targets = List.copyOf(targets);
+        final int size = Math.max(1, this.targets.size());
+        final int threads = size * Math.max(1, concurrency);
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(size),
+                r -> {
+                    Thread t = new Thread(r, "ldap-fan-out-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the LDAP configurations queried, in priority order
+     */
+    public List<Target> getTargets() {
+        return targets;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Looks up a user in all targets concurrently.
+     *
+     * @param lookup performs the lookup in the LDAP configuration of the given name
+     * @return the match from the highest-priority target, or empty if no target has
+     *         it
+     * @throws LdapUnavailableException if a target with higher priority than the
+     *                                  match, if any, failed or timed out
+     */
+    public Optional<ExtendedGeorchestraUser> lookup(
+            @NonNull Function<String, Optional<ExtendedGeorchestraUser>> lookup) {
+        final long start = System.nanoTime();
+        List<Future<Optional<ExtendedGeorchestraUser>>> futures = new ArrayList<>(targets.size());
+        try {
+            for (Target target : targets) {
+                futures.add(submit(target, lookup));
+            }
+            for (int i = 0; i < targets.size(); i++) {
+                Optional<ExtendedGeorchestraUser> result = await(targets.get(i), futures.get(i), start);
+                if (result.isPresent()) {
+                    return result;
+                }
+            }
+            return Optional.empty();
+        } finally {
+            futures.stream().filter(Objects::nonNull).forEach(f -> f.cancel(true));
+            // drop the cancelled lookups still queued
+            executor.purge();
+        }
+    }
+
+    /**
+     * @return the lookup future, or {@code null} if the thread pool is exhausted
+     */
+    private Future<Optional<ExtendedGeorchestraUser>> submit(Target target,
+            Function<String, Optional<ExtendedGeorchestraUser>> lookup) {
+        try {
+            return executor.submit(() -> timed(target, lookup));
+        } catch (RejectedExecutionException e) {
+            log.debug("No thread available to look up user in LDAP config {}", target.name());
+            return null;
+        }
+    }
+
+    private Optional<ExtendedGeorchestraUser> await(Target target, Future<Optional<ExtendedGeorchestraUser>> future,
+            long start) {
+        if (future == null) {
+            countTimeout(target);
+            throw new LdapUnavailableException(
+                    "User lookup in LDAP config %s timed out, too many lookups in progress".formatted(target.name()));
+        }
+        long remaining = target.timeout().toNanos() - (System.nanoTime() - start);
+        try {
+            return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            countTimeout(target);
+            throw new LdapUnavailableException(
+                    "User lookup in LDAP config %s timed out after %s".formatted(target.name(), target.timeout()));
+        } catch (ExecutionException e) {
+            throw new LdapUnavailableException("User lookup in LDAP config %s failed: %s".formatted(target.name(),
+                    e.getCause() == null ? e.getMessage() : e.getCause().getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LdapUnavailableException("Interrupted looking up user in LDAP config " + target.name());
+        }
+    }
+
+    private void countTimeout(Target target) {
+        MeterRegistry meters = this.registry;
+        if (meters != null) {
+            Counter.builder(METRICS_PREFIX + ".timeouts").tag("config", target.name())
+                    .description("Number of LDAP lookups that exceeded their timeout").register(meters).increment();
+        }
+    }
+
+    @VisibleForTesting
+    ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    private Optional<ExtendedGeorchestraUser> timed(Target target,
+            Function<String, Optional<ExtendedGeorchestraUser>> lookup) {
+        final long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            Optional<ExtendedGeorchestraUser> result = lookup.apply(target.name());
+            outcome = result.isPresent() ? "found" : "not_found";
+            return result;
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                outcome = "cancelled";
+            } else {
+                log.warn("Error looking up user in LDAP config {}: {}", target.name(), e.getMessage());
+            }
+            throw e;
+        } finally {
+            MeterRegistry meters = this.registry;
+            if (meters != null) {
+                Timer.builder(METRICS_PREFIX + ".latency").tag("config", target.name()).tag("outcome", outcome)
+                        .description("Time taken by concurrent user lookups, per LDAP config").register(meters)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.registry = registry;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.georchestra.gateway.accounts.admin.AccountCreated;
+import org.georchestra.gateway.accounts.admin.AccountsChanged;
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.ReadReplicas;
+import org.springframework.context.event.EventListener;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates the context sources of extended LDAP configurations, routing reads to
+ * their {@link ReadReplicas read replicas} if any, and sends reads to the main
+ * servers for a while after accounts are created or changed.
+ *
+ * @see ReplicaRoutingContextSource
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+public class LdapReadReplicas implements MeterBinder {
+
+    private final Map<String, ReplicaRoutingContextSource> routingSources = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry registry;
+
+    /**
+     * Returns the context source for an extended LDAP configuration, balancing
+     * reads across its read replicas if it has any.
+     * <p>
+     * A single routing context source is created per configuration and usage, and
+     * returned on subsequent calls.
+     * </p>
+     *
+     * @param config  the extended LDAP configuration
+     * @param usage   what the context source is used for, e.g. {@literal lookup} or
+     *                {@literal bind}
+     * @param factory creates the context source of a single LDAP server given its
+     *                URL
+     * @return the context source of the main server if there are no replicas, or a
+     *         {@link ReplicaRoutingContextSource} otherwise
+     */
+    public BaseLdapPathContextSource contextSource(@NonNull ExtendedLdapConfig config, @NonNull String usage,
+            @NonNull Function<String, ? extends BaseLdapPathContextSource> factory) {
+        ReadReplicas replicas = config.getReplicas();
+        if (replicas.getUrls() == null || replicas.getUrls().isEmpty()) {
+            return factory.apply(config.getUrl());
+        }
+        return routingSources.computeIfAbsent(config.getName() + ":" + usage, key -> {
+            log.info("Balancing LDAP {} reads for config {} across replicas {}", usage, config.getName(),
+                    replicas.getUrls());
+            Map<String, BaseLdapPathContextSource> replicasByUrl = new LinkedHashMap<>();
+            replicas.getUrls().forEach(url -> replicasByUrl.put(url, factory.apply(url)));
+            ReplicaRoutingContextSource source = new ReplicaRoutingContextSource(config.getName(), usage,
+                    factory.apply(config.getUrl()), config.getUrl(), replicasByUrl, replicas);
+            MeterRegistry meters = this.registry;
+            if (meters != null) {
+                source.bindTo(meters);
+            }
+            return source;
+        });
+    }
+
+    /**
+     * Sends reads to the main servers for a while, for the account just created to
+     * be found even if not yet replicated.
+     */
+    @EventListener(AccountCreated.class)
+    public void onAccountCreated(AccountCreated event) {
+        routingSources.values().forEach(ReplicaRoutingContextSource::pinToMain);
+    }
+
+    /**
+     * Sends reads to the main servers for a while, so that state evicted because of
+     * a change is not reloaded from a replica that didn't receive it yet.
+     */
+    @EventListener(AccountsChanged.class)
+    public void onAccountsChanged(AccountsChanged event) {
+        routingSources.values().forEach(ReplicaRoutingContextSource::pinToMain);
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.registry = registry;
+        routingSources.values().forEach(source -> source.bindTo(registry));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.naming.Name;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.LdapName;
+
+import org.georchestra.ds.users.AccountDao;
+import org.georchestra.gateway.security.ldap.LdapAttributeProjection;
+import org.georchestra.security.api.UsersApi;
+import org.springframework.ldap.core.DistinguishedName;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.ldap.support.LdapUtils;
+import org.springframework.util.ClassUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import lombok.NonNull;
+
+/**
+ * {@link BaseLdapPathContextSource} applying the
+ * {@link LdapAttributeProjection} to the reads of user entries, so that the
+ * {@link UsersApi} and {@link AccountDao} lookups building the geOrchestra
+ * users only fetch the attributes the gateway needs.
+ * <p>
+ * Reads of entries under the users RDN requesting all attributes request the
+ * projected ones instead, and reads requesting specific attributes have the
+ * pruned ones removed, so large attributes like {@code jpegPhoto} are not
+ * transferred. Reads of other entries, writes, and authenticated contexts are
+ * left untouched.
+ * </p>
+ */
+public class ProjectingContextSource implements BaseLdapPathContextSource {
+
+    private final @NonNull BaseLdapPathContextSource delegate;
+
+    /** the users RDN, relative to and including the base DN */
+    private final List<LdapName> usersBases;
+
+    private final @NonNull String[] attributes;
+
+    private final Set<String> pruned = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * @param delegate   the actual context source
+     * @param usersRdn   the RDN of the users branch, relative to the base DN
+     * @param attributes the user attributes to request instead of all of them
+     * @param pruned     the user attributes never to request
+     */
+    public ProjectingContextSource(@NonNull BaseLdapPathContextSource delegate, @NonNull String usersRdn,
+            @NonNull String[] attributes, @NonNull Set<String> pruned) {
+        this.delegate = delegate;
+        LdapName relative = LdapUtils.newLdapName(usersRdn);
+        this.usersBases = List.of(relative, LdapUtils.prepend(relative, delegate.getBaseLdapName()));
+        this.attributes = attributes.clone();
+        this.pruned.addAll(pruned);
+    }
+
+    @Override
+    public DirContext getReadOnlyContext() {
+        return project(delegate.getReadOnlyContext());
+    }
+
+    @Override
+    public DirContext getReadWriteContext() {
+        return project(delegate.getReadWriteContext());
+    }
+
+    @Override
+    public DirContext getContext(String principal, String credentials) {
+        return delegate.getContext(principal, credentials);
+    }
+
+    @Override
+    public LdapName getBaseLdapName() {
+        return delegate.getBaseLdapName();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public DistinguishedName getBaseLdapPath() {
+        return delegate.getBaseLdapPath();
+    }
+
+    @Override
+    public String getBaseLdapPathAsString() {
+        return delegate.getBaseLdapPathAsString();
+    }
+
+    private DirContext project(DirContext context) {
+        Class<?>[] interfaces = ClassUtils.getAllInterfaces(context);
+        return (DirContext) Proxy.newProxyInstance(ProjectingContextSource.class.getClassLoader(), interfaces,
+                (proxy, method, args) -> {
+                    try {
+                        if ("getAttributes".equals(method.getName()) && isUserEntry(args)) {
+                            String[] requested = args.length > 1 ? (String[]) args[1] : null;
+                            return args[0] instanceof Name name ? context.getAttributes(name, project(requested))
+                                    : context.getAttributes((String) args[0], project(requested));
+                        }
+                        return method.invoke(context, "search".equals(method.getName()) && isUserEntry(args)
+                                ? projectSearch(method, args)
+                                : args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private Object[] projectSearch(Method method, Object[] args) {
+        Object[] projected = args.clone();
+        int last = args.length - 1;
+        if (args[last] instanceof SearchControls controls) {
+            projected[last] = new SearchControls(controls.getSearchScope(), controls.getCountLimit(),
+                    controls.getTimeLimit(), project(controls.getReturningAttributes()),
+                    controls.getReturningObjFlag(), controls.getDerefLinkFlag());
+        } else if (args.length == 3 && method.getParameterTypes()[1] == Attributes.class) {
+            projected[last] = project((String[]) args[last]);
+        }
+        return projected;
+    }
+
+    /**
+     * @return the projected attributes if {@code requested} is {@code null},
+     *         meaning all attributes, or the requested ones but the pruned ones
+     */
+    @VisibleForTesting
+    String[] project(String[] requested) {
+        if (requested == null) {
+            return attributes.clone();
+        }
+        return Arrays.stream(requested).filter(attribute -> !pruned.contains(attribute)).toArray(String[]::new);
+    }
+
+    private boolean isUserEntry(Object[] args) {
+        if (args == null || args.length == 0 || !(args[0] instanceof Name || args[0] instanceof String)) {
+            return false;
+        }
+        LdapName name;
+        try {
+            name = args[0] instanceof LdapName ldapName ? ldapName : LdapUtils.newLdapName(args[0].toString());
+        } catch (RuntimeException e) {
+            return false;
+        }
+        return usersBases.stream().anyMatch(base -> !base.isEmpty() && name.startsWith(base));
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapName;
+
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.ReadReplicas;
+import org.springframework.ldap.CommunicationException;
+import org.springframework.ldap.ServiceUnavailableException;
+import org.springframework.ldap.core.DistinguishedName;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.util.ClassUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link BaseLdapPathContextSource} sending writes to the main LDAP server and
+ * balancing reads across its read replicas.
+ * <p>
+ * {@link #getReadOnlyContext() Read-only} and
+ * {@link #getContext(String, String) authenticated} contexts are obtained from
+ * the healthy replica with the fewest outstanding requests, that is, contexts
+ * not closed yet. If a replica can't be reached it's marked down for
+ * {@link ReadReplicas#getRetryInterval() retry interval}, and the next one is
+ * tried, falling back to the main server when no replica is left.
+ * {@link #getReadWriteContext() Read-write} contexts are always obtained from
+ * the main server.
+ * </p>
+ * <p>
+ * After a write through this context source, or when told by
+ * {@link #pinToMain()}, reads go to the main server for
+ * {@link ReadReplicas#getReadYourWrites() read-your-writes}, so they see
+ * changes that may not have reached the replicas yet.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.ldap.replicas} prefix, tagged by LDAP
+ * config name and usage:
+ * <ul>
+ * <li>{@code .outstanding}: contexts in use, per server {@code url} and
+ * {@code role=main|replica}</li>
+ * <li>{@code .healthy}: whether a server is considered reachable</li>
+ * <li>{@code .latency}: time each context was in use</li>
+ * <li>{@code .failovers}: reads that couldn't be served by the chosen
+ * replica</li>
+ * <li>{@code .pinned}: reads sent to the main server to see recent writes</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+public class ReplicaRoutingContextSource implements BaseLdapPathContextSource, MeterBinder {
+
+    static final String METRICS_PREFIX = "georchestra.gateway.ldap.replicas";
+
+    private final @NonNull String configName;
+    private final @NonNull String usage;
+    private final @NonNull ReadReplicas config;
+    private final @NonNull LongSupplier nanoClock;
+
+    private final Node main;
+    private final List<Node> replicas;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong pinned = new AtomicLong();
+
+    /**
+     * Time, as per {@link #nanoClock}, until which reads go to the main server, or
+     * {@code null} if they don't.
+     */
+    private volatile Long pinnedUntilNanos;
+
+    /**
+     * An LDAP server and its usage statistics
+     */
+    @VisibleForTesting
+    class Node {
+        final String url;
+        final String role;
+        final BaseLdapPathContextSource source;
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile Long downUntilNanos;
+        volatile Timer latency;
+
+        Node(String url, String role, BaseLdapPathContextSource source) {
+            this.url = url;
+            this.role = role;
+            this.source = source;
+        }
+
+        boolean isHealthy() {
+            Long until = downUntilNanos;
+            return until == null || nanoClock.getAsLong() - until >= 0;
+        }
+
+        void markDown(String reason) {
+            if (downUntilNanos == null) {
+                log.warn("LDAP server {} of config {} is unreachable, skipping it for {}: {}", url, configName,
+                        config.getRetryInterval(), reason);
+            }
+            downUntilNanos = nanoClock.getAsLong() + config.getRetryInterval().toNanos();
+        }
+
+        DirContext open(Function<BaseLdapPathContextSource, DirContext> opener) {
+            outstanding.incrementAndGet();
+            final long start = nanoClock.getAsLong();
+            DirContext context;
+            try {
+                context = opener.apply(source);
+            } catch (RuntimeException e) {
+                outstanding.decrementAndGet();
+                throw e;
+            }
+            if (downUntilNanos != null) {
+                log.info("LDAP server {} of config {} is reachable again", url, configName);
+                downUntilNanos = null;
+            }
+            return track(context, start);
+        }
+
+        /**
+         * @return a proxy to {@code context} that releases this node when closed, and
+         *         marks it down on communication errors
+         */
+        private DirContext track(DirContext context, long start) {
+            AtomicBoolean closed = new AtomicBoolean();
+            Class<?>[] interfaces = ClassUtils.getAllInterfaces(context);
+            return (DirContext) Proxy.newProxyInstance(ReplicaRoutingContextSource.class.getClassLoader(), interfaces,
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && method.getParameterCount() == 0
+                                && closed.compareAndSet(false, true)) {
+                            outstanding.decrementAndGet();
+                            Timer timer = latency;
+                            if (timer != null) {
+                                timer.record(nanoClock.getAsLong() - start, TimeUnit.NANOSECONDS);
+                            }
+                        }
+                        try {
+                            return method.invoke(context, args);
+                        } catch (InvocationTargetException e) {
+                            Throwable cause = e.getCause();
+                            if (cause instanceof javax.naming.CommunicationException
+                                    || cause instanceof javax.naming.ServiceUnavailableException) {
+                                markDown(cause.getMessage());
+                            }
+                            throw cause;
+                        }
+                    });
+        }
+
+        void bindTo(MeterRegistry registry) {
+            Gauge.builder(METRICS_PREFIX + ".outstanding", outstanding, AtomicInteger::get).tags(tags())
+                    .description("Number of LDAP contexts in use").register(registry);
+            Gauge.builder(METRICS_PREFIX + ".healthy", this, n -> n.isHealthy() ? 1 : 0).tags(tags())
+                    .description("Whether the LDAP server is considered reachable").register(registry);
+            latency = Timer.builder(METRICS_PREFIX + ".latency").tags(tags())
+                    .description("Time LDAP contexts were in use").register(registry);
+        }
+
+        private String[] tags() {
+            return new String[] { "config", configName, "usage", usage, "url", url, "role", role };
+        }
+    }
+
+    /**
+     * @param configName    the LDAP configuration name
+     * @param usage         what the context source is used for, e.g.
+     *                      {@literal lookup} or {@literal bind}, to tell metrics
+     *                      apart
+     * @param main          the context source of the main server
+     * @param mainUrl       the URL of the main server
+     * @param replicasByUrl the context sources of the read replicas, by URL
+     * @param config        the read replicas configuration
+     */
+    public ReplicaRoutingContextSource(@NonNull String configName, @NonNull String usage,
+            @NonNull BaseLdapPathContextSource main, @NonNull String mainUrl,
+            @NonNull Map<String, ? extends BaseLdapPathContextSource> replicasByUrl, @NonNull ReadReplicas config) {
+        this(configName, usage, main, mainUrl, replicasByUrl, config, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    ReplicaRoutingContextSource(@NonNull String configName, @NonNull String usage,
+            @NonNull BaseLdapPathContextSource main, @NonNull String mainUrl,
+            @NonNull Map<String, ? extends BaseLdapPathContextSource> replicasByUrl, @NonNull ReadReplicas config,
+            @NonNull LongSupplier nanoClock) {
+        this.configName = configName;
+        this.usage = usage;
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.main = new Node(mainUrl, "main", main);
+        this.replicas = replicasByUrl.entrySet().stream().map(e -> new Node(e.getKey(), "replica", e.getValue()))
+                .toList();
+    }
+
+    /**
+     * Sends reads to the main server for {@link ReadReplicas#getReadYourWrites()
+     * read-your-writes}, for them to see a change just made to it.
+     */
+    public void pinToMain() {
+        pinnedUntilNanos = nanoClock.getAsLong() + config.getReadYourWrites().toNanos();
+    }
+
+    @Override
+    public DirContext getReadOnlyContext() {
+        return read(BaseLdapPathContextSource::getReadOnlyContext);
+    }
+
+    @Override
+    public DirContext getContext(String principal, String credentials) {
+        return read(source -> source.getContext(principal, credentials));
+    }
+
+    @Override
+    public DirContext getReadWriteContext() {
+        pinToMain();
+        return main.open(BaseLdapPathContextSource::getReadWriteContext);
+    }
+
+    private DirContext read(Function<BaseLdapPathContextSource, DirContext> opener) {
+        if (isPinnedToMain()) {
+            pinned.incrementAndGet();
+            return main.open(opener);
+        }
+        for (Node replica : candidates()) {
+            try {
+                return replica.open(opener);
+            } catch (CommunicationException | ServiceUnavailableException e) {
+                replica.markDown(e.getMessage());
+                failovers.incrementAndGet();
+            }
+        }
+        return main.open(opener);
+    }
+
+    private boolean isPinnedToMain() {
+        Long until = pinnedUntilNanos;
+        return until != null && nanoClock.getAsLong() - until < 0;
+    }
+
+    /**
+     * @return the healthy replicas, with the fewest outstanding requests first, and
+     *         rotating among the ones with as many
+     */
+    @VisibleForTesting
+    List<Node> candidates() {
+        final int size = replicas.size();
+        final int offset = Math.floorMod(next.getAndIncrement(), Math.max(1, size));
+        List<Node> candidates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Node replica = replicas.get((offset + i) % size);
+            if (replica.isHealthy()) {
+                candidates.add(replica);
+            }
+        }
+        candidates.sort(Comparator.comparingInt(n -> n.outstanding.get()));
+        return candidates;
+    }
+
+    @Override
+    public LdapName getBaseLdapName() {
+        return main.source.getBaseLdapName();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public DistinguishedName getBaseLdapPath() {
+        return main.source.getBaseLdapPath();
+    }
+
+    @Override
+    public String getBaseLdapPathAsString() {
+        return main.source.getBaseLdapPathAsString();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        main.bindTo(registry);
+        replicas.forEach(replica -> replica.bindTo(registry));
+        FunctionCounter.builder(METRICS_PREFIX + ".failovers", failovers, AtomicLong::get).tag("config", configName)
+                .tag("usage", usage).description("Number of LDAP reads not served by the chosen replica")
+                .register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".pinned", pinned, AtomicLong::get).tag("config", configName)
+                .tag("usage", usage).description("Number of LDAP reads sent to the main server to see recent writes")
+                .register(registry);
+    }
+}
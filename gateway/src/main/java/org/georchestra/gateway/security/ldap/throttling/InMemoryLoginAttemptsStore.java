@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.throttling;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import lombok.NonNull;
+
+/**
+ * In-memory {@link LoginAttemptsStore}, bounded in size.
+ * <p>
+ * Failures are counted with a sliding window approximation: the failures of the
+ * current fixed window, plus those of the previous one weighted by how much it
+ * still overlaps the sliding window. Each key's counters are held in an
+ * immutable value updated with compare-and-set, so concurrent attempts for the
+ * same key don't block each other.
+ * </p>
+ */
+public class InMemoryLoginAttemptsStore implements LoginAttemptsStore {
+
+    /**
+     * Failure counts of a key.
+     *
+     * @param start        start time of the current fixed window, in
+     *                     milliseconds
+     * @param current      failures within the current fixed window
+     * @param previous     failures within the previous fixed window
+     * @param lockedUntil  time until which the key is locked out, in
+     *                     milliseconds, or {@code 0}
+     */
+    private record Counts(long start, int current, int previous, long lockedUntil) {
+
+        Counts roll(long now, long windowMillis) {
+            long elapsed = (now - start) / windowMillis;
+            if (elapsed <= 0) {
+                return this;
+            }
+            return new Counts(start + elapsed * windowMillis, 0, elapsed == 1 ? current : 0, lockedUntil);
+        }
+
+        double estimate(long now, long windowMillis) {
+            double previousWeight = 1d - (double) (now - start) / windowMillis;
+            return current + previous * Math.max(0, previousWeight);
+        }
+    }
+
+    private final Cache<String, AtomicReference<Counts>> counts;
+
+    private final LongSupplier clock;
+
+    /**
+     * @param maxKeys   maximum number of keys to keep track of, evicting the least
+     *                  recently used ones
+     * @param retention how long an unused key is kept, at least as long as the
+     *                  counting window and the lockout duration
+     */
+    public InMemoryLoginAttemptsStore(long maxKeys, @NonNull Duration retention) {
+        this(maxKeys, retention, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    InMemoryLoginAttemptsStore(long maxKeys, @NonNull Duration retention, @NonNull LongSupplier clock) {
+        this.counts = CacheBuilder.newBuilder().maximumSize(maxKeys).expireAfterAccess(retention).build();
+        this.clock = clock;
+    }
+
+    @Override
+    public double addFailure(@NonNull String key, @NonNull Duration window) {
+        final long now = clock.getAsLong();
+        final long windowMillis = Math.max(1, window.toMillis());
+        Counts updated = get(key, now).updateAndGet(c -> {
+            Counts rolled = c.roll(now, windowMillis);
+            return new Counts(rolled.start(), rolled.current() + 1, rolled.previous(), rolled.lockedUntil());
+        });
+        return updated.estimate(now, windowMillis);
+    }
+
+    @Override
+    public double getFailures(@NonNull String key, @NonNull Duration window) {
+        AtomicReference<Counts> ref = counts.getIfPresent(key);
+        if (ref == null) {
+            return 0;
+        }
+        final long now = clock.getAsLong();
+        final long windowMillis = Math.max(1, window.toMillis());
+        return ref.get().roll(now, windowMillis).estimate(now, windowMillis);
+    }
+
+    @Override
+    public void lock(@NonNull String key, @NonNull Duration duration) {
+        final long now = clock.getAsLong();
+        final long until = now + duration.toMillis();
+        get(key, now).updateAndGet(c -> new Counts(c.start(), c.current(), c.previous(), until));
+    }
+
+    @Override
+    public Duration getLockRemaining(@NonNull String key) {
+        AtomicReference<Counts> ref = counts.getIfPresent(key);
+        if (ref == null) {
+            return Duration.ZERO;
+        }
+        long remaining = ref.get().lockedUntil() - clock.getAsLong();
+        return remaining > 0 ? Duration.ofMillis(remaining) : Duration.ZERO;
+    }
+
+    @Override
+    public void reset(@NonNull String key) {
+        counts.invalidate(key);
+    }
+
+    /**
+     * @return the number of keys currently tracked
+     */
+    public long size() {
+        return counts.size();
+    }
+
+    private AtomicReference<Counts> get(String key, long now) {
+        try {
+            return counts.get(key, () -> new AtomicReference<>(new Counts(now, 0, 0, 0)));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
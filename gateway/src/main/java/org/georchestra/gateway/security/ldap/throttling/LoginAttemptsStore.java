@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.throttling;
+
+import java.time.Duration;
+
+/**
+ * Keeps track of failed logins and lockouts for {@link LoginThrottle}.
+ * <p>
+ * Keys identify what failed logins are counted for, like a username or a client
+ * IP address. The default {@link InMemoryLoginAttemptsStore} keeps them in
+ * memory, so each gateway replica throttles logins on its own. Contributing a
+ * bean implementing this interface backed by a shared storage makes all
+ * replicas share the same counts and lockouts.
+ * </p>
+ * <p>
+ * Implementations must be thread-safe and shall not block for long, since
+ * they're called for every login attempt.
+ * </p>
+ */
+public interface LoginAttemptsStore {
+
+    /**
+     * Records a failed login.
+     *
+     * @param key    what the failure is counted for
+     * @param window the length of the sliding window failures are counted over
+     * @return the number of failures within the window, including this one
+     */
+    double addFailure(String key, Duration window);
+
+    /**
+     * @param key    what failures are counted for
+     * @param window the length of the sliding window failures are counted over
+     * @return the number of failures within the window
+     */
+    double getFailures(String key, Duration window);
+
+    /**
+     * Locks out a key.
+     *
+     * @param key      the key to lock out
+     * @param duration how long the key is locked out
+     */
+    void lock(String key, Duration duration);
+
+    /**
+     * @param key the key to check
+     * @return how long the key is still locked out, {@link Duration#ZERO} if it's
+     *         not
+     */
+    Duration getLockRemaining(String key);
+
+    /**
+     * Forgets the failures and lockout of a key.
+     *
+     * @param key the key to reset
+     */
+    void reset(String key);
+}
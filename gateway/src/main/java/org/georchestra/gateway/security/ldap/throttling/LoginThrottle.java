@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.throttling;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.LoginThrottling;
+import org.georchestra.gateway.security.exceptions.LoginThrottledException;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Throttles login attempts per username and per client IP address after
+ * repeated failures, as configured by {@link LoginThrottling}.
+ * <p>
+ * {@link #check(String, String)} is called before attempting a login, and
+ * either rejects it if the username or IP address is locked out, or returns how
+ * long to delay it. The outcome is then reported through
+ * {@link #onFailure(String, String)} or {@link #onSuccess(String, String)}.
+ * </p>
+ * <p>
+ * Metrics are bound to the application's {@link MeterRegistry}, if any, under
+ * the {@literal georchestra.gateway.login.throttling} prefix:
+ * <ul>
+ * <li>{@code .rejected}: login attempts rejected by a lockout, tagged by
+ * {@code key=user|ip}</li>
+ * <li>{@code .lockouts}: usernames and IP addresses locked out, tagged by
+ * {@code key=user|ip}</li>
+ * <li>{@code .delayed}: login attempts delayed</li>
+ * </ul>
+ * </p>
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.throttling")
+public class LoginThrottle implements MeterBinder {
+
+    static final String METRICS_PREFIX = "georchestra.gateway.login.throttling";
+
+    private final @NonNull LoginThrottling config;
+    private final @NonNull LoginAttemptsStore store;
+
+    private final AtomicLong rejectedUser = new AtomicLong();
+    private final AtomicLong rejectedIp = new AtomicLong();
+    private final AtomicLong lockoutsUser = new AtomicLong();
+    private final AtomicLong lockoutsIp = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+
+    /**
+     * @param config the throttling configuration
+     * @param store  where failed logins and lockouts are kept
+     */
+    public LoginThrottle(@NonNull LoginThrottling config, @NonNull LoginAttemptsStore store) {
+        this.config = config;
+        this.store = store;
+    }
+
+    /**
+     * Checks whether a login attempt may proceed.
+     *
+     * @param username the username the login is attempted for
+     * @param clientIp the client IP address, or {@code null} if unknown
+     * @return how long to delay the login attempt, {@link Duration#ZERO} for no
+     *         delay
+     * @throws LoginThrottledException if the username or IP address is locked out
+     */
+    public Duration check(String username, String clientIp) {
+        String userKey = userKey(username);
+        String ipKey = ipKey(clientIp);
+        checkLock(userKey, rejectedUser);
+        checkLock(ipKey, rejectedIp);
+
+        Duration delay = max(delay(userKey, config.getMaxFailuresPerUser()),
+                delay(ipKey, config.getMaxFailuresPerIp()));
+        if (!delay.isZero()) {
+            delayed.incrementAndGet();
+        }
+        return delay;
+    }
+
+    /**
+     * Records a failed login, locking out the username or IP address if they
+     * reached their maximum number of failures.
+     *
+     * @param username the username the login was attempted for
+     * @param clientIp the client IP address, or {@code null} if unknown
+     */
+    public void onFailure(String username, String clientIp) {
+        addFailure(userKey(username), config.getMaxFailuresPerUser(), lockoutsUser);
+        addFailure(ipKey(clientIp), config.getMaxFailuresPerIp(), lockoutsIp);
+    }
+
+    /**
+     * Records a successful login, clearing the failures of the username.
+     *
+     * @param username the username that logged in
+     * @param clientIp the client IP address, or {@code null} if unknown
+     */
+    public void onSuccess(String username, String clientIp) {
+        String userKey = userKey(username);
+        if (userKey != null) {
+            store.reset(userKey);
+        }
+    }
+
+    private void checkLock(String key, AtomicLong rejected) {
+        if (key == null) {
+            return;
+        }
+        Duration remaining = store.getLockRemaining(key);
+        if (!remaining.isZero()) {
+            rejected.incrementAndGet();
+            log.debug("Rejecting login attempt, {} is locked out for {}", key, remaining);
+            throw new LoginThrottledException("Too many failed login attempts", remaining);
+        }
+    }
+
+    private Duration delay(String key, int maxFailures) {
+        if (key == null) {
+            return Duration.ZERO;
+        }
+        double beyondHalf = store.getFailures(key, config.getWindow()) - maxFailures / 2d;
+        if (beyondHalf < 1) {
+            return Duration.ZERO;
+        }
+        return min(config.getDelayStep().multipliedBy((long) beyondHalf), config.getMaxDelay());
+    }
+
+    private void addFailure(String key, int maxFailures, AtomicLong lockouts) {
+        if (key == null) {
+            return;
+        }
+        double failures = store.addFailure(key, config.getWindow());
+        if (failures >= maxFailures) {
+            store.lock(key, config.getLockout());
+            lockouts.incrementAndGet();
+            log.warn("Locking out {} for {} after {} failed logins", key, config.getLockout(), (long) failures);
+        }
+    }
+
+    private static String userKey(String username) {
+        return username == null || username.isBlank() ? null : "user:" + username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String ipKey(String clientIp) {
+        return clientIp == null ? null : "ip:" + clientIp;
+    }
+
+    private static Duration max(Duration d1, Duration d2) {
+        return d1.compareTo(d2) >= 0 ? d1 : d2;
+    }
+
+    private static Duration min(Duration d1, Duration d2) {
+        return d1.compareTo(d2) <= 0 ? d1 : d2;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder(METRICS_PREFIX + ".rejected", rejectedUser, AtomicLong::get).tag("key", "user")
+                .description("Number of login attempts rejected by a lockout").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".rejected", rejectedIp, AtomicLong::get).tag("key", "ip")
+                .description("Number of login attempts rejected by a lockout").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".lockouts", lockoutsUser, AtomicLong::get).tag("key", "user")
+                .description("Number of usernames and client addresses locked out").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".lockouts", lockoutsIp, AtomicLong::get).tag("key", "ip")
+                .description("Number of usernames and client addresses locked out").register(registry);
+        FunctionCounter.builder(METRICS_PREFIX + ".delayed", delayed, AtomicLong::get)
+                .description("Number of login attempts delayed after previous failures").register(registry);
+    }
+}
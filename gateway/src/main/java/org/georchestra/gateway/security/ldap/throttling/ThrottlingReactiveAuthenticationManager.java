@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.throttling;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Optional;
+
+import org.georchestra.gateway.security.exceptions.LoginThrottledException;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.server.ServerWebExchange;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ReactiveAuthenticationManager} decorator that consults a
+ * {@link LoginThrottle} before delegating, so that throttled login attempts are
+ * delayed or rejected without reaching LDAP.
+ * <p>
+ * The client IP address is taken from the {@link ServerWebExchange} Spring
+ * Security puts in the Reactor context. Behind a reverse proxy, it's the
+ * address from the forwarded headers if
+ * {@literal server.forward-headers-strategy} is set to {@literal framework}.
+ * </p>
+ */
+@RequiredArgsConstructor
+public class ThrottlingReactiveAuthenticationManager implements ReactiveAuthenticationManager {
+
+    private final @NonNull ReactiveAuthenticationManager delegate;
+    private final @NonNull LoginThrottle throttle;
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        return Mono.deferContextual(context -> {
+            final String username = authentication.getName();
+            final String clientIp = context.getOrEmpty(ServerWebExchange.class).map(ServerWebExchange.class::cast)
+                    .flatMap(ThrottlingReactiveAuthenticationManager::clientIp).orElse(null);
+            final Duration delay;
+            try {
+                delay = throttle.check(username, clientIp);
+            } catch (LoginThrottledException e) {
+                return Mono.error(e);
+            }
+            Mono<Authentication> login = delegate.authenticate(authentication)//
+                    .doOnNext(auth -> throttle.onSuccess(username, clientIp))//
+                    .doOnError(AuthenticationException.class, e -> {
+                        if (!(e instanceof AuthenticationServiceException)) {
+                            throttle.onFailure(username, clientIp);
+                        }
+                    });
+            return delay.isZero() ? login : Mono.delay(delay).then(login);
+        });
+    }
+
+    private static Optional<String> clientIp(ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        if (remoteAddress == null) {
+            return Optional.empty();
+        }
+        return Optional.of(remoteAddress.getAddress() == null ? remoteAddress.getHostString()
+                : remoteAddress.getAddress().getHostAddress());
+    }
+}
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -93,6 +94,10 @@ public class PreauthAuthenticationManager implements ReactiveAuthenticationManag
     public static final String PREAUTH_PROVIDER = "preauth-provider";
     public static final String PREAUTH_PROVIDER_ID = "preauth-provider-id";
 
+    /** All the pre-authentication request headers */
+    public static final Set<String> PREAUTH_HEADERS = Set.of(PREAUTH_HEADER_NAME, PREAUTH_USERNAME, PREAUTH_EMAIL,
+            PREAUTH_FIRSTNAME, PREAUTH_LASTNAME, PREAUTH_ORG, PREAUTH_ROLES, PREAUTH_PROVIDER, PREAUTH_PROVIDER_ID);
+
     /**
      * Converts an incoming request into a
      * {@link PreAuthenticatedAuthenticationToken} if the request contains valid
@@ -191,21 +196,4 @@ public class PreauthAuthenticationManager implements ReactiveAuthenticationManag
         // "externalProvider"
         return user;
     }
-
-    /**
-     * Removes pre-authentication headers from a given set of mutable HTTP headers.
-     *
-     * @param mutableHeaders the mutable {@link HttpHeaders} object to clean up
-     */
-    public void removePreauthHeaders(HttpHeaders mutableHeaders) {
-        mutableHeaders.remove(PREAUTH_HEADER_NAME);
-        mutableHeaders.remove(PREAUTH_USERNAME);
-        mutableHeaders.remove(PREAUTH_EMAIL);
-        mutableHeaders.remove(PREAUTH_FIRSTNAME);
-        mutableHeaders.remove(PREAUTH_LASTNAME);
-        mutableHeaders.remove(PREAUTH_ORG);
-        mutableHeaders.remove(PREAUTH_ROLES);
-        mutableHeaders.remove(PREAUTH_PROVIDER);
-        mutableHeaders.remove(PREAUTH_PROVIDER_ID);
-    }
 }
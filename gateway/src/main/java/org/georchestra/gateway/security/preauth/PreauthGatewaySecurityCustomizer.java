@@ -18,8 +18,8 @@
  */
 package org.georchestra.gateway.security.preauth;
 
+import org.georchestra.gateway.filter.headers.RequestHeadersRewrite;
 import org.georchestra.gateway.security.ServerHttpSecurityCustomizer;
-import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
@@ -27,7 +27,6 @@ import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 
-import lombok.RequiredArgsConstructor;
 import reactor.core.publisher.Mono;
 
 /**
@@ -89,7 +88,7 @@ public class PreauthGatewaySecurityCustomizer implements ServerHttpSecurityCusto
 
         // Add a filter at the end of the chain to remove pre-auth headers before
         // forwarding the request
-        http.addFilterAt(new RemovePreauthHeadersWebFilter(authenticationManager), SecurityWebFiltersOrder.LAST);
+        http.addFilterAt(new RemovePreauthHeadersWebFilter(), SecurityWebFiltersOrder.LAST);
     }
 
     /**
@@ -97,14 +96,13 @@ public class PreauthGatewaySecurityCustomizer implements ServerHttpSecurityCusto
      * before passing it to the next filter in the chain.
      * <p>
      * This ensures that backend services do not see or rely on the
-     * pre-authentication headers, which could otherwise be misused.
+     * pre-authentication headers, which could otherwise be misused. The headers are
+     * removed through the {@link RequestHeadersRewrite} shared with the gateway
+     * header filters.
      * </p>
      */
-    @RequiredArgsConstructor
     static class RemovePreauthHeadersWebFilter implements WebFilter {
 
-        private final PreauthAuthenticationManager manager;
-
         /**
          * Filters incoming requests by removing pre-authentication headers before
          * continuing the chain.
@@ -117,9 +115,7 @@ public class PreauthGatewaySecurityCustomizer implements ServerHttpSecurityCusto
          */
         @Override
         public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
-            ServerHttpRequest request = exchange.getRequest().mutate().headers(manager::removePreauthHeaders).build();
-            exchange = exchange.mutate().request(request).build();
-            return chain.filter(exchange);
+            return chain.filter(RequestHeadersRewrite.remove(exchange, PreauthAuthenticationManager.PREAUTH_HEADERS));
         }
     }
 }
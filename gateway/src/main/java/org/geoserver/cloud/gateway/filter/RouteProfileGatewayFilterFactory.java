@@ -11,9 +11,11 @@ import java.util.Collections;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.http.HttpStatus;
 import org.springframework.util.StringUtils;
@@ -23,7 +25,6 @@ import org.springframework.web.server.ServerWebExchange;
 import jakarta.validation.constraints.NotEmpty;
 import lombok.Data;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
 import reactor.core.publisher.Mono;
 
@@ -48,6 +49,12 @@ public class RouteProfileGatewayFilterFactory
     @Autowired
     private Environment environment;
 
+    /**
+     * Incremented on each {@link EnvironmentChangeEvent}, for filters to know when
+     * to re-evaluate the active profiles
+     */
+    private volatile int environmentVersion;
+
     public RouteProfileGatewayFilterFactory() {
         super(Config.class);
     }
@@ -59,7 +66,16 @@ public class RouteProfileGatewayFilterFactory
 
     @Override
     public GatewayFilter apply(Config config) {
-        return new RouteProfileGatewayFilter(environment, config);
+        return new RouteProfileGatewayFilter(config);
+    }
+
+    /**
+     * Makes the filters re-evaluate their allow/deny decision on their next
+     * request, as the active profiles may have changed with the environment.
+     */
+    @EventListener(EnvironmentChangeEvent.class)
+    void onEnvironmentChange() {
+        environmentVersion++;
     }
 
     /**
@@ -69,27 +85,49 @@ public class RouteProfileGatewayFilterFactory
      * If the required profile is active, the request proceeds. If the profile is
      * negated (e.g., {@code !profileName}), the request is blocked if the profile
      * is active.
+     * <p>
+     * The decision only depends on the configuration and the active profiles, so
+     * it's resolved when the filter is created and again after an
+     * {@link EnvironmentChangeEvent}, instead of on every request.
      */
-    @RequiredArgsConstructor
-    private static class RouteProfileGatewayFilter implements GatewayFilter {
+    private class RouteProfileGatewayFilter implements GatewayFilter {
 
-        private final @NonNull Environment environment;
         private final @NonNull Config config;
 
+        private final boolean exclude;
+        private final String profile;
+
+        private boolean proceed;
+        // written after proceed, so reading it first makes proceed visible
+        private volatile int resolvedVersion;
+
+        RouteProfileGatewayFilter(@NonNull Config config) {
+            this.config = config;
+            String configProfile = config.getProfile();
+            this.exclude = configProfile != null && configProfile.startsWith("!");
+            this.profile = exclude ? configProfile.substring(1) : configProfile;
+            resolve();
+        }
+
+        private void resolve() {
+            final int version = environmentVersion;
+            if (StringUtils.hasText(config.getProfile())) {
+                boolean profileMatch = Arrays.asList(environment.getActiveProfiles()).contains(profile);
+                this.proceed = profileMatch != exclude;
+            } else {
+                this.proceed = false;
+            }
+            this.resolvedVersion = version;
+        }
+
         @Override
         public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-            final List<String> activeProfiles = Arrays.asList(environment.getActiveProfiles());
-            String profile = config.getProfile();
-            if (StringUtils.hasText(profile)) {
-                final boolean exclude = profile.startsWith("!");
-                profile = exclude ? profile.substring(1) : profile;
-
-                boolean profileMatch = activeProfiles.contains(profile);
-                boolean proceed = (profileMatch && !exclude) || (!profileMatch && exclude);
-                if (proceed) {
-                    // continue...
-                    return chain.filter(exchange);
-                }
+            if (resolvedVersion != environmentVersion) {
+                resolve();
+            }
+            if (proceed) {
+                // continue...
+                return chain.filter(exchange);
             }
 
             int status = config.getStatusCode();
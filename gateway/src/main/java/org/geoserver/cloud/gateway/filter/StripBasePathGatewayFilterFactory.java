@@ -12,7 +12,6 @@ import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.StripPrefixGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.factory.StripPrefixGatewayFilterFactory.Config;
-import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.util.StringUtils;
 
 import lombok.Data;
@@ -40,7 +39,7 @@ import lombok.Data;
 public class StripBasePathGatewayFilterFactory
         extends AbstractGatewayFilterFactory<StripBasePathGatewayFilterFactory.PrefixConfig> {
 
-    private StripPrefixGatewayFilterFactory stripPrefix = new StripPrefixGatewayFilterFactory();
+    private final StripPrefixGatewayFilterFactory stripPrefix = new StripPrefixGatewayFilterFactory();
 
     public StripBasePathGatewayFilterFactory() {
         super(PrefixConfig.class);
@@ -56,61 +55,50 @@ public class StripBasePathGatewayFilterFactory
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The number of path segments to strip only depends on the configured prefix,
+     * so it's resolved once here, along with the
+     * {@link StripPrefixGatewayFilterFactory StripPrefix} filters to apply, leaving
+     * only a couple of string comparisons per request. Routes refreshes call this
+     * method again with the new configuration.
      */
     @Override
     public GatewayFilter apply(PrefixConfig config) {
         config.checkPreconditions();
-        return (exchange, chain) -> {
-            final ServerHttpRequest request = exchange.getRequest();
-
-            final String basePath = config.getPrefix();
-            final String path = request.getURI().getRawPath();
+        final String basePath = config.getPrefix();
+        if (null == basePath) {
+            return (exchange, chain) -> chain.filter(exchange); // No prefix to strip
+        }
 
-            // Calculate how many parts of the path to strip based on the base path
-            final int partsToRemove = resolvePartsToStrip(basePath, path);
-            if (partsToRemove == 0) {
-                return chain.filter(exchange); // No base path to strip, continue with the chain
+        final int basePathSteps = StringUtils.countOccurrencesOf(basePath, "/");
+        final GatewayFilter stripBasePath = newStripPrefixFilter(basePathSteps);
+        // a request to the base path itself keeps its last segment
+        final GatewayFilter stripRoot = newStripPrefixFilter(basePathSteps - 1);
+        return (exchange, chain) -> {
+            final String path = exchange.getRequest().getURI().getRawPath();
+            if (!path.startsWith(basePath)) {
+                return chain.filter(exchange); // Base path is not part of the request URI
             }
-
-            // Create and apply the StripPrefix filter with the correct number of parts to
-            // remove
-            GatewayFilter stripFilter = stripPrefix.apply(newStripPrefixConfig(partsToRemove));
+            GatewayFilter stripFilter = basePath.equals(path) ? stripRoot : stripBasePath;
             return stripFilter.filter(exchange, chain);
         };
     }
 
     /**
-     * Creates a new configuration for the {@link StripPrefixGatewayFilterFactory}
-     * with the specified number of parts to remove from the URI.
+     * Creates a {@link StripPrefixGatewayFilterFactory StripPrefix} filter that
+     * removes the specified number of parts from the URI.
      *
      * @param partsToRemove the number of URI path segments to strip
-     * @return a new {@link Config} for the StripPrefix filter
+     * @return the StripPrefix filter, or a pass-through filter if there's nothing
+     *         to strip
      */
-    private Config newStripPrefixConfig(int partsToRemove) {
+    private GatewayFilter newStripPrefixFilter(int partsToRemove) {
+        if (partsToRemove <= 0) {
+            return (exchange, chain) -> chain.filter(exchange);
+        }
         Config config = stripPrefix.newConfig();
         config.setParts(partsToRemove);
-        return config;
-    }
-
-    /**
-     * Resolves the number of URI path segments to strip based on the base path and
-     * the incoming request URI.
-     * 
-     * @param basePath    the base path to strip
-     * @param requestPath the incoming request path
-     * @return the number of path segments to strip
-     */
-    private int resolvePartsToStrip(String basePath, String requestPath) {
-        if (null == basePath) {
-            return 0; // No prefix to strip
-        }
-        if (!requestPath.startsWith(basePath)) {
-            return 0; // Base path is not part of the request URI
-        }
-
-        final int basePathSteps = StringUtils.countOccurrencesOf(basePath, "/");
-        boolean isRoot = basePath.equals(requestPath);
-        return isRoot ? basePathSteps - 1 : basePathSteps; // Calculate how many parts to remove
+        return stripPrefix.apply(config);
     }
 
     /**
@@ -7,10 +7,10 @@ package org.geoserver.cloud.gateway.predicate;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
+import org.georchestra.gateway.model.OwsRequest;
 import org.springframework.cloud.gateway.handler.predicate.AbstractRoutePredicateFactory;
 import org.springframework.cloud.gateway.handler.predicate.GatewayPredicate;
 import org.springframework.cloud.gateway.handler.predicate.QueryRoutePredicateFactory;
@@ -146,8 +146,7 @@ public class RegExpQueryRoutePredicateFactory
      *         empty otherwise.
      */
     static Optional<String> findParameterName(@NonNull String regex, ServerWebExchange exchange) {
-        Set<String> parameterNames = exchange.getRequest().getQueryParams().keySet();
-        return parameterNames.stream().filter(name -> name.matches(regex)).findFirst();
+        return OwsRequest.of(exchange).names().stream().filter(name -> name.matches(regex)).findFirst();
     }
 
     /**
@@ -161,8 +160,8 @@ public class RegExpQueryRoutePredicateFactory
      */
     static boolean paramValueMatches(@NonNull String paramName, @NonNull String valueRegEx,
             ServerWebExchange exchange) {
-        List<String> values = exchange.getRequest().getQueryParams().get(paramName);
-        return values != null && values.stream().anyMatch(v -> v != null && v.matches(valueRegEx));
+        List<String> values = OwsRequest.of(exchange).values(paramName);
+        return values.stream().anyMatch(v -> v != null && v.matches(valueRegEx));
     }
 
     /**
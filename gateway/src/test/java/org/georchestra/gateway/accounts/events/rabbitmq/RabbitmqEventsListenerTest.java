@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.accounts.events.rabbitmq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.georchestra.gateway.accounts.admin.AccountsChanged;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link RabbitmqEventsListener}
+ */
+class RabbitmqEventsListenerTest {
+
+    private Message message(String uid) {
+        JSONObject json = new JSONObject();
+        json.put("uid", uid);
+        json.put("subject", RabbitmqEventsListener.OAUTH2_ACCOUNT_CREATION_RECEIVED);
+        json.put("msg", "account " + uid + " received");
+        return new Message(json.toString().getBytes(), new MessageProperties());
+    }
+
+    @Test
+    void duplicatesAreDiscarded() {
+        RabbitmqEventsListener listener = new RabbitmqEventsListener();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        listener.bindTo(registry);
+
+        listener.onMessage(message("1"));
+        listener.onMessage(message("2"));
+        listener.onMessage(message("1"));
+
+        assertThat(listener.getReceivedMessageUids()).containsExactlyInAnyOrder("1", "2");
+        assertThat(registry.get("georchestra.gateway.events.rabbitmq.received.duplicates").functionCounter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void deduplicationWindowIsBounded() {
+        RabbitmqEventsListener listener = new RabbitmqEventsListener(10, Duration.ofHours(1));
+        for (int i = 0; i < 100; i++) {
+            listener.onMessage(message(String.valueOf(i)));
+        }
+        assertThat(listener.getReceivedMessageUids()).hasSizeLessThanOrEqualTo(10);
+    }
+
+    @Test
+    void malformedMessagesAreIgnored() {
+        RabbitmqEventsListener listener = new RabbitmqEventsListener();
+        listener.onMessage(new Message("not json".getBytes(), new MessageProperties()));
+        assertThat(listener.getReceivedMessageUids()).isEmpty();
+    }
+
+    private Message change(String uid, String subject, String property, String value, Long timestamp) {
+        JSONObject json = new JSONObject();
+        json.put("uid", uid);
+        json.put("subject", subject);
+        json.put(property, value);
+        if (timestamp != null) {
+            json.put("timestamp", timestamp);
+        }
+        return new Message(json.toString().getBytes(), new MessageProperties());
+    }
+
+    @Test
+    void changeMessagesArePublishedAsAccountsChangedEvents() {
+        List<Object> events = new ArrayList<>();
+        RabbitmqEventsListener listener = new RabbitmqEventsListener();
+        listener.setApplicationEventPublisher(events::add);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        listener.bindTo(registry);
+
+        long now = System.currentTimeMillis();
+        listener.onMessage(change("1", RabbitmqEventsListener.USER_CHANGED, "username", "bob", now));
+        listener.onMessage(change("2", RabbitmqEventsListener.ORGANIZATION_CHANGED, "org", "psc", null));
+        listener.onMessage(change("3", RabbitmqEventsListener.ROLE_CHANGED, "role", "ADMINISTRATOR", null));
+        listener.onMessage(
+                change("4", RabbitmqAccountCreatedEventSender.OAUTH2_ACCOUNT_CREATION, "localUid", "alice", null));
+        listener.onMessage(change("1", RabbitmqEventsListener.USER_CHANGED, "username", "bob", now));
+
+        assertThat(events).hasSize(4).allMatch(AccountsChanged.class::isInstance);
+        assertThat(events).map(AccountsChanged.class::cast).extracting(AccountsChanged::getType, AccountsChanged::getId)
+                .containsExactly(//
+                        tuple(AccountsChanged.Type.USER, "bob"), //
+                        tuple(AccountsChanged.Type.ORGANIZATION, "psc"), //
+                        tuple(AccountsChanged.Type.ROLE, "ADMINISTRATOR"), //
+                        tuple(AccountsChanged.Type.USER, "alice"));
+
+        assertThat(registry.get(RabbitmqEventsListener.INVALIDATION_LAG_METRIC).tag("type", "user").timer().count())
+                .isEqualTo(1);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.accounts.events.rabbitmq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.georchestra.gateway.accounts.admin.AccountCreated;
+import org.georchestra.gateway.accounts.events.rabbitmq.RabbitmqEventsConfigurationProperties.Outbox;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitOperations.OperationsCallback;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link RabbitmqEventsOutbox}, using an in-memory stand-in for
+ * the AMQP broker that records confirmed messages and can be told to fail.
+ */
+class RabbitmqEventsOutboxTest {
+
+    private RabbitOperations template;
+
+    /** messages sent within the current, not yet confirmed, batch */
+    private List<String> inFlight;
+
+    /** messages confirmed by the broker stand-in */
+    private List<String> confirmed;
+
+    private Outbox config;
+
+    private RabbitmqEventsOutbox outbox;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        inFlight = new CopyOnWriteArrayList<>();
+        confirmed = new CopyOnWriteArrayList<>();
+        template = mock(RabbitOperations.class);
+        when(template.invoke(any(OperationsCallback.class))).thenAnswer(invocation -> {
+            inFlight.clear();
+            return invocation.getArgument(0, OperationsCallback.class).doInRabbit(template);
+        });
+        doAnswer(invocation -> inFlight.add(invocation.getArgument(1))).when(template).convertAndSend(anyString(),
+                any(Object.class));
+        brokerUp();
+
+        config = new Outbox();
+        config.setCapacity(10);
+        config.setBatchSize(3);
+        config.setMaxRetries(2);
+        config.setRetryBackoff(Duration.ZERO);
+        outbox = new RabbitmqEventsOutbox(template, config);
+        registry = new SimpleMeterRegistry();
+        outbox.bindTo(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        outbox.destroy();
+    }
+
+    private void brokerUp() {
+        doAnswer(invocation -> confirmed.addAll(inFlight)).when(template).waitForConfirmsOrDie(anyLong());
+    }
+
+    private void brokerDown() {
+        doThrow(new AmqpTimeoutException("no confirms")).when(template).waitForConfirmsOrDie(anyLong());
+    }
+
+    private double counter(String name, String... tags) {
+        return registry.get(RabbitmqEventsOutbox.METRICS_PREFIX + name).tags(tags).functionCounter().count();
+    }
+
+    @Test
+    void enqueueDoesNotPublishSynchronously() {
+        assertThat(outbox.enqueue("routing-gateway", "m1")).isTrue();
+        assertThat(outbox.size()).isEqualTo(1);
+        assertThat(confirmed).isEmpty();
+        assertThat(registry.get(RabbitmqEventsOutbox.METRICS_PREFIX + ".size").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void flushPublishesInBatches() {
+        for (int i = 0; i < 7; i++) {
+            outbox.enqueue("routing-gateway", "m" + i);
+        }
+        assertThat(outbox.flush()).isEqualTo(7);
+        assertThat(confirmed).containsExactly("m0", "m1", "m2", "m3", "m4", "m5", "m6");
+        assertThat(outbox.size()).isZero();
+        assertThat(counter(".published")).isEqualTo(7);
+        assertThat(registry.get(RabbitmqEventsOutbox.METRICS_PREFIX + ".latency").timer().count()).isEqualTo(7);
+    }
+
+    @Test
+    void failedBatchIsRetriedInOrder() {
+        outbox.enqueue("routing-gateway", "m1");
+        outbox.enqueue("routing-gateway", "m2");
+        brokerDown();
+        assertThat(outbox.flush()).isZero();
+        assertThat(outbox.size()).isEqualTo(2);
+        assertThat(counter(".retried")).isEqualTo(2);
+
+        brokerUp();
+        outbox.enqueue("routing-gateway", "m3");
+        assertThat(outbox.flush()).isEqualTo(3);
+        assertThat(confirmed).containsExactly("m1", "m2", "m3");
+    }
+
+    @Test
+    void retryBackoffIsHonored() {
+        config.setRetryBackoff(Duration.ofHours(1));
+        outbox.enqueue("routing-gateway", "m1");
+        brokerDown();
+        outbox.flush();
+        brokerUp();
+        assertThat(outbox.flush()).as("should wait for the backoff period").isZero();
+        assertThat(outbox.size()).isEqualTo(1);
+    }
+
+    @Test
+    void messagesAreDroppedAfterMaxRetries() {
+        outbox.enqueue("routing-gateway", "m1");
+        brokerDown();
+        outbox.flush();
+        outbox.flush();
+        assertThat(outbox.size()).isEqualTo(1);
+        outbox.flush();
+        assertThat(outbox.size()).isZero();
+        assertThat(counter(".dropped", "reason", "retries")).isEqualTo(1);
+        assertThat(confirmed).isEmpty();
+    }
+
+    @Test
+    void messagesAreDroppedWhenFull() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(outbox.enqueue("routing-gateway", "m" + i)).isTrue();
+        }
+        assertThat(outbox.enqueue("routing-gateway", "overflow")).isFalse();
+        assertThat(counter(".dropped", "reason", "full")).isEqualTo(1);
+    }
+
+    @Test
+    void backgroundFlush() {
+        config.setFlushInterval(Duration.ofMillis(10));
+        outbox.start();
+        outbox.enqueue("routing-gateway", "m1");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> confirmed.contains("m1"));
+    }
+
+    @Test
+    void destroyWaitsForTheBatchInProgress() {
+        AtomicInteger publishing = new AtomicInteger();
+        AtomicInteger maxPublishing = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxPublishing.accumulateAndGet(publishing.incrementAndGet(), Math::max);
+            Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+            confirmed.addAll(inFlight);
+            publishing.decrementAndGet();
+            return null;
+        }).when(template).waitForConfirmsOrDie(anyLong());
+        for (int i = 0; i < 6; i++) {
+            outbox.enqueue("routing-gateway", "m" + i);
+        }
+        config.setFlushInterval(Duration.ofMillis(10));
+        outbox.start();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> publishing.get() == 1);
+
+        outbox.destroy();
+        assertThat(maxPublishing.get()).isEqualTo(1);
+        assertThat(confirmed).containsExactly("m0", "m1", "m2", "m3", "m4", "m5");
+    }
+
+    @Test
+    void droppedEventsAreLoggedWithoutTheirPayload() {
+        String payload = "{\"uid\":\"1234\",\"subject\":\"OAUTH2-ACCOUNT-CREATION\",\"email\":\"john@example.com\"}";
+        RabbitmqEventsOutbox.PendingMessage message = new RabbitmqEventsOutbox.PendingMessage("routing-gateway",
+                payload, 0, 0);
+        assertThat(message.describe()).isEqualTo("OAUTH2-ACCOUNT-CREATION 1234");
+        assertThat(new RabbitmqEventsOutbox.PendingMessage("routing-gateway", "not json", 0, 0).describe())
+                .isEqualTo("unknown");
+    }
+
+    @Test
+    void senderEnqueuesOAuth2AccountCreatedEvents() {
+        RabbitmqAccountCreatedEventSender sender = new RabbitmqAccountCreatedEventSender(outbox);
+
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername("testuser");
+        sender.on(new AccountCreated(user));
+        assertThat(outbox.size()).as("non OAuth2 accounts should not be notified").isZero();
+
+        user.setOAuth2Provider("github");
+        user.setOAuth2Uid("123");
+        sender.on(new AccountCreated(user));
+        assertThat(outbox.size()).isEqualTo(1);
+    }
+}
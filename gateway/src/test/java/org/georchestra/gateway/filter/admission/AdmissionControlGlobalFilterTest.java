@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.filter.admission.AdmissionControlGlobalFilter.Priority;
+import org.georchestra.gateway.model.AdmissionControl;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.RoleBasedAccessRule;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.DefaultEventLoopGroup;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Test suite for {@link AdmissionControlGlobalFilter} and
+ * {@link EventLoopLagMonitor}
+ */
+class AdmissionControlGlobalFilterTest {
+
+    private final AtomicLong lag = new AtomicLong();
+
+    private AdmissionControl config;
+
+    private AdmissionControlGlobalFilter filter;
+
+    private GatewayFilterChain chain;
+
+    private SimpleMeterRegistry registry;
+
+    private final List<RoleBasedAccessRule> accessRules = List.of(new RoleBasedAccessRule()
+            .setInterceptUrl(List.of("/console/private/**")).setAllowedRoles(List.of("ORGADMIN")),
+            new RoleBasedAccessRule().setInterceptUrl(List.of("/**")).setAnonymous(true));
+
+    @BeforeEach
+    void setUp() {
+        config = new AdmissionControl().setEnabled(true).setMaxEventLoopLag(Duration.ofMillis(100));
+        filter = new AdmissionControlGlobalFilter(config, lag::get);
+        registry = new SimpleMeterRegistry();
+        filter.bindTo(registry);
+        chain = mock(GatewayFilterChain.class);
+        when(chain.filter(any())).thenReturn(Mono.empty());
+    }
+
+    private MockServerWebExchange exchange(String path, GeorchestraUser user) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+        GeorchestraTargetConfig.setTarget(exchange, new GeorchestraTargetConfig().accessRules(accessRules));
+        GeorchestraUsers.store(exchange, user);
+        return exchange;
+    }
+
+    private static GeorchestraUser user(String... roles) {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername("user");
+        user.setRoles(List.of(roles));
+        return user;
+    }
+
+    private HttpStatus send(MockServerWebExchange exchange) {
+        filter.filter(exchange, chain).block();
+        HttpStatus status = (HttpStatus) exchange.getResponse().getStatusCode();
+        return status == null ? HttpStatus.OK : status;
+    }
+
+    private double requests(Priority priority, String outcome) {
+        return registry.get(AdmissionControlGlobalFilter.METRICS_PREFIX + ".requests")
+                .tags("class", priority.name().toLowerCase(), "outcome", outcome).functionCounter().count();
+    }
+
+    @Test
+    void classify() {
+        assertThat(filter.classify(exchange("/console/private/users", null))).isEqualTo(Priority.ANONYMOUS);
+        assertThat(filter.classify(exchange("/console/private/users", user("ROLE_USER"))))
+                .isEqualTo(Priority.AUTHENTICATED);
+        assertThat(filter.classify(exchange("/console/private/users", user("ROLE_USER", "ROLE_ORGADMIN"))))
+                .isEqualTo(Priority.ADMIN);
+        assertThat(filter.classify(exchange("/geoserver/gwc/service/wmts", user("ROLE_ORGADMIN"))))
+                .as("admins requesting public resources are not prioritized").isEqualTo(Priority.AUTHENTICATED);
+    }
+
+    @Test
+    void configChangesApplyToTheNextRequest() {
+        config.setAdminRoles(List.of("SUPERUSER"));
+        assertThat(filter.classify(exchange("/console/private/users", user("ROLE_ORGADMIN"))))
+                .isEqualTo(Priority.AUTHENTICATED);
+        assertThat(filter.classify(exchange("/console/private/users", user("SUPERUSER")))).isEqualTo(Priority.ADMIN);
+
+        config.setRetryAfter(Duration.ofMillis(2500));
+        lag.set(TimeUnit.MILLISECONDS.toNanos(150));
+        MockServerWebExchange shed = exchange("/geoserver/wms", null);
+        assertThat(send(shed)).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(shed.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("3");
+    }
+
+    @Test
+    void shedsLowestPriorityFirstOnEventLoopLag() {
+        assertThat(send(exchange("/geoserver/wms", null))).isEqualTo(HttpStatus.OK);
+
+        lag.set(TimeUnit.MILLISECONDS.toNanos(150));
+        MockServerWebExchange shed = exchange("/geoserver/wms", null);
+        assertThat(send(shed)).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(shed.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(send(exchange("/geoserver/wms", user("ROLE_USER")))).isEqualTo(HttpStatus.OK);
+
+        lag.set(TimeUnit.MILLISECONDS.toNanos(300));
+        assertThat(send(exchange("/geoserver/wms", user("ROLE_USER")))).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(send(exchange("/console/private/users", user("ROLE_ORGADMIN")))).isEqualTo(HttpStatus.OK);
+
+        assertThat(requests(Priority.ANONYMOUS, "admitted")).isEqualTo(1);
+        assertThat(requests(Priority.ANONYMOUS, "rejected")).isEqualTo(1);
+        assertThat(requests(Priority.AUTHENTICATED, "admitted")).isEqualTo(1);
+        assertThat(requests(Priority.AUTHENTICATED, "rejected")).isEqualTo(1);
+        assertThat(requests(Priority.ADMIN, "admitted")).isEqualTo(1);
+        assertThat(registry.get(AdmissionControlGlobalFilter.METRICS_PREFIX + ".lag").timeGauge()
+                .value(TimeUnit.MILLISECONDS)).isEqualTo(300);
+    }
+
+    @Test
+    void shedsOnRequestsInFlight() {
+        config.setMaxInFlight(1);
+        Sinks.Empty<Void> response = Sinks.empty();
+        when(chain.filter(any())).thenReturn(response.asMono(), Mono.empty());
+        filter.filter(exchange("/geoserver/wms", user("ROLE_USER")), chain).subscribe();
+        assertThat(filter.load()).isEqualTo(1);
+
+        assertThat(send(exchange("/geoserver/wms", null))).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(send(exchange("/geoserver/wms", user("ROLE_USER")))).isEqualTo(HttpStatus.OK);
+
+        response.tryEmitEmpty();
+        assertThat(filter.load()).isZero();
+    }
+
+    @Test
+    void eventLoopLagMonitor() throws Exception {
+        DefaultEventLoopGroup eventLoops = new DefaultEventLoopGroup(1);
+        EventLoopLagMonitor monitor = new EventLoopLagMonitor(eventLoops, Duration.ofMillis(10));
+        try {
+            monitor.start();
+            await().atMost(5, TimeUnit.SECONDS).until(() -> monitor.getLagNanos() < TimeUnit.MILLISECONDS.toNanos(50));
+            eventLoops.submit(() -> {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            await().atMost(5, TimeUnit.SECONDS)
+                    .until(() -> monitor.getLagNanos() >= TimeUnit.MILLISECONDS.toNanos(200));
+        } finally {
+            monitor.destroy();
+            eventLoops.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).await();
+        }
+    }
+}
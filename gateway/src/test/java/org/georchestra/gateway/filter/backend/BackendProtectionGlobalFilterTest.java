@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.model.AdaptiveConcurrency;
+import org.georchestra.gateway.model.CircuitBreaker;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link BackendProtectionGlobalFilter}, using a stub backend
+ * whose latency and response status are set by each test.
+ */
+class BackendProtectionGlobalFilterTest {
+
+    private SimpleMeterRegistry registry;
+
+    private GeorchestraTargetConfig target;
+
+    /** stub backend latency */
+    private volatile Duration latency = Duration.ofMillis(1);
+
+    /** stub backend response status */
+    private volatile HttpStatus status = HttpStatus.OK;
+
+    private final AtomicInteger backendCalls = new AtomicInteger();
+
+    private GatewayFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        target = new GeorchestraTargetConfig().serviceName("geoserver");
+        chain = mock(GatewayFilterChain.class);
+        when(chain.filter(any())).thenAnswer(invocation -> {
+            ServerWebExchange exchange = invocation.getArgument(0);
+            backendCalls.incrementAndGet();
+            return Mono.delay(latency).then(Mono.defer(() -> {
+                exchange.getResponse().setStatusCode(status);
+                return exchange.getResponse().setComplete();
+            }));
+        });
+    }
+
+    private BackendProtectionGlobalFilter filter(BackendProtectionGlobalFilter filter) {
+        filter.bindTo(registry);
+        return filter;
+    }
+
+    private MockServerWebExchange exchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/geoserver/wms"));
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        return exchange;
+    }
+
+    private double gauge(String name) {
+        return registry.get(BackendProtectionGlobalFilter.METRICS_PREFIX + name).tag("service", "geoserver").gauge()
+                .value();
+    }
+
+    @Test
+    void unprotectedServicePassesThrough() {
+        BackendProtectionGlobalFilter filter = filter(new BackendProtectionGlobalFilter());
+        MockServerWebExchange exchange = exchange();
+        filter.filter(exchange, chain).block();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(registry.find(BackendProtectionGlobalFilter.METRICS_PREFIX + ".limit").gauge()).isNull();
+    }
+
+    @Test
+    void limitShrinksWhenBackendSlowsDown() {
+        target.adaptiveConcurrency(new AdaptiveConcurrency().setEnabled(true).setInitialLimit(20).setMinLimit(2));
+        BackendProtectionGlobalFilter filter = filter(new BackendProtectionGlobalFilter());
+
+        latency = Duration.ofMillis(2);
+        for (int i = 0; i < 30; i++) {
+            filter.filter(exchange(), chain).block();
+        }
+        final double initial = gauge(".limit");
+        assertThat(initial).isGreaterThan(15);
+
+        latency = Duration.ofMillis(60);
+        for (int i = 0; i < 15; i++) {
+            filter.filter(exchange(), chain).block();
+        }
+        final double limit = gauge(".limit");
+        assertThat(limit).isLessThan(initial * 0.75).isGreaterThanOrEqualTo(2);
+
+        // a burst beyond the new limit is shed without reaching the backend
+        backendCalls.set(0);
+        List<MockServerWebExchange> burst = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            MockServerWebExchange exchange = exchange();
+            burst.add(exchange);
+            filter.filter(exchange, chain).subscribe();
+        }
+        assertThat(gauge(".inflight")).isEqualTo(limit);
+        assertThat(backendCalls.get()).isEqualTo((int) limit);
+        List<MockServerWebExchange> shed = burst.stream()
+                .filter(e -> e.getResponse().getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE).toList();
+        assertThat(shed).hasSize(20 - (int) limit);
+        assertThat(shed.get(0).getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(registry.get(BackendProtectionGlobalFilter.METRICS_PREFIX + ".rejected")
+                .tags("service", "geoserver", "reason", "limit").functionCounter().count()).isEqualTo(shed.size());
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> gauge(".inflight") == 0);
+    }
+
+    @Test
+    void responseTimeout() {
+        target.responseTimeout(Duration.ofMillis(50));
+        BackendProtectionGlobalFilter filter = filter(new BackendProtectionGlobalFilter());
+        latency = Duration.ofSeconds(10);
+        assertThatThrownBy(() -> filter.filter(exchange(), chain).block()).isInstanceOfSatisfying(
+                ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.GATEWAY_TIMEOUT));
+        assertThat(registry.get(BackendProtectionGlobalFilter.METRICS_PREFIX + ".timeouts").tag("service", "geoserver")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void responseTimeoutDoesNotApplyOnceCommitted() {
+        target.responseTimeout(Duration.ofMillis(50));
+        BackendProtectionGlobalFilter filter = filter(new BackendProtectionGlobalFilter());
+        when(chain.filter(any())).thenAnswer(invocation -> {
+            ServerWebExchange exchange = invocation.getArgument(0);
+            // commit right away, then keep streaming the body for longer than the timeout
+            return exchange.getResponse().setComplete().then(Mono.delay(Duration.ofMillis(200))).then();
+        });
+        filter.filter(exchange(), chain).block();
+    }
+
+    @Test
+    void circuitBreaker() {
+        AtomicLong clock = new AtomicLong();
+        target.circuitBreaker(
+                new CircuitBreaker().setEnabled(true).setFailureThreshold(2).setOpenDuration(Duration.ofSeconds(10)));
+        BackendProtectionGlobalFilter filter = filter(new BackendProtectionGlobalFilter(clock::get));
+
+        status = HttpStatus.BAD_GATEWAY;
+        filter.filter(exchange(), chain).block();
+        assertThat(gauge(".breaker.state")).isEqualTo(BackendCircuitBreaker.State.CLOSED.ordinal());
+        filter.filter(exchange(), chain).block();
+        assertThat(gauge(".breaker.state")).isEqualTo(BackendCircuitBreaker.State.OPEN.ordinal());
+
+        status = HttpStatus.OK;
+        MockServerWebExchange rejected = exchange();
+        filter.filter(rejected, chain).block();
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("11");
+        assertThat(backendCalls.get()).isEqualTo(2);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        MockServerWebExchange probe = exchange();
+        filter.filter(probe, chain).block();
+        assertThat(probe.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(gauge(".breaker.state")).isEqualTo(BackendCircuitBreaker.State.CLOSED.ordinal());
+    }
+
+    @Test
+    void backendErrorsCountAsFailures() {
+        target.circuitBreaker(new CircuitBreaker().setEnabled(true).setFailureThreshold(1));
+        BackendProtectionGlobalFilter filter = filter(new BackendProtectionGlobalFilter());
+        when(chain.filter(any())).thenReturn(Mono.error(new IllegalStateException("connection refused")));
+        assertThatThrownBy(() -> filter.filter(exchange(), chain).block()).isInstanceOf(IllegalStateException.class);
+        assertThat(gauge(".breaker.state")).isEqualTo(BackendCircuitBreaker.State.OPEN.ordinal());
+    }
+
+    @Test
+    void configChangesReplaceTheBackend() {
+        target.circuitBreaker(new CircuitBreaker().setEnabled(true).setFailureThreshold(1));
+        BackendProtectionGlobalFilter filter = filter(new BackendProtectionGlobalFilter());
+        status = HttpStatus.BAD_GATEWAY;
+        filter.filter(exchange(), chain).block();
+        assertThat(gauge(".breaker.state")).isEqualTo(BackendCircuitBreaker.State.OPEN.ordinal());
+        assertThat(filter.backend(target)).isSameAs(filter.backend(target));
+
+        // the refreshed configuration applies with a new circuit and meters
+        target.circuitBreaker(new CircuitBreaker().setEnabled(true).setFailureThreshold(5));
+        MockServerWebExchange exchange = exchange();
+        filter.filter(exchange, chain).block();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+        assertThat(gauge(".breaker.state")).isEqualTo(BackendCircuitBreaker.State.CLOSED.ordinal());
+        assertThat(registry.find(BackendProtectionGlobalFilter.METRICS_PREFIX + ".breaker.state").gauges()).hasSize(1);
+
+        // and the old meters are unbound when a protection is disabled
+        target.circuitBreaker(null).adaptiveConcurrency(new AdaptiveConcurrency().setEnabled(true));
+        filter.filter(exchange(), chain).block();
+        assertThat(registry.find(BackendProtectionGlobalFilter.METRICS_PREFIX + ".breaker.state").gauge()).isNull();
+        assertThat(gauge(".limit")).isPositive();
+    }
+}
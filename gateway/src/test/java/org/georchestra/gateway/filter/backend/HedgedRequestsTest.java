@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.georchestra.gateway.filter.loadbalancer.LoadBalancerGlobalFilter;
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances;
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Instance;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.Hedging;
+import org.georchestra.gateway.model.LoadBalancing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Test suite for {@link HedgedRequests} and the {@link ServiceRoutingFilter}
+ * request hedging, against a slow and a fast HTTP server.
+ */
+class HedgedRequestsTest {
+
+    private DisposableServer slow;
+    private DisposableServer fast;
+
+    private ServiceConnectionPools pools;
+    private HedgedRequests hedgedRequests;
+    private ServiceRoutingFilter filter;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        slow = server("slow", Duration.ofSeconds(2));
+        fast = server("fast", Duration.ZERO);
+
+        HttpClientProperties properties = new HttpClientProperties();
+        ServerProperties serverProperties = new ServerProperties();
+        pools = new ServiceConnectionPools(properties, serverProperties, List.of(),
+                new HttpClientSslConfigurer(properties.getSsl(), serverProperties, null));
+        hedgedRequests = new HedgedRequests();
+        registry = new SimpleMeterRegistry();
+        hedgedRequests.bindTo(registry);
+
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("headersFilters", List.of());
+        ObjectProvider<List<HttpHeadersFilter>> headersFilters = beanFactory
+                .getBeanProvider(ResolvableType.forClassWithGenerics(List.class, HttpHeadersFilter.class));
+        filter = new ServiceRoutingFilter(HttpClient.create(), headersFilters, properties, pools, hedgedRequests);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pools.destroy();
+        slow.disposeNow();
+        fast.disposeNow();
+    }
+
+    private DisposableServer server(String name, Duration delay) {
+        return HttpServer.create().host("localhost").port(0).handle(
+                (req, res) -> Mono.delay(delay).then(res.header("X-Server", name).sendString(Mono.just(name)).then()))
+                .bindNow();
+    }
+
+    private static URI uri(DisposableServer server) {
+        return URI.create("http://localhost:%d".formatted(server.port()));
+    }
+
+    private HedgedRequests.Stats warmUp(Duration latency) {
+        HedgedRequests.Stats stats = hedgedRequests.stats("geoserver");
+        stats.onRequest(new Hedging());
+        IntStream.range(0, HedgedRequests.RECOMPUTE_EVERY).forEach(i -> stats.record(latency.toNanos()));
+        return stats;
+    }
+
+    private MockServerWebExchange exchange(Hedging hedging, Instance primary, String method) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest
+                .method(HttpMethod.valueOf(method), primary.resolve(URI.create("http://geoserver/geoserver/wms"))));
+        GeorchestraTargetConfig.setTarget(exchange,
+                new GeorchestraTargetConfig().serviceName("geoserver").hedging(hedging));
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, exchange.getRequest().getURI());
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR,
+                Route.async().id("geoserver").uri(URI.create("http://geoserver")).predicate(e -> true).build());
+        exchange.getAttributes().put(LoadBalancerGlobalFilter.INSTANCE_ATTR, primary);
+        return exchange;
+    }
+
+    private GatewayFilterChain chain() {
+        GatewayFilterChain chain = Mockito.mock(GatewayFilterChain.class);
+        Mockito.when(chain.filter(Mockito.any())).thenReturn(Mono.empty());
+        return chain;
+    }
+
+    private static String body(MockServerWebExchange exchange) {
+        Connection connection = exchange.getRequiredAttribute(CLIENT_RESPONSE_CONN_ATTR);
+        return connection.inbound().receive().aggregate().asString().block(Duration.ofSeconds(5));
+    }
+
+    private double counter(String name) {
+        return registry.get(HedgedRequests.METRICS_PREFIX + name).tag("service", "geoserver").functionCounter().count();
+    }
+
+    @Test
+    void noDelayUntilEnoughSamples() {
+        HedgedRequests.Stats stats = hedgedRequests.stats("geoserver");
+        assertThat(stats.onRequest(new Hedging())).isNull();
+        IntStream.range(0, HedgedRequests.RECOMPUTE_EVERY - 1).forEach(i -> stats.record(1_000_000));
+        assertThat(stats.onRequest(new Hedging())).isNull();
+        stats.record(1_000_000);
+        assertThat(stats.onRequest(new Hedging())).isNotNull();
+    }
+
+    @Test
+    void delayIsLatencyPercentile() {
+        HedgedRequests.Stats stats = hedgedRequests.stats("geoserver");
+        stats.onRequest(new Hedging());
+        for (int i = 1; i <= 100; i++) {
+            stats.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        Hedging config = new Hedging().setPercentile(90).setMinDelay(Duration.ZERO);
+        assertThat(stats.onRequest(config)).isEqualTo(Duration.ofMillis(90));
+        assertThat(stats.onRequest(config.setPercentile(50))).isEqualTo(Duration.ofMillis(50));
+        assertThat(stats.onRequest(config.setMinDelay(Duration.ofMillis(70)))).isEqualTo(Duration.ofMillis(70));
+        assertThat(registry.get(HedgedRequests.METRICS_PREFIX + ".delay").gauge().value()).isEqualTo(50);
+    }
+
+    @Test
+    void budgetCapsHedgeRate() {
+        HedgedRequests.Stats stats = warmUp(Duration.ofMillis(1));
+        Hedging config = new Hedging().setMaxExtraLoad(0.05);
+        int hedged = 0;
+        for (int i = 0; i < 1000; i++) {
+            stats.onRequest(config);
+            if (stats.tryHedge()) {
+                hedged++;
+            }
+        }
+        assertThat(hedged).isEqualTo(50);
+        assertThat(counter(".issued")).isEqualTo(50);
+    }
+
+    @Test
+    void budgetAllowsBursts() {
+        HedgedRequests.Stats stats = warmUp(Duration.ofMillis(1));
+        Hedging config = new Hedging().setMaxExtraLoad(1);
+        IntStream.range(0, 100).forEach(i -> stats.onRequest(config));
+        long hedged = IntStream.range(0, 100).filter(i -> stats.tryHedge()).count();
+        assertThat(hedged).isEqualTo(HedgedRequests.MAX_BURST);
+    }
+
+    @Test
+    void hedgeWinsOverSlowReplica() {
+        warmUp(Duration.ofMillis(20));
+        ServiceInstances instances = new ServiceInstances("geoserver", List.of(uri(slow), uri(fast)),
+                new LoadBalancing(), System::nanoTime);
+        Instance primary = instances.getInstances().get(0);
+        Hedging hedging = new Hedging().setEnabled(true).setMaxExtraLoad(1);
+        MockServerWebExchange exchange = exchange(hedging, primary, "GET");
+        primary.start();
+
+        long start = System.nanoTime();
+        filter.filter(exchange, chain()).block(Duration.ofSeconds(5));
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getHeaders().getFirst("X-Server")).isEqualTo("fast");
+        assertThat(body(exchange)).isEqualTo("fast");
+        Instance hedge = exchange.getAttribute(LoadBalancerGlobalFilter.INSTANCE_ATTR);
+        assertThat(hedge).isNotSameAs(primary);
+        assertThat(hedge.getInFlight()).isZero();
+        assertThat(primary.getInFlight()).as("the losing primary is cancelled").isZero();
+        assertThat(primary.getLatencyNanos()).as("charged the time waited")
+                .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(exchange.<Boolean>getAttribute(LoadBalancerGlobalFilter.REPORTED_ATTR)).isTrue();
+        assertThat(counter(".issued")).isEqualTo(1);
+        assertThat(counter(".won")).isEqualTo(1);
+    }
+
+    @Test
+    void primaryConnectionErrorFailsFastWithoutHedging() {
+        warmUp(Duration.ofSeconds(10));
+        DisposableServer down = server("down", Duration.ZERO);
+        URI downUri = uri(down);
+        down.disposeNow();
+        ServiceInstances instances = new ServiceInstances("geoserver", List.of(downUri, uri(fast)),
+                new LoadBalancing().setConsecutiveFailures(1).setMaxEjectionPercent(50), System::nanoTime);
+        Instance primary = instances.getInstances().get(0);
+        MockServerWebExchange exchange = exchange(new Hedging().setEnabled(true).setMaxExtraLoad(1), primary, "GET");
+        primary.start();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> filter.filter(exchange, chain()).block(Duration.ofSeconds(15)))
+                .as("the connection error should not be swallowed by a hedge");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).as("should not wait for the hedging delay")
+                .isLessThan(Duration.ofSeconds(5));
+        assertThat(primary.getInFlight()).isZero();
+        assertThat(primary.isEjected()).as("the connection error is a failure").isTrue();
+        assertThat(counter(".issued")).isZero();
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() {
+        warmUp(Duration.ofMillis(500));
+        ServiceInstances instances = new ServiceInstances("geoserver", List.of(uri(fast), uri(slow)),
+                new LoadBalancing(), System::nanoTime);
+        Instance primary = instances.getInstances().get(0);
+        MockServerWebExchange exchange = exchange(new Hedging().setEnabled(true).setMaxExtraLoad(1), primary, "GET");
+        primary.start();
+
+        filter.filter(exchange, chain()).block(Duration.ofSeconds(5));
+
+        assertThat(body(exchange)).isEqualTo("fast");
+        assertThat(primary.getInFlight()).isZero();
+        assertThat(primary.getLatencyNanos()).isPositive();
+        assertThat(exchange.<Instance>getAttribute(LoadBalancerGlobalFilter.INSTANCE_ATTR)).isSameAs(primary);
+        assertThat(counter(".issued")).isZero();
+    }
+
+    @Test
+    void nonIdempotentRequestsAreNotHedged() {
+        warmUp(Duration.ofMillis(20));
+        ServiceInstances instances = new ServiceInstances("geoserver", List.of(uri(slow), uri(fast)),
+                new LoadBalancing(), System::nanoTime);
+        Instance primary = instances.getInstances().get(0);
+        MockServerWebExchange exchange = exchange(new Hedging().setEnabled(true).setMaxExtraLoad(1), primary, "POST");
+
+        filter.filter(exchange, chain()).block(Duration.ofSeconds(5));
+
+        assertThat(body(exchange)).isEqualTo("slow");
+        assertThat(counter(".issued")).isZero();
+    }
+}
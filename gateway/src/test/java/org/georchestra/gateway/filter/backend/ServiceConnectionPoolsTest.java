@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.gateway.model.ConnectionPool;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Test suite for {@link ServiceConnectionPools} and
+ * {@link ServiceRoutingFilter}, against an actual HTTP server.
+ */
+class ServiceConnectionPoolsTest {
+
+    private DisposableServer server;
+
+    private ServiceConnectionPools pools;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        HttpClientProperties properties = new HttpClientProperties();
+        ServerProperties serverProperties = new ServerProperties();
+        pools = new ServiceConnectionPools(properties, serverProperties, List.of(),
+                new HttpClientSslConfigurer(properties.getSsl(), serverProperties, null));
+        registry = new SimpleMeterRegistry();
+        pools.bindTo(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pools.destroy();
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    private void startServer(HttpProtocol... protocols) {
+        server = HttpServer.create().host("localhost").port(0).protocol(protocols)
+                .handle((req, res) -> res.sendString(Mono.just(req.version().text()))).bindNow();
+    }
+
+    private GeorchestraTargetConfig target(String service, ConnectionPool pool) {
+        return new GeorchestraTargetConfig().serviceName(service).connectionPool(pool);
+    }
+
+    private String get(HttpClient client) {
+        return client.get().uri("http://localhost:%d/".formatted(server.port())).responseContent().aggregate()
+                .asString().block(Duration.ofSeconds(10));
+    }
+
+    private double gauge(String name, String service) {
+        return registry.get(ServiceConnectionPools.METRICS_PREFIX + name).tag("service", service).gauge().value();
+    }
+
+    @Test
+    void sharedPoolByDefault() {
+        assertThat(pools.get(target("geoserver", new ConnectionPool()))).isEmpty();
+        assertThat(pools.get(target("geoserver", null))).isEmpty();
+        assertThat(pools.get(target(null, new ConnectionPool().setEnabled(true)))).isEmpty();
+    }
+
+    @Test
+    void clientPerService() {
+        ConnectionPool config = new ConnectionPool().setEnabled(true).setMaxConnections(5);
+        HttpClient geoserver = pools.get(target("geoserver", config)).orElseThrow();
+        assertThat(pools.get(target("geoserver", config))).containsSame(geoserver);
+        assertThat(pools.get(target("geonetwork", config))).get().isNotSameAs(geoserver);
+
+        ConnectionPool changed = new ConnectionPool().setEnabled(true).setMaxConnections(10);
+        assertThat(pools.get(target("geoserver", changed))).get().isNotSameAs(geoserver);
+        assertThat(gauge(".max", "geoserver")).isEqualTo(10);
+    }
+
+    @Test
+    void poolMetrics() {
+        startServer(HttpProtocol.HTTP11);
+        HttpClient client = pools.get(target("geoserver", new ConnectionPool().setEnabled(true))).orElseThrow();
+
+        assertThat(get(client)).isEqualTo("HTTP/1.1");
+        // the connection is released asynchronously
+        await().atMost(5, TimeUnit.SECONDS).until(() -> gauge(".idle", "geoserver") == 1);
+        assertThat(gauge(".active", "geoserver")).isZero();
+        assertThat(gauge(".pending", "geoserver")).isZero();
+        assertThat(gauge(".max", "geoserver")).isEqualTo(100);
+    }
+
+    @Test
+    void h2c() {
+        startServer(HttpProtocol.H2C);
+        HttpClient client = pools.get(target("geoserver", new ConnectionPool().setEnabled(true).setH2c(true)))
+                .orElseThrow();
+
+        assertThat(get(client)).isEqualTo("HTTP/2.0");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void routingFilterUsesServiceClient() {
+        HttpClient defaultClient = HttpClient.create();
+        ServiceRoutingFilter filter = new ServiceRoutingFilter(defaultClient, Mockito.mock(ObjectProvider.class),
+                new HttpClientProperties(), pools, new HedgedRequests());
+        Route route = Route.async().id("geoserver").uri(URI.create("http://localhost:8080")).predicate(exchange -> true)
+                .build();
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/geoserver/wms"));
+
+        assertThat(filter.getHttpClient(route, exchange)).isSameAs(defaultClient);
+
+        GeorchestraTargetConfig.setTarget(exchange, target("geoserver", new ConnectionPool().setEnabled(true)));
+        assertThat(filter.getHttpClient(route, exchange)).isNotSameAs(defaultClient)
+                .isSameAs(pools.get(GeorchestraTargetConfig.getTarget(exchange).orElseThrow()).orElseThrow());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.georchestra.gateway.filter.cache.CoalesceGatewayFilterFactory.Config;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Test suite for {@link CoalesceGatewayFilterFactory}, using a stub backend
+ * that holds the first upstream call until {@link #release} is emitted.
+ */
+class CoalesceGatewayFilterFactoryTest {
+
+    private SimpleMeterRegistry registry;
+
+    private CoalesceGatewayFilterFactory factory;
+
+    private final Route route = Route.async().id("geoserver").uri("http://geoserver:8080").predicate(e -> true).build();
+
+    private final Sinks.Empty<Void> release = Sinks.empty();
+
+    /** stub backend response headers */
+    private HttpHeaders backendHeaders;
+
+    private final AtomicInteger backendCalls = new AtomicInteger();
+
+    private GatewayFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        factory = new CoalesceGatewayFilterFactory();
+        factory.bindTo(registry);
+        backendHeaders = new HttpHeaders();
+        chain = mock(GatewayFilterChain.class);
+        when(chain.filter(any())).thenAnswer(invocation -> {
+            ServerWebExchange exchange = invocation.getArgument(0);
+            int call = backendCalls.incrementAndGet();
+            Mono<Void> latency = call == 1 ? release.asMono() : Mono.empty();
+            return latency.then(Mono.defer(() -> {
+                ServerHttpResponse response = exchange.getResponse();
+                response.setStatusCode(HttpStatus.OK);
+                response.getHeaders().putAll(backendHeaders);
+                return response.writeWith(Flux.just("capabilities ", String.valueOf(call))
+                        .map(s -> response.bufferFactory().wrap(s.getBytes(StandardCharsets.UTF_8))));
+            }));
+        });
+    }
+
+    private MockServerWebExchange exchange(String uri, String user) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get(uri);
+        if (user != null) {
+            request.header("sec-username", user);
+        }
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        return exchange;
+    }
+
+    private CompletableFuture<Void> send(GatewayFilter filter, MockServerWebExchange exchange) {
+        return filter.filter(exchange, chain).toFuture();
+    }
+
+    private static String body(MockServerWebExchange exchange) {
+        return exchange.getResponse().getBodyAsString().block();
+    }
+
+    private double counter(String name, String... tags) {
+        return registry.get(CoalesceGatewayFilterFactory.METRICS_PREFIX + name).tag("route", "geoserver").tags(tags)
+                .functionCounter().count();
+    }
+
+    @Test
+    void concurrentIdenticalRequestsShareOneUpstreamCall() {
+        GatewayFilter filter = factory.apply(new Config());
+        List<MockServerWebExchange> exchanges = List.of(
+                exchange("/geoserver/wms?SERVICE=WMS&REQUEST=GetCapabilities", null),
+                exchange("/geoserver/wms?request=GetCapabilities&service=WMS", null),
+                exchange("/geoserver/wms?Service=WMS&Request=GetCapabilities", null));
+        List<CompletableFuture<Void>> responses = exchanges.stream().map(e -> send(filter, e)).toList();
+        assertThat(backendCalls.get()).isEqualTo(1);
+        assertThat(registry.get(CoalesceGatewayFilterFactory.METRICS_PREFIX + ".inflight").gauge().value())
+                .isEqualTo(1);
+
+        release.tryEmitEmpty();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> responses.stream().allMatch(CompletableFuture::isDone));
+        exchanges.forEach(exchange -> {
+            assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(body(exchange)).isEqualTo("capabilities 1");
+        });
+        assertThat(counter(".saved")).isEqualTo(2);
+        assertThat(registry.get(CoalesceGatewayFilterFactory.METRICS_PREFIX + ".inflight").gauge().value()).isZero();
+
+        // the next request is a new upstream call
+        MockServerWebExchange next = exchange("/geoserver/wms?SERVICE=WMS&REQUEST=GetCapabilities", null);
+        send(filter, next).join();
+        assertThat(body(next)).isEqualTo("capabilities 2");
+    }
+
+    @Test
+    void requestsWithDifferentSecurityHeadersAreNotCoalesced() {
+        GatewayFilter filter = factory.apply(new Config());
+        MockServerWebExchange alice = exchange("/geoserver/wms?request=GetCapabilities", "alice");
+        MockServerWebExchange bob = exchange("/geoserver/wms?request=GetCapabilities", "bob");
+        CompletableFuture<Void> aliceResponse = send(filter, alice);
+        send(filter, bob).join();
+        assertThat(body(bob)).isEqualTo("capabilities 2");
+        release.tryEmitEmpty();
+        aliceResponse.join();
+        assertThat(body(alice)).isEqualTo("capabilities 1");
+    }
+
+    @Test
+    void requestsWithDifferentCookiesAreNotCoalesced() {
+        GatewayFilter filter = factory.apply(new Config());
+        MockServerWebExchange first = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/geonetwork/srv/api/me").header(HttpHeaders.COOKIE, "JSESSIONID=1"));
+        MockServerWebExchange second = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/geonetwork/srv/api/me").header(HttpHeaders.COOKIE, "JSESSIONID=2"));
+        first.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        second.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route);
+        CompletableFuture<Void> firstResponse = send(filter, first);
+        send(filter, second).join();
+        assertThat(body(second)).isEqualTo("capabilities 2");
+        release.tryEmitEmpty();
+        firstResponse.join();
+        assertThat(body(first)).isEqualTo("capabilities 1");
+    }
+
+    @Test
+    void oversizeResponsesAreNotShared() {
+        GatewayFilter filter = factory.apply(new Config().setMaxSize(DataSize.ofBytes(8)));
+        MockServerWebExchange leader = exchange("/geoserver/wms?request=GetCapabilities", null);
+        CompletableFuture<Void> leaderResponse = send(filter, leader);
+        MockServerWebExchange follower = exchange("/geoserver/wms?request=GetCapabilities", null);
+        CompletableFuture<Void> followerResponse = send(filter, follower);
+        release.tryEmitEmpty();
+        leaderResponse.join();
+        followerResponse.join();
+        assertThat(body(leader)).isEqualTo("capabilities 1");
+        assertThat(body(follower)).isEqualTo("capabilities 2");
+        assertThat(counter(".fallback", "reason", "oversize")).isEqualTo(1);
+        assertThat(counter(".saved")).isZero();
+    }
+
+    @Test
+    void fanOutIsBounded() {
+        GatewayFilter filter = factory.apply(new Config().setMaxFanOut(2));
+        List<CompletableFuture<Void>> responses = IntStream.range(0, 4)
+                .mapToObj(i -> send(filter, exchange("/geoserver/wms?request=GetCapabilities", null))).toList();
+        assertThat(backendCalls.get()).isEqualTo(2);
+        assertThat(counter(".fallback", "reason", "fanout")).isEqualTo(1);
+        release.tryEmitEmpty();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> responses.stream().allMatch(CompletableFuture::isDone));
+        assertThat(counter(".saved")).isEqualTo(2);
+    }
+
+    @Test
+    void waitIsBounded() {
+        GatewayFilter filter = factory.apply(new Config().setMaxWait(Duration.ofMillis(50)));
+        CompletableFuture<Void> leader = send(filter, exchange("/geoserver/wms?request=GetCapabilities", null));
+        MockServerWebExchange follower = exchange("/geoserver/wms?request=GetCapabilities", null);
+        send(filter, follower).join();
+        assertThat(body(follower)).isEqualTo("capabilities 2");
+        assertThat(counter(".fallback", "reason", "timeout")).isEqualTo(1);
+        assertThat(leader).isNotDone();
+        release.tryEmitEmpty();
+        leader.join();
+    }
+
+    @Test
+    void responsesSettingCookiesAreNotShared() {
+        backendHeaders.set(HttpHeaders.SET_COOKIE, "JSESSIONID=1234");
+        GatewayFilter filter = factory.apply(new Config());
+        CompletableFuture<Void> leader = send(filter, exchange("/geoserver/wms?request=GetCapabilities", null));
+        MockServerWebExchange follower = exchange("/geoserver/wms?request=GetCapabilities", null);
+        CompletableFuture<Void> followerResponse = send(filter, follower);
+        release.tryEmitEmpty();
+        leader.join();
+        followerResponse.join();
+        assertThat(body(follower)).isEqualTo("capabilities 2");
+        assertThat(counter(".fallback", "reason", "cookie")).isEqualTo(1);
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.model.CapabilitiesCache;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.ResponseCache;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link ResponseCacheGlobalFilter}, using a stub backend whose
+ * response headers are set by each test.
+ */
+class ResponseCacheGlobalFilterTest {
+
+    private SimpleMeterRegistry registry;
+
+    private GeorchestraTargetConfig target;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private CachedResponses cache;
+
+    private ResponseCacheGlobalFilter filter;
+
+    /** stub backend response headers */
+    private HttpHeaders backendHeaders;
+
+    private final AtomicInteger backendCalls = new AtomicInteger();
+
+    private GatewayFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        target = new GeorchestraTargetConfig().serviceName("geoserver")
+                .responseCache(new ResponseCache().setEnabled(true));
+        cache = new CachedResponses(DataSize.ofMegabytes(1).toBytes(), clock::get);
+        filter = new ResponseCacheGlobalFilter(cache);
+        filter.bindTo(registry);
+        backendHeaders = new HttpHeaders();
+        backendHeaders.setCacheControl("public, max-age=60");
+        chain = mock(GatewayFilterChain.class);
+        when(chain.filter(any())).thenAnswer(invocation -> {
+            ServerWebExchange exchange = invocation.getArgument(0);
+            int call = backendCalls.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().putAll(backendHeaders);
+            byte[] body = ("tile " + call).getBytes(StandardCharsets.UTF_8);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+        });
+    }
+
+    private MockServerWebExchange exchange(String uri) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(uri));
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        return exchange;
+    }
+
+    private String get(String uri) {
+        MockServerWebExchange exchange = exchange(uri);
+        filter.filter(exchange, chain).block();
+        return exchange.getResponse().getBodyAsString().block();
+    }
+
+    private double requests(String result) {
+        return registry.get(ResponseCacheGlobalFilter.METRICS_PREFIX + ".requests").tag("service", "geoserver")
+                .tag("result", result).functionCounter().count();
+    }
+
+    @Test
+    void hitsAreServedFromTheCache() {
+        assertThat(get("/geoserver/gwc/service/wmts?layer=topp:states&TileRow=1")).isEqualTo("tile 1");
+        MockServerWebExchange exchange = exchange("/geoserver/gwc/service/wmts?layer=topp:states&TileRow=1");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        filter.filter(exchange, chain).block();
+
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("tile 1");
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.AGE)).isEqualTo("5");
+        assertThat(exchange.getResponse().getHeaders().getCacheControl()).isEqualTo("public, max-age=60");
+        assertThat(backendCalls.get()).isEqualTo(1);
+        assertThat(requests("hit")).isEqualTo(1);
+        assertThat(requests("miss")).isEqualTo(1);
+        assertThat(registry.get(ResponseCacheGlobalFilter.METRICS_PREFIX + ".bytes.saved").functionCounter().count())
+                .isEqualTo(6);
+        assertThat(registry.get(ResponseCacheGlobalFilter.METRICS_PREFIX + ".hit.ratio").gauge().value())
+                .isEqualTo(0.5);
+        assertThat(registry.get(ResponseCacheGlobalFilter.METRICS_PREFIX + ".entries").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void owsParameterNamesAreCaseInsensitiveAndUnordered() {
+        get("/geoserver/wms?SERVICE=WMS&REQUEST=GetMap&LAYERS=topp:states");
+        assertThat(get("/geoserver/wms?layers=topp:states&service=WMS&request=GetMap")).isEqualTo("tile 1");
+        assertThat(get("/geoserver/wms?layers=topp:roads&service=WMS&request=GetMap")).isEqualTo("tile 2");
+        assertThat(CacheKeys.normalizeQuery("SERVICE=WMS&&Request=GetMap&service=wfs"))
+                .isEqualTo("request=GetMap&service=WMS&service=wfs");
+    }
+
+    @Test
+    void otherQueriesAreKeptAsSent() {
+        get("/geoserver/gwc/service/tms/1.0.0/topp:states?Format=png&format=jpeg");
+        assertThat(get("/geoserver/gwc/service/tms/1.0.0/topp:states?format=jpeg&Format=png")).isEqualTo("tile 2");
+        assertThat(CacheKeys.normalizeQuery("Format=png&&format=jpeg")).isEqualTo("Format=png&&format=jpeg");
+    }
+
+    private String get(String uri, String acceptEncoding) {
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get(uri).header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding));
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        filter.filter(exchange, chain).block();
+        return exchange.getResponse().getBodyAsString().block();
+    }
+
+    @Test
+    void responsesAreOnlySharedByRequestsAcceptingTheSameEncodings() {
+        backendHeaders.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        get("/geoserver/wms?tile=1", "gzip, deflate, br");
+        assertThat(get("/geoserver/wms?tile=1", "BR,gzip;q=0.8, deflate")).isEqualTo("tile 1");
+        assertThat(get("/geoserver/wms?tile=1", "gzip, deflate")).as("the cached response may be br encoded")
+                .isEqualTo("tile 2");
+        assertThat(get("/geoserver/wms?tile=1", "gzip, deflate, br;q=0")).isEqualTo("tile 2");
+        assertThat(CacheKeys.acceptedEncodings(new HttpHeaders())).isEmpty();
+    }
+
+    @Test
+    void responsesSettingCookiesWhenCommittedAreNotCached() {
+        doAnswer(invocation -> {
+            ServerWebExchange exchange = invocation.getArgument(0);
+            int call = backendCalls.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().putAll(backendHeaders);
+            // e.g. a web session saved as the response is committed
+            response.beforeCommit(() -> {
+                response.addCookie(ResponseCookie.from("SESSION", "1234").build());
+                return Mono.empty();
+            });
+            byte[] body = ("tile " + call).getBytes(StandardCharsets.UTF_8);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+        }).when(chain).filter(any());
+        get("/geoserver/wms?tile=1");
+        assertThat(get("/geoserver/wms?tile=1")).isEqualTo("tile 2");
+        assertThat(cache.count()).isZero();
+    }
+
+    @Test
+    void entriesExpireAsPerTheBackendFreshness() {
+        get("/geoserver/wms?tile=1");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertThat(get("/geoserver/wms?tile=1")).isEqualTo("tile 1");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(get("/geoserver/wms?tile=1")).isEqualTo("tile 2");
+    }
+
+    @Test
+    void authenticatedRequestsBypassTheCache() {
+        get("/geoserver/wms?tile=1");
+        MockServerWebExchange exchange = exchange("/geoserver/wms?tile=1");
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername("testuser");
+        GeorchestraUsers.store(exchange, user);
+        filter.filter(exchange, chain).block();
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("tile 2");
+    }
+
+    @Test
+    void uncacheableResponsesAreNotCached() {
+        backendHeaders.setCacheControl("private, max-age=60");
+        get("/geoserver/wms?tile=1");
+        assertThat(get("/geoserver/wms?tile=1")).isEqualTo("tile 2");
+
+        backendHeaders.setCacheControl("max-age=60");
+        backendHeaders.set(HttpHeaders.SET_COOKIE, "JSESSIONID=1234");
+        get("/geoserver/wms?tile=2");
+        assertThat(get("/geoserver/wms?tile=2")).isEqualTo("tile 4");
+        assertThat(cache.count()).isZero();
+    }
+
+    @Test
+    void oversizedResponsesAreNotCached() {
+        target.responseCache().setMaxEntrySize(DataSize.ofBytes(5));
+        get("/geoserver/wms?tile=1");
+        assertThat(get("/geoserver/wms?tile=1")).isEqualTo("tile 2");
+        assertThat(cache.count()).isZero();
+    }
+
+    private String getCapabilities(String username, String roles) {
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/geoserver/wms?SERVICE=WMS&REQUEST=GetCapabilities")
+                        .header("sec-username", username).header("sec-roles", roles));
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername(username);
+        GeorchestraUsers.store(exchange, user);
+        filter.filter(exchange, chain).block();
+        return exchange.getResponse().getBodyAsString().block();
+    }
+
+    @Test
+    void capabilitiesAreSharedByUsersWithTheSamePermissions() {
+        target.capabilitiesCache(new CapabilitiesCache().setEnabled(true).setTtl(Duration.ofMinutes(1)));
+        backendHeaders.setCacheControl("no-cache");
+
+        assertThat(getCapabilities("alice", "ROLE_USER")).isEqualTo("tile 1");
+        assertThat(getCapabilities("bob", "ROLE_USER")).isEqualTo("tile 1");
+        assertThat(getCapabilities("carol", "ROLE_USER;ROLE_ADMINISTRATOR")).isEqualTo("tile 2");
+        assertThat(getCapabilities("dave", "ROLE_USER;ROLE_ADMINISTRATOR")).isEqualTo("tile 2");
+        assertThat(backendCalls.get()).isEqualTo(2);
+
+        // not a capabilities request, nor anonymous
+        MockServerWebExchange getMap = exchange("/geoserver/wms?REQUEST=GetMap");
+        GeorchestraUsers.store(getMap, new GeorchestraUser());
+        filter.filter(getMap, chain).block();
+        assertThat(backendCalls.get()).isEqualTo(3);
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertThat(getCapabilities("bob", "ROLE_USER")).isEqualTo("tile 4");
+    }
+
+    /**
+     * A service with {@code json-user: true} only gets the user roles and
+     * organization from the {@code sec-user} header, which is left out of the key
+     */
+    private String getJsonUserCapabilities(String username, String org, String... roles) {
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/geoserver/wms?SERVICE=WMS&REQUEST=GetCapabilities").header("sec-user",
+                        "{\"username\":\"%s\",\"roles\":%s}".formatted(username, List.of(roles))));
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername(username);
+        user.setOrganization(org);
+        user.setRoles(List.of(roles));
+        GeorchestraUsers.store(exchange, user);
+        filter.filter(exchange, chain).block();
+        return exchange.getResponse().getBodyAsString().block();
+    }
+
+    @Test
+    void capabilitiesKeyIncludesTheUserPermissionsWithJsonUserOnly() {
+        target.capabilitiesCache(new CapabilitiesCache().setEnabled(true).setTtl(Duration.ofMinutes(1)));
+
+        assertThat(getJsonUserCapabilities("alice", "PSC", "ROLE_USER")).isEqualTo("tile 1");
+        assertThat(getJsonUserCapabilities("bob", "PSC", "ROLE_USER")).isEqualTo("tile 1");
+        assertThat(getJsonUserCapabilities("carol", "PSC", "ROLE_USER", "ROLE_ADMINISTRATOR")).isEqualTo("tile 2");
+        assertThat(getJsonUserCapabilities("dave", "PSC", "ROLE_ADMINISTRATOR", "ROLE_USER")).isEqualTo("tile 2");
+        assertThat(getJsonUserCapabilities("erin", "C2C", "ROLE_USER")).isEqualTo("tile 3");
+        assertThat(backendCalls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void adminEndpointInvalidatesCachedResponses() {
+        ResponseCacheEndpoint endpoint = new ResponseCacheEndpoint(cache);
+        get("/geoserver/wms?tile=1");
+        get("/geoserver/wms?tile=2");
+        assertThat(endpoint.stats()).containsEntry("entries", 2L);
+
+        assertThat(endpoint.invalidate("geonetwork")).containsEntry("invalidated", 0);
+        assertThat(endpoint.invalidate("geoserver")).containsEntry("invalidated", 2);
+        assertThat(cache.count()).isZero();
+        assertThat(cache.sizeBytes()).isZero();
+        assertThat(get("/geoserver/wms?tile=1")).isEqualTo("tile 3");
+    }
+
+    @Test
+    void freshness() {
+        ResponseCache config = new ResponseCache();
+        HttpHeaders headers = new HttpHeaders();
+        assertThat(ResponseCacheGlobalFilter.freshnessMillis(HttpStatus.OK, headers, config)).isZero();
+        config.setDefaultTtl(Duration.ofMinutes(1));
+        assertThat(ResponseCacheGlobalFilter.freshnessMillis(HttpStatus.OK, headers, config)).isEqualTo(60_000);
+        assertThat(ResponseCacheGlobalFilter.freshnessMillis(HttpStatus.NOT_FOUND, headers, config)).isZero();
+
+        headers.setDate(1_000_000_000_000L);
+        headers.setExpires(1_000_000_030_000L);
+        assertThat(ResponseCacheGlobalFilter.freshnessMillis(HttpStatus.OK, headers, config)).isEqualTo(30_000);
+        headers.setCacheControl("max-age=10, s-maxage=20");
+        assertThat(ResponseCacheGlobalFilter.freshnessMillis(HttpStatus.OK, headers, config)).isEqualTo(20_000);
+        headers.setCacheControl("no-cache");
+        assertThat(ResponseCacheGlobalFilter.freshnessMillis(HttpStatus.OK, headers, config)).isZero();
+        headers.setCacheControl("max-age=60");
+        headers.setVary(List.of("Origin"));
+        assertThat(ResponseCacheGlobalFilter.freshnessMillis(HttpStatus.OK, headers, config)).isZero();
+    }
+}
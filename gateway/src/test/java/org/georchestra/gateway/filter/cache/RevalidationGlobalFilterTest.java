@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.filter.backend.ServiceConnectionPools;
+import org.georchestra.gateway.filter.loadbalancer.LoadBalancerGlobalFilter;
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Instance;
+import org.georchestra.gateway.model.ConnectionPool;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.LoadBalancing;
+import org.georchestra.gateway.model.Revalidation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.config.HttpClientSslConfigurer;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link RevalidationGlobalFilter}, using a stub backend serving
+ * a versioned static resource.
+ */
+class RevalidationGlobalFilterTest {
+
+    private SimpleMeterRegistry registry;
+
+    private GeorchestraTargetConfig target;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private RevalidationGlobalFilter filter;
+
+    private LoadBalancerGlobalFilter loadBalancer;
+
+    /** stub backend response headers */
+    private HttpHeaders backendHeaders;
+
+    private final AtomicInteger backendCalls = new AtomicInteger();
+
+    /** background revalidation requests */
+    private final List<ClientRequest> revalidations = new CopyOnWriteArrayList<>();
+
+    private GatewayFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        target = new GeorchestraTargetConfig().serviceName("mapstore")
+                .revalidation(new Revalidation().setEnabled(true).setTtl(Duration.ofMinutes(1)));
+        WebClient webClient = WebClient.builder().exchangeFunction(request -> {
+            revalidations.add(request);
+            return Mono.just(ClientResponse.create(HttpStatus.NOT_MODIFIED).header(HttpHeaders.ETAG, "\"v1\"")
+                    .header(HttpHeaders.CACHE_CONTROL, "public, max-age=0").build());
+        }).build();
+        loadBalancer = new LoadBalancerGlobalFilter();
+        filter = new RevalidationGlobalFilter(100, webClient, loadBalancer, null, clock::get);
+        filter.bindTo(registry);
+        backendHeaders = new HttpHeaders();
+        backendHeaders.setETag("\"v1\"");
+        backendHeaders.setCacheControl("public, max-age=0");
+        chain = mock(GatewayFilterChain.class);
+        when(chain.filter(any())).thenAnswer(invocation -> {
+            ServerWebExchange exchange = invocation.getArgument(0);
+            backendCalls.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+            boolean notModified = ifNoneMatch.contains(backendHeaders.getETag());
+            response.setStatusCode(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK);
+            response.getHeaders().putAll(backendHeaders);
+            return response.setComplete();
+        });
+    }
+
+    private MockServerWebExchange get(String ifNoneMatch) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/mapstore/dist/mapstore2.js")
+                .header("sec-proxy", "true");
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR,
+                URI.create("http://mapstore:8080/mapstore/dist/mapstore2.js"));
+        filter.filter(exchange, chain).block();
+        return exchange;
+    }
+
+    private double requests(String result) {
+        return registry.get(RevalidationGlobalFilter.METRICS_PREFIX + ".requests").tag("service", "mapstore")
+                .tag("result", result).functionCounter().count();
+    }
+
+    @Test
+    void matchingConditionalRequestsAreAnsweredLocally() {
+        assertThat(get(null).getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(filter.size()).isEqualTo(1);
+
+        MockServerWebExchange revalidation = get("\"v1\"");
+        assertThat(revalidation.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(revalidation.getResponse().getHeaders().getETag()).isEqualTo("\"v1\"");
+        assertThat(revalidation.getResponse().getHeaders().getCacheControl()).isEqualTo("public, max-age=0");
+        assertThat(backendCalls.get()).isEqualTo(1);
+        assertThat(requests("local")).isEqualTo(1);
+
+        // outdated client copy
+        assertThat(get("\"v0\"").getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(backendCalls.get()).isEqualTo(2);
+        assertThat(requests("forwarded")).isEqualTo(1);
+    }
+
+    @Test
+    void entriesAreRevalidatedInTheBackground() {
+        get(null);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(40));
+        assertThat(get("W/\"v1\"").getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> revalidations.size() == 1);
+        HttpHeaders sent = revalidations.get(0).headers();
+        assertThat(sent.getIfNoneMatch()).containsExactly("\"v1\"");
+        assertThat(sent.getFirst("sec-proxy")).isEqualTo("true");
+        assertThat(registry.get(RevalidationGlobalFilter.METRICS_PREFIX + ".background").functionCounter().count())
+                .isEqualTo(1);
+
+        // confirmed by the backend 40s ago, still fresh
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(40));
+        assertThat(get("\"v1\"").getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(backendCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void backgroundRevalidationsSkipEjectedInstances() {
+        target.target(URI.create("http://mapstore:8080/mapstore/"))
+                .replicas(List.of(URI.create("http://mapstore-2:8080/mapstore/")))
+                .loadBalancing(new LoadBalancing().setConsecutiveFailures(1).setMaxEjectionPercent(50));
+        Instance primary;
+        do {
+            primary = loadBalancer.choose(target, null).orElseThrow();
+        } while (!"mapstore".equals(primary.getUri().getHost()));
+        primary.start();
+        primary.onFailure();
+        assertThat(primary.isEjected()).isTrue();
+
+        get(null);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(40));
+        get("\"v1\"");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> revalidations.size() == 1);
+        assertThat(revalidations.get(0).url()).hasHost("mapstore-2");
+        Instance replica = loadBalancer.choose(target, null).orElseThrow();
+        assertThat(replica.getUri()).hasHost("mapstore-2");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> replica.getInFlight() == 0);
+    }
+
+    @Test
+    void backgroundRevalidationsUseTheServiceConnectionPool() {
+        HttpClientProperties properties = new HttpClientProperties();
+        ServerProperties serverProperties = new ServerProperties();
+        ServiceConnectionPools pools = new ServiceConnectionPools(properties, serverProperties, List.of(),
+                new HttpClientSslConfigurer(properties.getSsl(), serverProperties, null));
+        try {
+            RevalidationGlobalFilter pooled = new RevalidationGlobalFilter(100, WebClient.create(), null, pools,
+                    clock::get);
+            WebClient shared = pooled.webClient(target);
+            target.connectionPool(new ConnectionPool().setEnabled(true));
+            WebClient dedicated = pooled.webClient(target);
+            assertThat(dedicated).isNotSameAs(shared).isSameAs(pooled.webClient(target));
+        } finally {
+            pools.destroy();
+        }
+    }
+
+    @Test
+    void expiredEntriesAreRevalidatedByTheBackend() {
+        get(null);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        backendHeaders.setETag("\"v2\"");
+        assertThat(get("\"v1\"").getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(backendCalls.get()).isEqualTo(2);
+        assertThat(get("\"v2\"").getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(backendCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void privateResponsesAreNotRemembered() {
+        backendHeaders.setCacheControl("private");
+        get(null);
+        assertThat(filter.size()).isZero();
+        assertThat(get("\"v1\"").getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(backendCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void ifModifiedSince() {
+        backendHeaders.remove(HttpHeaders.ETAG);
+        backendHeaders.setLastModified(1_000_000_000_000L);
+        get(null);
+        HttpHeaders request = new HttpHeaders();
+        request.setIfModifiedSince(1_000_000_000_000L);
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/mapstore/dist/mapstore2.js").header("sec-proxy", "true").headers(request));
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        filter.filter(exchange, chain).block();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(backendCalls.get()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.headers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.georchestra.gateway.filter.headers.RemoveHeadersGatewayFilterFactory.RegExConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Test suite for {@link RequestHeadersRewrite}
+ */
+@Slf4j
+class RequestHeadersRewriteTest {
+
+    private static final RegExConfig SEC_HEADERS = new RegExConfig("(?i)(sec-.*|Authorization)");
+
+    private MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/geoserver/wms")
+                .header("preauth-username", "admin").header("sec-username", "forged").header("sec-roles", "ROLE_ADMIN")
+                .header("Authorization", "Bearer token").header("Host", "localhost"));
+    }
+
+    @Test
+    void removalsAndAdditionsInOneMutation() {
+        MockServerWebExchange original = exchange();
+        AtomicInteger added = new AtomicInteger();
+        Consumer<HttpHeaders> addSecHeaders = headers -> {
+            added.incrementAndGet();
+            headers.add("sec-username", "testuser");
+        };
+
+        ServerWebExchange exchange = RequestHeadersRewrite.remove(original, Set.of("PREAUTH-USERNAME"));
+        ServerWebExchange mutated = exchange;
+        exchange = RequestHeadersRewrite.remove(exchange, SEC_HEADERS);
+        exchange = RequestHeadersRewrite.add(exchange, List.of(addSecHeaders));
+
+        assertThat(mutated).isNotSameAs(original);
+        assertThat(exchange).as("only the first step mutates the exchange").isSameAs(mutated);
+
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        assertThat(headers.toSingleValueMap()).containsOnlyKeys("sec-username", "Authorization", "Host")
+                .containsEntry("sec-username", "testuser");
+        assertThat(exchange.getRequest().getHeaders()).as("headers are rewritten once").isSameAs(headers);
+        assertThat(added).hasValue(1);
+        assertThrows(UnsupportedOperationException.class, () -> headers.add("sec-roles", "ROLE_ADMIN"));
+        assertThat(original.getRequest().getHeaders()).containsKey("preauth-username");
+    }
+
+    /**
+     * Rewrites the headers like the three filters used to: mutating the exchange
+     * and copying the headers for each step, and formatting a {@code name: value}
+     * line per header value to match the regular expression against
+     */
+    private static ServerWebExchange rewriteByMutations(ServerWebExchange exchange) {
+        Pattern pattern = Pattern.compile(SEC_HEADERS.getRegEx());
+        ServerWebExchange rewritten = exchange;
+        rewritten = rewritten.mutate().request(r -> r.headers(headers -> headers.remove("preauth-username"))).build();
+        rewritten = rewritten.mutate()
+                .request(r -> r.headers(headers -> headers.entrySet()
+                        .removeIf(header -> header.getValue().stream()
+                                .anyMatch(value -> pattern.matcher(header.getKey() + ": " + value).matches()))))
+                .build();
+        return rewritten.mutate().request(r -> r.headers(headers -> headers.add("sec-username", "testuser"))).build();
+    }
+
+    private static ServerWebExchange rewrite(ServerWebExchange exchange) {
+        ServerWebExchange rewritten = RequestHeadersRewrite.remove(exchange, Set.of("preauth-username"));
+        rewritten = RequestHeadersRewrite.remove(rewritten, SEC_HEADERS);
+        return RequestHeadersRewrite.add(rewritten, List.of(headers -> headers.add("sec-username", "testuser")));
+    }
+
+    private static long allocatedBytes(UnaryOperator<ServerWebExchange> rewrite, List<MockServerWebExchange> requests) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int size = 0;
+        for (MockServerWebExchange request : requests) {
+            size += rewrite.apply(request).getRequest().getHeaders().size();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertThat(size).isEqualTo(3 * requests.size());
+        return allocated;
+    }
+
+    /**
+     * Compares the memory allocated by the former mutation per filter path and by
+     * {@link RequestHeadersRewrite}, measured with
+     * {@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()}
+     * after a warm-up, as there's no JMH setup in this build.
+     */
+    @Test
+    void allocatesLessThanMutatingPerFilter() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        final int count = 2_000;
+        for (int i = 0; i < 5; i++) {
+            allocatedBytes(RequestHeadersRewriteTest::rewriteByMutations, exchanges(count));
+            allocatedBytes(RequestHeadersRewriteTest::rewrite, exchanges(count));
+        }
+        long mutations = allocatedBytes(RequestHeadersRewriteTest::rewriteByMutations, exchanges(count));
+        long rewrite = allocatedBytes(RequestHeadersRewriteTest::rewrite, exchanges(count));
+        log.info("Bytes allocated per request: {} mutating per filter, {} with RequestHeadersRewrite",
+                mutations / count, rewrite / count);
+        assertThat(rewrite).isLessThan(mutations);
+    }
+
+    private List<MockServerWebExchange> exchanges(int count) {
+        return IntStream.range(0, count).mapToObj(i -> exchange()).toList();
+    }
+
+    @Test
+    void stepsAfterAccessRewriteAgain() {
+        ServerWebExchange exchange = RequestHeadersRewrite.remove(exchange(), Set.of("preauth-username"));
+        assertThat(exchange.getRequest().getHeaders()).containsKey("sec-username");
+
+        exchange = RequestHeadersRewrite.remove(exchange, SEC_HEADERS);
+        assertThat(exchange.getRequest().getHeaders()).doesNotContainKeys("preauth-username", "sec-username",
+                "sec-roles");
+    }
+
+    @Test
+    void removalsAfterAdditionsApplyToAddedHeaders() {
+        ServerWebExchange exchange = RequestHeadersRewrite.add(exchange(),
+                List.of(headers -> headers.add("sec-org", "PSC")));
+        exchange = RequestHeadersRewrite.remove(exchange, SEC_HEADERS);
+
+        assertThat(exchange.getRequest().getHeaders()).doesNotContainKeys("sec-org", "sec-username")
+                .containsKey("preauth-username");
+    }
+
+    @Test
+    void newRequestStartsNewRewrite() {
+        ServerWebExchange exchange = RequestHeadersRewrite.remove(exchange(), SEC_HEADERS);
+        exchange = exchange.mutate().request(r -> r.path("/geoserver/ows")).build();
+        ServerWebExchange added = RequestHeadersRewrite.add(exchange,
+                List.of(headers -> headers.add("sec-username", "testuser")));
+
+        assertThat(added).isNotSameAs(exchange);
+        assertThat(added.getRequest().getPath().value()).isEqualTo("/geoserver/ows");
+        assertThat(added.getRequest().getHeaders().get("sec-username")).containsExactly("testuser");
+        assertThat(added.getRequest().getHeaders()).doesNotContainKey("sec-roles");
+    }
+
+    @Test
+    void regexMatchesNameAndValues() {
+        RegExConfig basicAuth = new RegExConfig("(?i)^(sec-.*|Authorization:(?!\\s*Bearer).*)");
+        assertThat(basicAuth.matches("Authorization", List.of("Basic YWRtaW46YWRtaW4="))).isTrue();
+        assertThat(basicAuth.matches("Authorization", List.of("Bearer token"))).isFalse();
+        assertThat(basicAuth.matches("Authorization", List.of("Bearer token", "Basic YWRtaW46YWRtaW4="))).isTrue();
+        assertThat(basicAuth.matches("sec-user", List.of("testuser"))).isTrue();
+        assertThat(basicAuth.matches("Host", List.of("localhost"))).isFalse();
+        assertThat(basicAuth.matches("sec-user", List.of())).isFalse();
+
+        RegExConfig byValue = new RegExConfig("X-Forwarded-For: 10\\..*");
+        assertThat(byValue.matches("X-Forwarded-For", List.of("192.168.1.1", "10.0.0.1"))).isTrue();
+        assertThat(byValue.matches("X-Forwarded-For", List.of("192.168.1.1"))).isFalse();
+        assertThat(new RegExConfig("ETag: null").matches("ETag", Arrays.asList((String) null))).isTrue();
+    }
+
+    /**
+     * The name and value matching shall give the same results as matching the
+     * formatted {@code <name>: <value>} lines
+     */
+    @Test
+    void regexMatchesLikeFormattedHeaderLines() {
+        List<String> regexes = List.of("(?i)(sec-.*|Authorization)", "(?i)^(sec-.*|Authorization:(?!\\s*Bearer\\s*$))",
+                "(?i)^(sec-.*|Authorization:(?!\\s*Bearer).*)", "Authorization(?=: Basic).*",
+                "(?i)authorization: basic .*", "sec-(user|org)", "[a-z-]+: (?<v>.*)\\k<v>", ".*: .*token.*", "Host",
+                "Host: ", "(X-.*|.*-Id): [0-9]+");
+        List<String> names = List.of("sec-user", "SEC-ORG", "sec-", "Authorization", "authorization", "Host",
+                "X-Request-Id", "x-trace", "Cookie");
+        List<String> values = List.of("", "Basic YWRtaW46YWRtaW4=", "Bearer token", " Bearer ", "abab", "1234",
+                "localhost", "session=token123");
+        for (String regex : regexes) {
+            RegExConfig config = new RegExConfig(regex);
+            Pattern pattern = Pattern.compile(regex);
+            for (String name : names) {
+                for (String value : values) {
+                    boolean expected = pattern.matcher("%s: %s".formatted(name, value)).matches();
+                    assertThat(config.matches(name, List.of(value))).as("%s ~ %s: %s", regex, name, value)
+                            .isEqualTo(expected);
+                }
+                boolean expected = values.stream()
+                        .anyMatch(value -> pattern.matcher("%s: %s".formatted(name, value)).matches());
+                assertThat(config.matches(name, values)).as("%s ~ %s", regex, name).isEqualTo(expected);
+            }
+        }
+    }
+}
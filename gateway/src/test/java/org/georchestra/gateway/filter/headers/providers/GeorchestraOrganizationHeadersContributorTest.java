@@ -20,6 +20,7 @@
 package org.georchestra.gateway.filter.headers.providers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -28,6 +29,7 @@ import static org.mockito.Mockito.when;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Consumer;
 
 import org.georchestra.gateway.filter.headers.HeaderContributor;
@@ -108,4 +110,33 @@ class GeorchestraOrganizationHeadersContributorTest {
         assertEquals(List.of(org.getName()), target.get("sec-orgname"));
         assertEquals(List.of(org.getLastUpdated()), target.get("sec-org-lastupdated"));
     }
+
+    @Test
+    void testLazyOrganizationNotResolvedIfNoOrgHeaders() {
+        matchedRouteHeadersConfig.enableAll();
+        matchedRouteHeadersConfig.setOrgname(Optional.of(false));
+        matchedRouteHeadersConfig.setOrgid(Optional.of(false));
+        matchedRouteHeadersConfig.setOrgLastUpdated(Optional.of(false));
+        GeorchestraOrganizations.store(exchange, () -> {
+            throw new AssertionError("organization should not be resolved");
+        });
+
+        HttpHeaders target = new HttpHeaders();
+        headerContributor.prepare(exchange).accept(target);
+        assertTrue(target.isEmpty());
+        assertTrue(GeorchestraOrganizations.isPending(exchange));
+    }
+
+    @Test
+    void testLazyOrganizationResolvedForOrgHeaders() {
+        Organization org = new Organization();
+        org.setName("PSC");
+        GeorchestraOrganizations.store(exchange, () -> org);
+        matchedRouteHeadersConfig.setOrgname(Optional.of(true));
+
+        HttpHeaders target = new HttpHeaders();
+        headerContributor.prepare(exchange).accept(target);
+        assertEquals(List.of("PSC"), target.get("sec-orgname"));
+        assertFalse(GeorchestraOrganizations.isPending(exchange));
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.loadbalancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Affinity;
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Instance;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.LoadBalancing;
+import org.georchestra.gateway.model.OwsRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link LayerAffinityGatewayFilterFactory} and the consistent
+ * hashing of {@link ServiceInstances}
+ */
+class LayerAffinityGatewayFilterFactoryTest {
+
+    private static final List<URI> REPLICAS = IntStream.rangeClosed(1, 4)
+            .mapToObj(i -> URI.create("http://geoserver-%d:8080/geoserver/".formatted(i))).toList();
+
+    private static OwsRequest params(String... keyValues) {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            query.append(i == 0 ? "" : "&").append(keyValues[i]).append('=').append(keyValues[i + 1]);
+        }
+        return OwsRequest.parse(query.toString());
+    }
+
+    private static ServiceInstances instances(List<URI> uris) {
+        return new ServiceInstances("geoserver", uris, new LoadBalancing(), System::nanoTime);
+    }
+
+    @Test
+    void layerKey() {
+        assertThat(LayerAffinityGatewayFilterFactory.layerKey(params("LAYERS", "ne:roads"), "/geoserver/wms"))
+                .isEqualTo("ne:roads");
+        assertThat(LayerAffinityGatewayFilterFactory.layerKey(params("typeNames", "ne:roads"), "/geoserver/ows"))
+                .isEqualTo("ne:roads");
+        assertThat(LayerAffinityGatewayFilterFactory.layerKey(params("coverageId", "ne__dem"), "/geoserver/wcs"))
+                .isEqualTo("ne__dem");
+        assertThat(
+                LayerAffinityGatewayFilterFactory.layerKey(params("layer", "ne:roads"), "/geoserver/gwc/service/wmts"))
+                        .isEqualTo("ne:roads");
+        assertThat(LayerAffinityGatewayFilterFactory.layerKey(params("layers", ""), "/geoserver/ne/wms"))
+                .isEqualTo("ne");
+        assertThat(LayerAffinityGatewayFilterFactory.layerKey(params(), "/geoserver/ne/roads/WMS"))
+                .isEqualTo("ne:roads");
+        assertThat(LayerAffinityGatewayFilterFactory.layerKey(params("request", "GetCapabilities"), "/geoserver/wms"))
+                .isNull();
+        assertThat(LayerAffinityGatewayFilterFactory.layerKey(params(), "/geoserver/web/")).isNull();
+    }
+
+    @Test
+    void filterSetsAffinity() {
+        GatewayFilter filter = new LayerAffinityGatewayFilterFactory()
+                .apply(new LayerAffinityGatewayFilterFactory.Config().setLoadFactor(1.5));
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/geoserver/wms?LAYERS=ne:roads"));
+        filter.filter(exchange, e -> Mono.empty()).block();
+        assertThat(exchange.<Affinity>getAttribute(LoadBalancerGlobalFilter.AFFINITY_ATTR))
+                .isEqualTo(new Affinity("ne:roads", 1.5));
+    }
+
+    @Test
+    void sameKeySameInstance() {
+        ServiceInstances instances = instances(REPLICAS);
+        Map<Instance, Integer> owned = new HashMap<>();
+        for (int layer = 0; layer < 1000; layer++) {
+            Affinity affinity = new Affinity("ne:layer" + layer, 1.25);
+            Instance instance = instances.choose(affinity);
+            assertThat(instances.choose(affinity)).isSameAs(instance);
+            owned.merge(instance, 1, Integer::sum);
+        }
+        assertThat(owned).hasSize(4);
+        assertThat(owned.values()).allSatisfy(count -> assertThat(count).isBetween(150, 350));
+    }
+
+    @Test
+    void addingReplicaMovesFewKeys() {
+        ServiceInstances before = instances(REPLICAS.subList(0, 3));
+        ServiceInstances after = instances(REPLICAS);
+        int moved = 0;
+        for (int layer = 0; layer < 1000; layer++) {
+            Affinity affinity = new Affinity("ne:layer" + layer, 1.25);
+            URI was = before.choose(affinity).getUri();
+            URI is = after.choose(affinity).getUri();
+            if (!was.equals(is)) {
+                moved++;
+                assertThat(is).as("keys only move to the new replica").isEqualTo(REPLICAS.get(3));
+            }
+        }
+        assertThat(moved).as("about a fourth of the keys should move").isBetween(150, 350);
+    }
+
+    @Test
+    void boundedLoad() {
+        ServiceInstances instances = instances(REPLICAS);
+        Affinity hot = new Affinity("ne:hot", 1.25);
+        Instance owner = instances.choose(hot);
+        for (int i = 0; i < 10; i++) {
+            owner.start();
+        }
+        assertThat(instances.choose(hot)).as("an overloaded replica spills over the next one").isNotSameAs(owner);
+    }
+
+    /**
+     * Simulates replicas with a per-layer LRU cache each, and compares their hit
+     * ratio with and without layer affinity
+     */
+    @Test
+    void cacheLocality() {
+        double balanced = hitRatio(false);
+        double affinity = hitRatio(true);
+        assertThat(affinity).isGreaterThan(0.9).isGreaterThan(2 * balanced);
+    }
+
+    private double hitRatio(boolean layerAffinity) {
+        final int cacheSize = 25;
+        final int layers = 80;
+        final int requests = 20_000;
+        Map<String, Map<String, Boolean>> caches = new HashMap<>();
+        int[] hits = { 0 };
+        GatewayFilterChain backend = exchange -> {
+            URI url = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+            Map<String, Boolean> cache = caches.computeIfAbsent(url.getHost(),
+                    h -> new LinkedHashMap<>(cacheSize, 0.75f, true) {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                            return size() > cacheSize;
+                        }
+                    });
+            String layer = exchange.getRequest().getQueryParams().getFirst("LAYERS");
+            if (cache.put(layer, Boolean.TRUE) != null) {
+                hits[0]++;
+            }
+            return Mono.empty();
+        };
+        LoadBalancerGlobalFilter balancer = new LoadBalancerGlobalFilter();
+        GatewayFilter affinity = new LayerAffinityGatewayFilterFactory()
+                .apply(new LayerAffinityGatewayFilterFactory.Config());
+        GeorchestraTargetConfig target = new GeorchestraTargetConfig().serviceName("geoserver").target(REPLICAS.get(0))
+                .replicas(REPLICAS.subList(1, 4)).loadBalancing(new LoadBalancing());
+        Random random = new Random(42);
+        for (int i = 0; i < requests; i++) {
+            String query = "LAYERS=ne:layer" + random.nextInt(layers);
+            MockServerWebExchange exchange = MockServerWebExchange
+                    .from(MockServerHttpRequest.get("/geoserver/wms?" + query));
+            exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR,
+                    URI.create("http://geoserver-1:8080/geoserver/wms?" + query));
+            GeorchestraTargetConfig.setTarget(exchange, target);
+            GatewayFilterChain chain = e -> balancer.filter(e, backend);
+            (layerAffinity ? affinity.filter(exchange, chain) : chain.filter(exchange)).block();
+        }
+        return (double) hits[0] / requests;
+    }
+}
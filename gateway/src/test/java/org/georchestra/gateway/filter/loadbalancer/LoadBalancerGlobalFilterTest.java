@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.loadbalancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.filter.global.ResolveTargetGlobalFilter;
+import org.georchestra.gateway.filter.loadbalancer.ServiceInstances.Instance;
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.LoadBalancing;
+import org.georchestra.gateway.model.Service;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link LoadBalancerGlobalFilter} and {@link ServiceInstances},
+ * using stub backend instances whose response status is set by each test.
+ */
+class LoadBalancerGlobalFilterTest {
+
+    private static final URI TARGET = URI.create("http://geoserver-1:8080/geoserver/");
+
+    private static final List<URI> REPLICAS = List.of(URI.create("http://geoserver-2:8080/geoserver/"),
+            URI.create("http://geoserver-3:8080/geoserver/"));
+
+    private final AtomicLong clock = new AtomicLong(1);
+
+    private SimpleMeterRegistry registry;
+
+    private GeorchestraTargetConfig target;
+
+    private LoadBalancerGlobalFilter filter;
+
+    /** stub backend response status by instance host */
+    private final Map<String, HttpStatus> statuses = new ConcurrentHashMap<>();
+
+    /** stub backend calls by instance host */
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    private GatewayFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        target = new GeorchestraTargetConfig().serviceName("geoserver").target(TARGET).replicas(REPLICAS)
+                .loadBalancing(new LoadBalancing().setStrategy(LoadBalancing.Strategy.LEAST_REQUESTS));
+        filter = new LoadBalancerGlobalFilter(clock::get);
+        filter.bindTo(registry);
+        chain = mock(GatewayFilterChain.class);
+        when(chain.filter(any())).thenAnswer(invocation -> backend(invocation.getArgument(0)));
+    }
+
+    /**
+     * Stands in for the routing filter, responding as the instance the request URL
+     * points to
+     */
+    private Mono<Void> backend(ServerWebExchange exchange) {
+        URI url = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+        calls.computeIfAbsent(url.getHost(), h -> new AtomicInteger()).incrementAndGet();
+        exchange.getResponse().setStatusCode(statuses.getOrDefault(url.getHost(), HttpStatus.OK));
+        return exchange.getResponse().setComplete();
+    }
+
+    private MockServerWebExchange call() {
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/geoserver/wms?SERVICE=WMS&LAYERS=ne%3Aroads"));
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR,
+                URI.create("http://geoserver-1:8080/geoserver/wms?SERVICE=WMS&LAYERS=ne%3Aroads"));
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        filter.filter(exchange, chain).block();
+        return exchange;
+    }
+
+    private int calls(String host) {
+        AtomicInteger count = calls.get(host);
+        return count == null ? 0 : count.get();
+    }
+
+    private double counter(String name, String instance) {
+        return registry.get(LoadBalancerGlobalFilter.METRICS_PREFIX + name).tag("service", "geoserver")
+                .tag("instance", instance).functionCounter().count();
+    }
+
+    @Test
+    void serviceWithoutReplicasPassesThrough() {
+        target.replicas(List.of());
+        MockServerWebExchange exchange = call();
+        assertThat(exchange.<URI>getAttribute(GATEWAY_REQUEST_URL_ATTR)).hasHost("geoserver-1");
+        assertThat(exchange.getAttributes()).doesNotContainKey(LoadBalancerGlobalFilter.INSTANCE_ATTR);
+    }
+
+    @Test
+    void balancesAcrossInstances() {
+        MockServerWebExchange exchange = null;
+        for (int i = 0; i < 300; i++) {
+            exchange = call();
+        }
+        assertThat(calls("geoserver-1")).isPositive();
+        assertThat(calls("geoserver-2")).isPositive();
+        assertThat(calls("geoserver-3")).isPositive();
+        URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        assertThat(url.getRawQuery()).isEqualTo("SERVICE=WMS&LAYERS=ne%3Aroads");
+        assertThat(url.getRawPath()).isEqualTo("/geoserver/wms");
+        assertThat(counter(".requests", "geoserver-1:8080") + counter(".requests", "geoserver-2:8080")
+                + counter(".requests", "geoserver-3:8080")).isEqualTo(300);
+    }
+
+    @Test
+    void balancesThroughTheGatewayFilterChain() {
+        Service service = new Service();
+        service.setTarget(TARGET);
+        service.setReplicas(REPLICAS);
+        GatewayConfigProperties config = new GatewayConfigProperties();
+        config.setServices(Map.of("geoserver", service));
+        GatewayFilter layerAffinity = new LayerAffinityGatewayFilterFactory()
+                .apply(new LayerAffinityGatewayFilterFactory.Config());
+        Route route = Route.async().id("geoserver").uri(TARGET).predicate(exchange -> true)
+                .filter(new OrderedGatewayFilter(layerAffinity, 1)).build();
+        // given out of order, the handler sorts them
+        FilteringWebHandler handler = new FilteringWebHandler(List.of(filter, new ResolveTargetGlobalFilter(config),
+                new RouteToRequestUrlFilter(), (exchange, chain) -> backend(exchange)));
+
+        Map<String, String> layerHosts = new ConcurrentHashMap<>();
+        for (int i = 0; i < 300; i++) {
+            String layer = "ne:layer" + (i % 10);
+            MockServerWebExchange exchange = MockServerWebExchange
+                    .from(MockServerHttpRequest.get("/geoserver/wms").queryParam("LAYERS", layer));
+            exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
+            handler.handle(exchange).block();
+
+            Instance instance = exchange.getAttribute(LoadBalancerGlobalFilter.INSTANCE_ATTR);
+            assertThat(instance).as("the target should be resolved before balancing").isNotNull();
+            URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+            assertThat(url.getRawPath()).isEqualTo("/geoserver/wms");
+            assertThat(layerHosts.computeIfAbsent(layer, l -> url.getHost())).as("should keep the layer affinity")
+                    .isEqualTo(url.getHost());
+        }
+        assertThat(calls("geoserver-1")).isPositive();
+        assertThat(calls("geoserver-2")).isPositive();
+        assertThat(calls("geoserver-3")).isPositive();
+    }
+
+    @Test
+    void failingInstanceIsEjected() {
+        statuses.put("geoserver-2", HttpStatus.BAD_GATEWAY);
+        for (int i = 0; i < 300; i++) {
+            call();
+        }
+        assertThat(calls("geoserver-2")).as("should be ejected after 5 consecutive failures").isEqualTo(5);
+        assertThat(counter(".failures", "geoserver-2:8080")).isEqualTo(5);
+        assertThat(counter(".ejections", "geoserver-2:8080")).isEqualTo(1);
+        assertThat(registry.get(LoadBalancerGlobalFilter.METRICS_PREFIX + ".ejected")
+                .tag("instance", "geoserver-2:8080").gauge().value()).isEqualTo(1);
+
+        statuses.remove("geoserver-2");
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        for (int i = 0; i < 300; i++) {
+            call();
+        }
+        assertThat(calls("geoserver-2")).as("should be back after the ejection time").isGreaterThan(5);
+    }
+
+    @Test
+    void maxEjectionPercent() {
+        statuses.put("geoserver-1", HttpStatus.SERVICE_UNAVAILABLE);
+        statuses.put("geoserver-2", HttpStatus.SERVICE_UNAVAILABLE);
+        statuses.put("geoserver-3", HttpStatus.SERVICE_UNAVAILABLE);
+        for (int i = 0; i < 300; i++) {
+            call();
+        }
+        ServiceInstances instances = filter.instances(target);
+        assertThat(instances.getInstances().stream().filter(Instance::isEjected))
+                .as("at most 50% of the instances are ejected").hasSize(1);
+    }
+
+    @Test
+    void leastLatencyPrefersFasterInstance() {
+        LoadBalancing config = new LoadBalancing().setStrategy(LoadBalancing.Strategy.LEAST_LATENCY);
+        ServiceInstances instances = new ServiceInstances("geoserver", List.of(TARGET, REPLICAS.get(0)), config,
+                clock::get);
+        Instance slow = instances.getInstances().get(0);
+        Instance fast = instances.getInstances().get(1);
+        slow.start();
+        slow.onSuccess(TimeUnit.MILLISECONDS.toNanos(100));
+        fast.start();
+        fast.onSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        for (int i = 0; i < 10; i++) {
+            assertThat(instances.choose()).isSameAs(fast);
+        }
+
+        // too many requests in flight outweigh the latency
+        for (int i = 0; i < 10; i++) {
+            fast.start();
+        }
+        assertThat(instances.choose()).isSameAs(slow);
+    }
+
+    @Test
+    void latencyAverageDecays() {
+        LoadBalancing config = new LoadBalancing().setLatencyDecay(Duration.ofSeconds(10));
+        ServiceInstances instances = new ServiceInstances("geoserver", List.of(TARGET), config, clock::get);
+        Instance instance = instances.getInstances().get(0);
+        instance.start();
+        instance.onSuccess(TimeUnit.MILLISECONDS.toNanos(100));
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        instance.start();
+        instance.onSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(instance.getLatencyNanos()).isCloseTo(TimeUnit.MILLISECONDS.toNanos(10), within(1e6));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.georchestra.gateway.model.ConcurrencyQuota;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Test suite for {@link ConcurrencyQuotaGlobalFilter}, using a filter chain
+ * whose requests stay in flight until completed by the test.
+ */
+class ConcurrencyQuotaGlobalFilterTest {
+
+    private ConcurrencyQuotaGlobalFilter filter;
+
+    private SimpleMeterRegistry registry;
+
+    /** completes the requests forwarded by the chain, in order */
+    private List<Sinks.Empty<Void>> backend;
+
+    private ConcurrencyQuota quota;
+
+    @BeforeEach
+    void setUp() {
+        filter = new ConcurrencyQuotaGlobalFilter();
+        registry = new SimpleMeterRegistry();
+        filter.bindTo(registry);
+        backend = new CopyOnWriteArrayList<>();
+        quota = new ConcurrencyQuota().setPerUser(2);
+    }
+
+    private GatewayFilterChain chain() {
+        GatewayFilterChain chain = mock(GatewayFilterChain.class);
+        when(chain.filter(any())).thenAnswer(invocation -> {
+            Sinks.Empty<Void> response = Sinks.empty();
+            backend.add(response);
+            return response.asMono();
+        });
+        return chain;
+    }
+
+    private MockServerWebExchange exchange(GeorchestraUser user) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/geoserver/wps")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 1234)).build());
+        GeorchestraTargetConfig.setTarget(exchange,
+                new GeorchestraTargetConfig().serviceName("geoserver").concurrencyQuota(quota));
+        GeorchestraUsers.store(exchange, user);
+        return exchange;
+    }
+
+    private Disposable send(MockServerWebExchange exchange) {
+        return filter.filter(exchange, chain()).onErrorComplete().subscribe();
+    }
+
+    private static GeorchestraUser user(String name, String org) {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername(name);
+        user.setOrganization(org);
+        return user;
+    }
+
+    private double inFlightGauge() {
+        return registry.get(ConcurrencyQuotaGlobalFilter.METRICS_PREFIX + ".inflight").tag("service", "geoserver")
+                .gauge().value();
+    }
+
+    @Test
+    void noQuota() {
+        quota.setPerUser(0);
+        for (int i = 0; i < 5; i++) {
+            send(exchange(user("bob", null)));
+        }
+        assertThat(backend).hasSize(5);
+    }
+
+    @Test
+    void rejectsOverUserQuotaAndReleasesOnCompletion() {
+        send(exchange(user("bob", null)));
+        send(exchange(user("bob", null)));
+        assertThat(filter.inFlight("geoserver/user:bob")).isEqualTo(2);
+        assertThat(inFlightGauge()).isEqualTo(2);
+
+        MockServerWebExchange rejected = exchange(user("bob", null));
+        send(rejected);
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(backend).hasSize(2);
+        assertThat(registry.get(ConcurrencyQuotaGlobalFilter.METRICS_PREFIX + ".rejected")
+                .tags("service", "geoserver", "key", "user").counter().count()).isEqualTo(1);
+
+        send(exchange(user("alice", null)));
+        assertThat(backend).as("other users have their own quota").hasSize(3);
+
+        backend.get(0).tryEmitEmpty();
+        assertThat(filter.inFlight("geoserver/user:bob")).isEqualTo(1);
+        send(exchange(user("bob", null)));
+        assertThat(backend).hasSize(4);
+    }
+
+    @Test
+    void releasesOnCancellationAndError() {
+        Disposable first = send(exchange(user("bob", null)));
+        send(exchange(user("bob", null)));
+        first.dispose();
+        assertThat(filter.inFlight("geoserver/user:bob")).isEqualTo(1);
+
+        backend.get(1).tryEmitError(new IllegalStateException("backend failure"));
+        assertThat(filter.inFlight("geoserver/user:bob")).isZero();
+        assertThat(inFlightGauge()).isZero();
+    }
+
+    @Test
+    void organizationQuotaIsShared() {
+        quota.setPerUser(0).setPerOrganization(2).setRetryAfter(Duration.ofMillis(2500));
+        send(exchange(user("bob", "psc")));
+        send(exchange(user("alice", "psc")));
+        MockServerWebExchange rejected = exchange(user("carol", "psc"));
+        send(rejected);
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("3");
+        send(exchange(user("dave", "other")));
+        assertThat(backend).hasSize(3);
+    }
+
+    @Test
+    void failedOrganizationSlotReleasesUserSlot() {
+        quota.setPerUser(5).setPerOrganization(1);
+        send(exchange(user("bob", "psc")));
+        send(exchange(user("bob", "psc")));
+        assertThat(filter.inFlight("geoserver/user:bob")).isEqualTo(1);
+    }
+
+    @Test
+    void anonymousRequestsAreLimitedByClientIp() {
+        quota.setPerUser(1);
+        send(exchange(null));
+        MockServerWebExchange rejected = exchange(null);
+        send(rejected);
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(filter.inFlight("geoserver/ip:10.0.0.1")).isEqualTo(1);
+    }
+
+    @Test
+    void waitsForSlotUpToMaxWait() {
+        quota.setPerUser(1).setMaxWait(Duration.ofSeconds(5));
+        send(exchange(user("bob", null)));
+        Mono.delay(Duration.ofMillis(100)).subscribe(t -> backend.get(0).tryEmitEmpty());
+
+        MockServerWebExchange queued = exchange(user("bob", null));
+        Mono<Void> second = filter.filter(queued, chain());
+        second.subscribe();
+        await().atMost(Duration.ofSeconds(5)).until(() -> backend.size() == 2);
+        assertThat(queued.getResponse().getStatusCode()).isNull();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.RateLimit;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link RateLimitGlobalFilter} and {@link TokenBuckets}, using
+ * a fake clock.
+ */
+class RateLimitGlobalFilterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private RateLimitGlobalFilter filter;
+
+    private GatewayFilterChain chain;
+
+    private SimpleMeterRegistry registry;
+
+    private RateLimit limit;
+
+    @BeforeEach
+    void setUp() {
+        filter = new RateLimitGlobalFilter(new TokenBuckets(100, Duration.ofHours(1), clock::get));
+        registry = new SimpleMeterRegistry();
+        filter.bindTo(registry);
+        chain = mock(GatewayFilterChain.class);
+        when(chain.filter(any())).thenReturn(Mono.empty());
+        limit = new RateLimit().setCapacity(2).setPeriod(Duration.ofMinutes(1));
+    }
+
+    private HttpStatus send(GeorchestraUser user, String clientIp, RateLimit... limits) {
+        MockServerHttpRequest request = MockServerHttpRequest.get("/geoserver/wfs")
+                .remoteAddress(new InetSocketAddress(clientIp, 1234)).build();
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        GeorchestraTargetConfig.setTarget(exchange,
+                new GeorchestraTargetConfig().serviceName("geoserver").rateLimits(List.of(limits)));
+        GeorchestraUsers.store(exchange, user);
+        filter.filter(exchange, chain).block();
+        HttpStatus status = (HttpStatus) exchange.getResponse().getStatusCode();
+        if (status == HttpStatus.TOO_MANY_REQUESTS) {
+            assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isNotNull();
+        }
+        return status == null ? HttpStatus.OK : status;
+    }
+
+    private static GeorchestraUser user(String name, String org, String... roles) {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername(name);
+        user.setOrganization(org);
+        user.setRoles(List.of(roles));
+        return user;
+    }
+
+    private double rejected(String key) {
+        return registry.get(RateLimitGlobalFilter.METRICS_PREFIX + ".rejected").tags("service", "geoserver", "key", key)
+                .counter().count();
+    }
+
+    @Test
+    void noRateLimits() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(send(user("bob", null), "10.0.0.1")).isEqualTo(HttpStatus.OK);
+        }
+    }
+
+    @Test
+    void userLimitRejectsBeyondCapacity() {
+        GeorchestraUser bob = user("bob", null);
+        assertThat(send(bob, "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(send(bob, "10.0.0.2", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(send(bob, "10.0.0.3", limit)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(send(user("alice", null), "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(rejected("user")).isEqualTo(1);
+    }
+
+    @Test
+    void retryAfterAndRefill() {
+        GeorchestraUser bob = user("bob", null);
+        send(bob, "10.0.0.1", limit);
+        send(bob, "10.0.0.1", limit);
+
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/geoserver/wfs").build());
+        GeorchestraTargetConfig.setTarget(exchange,
+                new GeorchestraTargetConfig().serviceName("geoserver").rateLimits(List.of(limit)));
+        GeorchestraUsers.store(exchange, bob);
+        filter.filter(exchange, chain).block();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("30");
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertThat(send(bob, "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(send(bob, "10.0.0.1", limit)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @Test
+    void anonymousRequestsAreLimitedByClientIp() {
+        assertThat(send(null, "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(send(null, "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(send(null, "10.0.0.1", limit)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(send(null, "10.0.0.2", limit)).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void organizationMembersShareBucket() {
+        limit.setKey(RateLimit.Key.ORGANIZATION);
+        assertThat(send(user("bob", "psc"), "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(send(user("alice", "psc"), "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(send(user("carol", "psc"), "10.0.0.1", limit)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(send(user("dave", "other"), "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(rejected("organization")).isEqualTo(1);
+    }
+
+    @Test
+    void roleLimitAppliesToListedRolesOnly() {
+        limit.setKey(RateLimit.Key.ROLE).setRoles(List.of("USER")).setCapacity(1);
+        assertThat(send(user("bob", null, "ROLE_USER"), "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(send(user("alice", null, "ROLE_USER"), "10.0.0.1", limit)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(send(user("admin", null, "ROLE_ADMINISTRATOR"), "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+        assertThat(send(user("admin", null, "ROLE_ADMINISTRATOR"), "10.0.0.1", limit)).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void allLimitsApply() {
+        RateLimit perMinute = new RateLimit().setCapacity(10).setPeriod(Duration.ofMinutes(1));
+        RateLimit perSecond = new RateLimit().setCapacity(1).setPeriod(Duration.ofSeconds(1));
+        GeorchestraUser bob = user("bob", null);
+        assertThat(send(bob, "10.0.0.1", perMinute, perSecond)).isEqualTo(HttpStatus.OK);
+        assertThat(send(bob, "10.0.0.1", perMinute, perSecond)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(send(bob, "10.0.0.1", perMinute, perSecond)).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void rejectedRequestsDoNotDrainTheOtherLimits() {
+        RateLimit perUser = new RateLimit().setCapacity(2).setPeriod(Duration.ofMinutes(1));
+        RateLimit perOrg = new RateLimit().setKey(RateLimit.Key.ORGANIZATION).setCapacity(1)
+                .setPeriod(Duration.ofMinutes(1));
+        assertThat(send(user("bob", "psc"), "10.0.0.1", perUser, perOrg)).isEqualTo(HttpStatus.OK);
+        GeorchestraUser alice = user("alice", "psc");
+        for (int i = 0; i < 5; i++) {
+            assertThat(send(alice, "10.0.0.1", perUser, perOrg)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        }
+        assertThat(rejected("organization")).isEqualTo(5);
+        // alice's own bucket is still full
+        assertThat(send(alice, "10.0.0.1", perUser)).isEqualTo(HttpStatus.OK);
+        assertThat(send(alice, "10.0.0.1", perUser)).isEqualTo(HttpStatus.OK);
+        assertThat(send(alice, "10.0.0.1", perUser)).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+}
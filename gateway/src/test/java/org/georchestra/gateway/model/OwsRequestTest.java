@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+
+class OwsRequestTest {
+
+    @Test
+    void owsParametersIgnoreCase() {
+        OwsRequest ows = OwsRequest.parse(
+                "SERVICE=WMS&Version=1.3.0&request=GetMap&LAYERS=ne:roads,ne:rivers&format=image/png&BBOX=-180,-90,180,90");
+        assertThat(ows.getService()).isEqualTo("WMS");
+        assertThat(ows.getVersion()).isEqualTo("1.3.0");
+        assertThat(ows.getRequest()).isEqualTo("GetMap");
+        assertThat(ows.getLayers()).isEqualTo("ne:roads,ne:rivers");
+        assertThat(ows.getFormat()).isEqualTo("image/png");
+        assertThat(ows.getBbox()).isEqualTo("-180,-90,180,90");
+        assertThat(ows.getFirst("service")).isEqualTo("WMS");
+        assertThat(ows.getFirst("missing")).isNull();
+    }
+
+    @Test
+    void layersAndFormatAlternatives() {
+        OwsRequest ows = OwsRequest.parse("typeNames=ne:roads&outputFormat=json");
+        assertThat(ows.getLayers()).isEqualTo("ne:roads");
+        assertThat(ows.getFormat()).isEqualTo("json");
+
+        assertThat(OwsRequest.parse("layers=&coverageId=ne__dem").getLayers()).isEqualTo("ne__dem");
+        assertThat(OwsRequest.parse("request=GetCapabilities").getLayers()).isNull();
+    }
+
+    @Test
+    void namesMatchExactly() {
+        OwsRequest ows = OwsRequest.parse("login&a=1&a=2&b=&Service=WFS");
+        assertThat(ows.names()).containsExactly("login", "a", "b", "Service");
+        assertThat(ows.contains("login")).isTrue();
+        assertThat(ows.contains("LOGIN")).isFalse();
+        assertThat(ows.values("login")).containsExactly((String) null);
+        assertThat(ows.values("a")).containsExactly("1", "2");
+        assertThat(ows.values("b")).containsExactly("");
+        assertThat(ows.values("service")).isEmpty();
+        assertThat(ows.getService()).isEqualTo("WFS");
+    }
+
+    @Test
+    void decodesLikeQueryParams() {
+        String query = "cql_filter=name%20%3D%20%27a%26b%27&f%C3%B6o=b%C3%A4r&plus=a+b&p=%2B&&x=a=b";
+        MockServerHttpRequest request = MockServerHttpRequest
+                .method(HttpMethod.GET, URI.create("http://localhost/geoserver/wfs?" + query)).build();
+        OwsRequest ows = OwsRequest.parse(query);
+
+        assertThat(ows.values("cql_filter")).containsExactly("name = 'a&b'");
+        assertThat(ows.values("föo")).containsExactly("bär");
+        assertThat(ows.values("plus")).containsExactly("a b");
+        assertThat(ows.values("p")).containsExactly("+");
+        assertThat(ows.values("x")).containsExactly("a=b");
+        assertThat(ows.names()).containsExactlyElementsOf(request.getQueryParams().keySet());
+        for (String name : ows.names()) {
+            assertThat(ows.values(name)).as(name).isEqualTo(request.getQueryParams().get(name));
+        }
+
+        assertThat(OwsRequest.parse("bad=%zz&=ignored").names()).containsExactly("bad");
+        assertThat(OwsRequest.parse("bad=%zz").values("bad")).containsExactly("%zz");
+    }
+
+    @Test
+    void emptyQuery() {
+        assertThat(OwsRequest.parse(null).names()).isEmpty();
+        assertThat(OwsRequest.parse("").getService()).isNull();
+    }
+
+    @Test
+    void parsedOncePerExchange() {
+        ServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.get("/geoserver/wms?service=WMS&request=GetMap"));
+        OwsRequest ows = OwsRequest.of(exchange);
+        assertThat(OwsRequest.of(exchange)).isSameAs(ows);
+
+        ServerWebExchange mutated = exchange.mutate().request(
+                exchange.getRequest().mutate().uri(URI.create("http://localhost/geoserver/wms?service=WFS")).build())
+                .build();
+        assertThat(OwsRequest.of(mutated).getService()).isEqualTo("WFS");
+        assertThat(OwsRequest.of(mutated).getRequest()).isNull();
+    }
+}
@@ -27,8 +27,11 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
@@ -120,4 +123,18 @@ class GeorchestraUserMapperTest {
         assertEquals("customizer1", resolved.get().getUsername());
         assertEquals(List.of("ROLE_1", "ROLE_2"), resolved.get().getRoles());
     }
+
+    @Test
+    void testResolveCached() {
+        Authentication auth = mock(Authentication.class);
+        GeorchestraUser user = new GeorchestraUser();
+        GeorchestraUserMapperExtension userMapper = mock(GeorchestraUserMapperExtension.class);
+        when(userMapper.resolve(same(auth))).thenReturn(Optional.of(user));
+
+        ResolvedUsersCache cache = new ResolvedUsersCache(Duration.ofMinutes(1), 10);
+        GeorchestraUserMapper mapper = new GeorchestraUserMapper(List.of(userMapper), List.of(), cache);
+        assertSame(user, mapper.resolve(auth).orElseThrow());
+        assertSame(user, mapper.resolve(auth).orElseThrow());
+        verify(userMapper, times(1)).resolve(same(auth));
+    }
 }
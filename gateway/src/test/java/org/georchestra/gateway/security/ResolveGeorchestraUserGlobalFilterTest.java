@@ -19,6 +19,8 @@
 
 package org.georchestra.gateway.security;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -32,10 +34,13 @@ import static org.mockito.Mockito.when;
 
 import java.security.Principal;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.georchestra.gateway.model.GeorchestraOrganizations;
 import org.georchestra.gateway.model.GeorchestraUsers;
 import org.georchestra.gateway.security.ldap.extended.ExtendedGeorchestraUser;
 import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
@@ -44,6 +49,7 @@ import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.server.ServerWebExchange;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import reactor.core.publisher.Mono;
 
 /**
@@ -140,4 +146,44 @@ class ResolveGeorchestraUserGlobalFilterTest {
         Optional<GeorchestraUser> resolved = GeorchestraUsers.resolve(exchange);
         assertSame(user1, resolved.orElseThrow());
     }
+
+    @Test
+    void testFilter_LazyOrganizationLookupAvoided() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        filter.bindTo(registry);
+        AtomicInteger lookups = new AtomicInteger();
+        ExtendedGeorchestraUser user = new ExtendedGeorchestraUser(new GeorchestraUser())
+                .setOrgResolver(() -> lookups.incrementAndGet() > 0 ? new Organization() : null);
+        Authentication auth = mock(Authentication.class);
+        when(mockMapper.resolve(same(auth))).thenReturn(Optional.of(user));
+        ServerWebExchange exchange = this.exchange.mutate().principal(Mono.just(auth)).build();
+
+        filter.filter(exchange, mockChain).block();
+
+        assertEquals(0, lookups.get());
+        assertFalse(user.isOrgResolved());
+        assertEquals(1, registry.get(ResolveGeorchestraUserGlobalFilter.ORG_LOOKUPS_METRIC).tag("route", "none")
+                .tag("outcome", "avoided").counter().count());
+    }
+
+    @Test
+    void testFilter_LazyOrganizationLookupPerformed() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        filter.bindTo(registry);
+        Organization org = new Organization();
+        ExtendedGeorchestraUser user = new ExtendedGeorchestraUser(new GeorchestraUser()).setOrgResolver(() -> org);
+        Authentication auth = mock(Authentication.class);
+        when(mockMapper.resolve(same(auth))).thenReturn(Optional.of(user));
+        ServerWebExchange exchange = this.exchange.mutate().principal(Mono.just(auth)).build();
+        when(mockChain.filter(any())).thenAnswer(invocation -> {
+            assertSame(org, GeorchestraOrganizations.resolve(invocation.getArgument(0)).orElseThrow());
+            return Mono.empty();
+        });
+
+        filter.filter(exchange, mockChain).block();
+
+        assertTrue(user.isOrgResolved());
+        assertEquals(1, registry.get(ResolveGeorchestraUserGlobalFilter.ORG_LOOKUPS_METRIC).tag("outcome", "performed")
+                .counter().count());
+    }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.georchestra.gateway.accounts.admin.AccountCreated;
+import org.georchestra.gateway.accounts.admin.AccountsChanged;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link ResolvedUsersCache}
+ */
+class ResolvedUsersCacheTest {
+
+    private ResolvedUsersCache cache;
+
+    private AtomicInteger resolveCount;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ResolvedUsersCache(Duration.ofHours(1), 100);
+        resolveCount = new AtomicInteger();
+    }
+
+    private static GeorchestraUser user(String username, String org, String... roles) {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername(username);
+        user.setOrganization(org);
+        user.setRoles(List.of(roles));
+        return user;
+    }
+
+    private Function<Authentication, Optional<GeorchestraUser>> resolver(GeorchestraUser user) {
+        return auth -> {
+            resolveCount.incrementAndGet();
+            return Optional.ofNullable(user);
+        };
+    }
+
+    @Test
+    void cachesResolvedUsers() {
+        Authentication auth = mock(Authentication.class);
+        GeorchestraUser user = user("bob", "psc", "ROLE_USER");
+
+        assertThat(cache.get(auth, resolver(user))).containsSame(user);
+        assertThat(cache.get(auth, resolver(user))).containsSame(user);
+        assertThat(resolveCount).hasValue(1);
+    }
+
+    @Test
+    void doesNotCacheEmptyResults() {
+        Authentication auth = mock(Authentication.class);
+        assertThat(cache.get(auth, resolver(null))).isEmpty();
+        assertThat(cache.get(auth, resolver(null))).isEmpty();
+        assertThat(resolveCount).hasValue(2);
+    }
+
+    @Test
+    void expiresAfterTtl() {
+        cache = new ResolvedUsersCache(Duration.ZERO, 100);
+        Authentication auth = mock(Authentication.class);
+        GeorchestraUser user = user("bob", "psc", "ROLE_USER");
+        cache.get(auth, resolver(user));
+        cache.get(auth, resolver(user));
+        assertThat(resolveCount).hasValue(2);
+    }
+
+    @Test
+    void evictsAffectedUsersOnAccountsChanged() {
+        Authentication bob = mock(Authentication.class);
+        Authentication alice = mock(Authentication.class);
+        Authentication carol = mock(Authentication.class);
+        cache.get(bob, resolver(user("bob", "psc", "ROLE_USER")));
+        cache.get(alice, resolver(user("alice", "c2c", "ROLE_USER", "ROLE_ADMINISTRATOR")));
+        cache.get(carol, resolver(user("carol", "psc", "ROLE_USER")));
+        assertThat(cache.size()).isEqualTo(3);
+
+        cache.onAccountsChanged(new AccountsChanged(AccountsChanged.Type.USER, "bob", null));
+        assertThat(cache.size()).isEqualTo(2);
+
+        cache.onAccountsChanged(new AccountsChanged(AccountsChanged.Type.ROLE, "ADMINISTRATOR", Instant.now()));
+        assertThat(cache.size()).isEqualTo(1);
+
+        cache.onAccountsChanged(new AccountsChanged(AccountsChanged.Type.ORGANIZATION, "psc", null));
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void evictsCreatedAccount() {
+        Authentication auth = mock(Authentication.class);
+        cache.get(auth, resolver(user("bob", "psc")));
+        cache.onAccountCreated(new AccountCreated(user("bob", "psc")));
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void doesNotCacheUserResolvedDuringInvalidation() {
+        Authentication auth = mock(Authentication.class);
+        GeorchestraUser user = user("bob", "psc");
+        cache.get(auth, a -> {
+            cache.onAccountsChanged(new AccountsChanged(AccountsChanged.Type.USER, "bob", null));
+            return Optional.of(user);
+        });
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void metrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        Authentication auth = mock(Authentication.class);
+        cache.get(auth, resolver(user("bob", "psc")));
+        cache.get(auth, resolver(user("bob", "psc")));
+        cache.onAccountsChanged(new AccountsChanged(AccountsChanged.Type.USER, "bob", null));
+
+        String prefix = ResolvedUsersCache.METRICS_PREFIX;
+        assertThat(registry.get(prefix + ".hits").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get(prefix + ".misses").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get(prefix + ".invalidated").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get(prefix + ".size").gauge().value()).isZero();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.georchestra.gateway.logging.mdc.config.AuthenticationMdcConfigProperties;
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.model.HeaderMappings;
+import org.georchestra.gateway.model.Service;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link LdapAttributeProjection}
+ */
+class LdapAttributeProjectionTest {
+
+    private GatewayConfigProperties config;
+
+    @BeforeEach
+    void setUp() {
+        config = new GatewayConfigProperties();
+        config.setDefaultHeaders(new HeaderMappings().disableAll());
+    }
+
+    private LdapAttributeProjection projection() {
+        return LdapAttributeProjection.of(config, Optional.empty());
+    }
+
+    @Test
+    void noHeadersRequestNoAttributes() {
+        assertThat(projection().userAttributes(null)).isEmpty();
+        assertThat(projection().userAttributes("memberOf")).containsExactly("memberOf");
+        assertThat(projection().prunedUserAttributes()).contains("jpegPhoto", "mail", "uid", "userPassword");
+    }
+
+    @Test
+    void defaultHeadersDriveAttributes() {
+        config.getDefaultHeaders().setTel(Optional.of(true));
+        config.getDefaultHeaders().setNotes(Optional.of(true));
+
+        assertThat(projection().userAttributes(null)).containsExactly("telephoneNumber", "description",
+                "knowledgeInformation");
+        assertThat(projection().prunedUserAttributes()).contains("jpegPhoto", "mail").doesNotContain("telephoneNumber",
+                "description");
+    }
+
+    @Test
+    void serviceHeadersAreMergedWithDefaultHeaders() {
+        config.getDefaultHeaders().setEmail(Optional.of(true));
+        Service service = new Service();
+        service.setHeaders(new HeaderMappings());
+        service.getHeaders().setAddress(Optional.of(true));
+        Service disabling = new Service();
+        disabling.setHeaders(new HeaderMappings());
+        disabling.getHeaders().setEmail(Optional.of(false));
+        config.setServices(Map.of("geoserver", service, "console", disabling));
+
+        assertThat(projection().userAttributes(null)).containsExactlyInAnyOrder("mail", "postalAddress");
+    }
+
+    @Test
+    void jsonUserRequiresAllHeaderAttributes() {
+        Service service = new Service();
+        service.setHeaders(new HeaderMappings().jsonUser(true));
+        config.setServices(Map.of("geonetwork", service));
+
+        assertThat(projection().userAttributes(null)).contains("uid", "mail", "givenName", "sn", "telephoneNumber",
+                "postalAddress", "title", "description", "georchestraObjectIdentifier", "modifyTimestamp");
+        assertThat(projection().prunedUserAttributes()).contains("jpegPhoto", "userPassword").doesNotContain("mail");
+    }
+
+    @Test
+    void mdcUserIdRequiresUsername() {
+        AuthenticationMdcConfigProperties mdc = new AuthenticationMdcConfigProperties();
+        mdc.setId(true);
+        assertThat(LdapAttributeProjection.of(config, Optional.of(mdc)).userAttributes(null)).containsExactly("uid");
+    }
+
+    @Test
+    void lookupsRequestTheAttributesUsersAreLookedUpBy() {
+        config.getDefaultHeaders().setTel(Optional.of(true));
+        assertThat(projection().lookupAttributes("memberOf")).containsExactly("uid", "objectClass", "mail",
+                "georchestraObjectIdentifier", "oAuth2Provider", "oAuth2Uid", "shadowExpire", "telephoneNumber",
+                "memberOf");
+        assertThat(projection().prunedLookupAttributes()).contains("jpegPhoto", "userPassword", "title")
+                .doesNotContain("mail", "uid", "telephoneNumber");
+    }
+
+    @Test
+    void explicitReturningAttributesTakePrecedence() {
+        config.getDefaultHeaders().setEmail(Optional.of(true));
+        LdapAttributeProjection projection = projection();
+
+        assertThat(projection.returningAttributes("ldap", null, false, null)).containsExactly("mail");
+        assertThat(projection.returningAttributes("ldap", new String[] { "cn" }, false, null)).containsExactly("cn");
+        assertThat(projection.returningAttributes("ad", null, true, null)).as("not applied to Active Directory")
+                .isNull();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.DirContextAdapter;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Test suite for {@link UserAttributeLdapAuthoritiesPopulator}
+ */
+class UserAttributeLdapAuthoritiesPopulatorTest {
+
+    private final UserAttributeLdapAuthoritiesPopulator populator = new UserAttributeLdapAuthoritiesPopulator(
+            "memberOf", "dc=georchestra,dc=org", "ou=roles");
+
+    private DirContextAdapter user(String... memberOf) {
+        DirContextAdapter user = new DirContextAdapter("uid=testadmin,ou=users,dc=georchestra,dc=org");
+        if (memberOf.length > 0) {
+            user.setAttributeValues("memberOf", memberOf);
+        }
+        return user;
+    }
+
+    @Test
+    void rolesAreReadFromUserAttribute() {
+        DirContextAdapter user = user("cn=SUPERUSER,ou=roles,dc=georchestra,dc=org",
+                "cn=gn_admin,ou=roles,dc=georchestra,dc=org");
+
+        assertThat(populator.getGrantedAuthorities(user, "testadmin")).map(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_SUPERUSER", "ROLE_GN_ADMIN");
+    }
+
+    @Test
+    void onlyRolesUnderRolesBaseDnAreConsidered() {
+        DirContextAdapter user = user("cn=USER,OU=Roles,DC=georchestra,DC=org",
+                "cn=staff,ou=groups,dc=georchestra,dc=org", "cn=USER,ou=roles,dc=other,dc=org",
+                "cn=nested,cn=USER,ou=roles,dc=georchestra,dc=org", "not a dn");
+
+        assertThat(populator.getGrantedAuthorities(user, "testadmin")).map(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void noAttributeMeansNoRoles() {
+        assertThat(populator.getGrantedAuthorities(user(), "testadmin")).isEmpty();
+    }
+
+    @Test
+    void invalidRolesBaseDn() {
+        assertThatThrownBy(() -> new UserAttributeLdapAuthoritiesPopulator("memberOf", "dc=georchestra,dc=org", "ou"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
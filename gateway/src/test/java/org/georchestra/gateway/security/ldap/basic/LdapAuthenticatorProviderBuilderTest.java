@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.basic;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link LdapAuthenticatorProviderBuilder}
+ */
+class LdapAuthenticatorProviderBuilderTest {
+
+    @Test
+    void rolesAttributeIsAddedToReturningAttributes() {
+        LdapAuthenticatorProviderBuilder builder = new LdapAuthenticatorProviderBuilder();
+        assertThat(builder.returningAttributes(null).userSearchReturningAttributes()).isNull();
+
+        builder.rolesAttribute("memberOf");
+        assertThat(builder.userSearchReturningAttributes()).containsExactly("*", "memberOf");
+        assertThat(builder.returningAttributes(new String[] { "uid", "cn" }).userSearchReturningAttributes())
+                .containsExactly("uid", "cn", "memberOf");
+        assertThat(builder.returningAttributes(new String[] { "uid", "memberof" }).userSearchReturningAttributes())
+                .containsExactly("uid", "memberof");
+    }
+}
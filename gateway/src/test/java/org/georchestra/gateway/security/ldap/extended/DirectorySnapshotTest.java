@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+import org.georchestra.gateway.accounts.admin.AccountsChanged;
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.Snapshot;
+import org.georchestra.security.api.OrganizationsApi;
+import org.georchestra.security.api.UsersApi;
+import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.AttributesMapper;
+import org.springframework.ldap.core.LdapOperations;
+import org.springframework.ldap.query.LdapQuery;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link DirectorySnapshot}, with in-memory stand-ins for the
+ * users and organizations APIs and for the {@code modifyTimestamp} searches.
+ */
+class DirectorySnapshotTest {
+
+    private Map<String, GeorchestraUser> users;
+    private Map<String, Organization> orgs;
+
+    /** entries returned by modifyTimestamp searches, by search base */
+    private Map<String, List<Attributes>> modified;
+
+    private UsersApi usersApi;
+    private OrganizationsApi orgsApi;
+    private LdapOperations ldap;
+    private MutableClock clock;
+    private ExtendedLdapConfig config;
+    private DirectorySnapshot snapshot;
+
+    private static class MutableClock extends Clock {
+        Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        public @Override ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        public @Override Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        public @Override Instant instant() {
+            return now;
+        }
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        users = new HashMap<>();
+        orgs = new HashMap<>();
+        modified = new HashMap<>();
+        addUser("bob", "Bob@Example.com", "psc", "ROLE_USER");
+        addUser("alice", "alice@example.com", "c2c", "ROLE_USER", "ROLE_ADMINISTRATOR");
+        addOrg("psc", "PSC");
+        addOrg("c2c", "Camptocamp");
+
+        usersApi = mock(UsersApi.class);
+        when(usersApi.findAll()).thenAnswer(i -> new ArrayList<>(users.values()));
+        when(usersApi.findByUsername(anyString()))
+                .thenAnswer(i -> Optional.ofNullable(users.get(i.getArgument(0, String.class))));
+        orgsApi = mock(OrganizationsApi.class);
+        when(orgsApi.findAll()).thenAnswer(i -> new ArrayList<>(orgs.values()));
+        when(orgsApi.findByShortName(anyString()))
+                .thenAnswer(i -> Optional.ofNullable(orgs.get(i.getArgument(0, String.class))));
+
+        ldap = mock(LdapOperations.class);
+        when(ldap.search(any(LdapQuery.class), any(AttributesMapper.class))).thenAnswer(i -> {
+            LdapQuery query = i.getArgument(0);
+            AttributesMapper<?> mapper = i.getArgument(1);
+            List<Object> result = new ArrayList<>();
+            for (Attributes attributes : modified.getOrDefault(query.base().toString(), List.of())) {
+                result.add(mapper.mapFromAttributes(attributes));
+            }
+            return result;
+        });
+
+        clock = new MutableClock();
+        Snapshot snapshotConfig = new Snapshot().setEnabled(true).setFullReloadInterval(Duration.ofHours(1));
+        config = ExtendedLdapConfig.builder().name("default").url("ldap://localhost:389")
+                .baseDn("dc=georchestra,dc=org").usersRdn("ou=users").usersSearchFilter("(uid={0})")
+                .rolesRdn("ou=roles").rolesSearchFilter("(member={0})").orgsRdn("ou=orgs")
+                .pendingOrgsRdn("ou=pendingorgs").snapshot(snapshotConfig).build();
+        snapshot = new DirectorySnapshot(config, usersApi, orgsApi, ldap, clock);
+    }
+
+    private GeorchestraUser addUser(String username, String email, String org, String... roles) {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setOrganization(org);
+        user.setRoles(new ArrayList<>(List.of(roles)));
+        users.put(username, user);
+        return user;
+    }
+
+    private void addOrg(String shortName, String name) {
+        Organization org = new Organization();
+        org.setShortName(shortName);
+        org.setName(name);
+        orgs.put(shortName, org);
+    }
+
+    private void modified(String base, String rdnAttribute, String value, String... members) {
+        modifiedAt("20250101000100Z", base, rdnAttribute, value, members);
+    }
+
+    private void modifiedAt(String modifyTimestamp, String base, String rdnAttribute, String value, String... members) {
+        BasicAttributes attributes = new BasicAttributes();
+        attributes.put(rdnAttribute, value);
+        attributes.put("modifyTimestamp", modifyTimestamp);
+        if (members.length > 0) {
+            BasicAttribute member = new BasicAttribute("member");
+            for (String m : members) {
+                member.add("uid=%s,ou=users,dc=georchestra,dc=org".formatted(m));
+            }
+            attributes.put(member);
+        }
+        modified.computeIfAbsent(base, b -> new ArrayList<>()).add(attributes);
+    }
+
+    @Test
+    void notLoaded() {
+        assertThat(snapshot.isLoaded()).isFalse();
+        assertThat(snapshot.findByUsername("bob")).isEmpty();
+    }
+
+    @Test
+    void load() {
+        snapshot.load();
+        assertThat(snapshot.isLoaded()).isTrue();
+        assertThat(snapshot.findByUsername("bob")).get().extracting(GeorchestraUser::getEmail)
+                .isEqualTo("Bob@Example.com");
+        assertThat(snapshot.findByEmail("bob@example.com")).get().extracting(GeorchestraUser::getUsername)
+                .isEqualTo("bob");
+        assertThat(snapshot.findOrgByShortName("c2c")).get().extracting(Organization::getName).isEqualTo("Camptocamp");
+        assertThat(snapshot.findByUsername("nobody")).isEmpty();
+    }
+
+    @Test
+    void findByOAuth2Uid() {
+        GeorchestraUser carol = addUser("carol", null, "psc");
+        carol.setOAuth2Provider("github");
+        carol.setOAuth2Uid("123");
+        snapshot.load();
+        assertThat(snapshot.findByOAuth2Uid("github", "123")).get().extracting(GeorchestraUser::getUsername)
+                .isEqualTo("carol");
+        assertThat(snapshot.findByOAuth2Uid("google", "123")).isEmpty();
+    }
+
+    @Test
+    void lookupsReturnCopies() {
+        snapshot.load();
+        GeorchestraUser bob = snapshot.findByUsername("bob").orElseThrow();
+        bob.setEmail("changed@example.com");
+        bob.getRoles().add("ROLE_HACKER");
+        assertThat(snapshot.findByUsername("bob").orElseThrow().getEmail()).isEqualTo("Bob@Example.com");
+        assertThat(snapshot.findByUsername("bob").orElseThrow().getRoles()).containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void syncModifiedUser() {
+        snapshot.load();
+        users.get("bob").setEmail("bob@psc.org");
+        modified("ou=users", "uid", "bob");
+
+        snapshot.sync();
+        assertThat(snapshot.findByUsername("bob").orElseThrow().getEmail()).isEqualTo("bob@psc.org");
+        assertThat(snapshot.findByEmail("bob@example.com")).isEmpty();
+        verify(usersApi, times(1)).findAll();
+        verify(usersApi, never()).findByUsername("alice");
+    }
+
+    @Test
+    void syncModifiedRoleRefreshesPreviousAndCurrentMembers() {
+        snapshot.load();
+        // alice is no longer administrator, bob is
+        users.get("alice").getRoles().remove("ROLE_ADMINISTRATOR");
+        users.get("bob").getRoles().add("ROLE_ADMINISTRATOR");
+        modified("ou=roles", "cn", "ADMINISTRATOR", "bob");
+
+        snapshot.sync();
+        assertThat(snapshot.findByUsername("alice").orElseThrow().getRoles()).containsExactly("ROLE_USER");
+        assertThat(snapshot.findByUsername("bob").orElseThrow().getRoles()).contains("ROLE_ADMINISTRATOR");
+        verify(usersApi, never()).findByUsername(anyString());
+    }
+
+    @Test
+    void syncModifiedOrg() {
+        snapshot.load();
+        orgs.get("psc").setName("geOrchestra PSC");
+        users.get("alice").setOrganization("psc");
+        modified("ou=orgs", "cn", "psc", "bob", "alice");
+
+        snapshot.sync();
+        assertThat(snapshot.findOrgByShortName("psc").orElseThrow().getName()).isEqualTo("geOrchestra PSC");
+        assertThat(snapshot.findByUsername("alice").orElseThrow().getOrganization()).isEqualTo("psc");
+        verify(usersApi, never()).findByUsername(anyString());
+    }
+
+    @Test
+    void entriesAtTheWatermarkAreNotAppliedAgain() {
+        snapshot.load();
+        modified("ou=users", "uid", "bob");
+        modified("ou=orgs", "cn", "psc", "bob");
+        snapshot.sync();
+        verify(usersApi, times(1)).findByUsername("bob");
+        verify(orgsApi, times(1)).findByShortName("psc");
+
+        // the same entries are returned by the next polls, as modifyTimestamp >=
+        // watermark
+        snapshot.sync();
+        snapshot.sync();
+        verify(usersApi, times(1)).findByUsername("bob");
+        verify(orgsApi, times(1)).findByShortName("psc");
+        assertThat(snapshot.getIndex()).isSameAs(snapshot.getIndex());
+
+        // but entries modified later within the same second are
+        modified("ou=users", "uid", "alice");
+        snapshot.sync();
+        verify(usersApi, times(1)).findByUsername("alice");
+        verify(usersApi, times(1)).findByUsername("bob");
+
+        // and so are later modifications of the same entries, the older ones no
+        // longer matching the modifyTimestamp filter
+        modified.get("ou=users").clear();
+        modifiedAt("20250101000200Z", "ou=users", "uid", "bob");
+        snapshot.sync();
+        verify(usersApi, times(2)).findByUsername("bob");
+        snapshot.sync();
+        verify(usersApi, times(2)).findByUsername("bob");
+        verify(usersApi, times(1)).findByUsername("alice");
+    }
+
+    @Test
+    void fullReloadAfterInterval() {
+        snapshot.load();
+        users.remove("bob");
+        snapshot.sync();
+        assertThat(snapshot.findByUsername("bob")).as("deletions are not noticed by polling").isPresent();
+
+        clock.now = clock.now.plus(Duration.ofHours(2));
+        snapshot.sync();
+        assertThat(snapshot.findByUsername("bob")).isEmpty();
+        verify(usersApi, times(2)).findAll();
+    }
+
+    @Test
+    void accountsChangedRefreshesDeletedUser() {
+        snapshot.load();
+        users.remove("bob");
+        snapshot.onAccountsChanged(new AccountsChanged(AccountsChanged.Type.USER, "bob", null));
+        assertThat(snapshot.findByUsername("bob")).isEmpty();
+        assertThat(snapshot.findByEmail("bob@example.com")).isEmpty();
+    }
+
+    @Test
+    void accountsChangedUpdatesRoleMembers() {
+        snapshot.load();
+        modified("ou=roles", "cn", "ADMINISTRATOR", "bob");
+        snapshot.onAccountsChanged(new AccountsChanged(AccountsChanged.Type.ROLE, "ROLE_ADMINISTRATOR", null));
+        assertThat(snapshot.findByUsername("alice").orElseThrow().getRoles()).containsExactly("ROLE_USER");
+        assertThat(snapshot.findByUsername("bob").orElseThrow().getRoles()).containsExactly("ROLE_USER",
+                "ROLE_ADMINISTRATOR");
+        verify(usersApi, never()).findByUsername(anyString());
+    }
+
+    @Test
+    void accountsChangedRefreshesDeletedOrg() {
+        snapshot.load();
+        orgs.remove("psc");
+        snapshot.onAccountsChanged(new AccountsChanged(AccountsChanged.Type.ORGANIZATION, "psc", null));
+        assertThat(snapshot.findOrgByShortName("psc")).isEmpty();
+        assertThat(snapshot.findByUsername("bob").orElseThrow().getOrganization()).isNull();
+        assertThat(snapshot.findByUsername("alice").orElseThrow().getOrganization()).isEqualTo("c2c");
+    }
+
+    @Test
+    void metrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        snapshot.bindTo(registry);
+        snapshot.load();
+        modified("ou=users", "uid", "bob");
+        snapshot.sync();
+
+        String prefix = DirectorySnapshot.METRICS_PREFIX;
+        assertThat(registry.get(prefix + ".users").tag("config", "default").gauge().value()).isEqualTo(2);
+        assertThat(registry.get(prefix + ".orgs").gauge().value()).isEqualTo(2);
+        assertThat(registry.get(prefix + ".load").timer().count()).isEqualTo(1);
+        assertThat(registry.get(prefix + ".updates").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get(prefix + ".sync.lag").gauge().value()).isZero();
+    }
+
+    @Test
+    void demultiplexingUsersApiUsesLoadedSnapshot() {
+        DemultiplexingUsersApi api = new DemultiplexingUsersApi(Map.of("default", usersApi), Map.of("default", orgsApi),
+                Map.of("default", snapshot));
+
+        ExtendedGeorchestraUser fromLdap = api.findByUsername("default", "bob").orElseThrow();
+        verify(usersApi, times(1)).findByUsername("bob");
+        verify(orgsApi, never()).findByShortName("psc");
+        assertThat(fromLdap.getOrg().getName()).as("org should be looked up lazily").isEqualTo("PSC");
+        verify(orgsApi, times(1)).findByShortName("psc");
+
+        snapshot.load();
+        ExtendedGeorchestraUser bob = api.findByUsername("default", "bob").orElseThrow();
+        assertThat(bob.getOrg().getName()).isEqualTo("PSC");
+        verify(usersApi, times(1)).findByUsername("bob");
+        verify(orgsApi, times(1)).findByShortName("psc");
+
+        // falls back to LDAP for entries not yet in the snapshot
+        addUser("dave", "dave@example.com", "psc");
+        assertThat(api.findByUsername("default", "dave")).isPresent();
+        verify(usersApi, times(1)).findByUsername("dave");
+    }
+}
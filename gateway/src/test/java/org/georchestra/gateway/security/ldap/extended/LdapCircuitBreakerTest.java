@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.CircuitBreaker;
+import org.georchestra.gateway.security.exceptions.LdapUnavailableException;
+import org.georchestra.gateway.security.ldap.extended.LdapCircuitBreaker.State;
+import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.CommunicationException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link LdapCircuitBreaker}, using a fake clock
+ */
+class LdapCircuitBreakerTest {
+
+    private AtomicLong nanos;
+    private CircuitBreaker config;
+    private LdapCircuitBreaker breaker;
+    private SimpleMeterRegistry registry;
+
+    private final Supplier<Optional<ExtendedGeorchestraUser>> failing = () -> {
+        throw new CommunicationException(new javax.naming.CommunicationException("connection refused"));
+    };
+
+    @BeforeEach
+    void setUp() {
+        nanos = new AtomicLong();
+        config = new CircuitBreaker().setEnabled(true).setFailureThreshold(2).setOpenDuration(Duration.ofSeconds(30));
+        breaker = new LdapCircuitBreaker("ldap1", config, nanos::get);
+        registry = new SimpleMeterRegistry();
+        breaker.bindTo(registry);
+    }
+
+    private ExtendedGeorchestraUser user(String username) {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername(username);
+        user.setOrganization("org1");
+        Organization org = new Organization();
+        org.setShortName("org1");
+        return new ExtendedGeorchestraUser(user).setOrg(org);
+    }
+
+    private double counter(String name, String... tags) {
+        return registry.get(LdapCircuitBreaker.METRICS_PREFIX + name).tag("config", "ldap1").tags(tags)
+                .functionCounter().count();
+    }
+
+    private void fail(String key) {
+        try {
+            breaker.lookup(key, failing);
+        } catch (RuntimeException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    void closedLookupsGoToLdap() {
+        assertThat(breaker.lookup("username:bob", () -> Optional.of(user("bob")))).get()
+                .extracting(GeorchestraUser::getUsername).isEqualTo("bob");
+        assertThat(breaker.lookup("username:alice", Optional::empty)).isEmpty();
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void failuresPropagateWithoutLastKnownUser() {
+        assertThatThrownBy(() -> breaker.lookup("username:bob", failing)).isInstanceOf(CommunicationException.class);
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        fail("username:bob");
+        breaker.lookup("username:bob", Optional::empty);
+        fail("username:bob");
+        assertThat(breaker.getState()).as("success should reset the failure count").isEqualTo(State.CLOSED);
+        fail("username:bob");
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+        assertThat(counter(".transitions", "state", "open")).isEqualTo(1);
+        assertThat(registry.get(LdapCircuitBreaker.METRICS_PREFIX + ".state").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void openCircuitServesLastKnownUser() {
+        breaker.lookup("username:bob", () -> Optional.of(user("bob")));
+        fail("username:bob");
+        fail("username:bob");
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+
+        Optional<ExtendedGeorchestraUser> stale = breaker.lookup("username:bob", () -> {
+            throw new AssertionError("open circuit should not query LDAP");
+        });
+        assertThat(stale).get().extracting(GeorchestraUser::getUsername).isEqualTo("bob");
+        assertThat(stale.get().getOrg().getShortName()).isEqualTo("org1");
+        assertThat(counter(".stale")).isEqualTo(3);
+    }
+
+    @Test
+    void orgLookupsGoThroughTheCircuit() {
+        Organization org1 = new Organization();
+        org1.setShortName("org1");
+        assertThat(breaker.lookupOrg("org:org1", () -> Optional.of(org1))).get().extracting(Organization::getShortName)
+                .isEqualTo("org1");
+
+        Supplier<Optional<Organization>> failingOrg = () -> {
+            throw new CommunicationException(new javax.naming.CommunicationException("connection refused"));
+        };
+        assertThat(breaker.lookupOrg("org:org1", failingOrg)).get().extracting(Organization::getShortName)
+                .isEqualTo("org1");
+        assertThatThrownBy(() -> breaker.lookupOrg("org:org2", failingOrg)).isInstanceOf(CommunicationException.class);
+        assertThat(breaker.getState()).as("org lookup failures should open the circuit").isEqualTo(State.OPEN);
+
+        assertThat(breaker.lookupOrg("org:org1", () -> {
+            throw new AssertionError("open circuit should not query LDAP");
+        })).get().extracting(Organization::getShortName).isEqualTo("org1");
+        assertThatThrownBy(() -> breaker.lookupOrg("org:org2", Optional::empty))
+                .isInstanceOf(LdapUnavailableException.class);
+    }
+
+    @Test
+    void openCircuitRejectsUnknownUsers() {
+        fail("username:bob");
+        fail("username:bob");
+        assertThatThrownBy(() -> breaker.lookup("username:alice", () -> Optional.of(user("alice"))))
+                .isInstanceOf(LdapUnavailableException.class);
+        assertThat(counter(".rejected")).isEqualTo(1);
+    }
+
+    @Test
+    void servedUsersAreCopies() {
+        breaker.lookup("username:bob", () -> Optional.of(user("bob")));
+        fail("username:bob");
+        fail("username:bob");
+        breaker.lookup("username:bob", failing).orElseThrow().setUsername("changed");
+        assertThat(breaker.lookup("username:bob", failing)).get().extracting(GeorchestraUser::getUsername)
+                .isEqualTo("bob");
+    }
+
+    @Test
+    void emptyResultForgetsLastKnownUser() {
+        breaker.lookup("username:bob", () -> Optional.of(user("bob")));
+        breaker.lookup("username:bob", Optional::empty);
+        fail("username:bob");
+        fail("username:bob");
+        assertThatThrownBy(() -> breaker.lookup("username:bob", failing)).isInstanceOf(LdapUnavailableException.class);
+    }
+
+    @Test
+    void halfOpenProbeSuccessClosesCircuit() {
+        fail("username:bob");
+        fail("username:bob");
+        nanos.addAndGet(Duration.ofSeconds(31).toNanos());
+
+        assertThat(breaker.lookup("username:bob", () -> Optional.of(user("bob")))).isPresent();
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+        assertThat(counter(".transitions", "state", "half_open")).isEqualTo(1);
+        assertThat(counter(".transitions", "state", "closed")).isEqualTo(1);
+    }
+
+    @Test
+    void halfOpenProbeErrorDoesNotBlockTheNextProbe() {
+        fail("username:bob");
+        fail("username:bob");
+        nanos.addAndGet(Duration.ofSeconds(31).toNanos());
+
+        assertThatThrownBy(() -> breaker.lookup("username:bob", () -> {
+            throw new StackOverflowError();
+        })).isInstanceOf(StackOverflowError.class);
+        assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+
+        assertThat(breaker.lookup("username:bob", () -> Optional.of(user("bob")))).isPresent();
+        assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void halfOpenProbeFailureReopensCircuit() {
+        fail("username:bob");
+        fail("username:bob");
+        nanos.addAndGet(Duration.ofSeconds(31).toNanos());
+
+        fail("username:bob");
+        assertThat(breaker.getState()).isEqualTo(State.OPEN);
+        assertThat(counter(".transitions", "state", "open")).isEqualTo(2);
+
+        nanos.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThatThrownBy(() -> breaker.lookup("username:bob", () -> Optional.of(user("bob"))))
+                .as("should stay open for the whole open duration").isInstanceOf(LdapUnavailableException.class);
+    }
+}
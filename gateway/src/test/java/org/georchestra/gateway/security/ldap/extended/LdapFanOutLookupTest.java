@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.georchestra.gateway.security.exceptions.LdapUnavailableException;
+import org.georchestra.gateway.security.ldap.extended.LdapFanOutLookup.Target;
+import org.georchestra.security.api.OrganizationsApi;
+import org.georchestra.security.api.UsersApi;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link LdapFanOutLookup}, with a fast {@literal staff} and a
+ * slow {@literal partners} directory
+ */
+class LdapFanOutLookupTest {
+
+    private LdapFanOutLookup fanOut;
+    private SimpleMeterRegistry registry;
+
+    /** released to let the partners directory answer */
+    private CountDownLatch partnersLatch;
+
+    @BeforeEach
+    void setUp() {
+        partnersLatch = new CountDownLatch(1);
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        partnersLatch.countDown();
+        if (fanOut != null) {
+            fanOut.destroy();
+        }
+    }
+
+    private LdapFanOutLookup fanOut(Target... targets) {
+        fanOut = new LdapFanOutLookup(List.of(targets));
+        fanOut.bindTo(registry);
+        return fanOut;
+    }
+
+    private static Optional<ExtendedGeorchestraUser> user(String username) {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername(username);
+        return Optional.of(new ExtendedGeorchestraUser(user));
+    }
+
+    /**
+     * @return a lookup where staff has {@code staffUser} and partners has
+     *         {@code partnersUser}, only answering once {@link #partnersLatch} is
+     *         released
+     */
+    private Function<String, Optional<ExtendedGeorchestraUser>> lookup(String staffUser, String partnersUser) {
+        return configName -> {
+            if ("staff".equals(configName)) {
+                return Optional.ofNullable(staffUser).flatMap(LdapFanOutLookupTest::user);
+            }
+            try {
+                partnersLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return Optional.ofNullable(partnersUser).flatMap(LdapFanOutLookupTest::user);
+        };
+    }
+
+    private double latencyCount(String config, String outcome) {
+        return registry.get(LdapFanOutLookup.METRICS_PREFIX + ".latency").tag("config", config).tag("outcome", outcome)
+                .timer().count();
+    }
+
+    @Test
+    void higherPriorityMatchDoesNotWaitForSlowerTargets() {
+        fanOut(new Target("staff", Duration.ofSeconds(5)), new Target("partners", Duration.ofMinutes(1)));
+
+        long start = System.nanoTime();
+        Optional<ExtendedGeorchestraUser> found = fanOut.lookup(lookup("jdoe", "jdoe"));
+        assertThat(found).get().extracting(GeorchestraUser::getUsername).isEqualTo("jdoe");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        assertThat(latencyCount("staff", "found")).isEqualTo(1);
+    }
+
+    @Test
+    void lowerPriorityMatchIsReturnedWhenHigherPriorityHasNone() {
+        fanOut(new Target("staff", Duration.ofSeconds(5)), new Target("partners", Duration.ofSeconds(5)));
+        partnersLatch.countDown();
+
+        Optional<ExtendedGeorchestraUser> found = fanOut.lookup(lookup(null, "partner"));
+        assertThat(found).get().extracting(GeorchestraUser::getUsername).isEqualTo("partner");
+        assertThat(latencyCount("staff", "not_found")).isEqualTo(1);
+        assertThat(latencyCount("partners", "found")).isEqualTo(1);
+
+        assertThat(fanOut.lookup(lookup(null, null))).isEmpty();
+    }
+
+    @Test
+    void priorityOrderWinsOverResponseTime() {
+        fanOut(new Target("partners", Duration.ofSeconds(5)), new Target("staff", Duration.ofSeconds(5)));
+        new Thread(() -> {
+            sleep(100);
+            partnersLatch.countDown();
+        }).start();
+
+        Optional<ExtendedGeorchestraUser> found = fanOut.lookup(lookup("staff-jdoe", "partners-jdoe"));
+        assertThat(found).get().extracting(GeorchestraUser::getUsername).isEqualTo("partners-jdoe");
+    }
+
+    @Test
+    void slowTargetTimesOut() {
+        fanOut(new Target("staff", Duration.ofSeconds(5)), new Target("partners", Duration.ofMillis(50)));
+
+        assertThatThrownBy(() -> fanOut.lookup(lookup(null, "partner"))).isInstanceOf(LdapUnavailableException.class)
+                .hasMessageContaining("partners");
+        assertThat(
+                registry.get(LdapFanOutLookup.METRICS_PREFIX + ".timeouts").tag("config", "partners").counter().count())
+                        .isEqualTo(1);
+    }
+
+    @Test
+    void stalledLookupsDoNotGrowThePoolUnbounded() {
+        fanOut = new LdapFanOutLookup(
+                List.of(new Target("staff", Duration.ofSeconds(2)), new Target("partners", Duration.ofSeconds(2))), 1);
+        fanOut.bindTo(registry);
+        // LDAP reads blocked on the socket ignore interrupts
+        Function<String, Optional<ExtendedGeorchestraUser>> stalled = configName -> {
+            Uninterruptibles.awaitUninterruptibly(partnersLatch);
+            return Optional.empty();
+        };
+        // the first lookup takes all threads, the second one fills the queue
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> lookupIgnoringErrors(stalled));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> fanOut.getExecutor().getActiveCount() == 2);
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> lookupIgnoringErrors(stalled));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> fanOut.getExecutor().getQueue().size() == 2);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> fanOut.lookup(stalled)).isInstanceOf(LdapUnavailableException.class)
+                .hasMessageContaining("staff");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).as("rejected lookups should fail fast")
+                .isLessThan(Duration.ofSeconds(1));
+        assertThat(registry.get(LdapFanOutLookup.METRICS_PREFIX + ".timeouts").tag("config", "staff").counter().count())
+                .isEqualTo(1);
+        assertThat(fanOut.getExecutor().getPoolSize()).isEqualTo(2);
+
+        partnersLatch.countDown();
+        first.join();
+        second.join();
+    }
+
+    private void lookupIgnoringErrors(Function<String, Optional<ExtendedGeorchestraUser>> lookup) {
+        try {
+            fanOut.lookup(lookup);
+        } catch (LdapUnavailableException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    void demultiplexingUsersApiQueriesAllConfigsInPriorityOrder() {
+        Map<String, UsersApi> users = new LinkedHashMap<>();
+        Map<String, OrganizationsApi> orgs = new LinkedHashMap<>();
+        for (String name : List.of("staff", "partners")) {
+            users.put(name, mock(UsersApi.class));
+            orgs.put(name, mock(OrganizationsApi.class));
+        }
+        GeorchestraUser partner = new GeorchestraUser();
+        partner.setUsername("partner");
+        when(users.get("staff").findByUsername("partner")).thenReturn(Optional.empty());
+        when(users.get("partners").findByUsername("partner")).thenReturn(Optional.of(partner));
+
+        DemultiplexingUsersApi sequential = new DemultiplexingUsersApi(users, orgs);
+        assertThat(sequential.findByUsername("partner")).isPresent();
+        assertThat(sequential.findByUsername("nobody")).isEmpty();
+
+        LdapFanOutLookup concurrent = fanOut(new Target("staff", Duration.ofSeconds(5)),
+                new Target("partners", Duration.ofSeconds(5)));
+        DemultiplexingUsersApi demultiplexer = new DemultiplexingUsersApi(users, orgs, Map.of(), Map.of(), concurrent);
+        assertThat(demultiplexer.findByUsername("partner")).get().extracting(GeorchestraUser::getUsername)
+                .isEqualTo("partner");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
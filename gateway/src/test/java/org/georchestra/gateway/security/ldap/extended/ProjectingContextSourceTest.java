@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.model.HeaderMappings;
+import org.georchestra.gateway.security.ldap.LdapAttributeProjection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ldap.core.AttributesMapper;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.ldap.support.LdapUtils;
+
+/**
+ * Test suite for {@link ProjectingContextSource}, checking the attributes
+ * requested to a stub LDAP context by the lookups of an {@link LdapTemplate}
+ * like the ones of the {@code AccountDao}.
+ */
+class ProjectingContextSourceTest {
+
+    private DirContext context;
+
+    private LdapTemplate template;
+
+    private final AttributesMapper<Object> mapper = attributes -> attributes;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        context = mock(DirContext.class);
+        when(context.getAttributes(anyString(), any())).thenReturn(new BasicAttributes());
+        NamingEnumeration<SearchResult> empty = mock(NamingEnumeration.class);
+        when(context.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(empty);
+
+        BaseLdapPathContextSource delegate = mock(BaseLdapPathContextSource.class);
+        when(delegate.getBaseLdapName()).thenReturn(LdapUtils.newLdapName("dc=georchestra,dc=org"));
+        when(delegate.getReadOnlyContext()).thenReturn(context);
+        when(delegate.getReadWriteContext()).thenReturn(context);
+
+        GatewayConfigProperties config = new GatewayConfigProperties();
+        config.setDefaultHeaders(new HeaderMappings().disableAll());
+        config.getDefaultHeaders().setTel(Optional.of(true));
+        LdapAttributeProjection projection = LdapAttributeProjection.of(config, Optional.empty());
+
+        template = new LdapTemplate(new ProjectingContextSource(delegate, "ou=users",
+                projection.lookupAttributes("memberOf"), projection.prunedLookupAttributes()));
+    }
+
+    @Test
+    void userLookupRequestsProjectedAttributes() throws Exception {
+        template.lookup("uid=bob,ou=users", mapper);
+
+        ArgumentCaptor<String[]> requested = ArgumentCaptor.forClass(String[].class);
+        verify(context).getAttributes(eq("uid=bob,ou=users"), requested.capture());
+        assertThat(requested.getValue()).containsExactlyInAnyOrder("uid", "objectClass", "mail",
+                "georchestraObjectIdentifier", "oAuth2Provider", "oAuth2Uid", "shadowExpire", "telephoneNumber",
+                "memberOf");
+    }
+
+    @Test
+    void explicitAttributesArePruned() throws Exception {
+        template.lookup("uid=bob,ou=users", new String[] { "uid", "jpegPhoto", "sn", "modifyTimestamp" }, mapper);
+
+        ArgumentCaptor<String[]> requested = ArgumentCaptor.forClass(String[].class);
+        verify(context).getAttributes(eq("uid=bob,ou=users"), requested.capture());
+        assertThat(requested.getValue()).containsExactly("uid", "modifyTimestamp");
+    }
+
+    @Test
+    void userSearchRequestsProjectedAttributes() throws Exception {
+        template.search("ou=users", "(mail=bob@example.com)", mapper);
+
+        ArgumentCaptor<SearchControls> controls = ArgumentCaptor.forClass(SearchControls.class);
+        verify(context).search(eq("ou=users"), eq("(mail=bob@example.com)"), controls.capture());
+        assertThat(controls.getValue().getReturningAttributes()).contains("uid", "mail", "telephoneNumber")
+                .doesNotContain("jpegPhoto", "userPassword");
+    }
+
+    @Test
+    void otherEntriesAreNotProjected() throws Exception {
+        template.lookup("cn=psc,ou=orgs", mapper);
+        verify(context).getAttributes("cn=psc,ou=orgs");
+
+        template.search("ou=roles", "(member=uid=bob)", mapper);
+        ArgumentCaptor<SearchControls> controls = ArgumentCaptor.forClass(SearchControls.class);
+        verify(context).search(eq("ou=roles"), eq("(member=uid=bob)"), controls.capture());
+        assertThat(controls.getValue().getReturningAttributes()).isNull();
+    }
+
+    @Test
+    void absoluteUserNamesAreProjected() throws Exception {
+        template.lookup("uid=bob,ou=users,dc=georchestra,dc=org", mapper);
+
+        ArgumentCaptor<String[]> requested = ArgumentCaptor.forClass(String[].class);
+        verify(context).getAttributes(eq("uid=bob,ou=users,dc=georchestra,dc=org"), requested.capture());
+        assertThat(requested.getValue()).contains("uid").doesNotContain("jpegPhoto");
+    }
+}
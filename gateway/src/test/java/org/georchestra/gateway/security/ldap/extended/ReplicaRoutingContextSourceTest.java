@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapContext;
+
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.ReadReplicas;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.CommunicationException;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link ReplicaRoutingContextSource}, using a fake clock
+ */
+class ReplicaRoutingContextSourceTest {
+
+    private AtomicLong nanos;
+    private BaseLdapPathContextSource main;
+    private BaseLdapPathContextSource replica1;
+    private BaseLdapPathContextSource replica2;
+    private LdapContext mainContext;
+    private LdapContext replica1Context;
+    private LdapContext replica2Context;
+    private ReplicaRoutingContextSource routing;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        nanos = new AtomicLong();
+        mainContext = mock(LdapContext.class);
+        replica1Context = mock(LdapContext.class);
+        replica2Context = mock(LdapContext.class);
+        main = source(mainContext);
+        replica1 = source(replica1Context);
+        replica2 = source(replica2Context);
+        Map<String, BaseLdapPathContextSource> replicas = new LinkedHashMap<>();
+        replicas.put("ldap://replica1", replica1);
+        replicas.put("ldap://replica2", replica2);
+        ReadReplicas config = new ReadReplicas().setReadYourWrites(Duration.ofSeconds(5))
+                .setRetryInterval(Duration.ofSeconds(30));
+        routing = new ReplicaRoutingContextSource("default", "lookup", main, "ldap://main", replicas, config,
+                nanos::get);
+        registry = new SimpleMeterRegistry();
+        routing.bindTo(registry);
+    }
+
+    private static BaseLdapPathContextSource source(LdapContext context) {
+        BaseLdapPathContextSource source = mock(BaseLdapPathContextSource.class);
+        when(source.getReadOnlyContext()).thenReturn(context);
+        when(source.getReadWriteContext()).thenReturn(context);
+        when(source.getContext("uid=jdoe", "secret")).thenReturn(context);
+        return source;
+    }
+
+    private static void use(DirContext context) throws NamingException {
+        context.getEnvironment();
+    }
+
+    private double gauge(String name, String url) {
+        return registry.get(ReplicaRoutingContextSource.METRICS_PREFIX + name).tag("url", url).gauge().value();
+    }
+
+    @Test
+    void readsGoToTheReplicaWithFewestOutstandingRequests() throws NamingException {
+        DirContext first = routing.getReadOnlyContext();
+        DirContext second = routing.getReadOnlyContext();
+        use(first);
+        use(second);
+        verify(replica1Context).getEnvironment();
+        verify(replica2Context).getEnvironment();
+        assertThat(gauge(".outstanding", "ldap://replica1")).isEqualTo(1);
+        assertThat(gauge(".outstanding", "ldap://replica2")).isEqualTo(1);
+
+        first.close();
+        first.close();
+        assertThat(gauge(".outstanding", "ldap://replica1")).isZero();
+        DirContext third = routing.getReadOnlyContext();
+        assertThat(gauge(".outstanding", "ldap://replica1")).isEqualTo(1);
+        assertThat(third).isInstanceOf(LdapContext.class);
+        verify(main, never()).getReadOnlyContext();
+    }
+
+    @Test
+    void bindsAreBalancedAcrossReplicas() throws NamingException {
+        routing.getContext("uid=jdoe", "secret");
+        routing.getContext("uid=jdoe", "secret");
+        verify(replica1).getContext("uid=jdoe", "secret");
+        verify(replica2).getContext("uid=jdoe", "secret");
+        verify(main, never()).getContext("uid=jdoe", "secret");
+    }
+
+    @Test
+    void writesGoToMainAndPinReadsToItForAWhile() throws NamingException {
+        routing.getReadWriteContext().close();
+        verify(main).getReadWriteContext();
+
+        routing.getReadOnlyContext().close();
+        verify(main).getReadOnlyContext();
+        assertThat(registry.get(ReplicaRoutingContextSource.METRICS_PREFIX + ".pinned").functionCounter().count())
+                .isEqualTo(1);
+
+        nanos.addAndGet(Duration.ofSeconds(5).toNanos());
+        routing.getReadOnlyContext().close();
+        verify(replica1).getReadOnlyContext();
+    }
+
+    @Test
+    void failsOverToTheNextReplicaAndThenToMain() throws NamingException {
+        CommunicationException down = new CommunicationException(
+                new javax.naming.CommunicationException("connection refused"));
+        when(replica1.getReadOnlyContext()).thenThrow(down);
+
+        routing.getReadOnlyContext().close();
+        verify(replica2).getReadOnlyContext();
+        assertThat(gauge(".healthy", "ldap://replica1")).isZero();
+
+        when(replica2.getReadOnlyContext()).thenThrow(down);
+        routing.getReadOnlyContext().close();
+        verify(main).getReadOnlyContext();
+        assertThat(registry.get(ReplicaRoutingContextSource.METRICS_PREFIX + ".failovers").functionCounter().count())
+                .isEqualTo(2);
+
+        doReturn(replica1Context).when(replica1).getReadOnlyContext();
+        nanos.addAndGet(Duration.ofSeconds(30).toNanos());
+        routing.getReadOnlyContext().close();
+        assertThat(gauge(".healthy", "ldap://replica1")).isEqualTo(1);
+    }
+
+    @Test
+    void communicationErrorsOnAnOpenContextMarkTheReplicaDown() throws NamingException {
+        when(replica1Context.getEnvironment()).thenThrow(new javax.naming.CommunicationException("reset"));
+        DirContext context = routing.getReadOnlyContext();
+        try {
+            use(context);
+        } catch (javax.naming.CommunicationException expected) {
+            // expected
+        }
+        context.close();
+        assertThat(gauge(".healthy", "ldap://replica1")).isZero();
+        assertThat(registry.get(ReplicaRoutingContextSource.METRICS_PREFIX + ".latency").tag("url", "ldap://replica1")
+                .timer().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2025 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.throttling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.security.GeorchestraGatewaySecurityConfigProperties.LoginThrottling;
+import org.georchestra.gateway.security.exceptions.LoginThrottledException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link LoginThrottle} and
+ * {@link ThrottlingReactiveAuthenticationManager}, using an
+ * {@link InMemoryLoginAttemptsStore} with a fake clock
+ */
+class LoginThrottleTest {
+
+    private AtomicLong millis;
+    private LoginThrottling config;
+    private LoginThrottle throttle;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        millis = new AtomicLong(1_000_000);
+        config = new LoginThrottling().setEnabled(true).setWindow(Duration.ofMinutes(10)).setMaxFailuresPerUser(4)
+                .setMaxFailuresPerIp(10).setLockout(Duration.ofMinutes(5)).setDelayStep(Duration.ofSeconds(1))
+                .setMaxDelay(Duration.ofSeconds(3));
+        InMemoryLoginAttemptsStore store = new InMemoryLoginAttemptsStore(1000, Duration.ofMinutes(20), millis::get);
+        throttle = new LoginThrottle(config, store);
+        registry = new SimpleMeterRegistry();
+        throttle.bindTo(registry);
+    }
+
+    private double counter(String name, String... tags) {
+        return registry.get(LoginThrottle.METRICS_PREFIX + name).tags(tags).functionCounter().count();
+    }
+
+    @Test
+    void delaysProgressivelyAndLocksOutUser() {
+        assertThat(throttle.check("jdoe", "10.0.0.1")).isZero();
+        throttle.onFailure("jdoe", "10.0.0.1");
+        throttle.onFailure("JDoe", "10.0.0.2");
+        assertThat(throttle.check("jdoe", "10.0.0.3")).isZero();
+        throttle.onFailure("jdoe", "10.0.0.3");
+        assertThat(throttle.check("jdoe", "10.0.0.4")).isEqualTo(Duration.ofSeconds(1));
+        assertThat(counter(".delayed")).isEqualTo(1);
+
+        throttle.onFailure("jdoe", "10.0.0.4");
+        assertThatThrownBy(() -> throttle.check("jdoe", "10.0.0.5")).isInstanceOf(LoginThrottledException.class)
+                .extracting("retryAfter").isEqualTo(Duration.ofMinutes(5));
+        assertThat(counter(".lockouts", "key", "user")).isEqualTo(1);
+        assertThat(counter(".rejected", "key", "user")).isEqualTo(1);
+        assertThat(throttle.check("someoneelse", "10.0.0.5")).isZero();
+
+        millis.addAndGet(Duration.ofMinutes(5).toMillis());
+        assertThat(throttle.check("jdoe", "10.0.0.5")).as("lockout expired, failures still in window").isPositive();
+    }
+
+    @Test
+    void locksOutClientIpAcrossUsernames() {
+        for (int i = 0; i < 10; i++) {
+            throttle.onFailure("user" + i, "10.0.0.1");
+        }
+        assertThatThrownBy(() -> throttle.check("another", "10.0.0.1")).isInstanceOf(LoginThrottledException.class);
+        assertThat(counter(".rejected", "key", "ip")).isEqualTo(1);
+        assertThat(throttle.check("another", "10.0.0.2")).isZero();
+    }
+
+    @Test
+    void delayIsCapped() {
+        config.setMaxFailuresPerUser(100);
+        for (int i = 0; i < 80; i++) {
+            throttle.onFailure("jdoe", null);
+        }
+        assertThat(throttle.check("jdoe", null)).isEqualTo(Duration.ofSeconds(3));
+    }
+
+    @Test
+    void failuresSlideOutOfTheWindow() {
+        throttle.onFailure("jdoe", null);
+        throttle.onFailure("jdoe", null);
+        throttle.onFailure("jdoe", null);
+        millis.addAndGet(Duration.ofMinutes(15).toMillis());
+        throttle.onFailure("jdoe", null);
+        assertThat(throttle.check("jdoe", null)).as("half the previous window's failures remain").isZero();
+        throttle.onFailure("jdoe", null);
+        assertThat(throttle.check("jdoe", null)).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void successClearsUserFailures() {
+        throttle.onFailure("jdoe", null);
+        throttle.onFailure("jdoe", null);
+        throttle.onFailure("jdoe", null);
+        throttle.onSuccess("jdoe", null);
+        throttle.onFailure("jdoe", null);
+        assertThat(throttle.check("jdoe", null)).isZero();
+    }
+
+    @Test
+    void authenticationManagerRejectsLockedOutLoginsWithoutDelegating() {
+        ReactiveAuthenticationManager delegate = mock(ReactiveAuthenticationManager.class);
+        when(delegate.authenticate(any())).thenReturn(Mono.error(new BadCredentialsException("bad")));
+        config.setDelayStep(Duration.ZERO);
+        ThrottlingReactiveAuthenticationManager manager = new ThrottlingReactiveAuthenticationManager(delegate,
+                throttle);
+        ServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.post("/login").remoteAddress(new InetSocketAddress("10.0.0.1", 1234)));
+        Authentication login = new UsernamePasswordAuthenticationToken("jdoe", "wrong");
+
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> manager.authenticate(login)
+                    .contextWrite(c -> c.put(ServerWebExchange.class, exchange)).block())
+                            .isInstanceOf(BadCredentialsException.class);
+        }
+        assertThatThrownBy(
+                () -> manager.authenticate(login).contextWrite(c -> c.put(ServerWebExchange.class, exchange)).block())
+                        .isInstanceOf(LoginThrottledException.class);
+        verify(delegate, times(4)).authenticate(login);
+    }
+}
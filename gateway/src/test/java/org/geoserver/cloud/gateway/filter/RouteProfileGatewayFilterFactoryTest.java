@@ -0,0 +1,74 @@
+/*
+ * (c) 2021 Open Source Geospatial Foundation - all rights reserved This code is licensed under the
+ * GPL 2.0 license, available at the root application directory.
+ */
+package org.geoserver.cloud.gateway.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.geoserver.cloud.gateway.filter.RouteProfileGatewayFilterFactory.Config;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import reactor.core.publisher.Mono;
+
+class RouteProfileGatewayFilterFactoryTest {
+
+    private MockEnvironment environment;
+
+    private RouteProfileGatewayFilterFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        environment = new MockEnvironment();
+        environment.setActiveProfiles("datadir");
+        factory = new RouteProfileGatewayFilterFactory();
+        ReflectionTestUtils.setField(factory, "environment", environment);
+    }
+
+    /**
+     * @return the response status code, or 200 if the request proceeded
+     */
+    private int filter(GatewayFilter filter) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        filter.filter(exchange, e -> Mono.empty()).block();
+        return exchange.getResponse().getStatusCode().value();
+    }
+
+    @Test
+    void allowsRequestsIfProfileIsActive() {
+        assertThat(filter(factory.apply(new Config().setProfile("datadir")))).isEqualTo(200);
+        assertThat(filter(factory.apply(new Config().setProfile("jdbcconfig")))).isEqualTo(404);
+    }
+
+    @Test
+    void negatedProfile() {
+        assertThat(filter(factory.apply(new Config().setProfile("!datadir")))).isEqualTo(404);
+        assertThat(filter(factory.apply(new Config().setProfile("!jdbcconfig")))).isEqualTo(200);
+    }
+
+    @Test
+    void customStatusCode() {
+        Config config = new Config().setProfile("jdbcconfig").setStatusCode(HttpStatus.FORBIDDEN.value());
+        assertThat(filter(factory.apply(config))).isEqualTo(403);
+    }
+
+    @Test
+    void reevaluatesOnEnvironmentChange() {
+        GatewayFilter filter = factory.apply(new Config().setProfile("jdbcconfig"));
+        assertThat(filter(filter)).isEqualTo(404);
+
+        environment.setActiveProfiles("jdbcconfig");
+        assertThat(filter(filter)).as("decision is resolved until the environment changes").isEqualTo(404);
+
+        factory.onEnvironmentChange();
+        assertThat(filter(filter)).isEqualTo(200);
+    }
+}
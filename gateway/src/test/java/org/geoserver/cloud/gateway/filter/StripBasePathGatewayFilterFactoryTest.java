@@ -0,0 +1,67 @@
+/*
+ * (c) 2021 Open Source Geospatial Foundation - all rights reserved This code is licensed under the
+ * GPL 2.0 license, available at the root application directory.
+ */
+package org.geoserver.cloud.gateway.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.geoserver.cloud.gateway.filter.StripBasePathGatewayFilterFactory.PrefixConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+class StripBasePathGatewayFilterFactoryTest {
+
+    private final StripBasePathGatewayFilterFactory factory = new StripBasePathGatewayFilterFactory();
+
+    private static PrefixConfig prefix(String prefix) {
+        PrefixConfig config = new PrefixConfig();
+        config.setPrefix(prefix);
+        return config;
+    }
+
+    private String filter(String prefix, String path) {
+        GatewayFilter filter = factory.apply(prefix(prefix));
+        AtomicReference<String> forwarded = new AtomicReference<>();
+        GatewayFilterChain chain = exchange -> {
+            forwarded.set(exchange.getRequest().getURI().getRawPath());
+            return Mono.empty();
+        };
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get(path)), chain).block();
+        return forwarded.get();
+    }
+
+    @Test
+    void stripsBasePath() {
+        assertThat(filter("/geoserver", "/geoserver/wms")).isEqualTo("/wms");
+        assertThat(filter("/geoserver/cloud", "/geoserver/cloud/web/index.html")).isEqualTo("/web/index.html");
+    }
+
+    @Test
+    void basePathItselfKeepsItsLastSegment() {
+        assertThat(filter("/geoserver", "/geoserver")).isEqualTo("/geoserver");
+        assertThat(filter("/geoserver/cloud", "/geoserver/cloud")).isEqualTo("/cloud");
+    }
+
+    @Test
+    void otherPathsAreNotModified() {
+        assertThat(filter("/geoserver", "/console/account")).isEqualTo("/console/account");
+        assertThat(filter(null, "/geoserver/wms")).isEqualTo("/geoserver/wms");
+    }
+
+    @Test
+    void checksPreconditions() {
+        PrefixConfig noLeadingSlash = prefix("geoserver");
+        assertThatThrownBy(() -> factory.apply(noLeadingSlash)).isInstanceOf(IllegalArgumentException.class);
+        PrefixConfig trailingSlash = prefix("/geoserver/");
+        assertThatThrownBy(() -> factory.apply(trailingSlash)).isInstanceOf(IllegalArgumentException.class);
+    }
+}